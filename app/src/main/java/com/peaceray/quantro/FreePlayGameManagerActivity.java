@@ -228,7 +228,7 @@ public class FreePlayGameManagerActivity extends QuantroActivity
 			for ( int i = 0; i < modes.length; i++ ) {
 				String key = GameSaver.freePlayGameModeToSaveKey(modes[i]) ;
 				if ( GameSaver.hasGameResult(FreePlayGameManagerActivity.this, key) )
-					mFreePlayGameManagerView.setGameResult(modes[i], GameSaver.loadGameResult(FreePlayGameManagerActivity.this, key)) ;
+					mFreePlayGameManagerView.setGameResult(modes[i], GameSaver.loadGameResultSummary(FreePlayGameManagerActivity.this, key)) ;
 				if ( !mStarted )
 					return null ;
 			}
@@ -236,7 +236,7 @@ public class FreePlayGameManagerActivity extends QuantroActivity
 			for ( int i = 0; i < customModes.length; i++ ) {
 				String key = GameSaver.freePlayGameModeToSaveKey(customModes[i]) ;
 				if ( GameSaver.hasGameResult(FreePlayGameManagerActivity.this, key) )
-					mFreePlayGameManagerView.setGameResult(customModes[i], GameSaver.loadGameResult(FreePlayGameManagerActivity.this, key)) ;
+					mFreePlayGameManagerView.setGameResult(customModes[i], GameSaver.loadGameResultSummary(FreePlayGameManagerActivity.this, key)) ;
 				if ( !mStarted )
 					return null ;
 			}
@@ -767,7 +767,7 @@ public class FreePlayGameManagerActivity extends QuantroActivity
     				}
     				
     				
-    				mFreePlayGameManagerView.setGameResult(gameMode, !hasSave ? null : gr) ;
+    				mFreePlayGameManagerView.setGameResult(gameMode, !hasSave ? null : gr.getSummary()) ;
     				mFreePlayGameManagerView.refreshView() ;
         			
     			}
@@ -842,7 +842,7 @@ public class FreePlayGameManagerActivity extends QuantroActivity
     					mFreePlayGameManagerView.addGame(
     							modes[i],
     							availability,
-    							GameSaver.loadGameResult(this, GameSaver.freePlayGameModeToSaveKey(modes[i]))) ;
+    							GameSaver.loadGameResultSummary(this, GameSaver.freePlayGameModeToSaveKey(modes[i]))) ;
     				}
     				mFreePlayGameManagerView.refreshView() ;
         			
@@ -6,6 +6,7 @@ import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.Future;
 
 import android.app.Dialog;
 import android.content.Context;
@@ -27,12 +28,14 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.peaceray.quantro.communications.nonce.Nonce;
+import com.peaceray.quantro.communications.web.WebQuery;
 import com.peaceray.quantro.consts.IntentForResult;
 import com.peaceray.quantro.database.InternetLobbyDatabaseAdapter;
 import com.peaceray.quantro.dialog.DialogManager;
 import com.peaceray.quantro.dialog.GlobalDialog;
 import com.peaceray.quantro.dialog.TextFormatting;
 import com.peaceray.quantro.lobby.InternetLobby;
+import com.peaceray.quantro.lobby.InternetLobbyDirectory;
 import com.peaceray.quantro.lobby.LobbyStringEncoder;
 import com.peaceray.quantro.lobby.MutableInternetLobby;
 import com.peaceray.quantro.lobby.WebConsts;
@@ -160,6 +163,10 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 	private ArrayList<InternetLobby> mInternetLobbies;
 	private ArrayList<Nonce> mHiddenNonces;
 	
+	// The public lobby list, kept fresh in the background while we are
+	// resumed (once we have shown it once).
+	private InternetLobbyDirectory mLobbyDirectory;
+	
 	private int mMinVersionCode = -1 ;
 		// The minimum version code necessary to participate in Internet Multiplayer.
 		// Defaults to -1 until the version code is acquired.  CHECK THIS VALUE
@@ -186,7 +193,7 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 	// intro'd?
 	private boolean mShowedIntro ;
 	
-	private boolean mResumed;
+	private volatile boolean mResumed;
 
 	// confirmation?
 	private boolean mShouldConfirmJoin = false;
@@ -308,6 +315,22 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 
 		mHandler = new Handler();
 		
+		mLobbyDirectory = new InternetLobbyDirectory();
+		mLobbyDirectory.addListener(new InternetLobbyDirectory.Listener() {
+			@Override
+			public void ild_changed(InternetLobbyDirectory directory,
+					InternetLobbyDirectory.Changes changes) {
+				if (mThread != null && mThread.isAlive())
+					mThread.queue_directoryChanged(changes);
+			}
+
+			@Override
+			public void ild_failed(InternetLobbyDirectory directory,
+					int error, int reason) {
+				// background refreshes fail silently.
+			}
+		});
+		
 		
 		
 		
@@ -418,6 +441,10 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 		if (this.mExamineLobbyDialogShown) {
 			mHandler.post(mExamineLobbyDialogRefreshRunnable);
 		}
+		
+		// Keep the public list fresh, if we've shown it.
+		if (mInternetLobbiesLastRefreshAt > 0)
+			mLobbyDirectory.start();
 
 		// Show an intro if appropriate
 		if (!mShowedIntro) {
@@ -437,6 +464,7 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 		super.onPause();
 
 		mResumed = false;
+		mLobbyDirectory.stop();
 	}
 	
 	@Override
@@ -1818,6 +1846,19 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 		}
 	}
 
+	private class RunnableAddLobby implements Runnable {
+		InternetLobby mLobby;
+
+		private RunnableAddLobby(InternetLobby l) {
+			mLobby = l;
+		}
+
+		@Override
+		public void run() {
+			mInternetLobbyManagerView.addLobby(mLobby);
+		}
+	}
+
 	private class RunnableRemoveLobby implements Runnable {
 		InternetLobby mLobby;
 
@@ -1996,6 +2037,52 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 	}
 	
 	
+	private void thread_directoryChanged(InternetLobbyDirectory.Changes changes) {
+		// The public list has changed since we last showed it.  Lobbies
+		// we don't display -- hidden, or shown as an invitation instead --
+		// are ignored.  The directory provides a new instance with each
+		// change, so match our public listings by nonce.
+		for (int i = 0; i < changes.removed.size(); i++) {
+			InternetLobby l = changes.removed.get(i);
+			int index = indexOfPublicListing(l.getLobbyNonce());
+			if (index > -1) {
+				mInternetLobbies.remove(index);
+				runOnUiThread(new RunnableRemoveLobby(l));
+			}
+		}
+		for (int i = 0; i < changes.changed.size(); i++) {
+			InternetLobby l = changes.changed.get(i);
+			int index = indexOfPublicListing(l.getLobbyNonce());
+			if (index > -1) {
+				mInternetLobbies.set(index, l);
+				thread_refreshedLobby(l);
+			}
+		}
+		for (int i = 0; i < changes.added.size(); i++) {
+			InternetLobby l = changes.added.get(i);
+			Nonce n = l.getLobbyNonce();
+			boolean shown = mHiddenNonces.contains(n);
+			for (int j = 0; j < mInternetLobbies.size() && !shown; j++)
+				shown = mInternetLobbies.get(j).getLobbyNonce().equals(n);
+			if (!shown) {
+				mInternetLobbies.add(l);
+				runOnUiThread(new RunnableAddLobby(l));
+			}
+		}
+	}
+	
+	
+	private int indexOfPublicListing(Nonce nonce) {
+		for (int i = 0; i < mInternetLobbies.size(); i++) {
+			InternetLobby l = mInternetLobbies.get(i);
+			if (l.getOrigin() == InternetLobby.ORIGIN_PUBLIC_LIST
+					&& l.getLobbyNonce().equals(nonce))
+				return i;
+		}
+		return -1;
+	}
+	
+	
 	private void thread_isReceivingInvitation() {
 		mDialogManager.showDialog(DIALOG_ID_RECEIVING_INVITATION) ;
 	}
@@ -2068,8 +2155,9 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 		private static final int ANDROID_MESSAGE_TYPE_REFRESH_LOBBY_FOR_JOIN = 5;
 		private static final int ANDROID_MESSAGE_TYPE_HIDE_LOBBY = 6;
 		private static final int ANDROID_MESSAGE_TYPE_RECEIVE_INVITATION = 7 ;
+		private static final int ANDROID_MESSAGE_TYPE_DIRECTORY_CHANGED = 8 ;
 
-		private static final int NUM_ANDROID_MESSAGE_TYPES = 8;
+		private static final int NUM_ANDROID_MESSAGE_TYPES = 9;
 
 		public Handler handler = null;
 		public int timeout;
@@ -2150,6 +2238,13 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 					ANDROID_MESSAGE_TYPE_RECEIVE_INVITATION, 0, millisDelay, invitation));
 		}
 
+		public void queue_directoryChanged( InternetLobbyDirectory.Changes changes ) {
+			if ( changes == null || handler == null )
+				return ;
+			handler.sendMessage(handler.obtainMessage(
+					ANDROID_MESSAGE_TYPE_DIRECTORY_CHANGED, 0, 0, changes));
+		}
+
 		@Override
 		public void start() {
 			started = true;
@@ -2195,6 +2290,8 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 					ArrayList<InternetLobby> lobby_list = msg.obj instanceof ArrayList<?> ? (ArrayList<InternetLobby>) msg.obj
 							: null;
 					String invitation = msg.obj instanceof String ? (String) msg.obj : null ;
+					InternetLobbyDirectory.Changes changes = msg.obj instanceof InternetLobbyDirectory.Changes
+							? (InternetLobbyDirectory.Changes) msg.obj : null ;
 
 					InternetLobbyDatabaseAdapter dba;
 					
@@ -2280,12 +2377,17 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 									
 								
 
-								InternetLobby.getLobbyList(lobbies, null,
-										false, timeout);
-
-								// load current invitations
+								// load current invitations, and start on
+								// their status while the directory refreshes.
 								ArrayList<InternetLobby> invitations = dba
 										.getAllLobbies();
+								Future<WebQuery.Response[]> invitationStatus = InternetLobby
+										.queryStatus(invitations, timeout);
+
+								// The directory fetches the status of only
+								// those public lobbies that are new or stale.
+								mLobbyDirectory.refresh();
+								mLobbyDirectory.getLobbies(lobbies);
 
 								// for each invitation, check whether its nonce
 								// is in our list.
@@ -2312,13 +2414,14 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 										index++;
 								}
 								
+								// Next: refresh the invitations.  The public
+								// lobbies are already fresh.
+								InternetLobby.refreshAll(invitations, invitationStatus);
+								
 								for (int j = 0; j < lobbies.size(); j++)
 									invitations.add(lobbies.get(j));
 								lobbies = invitations;
 
-								// Next: refresh all those lobbies.
-								InternetLobby.refreshAll(lobbies, timeout);
-
 								// Update those entries in the database...
 								for (int j = 0; j < lobbies.size(); j++) {
 									InternetLobby il = lobbies.get(j);
@@ -2335,6 +2438,10 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 								// that's the list. We don't refresh individual
 								// lobbies here, of course.
 								thread_doneRefreshingList(lobbies);
+								
+								// keep it fresh from now on.
+								if (mResumed)
+									mLobbyDirectory.start();
 
 							} catch (CommunicationErrorException cee) {
 								thread_failedRefreshingList_communication();
@@ -2438,6 +2545,11 @@ public class InternetLobbyManagerActivity extends QuantroActivity implements
 							break;
 							
 							
+						case ANDROID_MESSAGE_TYPE_DIRECTORY_CHANGED:
+							thread_directoryChanged(changes) ;
+							break ;
+							
+							
 						case ANDROID_MESSAGE_TYPE_RECEIVE_INVITATION:
 							// this is a multistep process. 
 							// First, we process the invitation string and get an
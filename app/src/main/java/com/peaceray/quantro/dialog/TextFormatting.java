@@ -12,7 +12,6 @@ import com.peaceray.quantro.lobby.Lobby;
 import com.peaceray.quantro.lobby.WebConsts;
 import com.peaceray.quantro.lobby.WiFiLobbyDetails;
 import com.peaceray.quantro.lobby.WiFiLobbyFinder;
-import com.peaceray.quantro.model.game.GameInformation;
 import com.peaceray.quantro.model.game.GameResult;
 import com.peaceray.quantro.model.modes.GameModes;
 
@@ -372,7 +371,7 @@ public class TextFormatting {
 	
 	
 	public static String format( Context context, Resources res, int display, int type, int role, int gameMode ) {
-		return format(context, res, display, type, role, gameMode, (GameResult)null, 0) ;
+		return format(context, res, display, type, role, gameMode, (GameResult.Summary)null, 0) ;
 	}
 	
 	public static String format( Context context, Resources res, int display, int type, int role, GameResult gameResult ) {
@@ -390,6 +389,14 @@ public class TextFormatting {
 	}
 	
 	public static String format( Context context, Resources res, int display, int type, int role, int gameMode, GameResult gameResult, int slot ) {
+		return format(context, res, display, type, role, gameMode, gameResult == null ? null : gameResult.getSummary(), slot) ;
+	}
+	
+	public static String format( Context context, Resources res, int display, int type, int role, int gameMode, GameResult.Summary gameResult ) {
+		return format(context, res, display, type, role, gameMode, gameResult, 0) ;
+	}
+	
+	public static String format( Context context, Resources res, int display, int type, int role, int gameMode, GameResult.Summary gameResult, int slot ) {
 		if ( res == null )
 			res = context.getResources() ;
 		
@@ -555,9 +562,9 @@ public class TextFormatting {
 		Integer integerValue2 = null ;
 		Lobby lobby = null ;
 		WiFiLobbyDetails wifiLobbyDetails = null ; 
-		GameResult gameResult = null ;
-		if ( referenceObjects != null && referenceObjects[0] != null && referenceObjects[0] instanceof GameResult )
-			gameResult = (GameResult)referenceObjects[0] ;
+		GameResult.Summary gameResult = null ;
+		if ( referenceObjects != null && referenceObjects[0] != null && referenceObjects[0] instanceof GameResult.Summary )
+			gameResult = (GameResult.Summary)referenceObjects[0] ;
 		if ( referenceObjects != null && referenceObjects[0] != null && referenceObjects[0] instanceof String )
 			string = (String)referenceObjects[0] ;
 		if ( referenceObjects != null && referenceObjects[0] != null && referenceObjects[0] instanceof Long )
@@ -617,7 +624,7 @@ public class TextFormatting {
 			case TYPE_MENU_SINGLE_PLAYER_RESUME_GAME_TITLE:
 				return res.getString( R.string.menu_sp_resume_game_title ) ;
 			case TYPE_MENU_SINGLE_PLAYER_RESUME_GAME_DESCRIPTION:
-				switch( GameModes.measurePerformanceBy(gameResult.getGameInformation(0).mode) ) {
+				switch( GameModes.measurePerformanceBy(gameResult.getMode(0)) ) {
 				case GameModes.MEASURE_PERFORMANCE_BY_SCORE:
 					return res.getString( R.string.menu_sp_resume_game_description) ;
 				case GameModes.MEASURE_PERFORMANCE_BY_TIME:
@@ -625,7 +632,7 @@ public class TextFormatting {
 				}
 				return res.getString( R.string.menu_sp_resume_game_description) ;
 			case TYPE_MENU_SINGLE_PLAYER_RESUME_GAME_LONG_DESCRIPTION:
-				switch( GameModes.measurePerformanceBy(gameResult.getGameInformation(0).mode) ) {
+				switch( GameModes.measurePerformanceBy(gameResult.getMode(0)) ) {
 				case GameModes.MEASURE_PERFORMANCE_BY_SCORE:
 					return res.getString( R.string.menu_sp_resume_game_long_description) ;
 				case GameModes.MEASURE_PERFORMANCE_BY_TIME:
@@ -1425,7 +1432,7 @@ public class TextFormatting {
     
     
     public static String replacePlaceholdersWithGameResultInformation(
-    		Context context, Resources res, int display, int type, int role, GameResult gameResult, int slot, String phText ) {
+    		Context context, Resources res, int display, int type, int role, GameResult.Summary gameResult, int slot, String phText ) {
     	
     	String placeholder_gameResultLevel = res.getString( R.string.placeholder_game_result_level ) ;
     	String placeholder_gameResultLevelPrevious = res.getString( R.string.placeholder_game_result_level_previous ) ;
@@ -1437,17 +1444,16 @@ public class TextFormatting {
     	
     	String placeholder_empty = res.getString( R.string.menu_placeholder_empty ) ;
     	
-    	GameInformation ginfo = null ;
+    	// the summary has a mode for every slot with GameInformation, -1 otherwise.
+    	boolean hasInfo = gameResult != null && gameResult.getMode(slot) != -1 ;
     	DecimalFormat intCommas = new DecimalFormat("###,###,###,###,###");
-    	if ( gameResult != null )
-    		ginfo = gameResult.getGameInformationImmutable(slot) ;
     	
     	String timeString = placeholder_empty ;
     	StringBuilder sb = new StringBuilder() ;
-    	if ( ginfo != null ) {
-    		long minutes = ginfo.milliseconds / (60 * 1000) ;
-    		long seconds = ( ginfo.milliseconds / 1000 ) % 60 ;
-    		long milliseconds = ginfo.milliseconds % 1000 ;
+    	if ( hasInfo ) {
+    		long minutes = gameResult.getMilliseconds(slot) / (60 * 1000) ;
+    		long seconds = ( gameResult.getMilliseconds(slot) / 1000 ) % 60 ;
+    		long milliseconds = gameResult.getMilliseconds(slot) % 1000 ;
     		sb.append(minutes).append(seconds < 10 ? ":0" : ":").append(seconds).append(".") ;
     		if ( milliseconds < 100 )
     			sb.append("0") ;
@@ -1457,18 +1463,18 @@ public class TextFormatting {
     		timeString = sb.toString() ;
     	}
     	
-    	return phText.replace(placeholder_gameResultLevel, ginfo == null ? placeholder_empty : "" + ginfo.level)
-    				 .replace(placeholder_gameResultLevelPrevious, ginfo == null ? placeholder_empty : "" + (ginfo.level-1) )
-    				 .replace(placeholder_gameResultScore, ginfo == null ? placeholder_empty : "" + intCommas.format(ginfo.score) )
-    				 .replace(placeholder_gameResultRow, ginfo == null ? placeholder_empty : "" + intCommas.format(ginfo.s0clears + ginfo.s1clears + ginfo.sLclears + ginfo.moclears) )
-    				 .replace(placeholder_gameResultFirstLevel, ginfo == null ? placeholder_empty : "" + (ginfo.firstLevel) )
-    				 .replace(placeholder_gameResultConfig, ginfo == null ? placeholder_empty : "" + (ginfo.firstGarbage) )
+    	return phText.replace(placeholder_gameResultLevel, !hasInfo ? placeholder_empty : "" + gameResult.getLevel(slot))
+    				 .replace(placeholder_gameResultLevelPrevious, !hasInfo ? placeholder_empty : "" + (gameResult.getLevel(slot)-1) )
+    				 .replace(placeholder_gameResultScore, !hasInfo ? placeholder_empty : "" + intCommas.format(gameResult.getScore(slot)) )
+    				 .replace(placeholder_gameResultRow, !hasInfo ? placeholder_empty : "" + intCommas.format(gameResult.getS0Clears(slot) + gameResult.getS1Clears(slot) + gameResult.getSLClears(slot) + gameResult.getMOClears(slot)) )
+    				 .replace(placeholder_gameResultFirstLevel, !hasInfo ? placeholder_empty : "" + (gameResult.getFirstLevel(slot)) )
+    				 .replace(placeholder_gameResultConfig, !hasInfo ? placeholder_empty : "" + (gameResult.getFirstGarbage(slot)) )
     				 .replace(placeholder_gameResultTime, timeString) ;
     }
     
     
     public static String replacePlaceholdersWithGameInformation(
-    		Context context, Resources res, int display, int type, int role, int gameMode, GameResult gameResult, int slot, String phText ) {
+    		Context context, Resources res, int display, int type, int role, int gameMode, GameResult.Summary gameResult, int slot, String phText ) {
     	
     	phText = replacePlaceholdersWithGameModeInformation( context, res, display, type, role, gameMode, phText ) ;
     	return replacePlaceholdersWithGameResultInformation( context, res, display, type, role, gameResult, slot, phText ) ;
@@ -401,6 +401,16 @@ public class LobbyClientCommunications implements MessagePassingConnection.Deleg
 		int [] intPlayerArray = null ;
 		Handler handler ;
 		
+		// Incremental lobby state.  The Coordinator's version code (from its
+		// LOBBY_STATUS) tells us whether it understands LOBBY_STATE_ACK; if so
+		// we acknowledge each state version we reach, and it sends us deltas
+		// rather than whole-lobby snapshots.
+		int coordinatorVersionCode = -1 ;
+		long lobbyStateVersion = 0 ;
+		int [] stateDeltaField = null ;
+		int [] stateDeltaIndex = null ;
+		int [] stateDeltaValue = null ;
+		
 		LobbyMessage outgoingMessage = new LobbyMessage() ;
 		
 		public LobbyClientCommunicationsThread() {
@@ -458,6 +468,7 @@ public class LobbyClientCommunications implements MessagePassingConnection.Deleg
 	            		// (probably this Connection has been passed in in a Connected state
 	            		welcomed = false ;
 	            		acceptedAsClient = false ;
+	            		lobbyStateVersion = 0 ;
 	            		if ( connection.isConnected() ) {
 	            			connection.sendMessage( outgoingMessage.setAsIAmClient() ) ;
 	            			delegate.lccd_connectionStatusChanged(MessagePassingConnection.Status.CONNECTED) ;
@@ -532,6 +543,7 @@ public class LobbyClientCommunications implements MessagePassingConnection.Deleg
 	            		delegate.lccd_connectionStatusChanged(MessagePassingConnection.Status.CONNECTED) ;
 	            		welcomed = false ;
 	            		acceptedAsClient = false ;
+	            		lobbyStateVersion = 0 ;
 	            		//Log.v(TAG, "sending I AM CLIENT") ;
 	            		connection.sendMessage( outgoingMessage.setAsIAmClient() ) ;
 	            		//Log.v(TAG, "sent?") ;
@@ -847,6 +859,9 @@ public class LobbyClientCommunications implements MessagePassingConnection.Deleg
 				// in the data they just sent.
 				sendServerAllLocalStatusDiscrepancies() ;
 				sendServerAllAuthTokens() ;
+				// Ask for state deltas from here on, if the coordinator knows how.
+				if ( coordinatorVersionCode >= LobbyMessage.MIN_VERSION_CODE_LOBBY_STATE_DELTA )
+					connection.sendMessage( outgoingMessage.setAsLobbyStateAck( lobbyStateVersion ) ) ;
 				break ;
 				
 			case Message.TYPE_SERVER_CLOSING:
@@ -876,6 +891,7 @@ public class LobbyClientCommunications implements MessagePassingConnection.Deleg
 				//Log.v(TAG, "Incoming message: lobby status") ;
 				// includes num players, max players, age, and possibly a lobby
 				// name and address.
+				coordinatorVersionCode = m.getVersionCode() ;
 				lobby.setMaxPlayers( m.getMaxPlayers() ) ;
 				lobby.setAge( m.getAge() ) ;
 				booleanPlayerArray = new boolean[lobby.getMaxPeople()] ;
@@ -980,6 +996,50 @@ public class LobbyClientCommunications implements MessagePassingConnection.Deleg
 				lobby.setPlayersStatuses(intPlayerArray) ;
 				break ;
 			
+			case LobbyMessage.TYPE_LOBBY_STATE_DELTA:
+				//Log.v(TAG, "Incoming message: lobby state delta") ;
+				if ( m.getBaseStateVersion() > lobbyStateVersion ) {
+					// We are missing changes this delta assumes we have.  Start
+					// over with a complete snapshot.
+					connection.sendMessage( outgoingMessage.setAsRewelcomeRequest() ) ;
+					break ;
+				}
+				len = m.getStateDelta(null, null, null) ;
+				if ( stateDeltaField == null || stateDeltaField.length < len ) {
+					stateDeltaField = new int[len] ;
+					stateDeltaIndex = new int[len] ;
+					stateDeltaValue = new int[len] ;
+				}
+				m.getStateDelta(stateDeltaField, stateDeltaIndex, stateDeltaValue) ;
+				for ( int i = 0; i < len; i++ ) {
+					slot = stateDeltaIndex[i] ;
+					int value = stateDeltaValue[i] ;
+					switch( stateDeltaField[i] ) {
+					case Lobby.STATE_FIELD_IN_LOBBY:
+						// As PLAYERS_IN_LOBBY: we do not log our OWN entrance and departure here.
+						if ( welcomed && slot != lobby.playerSlot && !lobby.playerInLobby[slot] && value != 0 )
+							lobbyLog.logPlayerJoined(slot, lobby.getPlayerName(slot), Lobby.PLAYER_STATUS_ACTIVE, null) ;
+						else if ( welcomed && slot != lobby.playerSlot && lobby.playerInLobby[slot] && value == 0 ) {
+							lobbyLog.logPlayerLeft(slot, lobby.getPlayerName(slot), Lobby.PLAYER_STATUS_ACTIVE, null) ;
+							lobby.resetPlayerVotes(slot) ;
+						}
+						lobby.setPlayerInLobby(slot, value != 0) ;
+						break ;
+					case Lobby.STATE_FIELD_STATUS:
+						if ( value != lobby.getPlayerStatus(slot) )
+							lobbyLog.logPlayerStatusChange(slot, lobby.getPlayerName(slot), value, lobby.getPlayerStatus(slot)) ;
+						lobby.setPlayerStatus(slot, value) ;
+						break ;
+					case Lobby.STATE_FIELD_VOTE:
+					case Lobby.STATE_FIELD_UNVOTE:
+						lobby.setPlayerVoteForGameMode(slot, value, stateDeltaField[i] == Lobby.STATE_FIELD_VOTE) ;
+						break ;
+					}
+				}
+				lobbyStateVersion = Math.max( lobbyStateVersion, m.getStateVersion() ) ;
+				connection.sendMessage( outgoingMessage.setAsLobbyStateAck( lobbyStateVersion ) ) ;
+				break ;
+			
 			case LobbyMessage.TYPE_GAME_MODE_LAUNCH_COUNTDOWN:
 				//Log.v(TAG, "Incoming message: game mode launch countdown") ;
 				m.getPlayers( booleanPlayerArray ) ;
@@ -1178,6 +1238,35 @@ public class LobbyClientCommunications implements MessagePassingConnection.Deleg
 						return false ;
 				return true ;
 			
+			case LobbyMessage.TYPE_LOBBY_STATE_DELTA:
+				if ( m.getStateVersion() < m.getBaseStateVersion() )
+					return false ;
+				int deltaLength = m.getStateDelta(null, null, null) ;
+				int [] field = new int[deltaLength], index = new int[deltaLength], value = new int[deltaLength] ;
+				m.getStateDelta(field, index, value) ;
+				for ( int i = 0; i < deltaLength; i++ ) {
+					if ( index[i] < 0 || index[i] >= lobby.getMaxPeople() )
+						return false ;
+					switch( field[i] ) {
+					case Lobby.STATE_FIELD_IN_LOBBY:
+						if ( value[i] != 0 && value[i] != 1 )
+							return false ;
+						break ;
+					case Lobby.STATE_FIELD_STATUS:
+						if ( value[i] <= Lobby.PLAYER_STATUS_NOT_CONNECTED || value[i] >= Lobby.NUM_PLAYER_STATUSES )
+							return false ;
+						break ;
+					case Lobby.STATE_FIELD_VOTE:
+					case Lobby.STATE_FIELD_UNVOTE:
+						if ( value[i] < 0 )
+							return false ;
+						break ;
+					default:
+						return false ;
+					}
+				}
+				return true ;
+			
 			case LobbyMessage.TYPE_GAME_MODE_LAUNCH_COUNTDOWN:
 				return m.getCountdownNumber() >= 0 && m.getGameMode() >= 0 && m.getPlayers(null) <= lobby.getMaxPeople() && m.getDelay() >= 0 ;
 				
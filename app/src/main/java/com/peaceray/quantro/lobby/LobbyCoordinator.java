@@ -238,10 +238,24 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 		boolean [] connectedAsClient ;		// when 'true', the player is connected, and has accepted responsibility as a client.
 		boolean [] hostResponsibilityConflict ;		// a Connected player wants to play host!
 		
+		// Incremental lobby state.  Players who have sent a LOBBY_STATE_ACK
+		// receive deltas against the last version they acknowledged, in place
+		// of PLAYERS_IN_LOBBY, PLAYER_STATUSES and GAME_MODE_VOTES snapshots.
+		// 'sent' lets us skip a delta when nothing changed since the last one.
+		LobbyMessage lobbyStateMessage ;	// used only by sendLobbyStateDeltas.
+		boolean [] lobbyStateDeltaEnabled ;
+		long [] lobbyStateAckedVersion ;
+		long [] lobbyStateSentVersion ;
+		
 		
 		public LobbyCoordinatorThread( ) {
 			outgoingMessage = new LobbyMessage() ;
 			tempMessage = new LobbyMessage() ;
+			lobbyStateMessage = new LobbyMessage() ;
+			
+			lobbyStateDeltaEnabled = new boolean[maxPeople] ;
+			lobbyStateAckedVersion = new long[maxPeople] ;
+			lobbyStateSentVersion = new long[maxPeople] ;
 			
 			booleanPlayerArray = new boolean[maxPeople] ;
 			connectedAsClient = new boolean[maxPeople] ;
@@ -662,6 +676,10 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 			lobby.setName(playerSlot, mpLayer.connection(playerSlot).getRemoteName()) ;
 			lobby.setPersonalNonce(playerSlot, mpLayer.connection(playerSlot).getRemotePersonalNonce()) ;
 			
+			// Welcome messages are full snapshots.  The player will re-enable
+			// deltas, if it can, by acknowledging the state it now has.
+			disableLobbyStateDeltas( playerSlot ) ;
+			
 			
 			try {
 				// To welcome a player, we send them updates on the entire lobby status,
@@ -757,10 +775,10 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 				lobby.setPlayerInLobby(playerSlot, true) ;
 				lobby.setPlayerActive(playerSlot) ;
 				if ( tellEveryone ) {
-					mpLayer.sendTo(
+					sendLobbyStateTo(
 	        				tempMessage.setAsPlayersInLobby(lobby.getPlayersInLobby()),
 	        				lobby.getPlayersInLobby()) ;
-					mpLayer.sendTo(
+					sendLobbyStateTo(
 							tempMessage.setAsPlayerStatuses(lobby.getPlayerStatuses()),
 	        				lobby.getPlayersInLobby()) ;
 				} else {
@@ -805,7 +823,12 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 			// Log.d(TAG, "startLaunchCountdownIfAppropriate") ;
 			int playersNeeded = GameModes.minPlayers(gameMode) ;
 			int playersIncluded = 0 ;
-			
+
+			// Not enough votes?  We are called for every game mode on
+			// most lobby changes, so check the tally before looking closer.
+			if ( lobby.getVoteCount(gameMode) < playersNeeded )
+				return false ;
+
 			// Count the players who have
 			// 1. Voted for this game mode
 			// 2. Are currently in the lobby
@@ -992,12 +1015,13 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 					if ( countdown_playerIncluded[index][i] )
 						lobby.resetPlayerVotes(i) ;
 				}
-				// TODO: This is GROSSLY inefficient for more than a few game modes.
-				// We should rely on lobby delegate methods if # of game modes increases.
-				// Resend game votes.
+				// Resend game votes.  Players receiving state deltas get only
+				// the votes that were reset, in a single message.
 				int [] gameModes = lobby.getGameModes() ;
 				for ( int i = 0; i < gameModes.length; i++ ) {
-					mpLayer.broadcast(tempMessage.setAsGameModeVotes(gameModes[i], lobby.getVotes(gameModes[i]))) ;
+					sendLobbyStateTo(
+							tempMessage.setAsGameModeVotes(gameModes[i], lobby.getVotes(gameModes[i])),
+							lobby.getPlayersInLobby()) ;
 				}
 				// that's it.
 				return true ;
@@ -1176,7 +1200,7 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 					// Set and broadcast the player's vote for this game type.
 					// Start a launch countdown (if appropriate!)
 					lobby.setPlayerVoteForGameMode(sender, gameMode, true) ;
-					mpLayer.sendTo(
+					sendLobbyStateTo(
 							outgoingMessage.setAsGameModeVotes(gameMode, lobby.getVotes(gameMode)),
 							lobby.getPlayersInLobby()) ;
 					// see if we can get a countdown going for this player.
@@ -1198,7 +1222,7 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 					// Set and broadcast the player's unvote for this game type.
 					// Abort any launch countdowns they're participating in.
 					lobby.setPlayerVoteForGameMode(sender, gameMode, false) ;
-					mpLayer.sendTo(
+					sendLobbyStateTo(
 							outgoingMessage.setAsGameModeVotes(gameMode, lobby.getVotes(gameMode)),
 							lobby.getPlayersInLobby()) ;
 					
@@ -1246,6 +1270,21 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 				this.sendWelcomeMessages(sender, false) ;	// do NOT tell everyone, just this guy.
 				break ;
 				
+			case LobbyMessage.TYPE_LOBBY_STATE_ACK:
+				// The player understands state deltas, and has (at least) the
+				// acknowledged version.  On the first ack after a welcome, 
+				// catch them up immediately.
+				boolean wasEnabled = lobbyStateDeltaEnabled[sender] ;
+				lobbyStateDeltaEnabled[sender] = true ;
+				lobbyStateAckedVersion[sender] = Math.max( lobbyStateAckedVersion[sender], m.getStateVersion() ) ;
+				if ( !wasEnabled ) {
+					lobbyStateSentVersion[sender] = lobbyStateAckedVersion[sender] ;
+					for ( int i = 0; i < booleanPlayerArray.length; i++ )
+						booleanPlayerArray[i] = i == sender ;
+					sendLobbyStateDeltas( booleanPlayerArray ) ;
+				}
+				break ;
+				
 			case LobbyMessage.TYPE_HOST_PRIORITY:
 				// echo back a maximum priority.
 				outgoingMessage.setAsHostPriority(Integer.MAX_VALUE) ;
@@ -1315,6 +1354,10 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 			case LobbyMessage.TYPE_REWELCOME_REQUEST:
 				return true ;
 				
+			case LobbyMessage.TYPE_LOBBY_STATE_ACK:
+				// we never sent a version beyond our own.
+				return m.getStateVersion() >= 0 && m.getStateVersion() <= lobby.getStateVersion() ;
+				
 			case LobbyMessage.TYPE_HOST_PRIORITY:
 				return true ;
 				
@@ -1997,8 +2040,9 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 			// all trace of this vile individual.
 			// We also need to clear their votes.
 			lobby.resetPlayerVotes(playerSlot) ;
+			disableLobbyStateDeltas( playerSlot ) ;
 			
-			mpLayer.sendTo(
+			sendLobbyStateTo(
 					tempMessage.setAsPlayersInLobby( lobby.getPlayersInLobby() ),
 					lobby.getPlayersInLobby() ) ;
 			
@@ -2050,7 +2094,7 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 			// for them.  Restart those countdowns, AFTER sending a
 			// message about currently active players.
 			lobby.setPlayerActive(playerSlot) ;
-			mpLayer.sendTo(
+			sendLobbyStateTo(
 					tempMessage.setAsPlayerStatuses( lobby.getPlayerStatuses() ),
 					lobby.getPlayersInLobby() ) ;
 			restartCountdownsInvolvingPlayer( playerSlot ) ;
@@ -2063,7 +2107,7 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 			
 			// we send the player status message FIRST, then halt the countdowns
 			lobby.setPlayerInactive( playerSlot ) ;
-			mpLayer.sendTo(
+			sendLobbyStateTo(
 					tempMessage.setAsPlayerStatuses( lobby.getPlayerStatuses() ),
 					lobby.getPlayersInLobby() ) ;
 			// halt this player's countdowns.
@@ -2076,7 +2120,7 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 			
 			// we send the player status message FIRST, then halt the countdowns
 			lobby.setPlayerInactive( playerSlot ) ;
-			mpLayer.sendTo(
+			sendLobbyStateTo(
 					tempMessage.setAsPlayerStatuses( lobby.getPlayerStatuses() ),
 					lobby.getPlayersInLobby() ) ;
 			// halt this player's countdowns.
@@ -2085,6 +2129,70 @@ public class LobbyCoordinator implements MessagePassingLayer.Delegate {
 		
 		
 		
+		/**
+		 * Sends the current lobby state to the specified recipients.  Those who
+		 * have enabled state deltas receive a LOBBY_STATE_DELTA against the version
+		 * they last acknowledged (if anything has changed since the last delta sent
+		 * to them); everyone else receives the provided snapshot, which should
+		 * describe the change just made, e.g. PLAYERS_IN_LOBBY or GAME_MODE_VOTES.
+		 * 
+		 * @param snapshot
+		 * @param recipients
+		 */
+		private void sendLobbyStateTo( LobbyMessage snapshot, boolean [] recipients ) {
+			boolean [] snapshotRecipients = null ;
+			for ( int i = 0; i < recipients.length; i++ ) {
+				if ( recipients[i] && !lobbyStateDeltaEnabled[i] ) {
+					if ( snapshotRecipients == null )
+						snapshotRecipients = new boolean[recipients.length] ;
+					snapshotRecipients[i] = true ;
+				}
+			}
+			if ( snapshotRecipients != null )
+				mpLayer.sendTo( snapshot, snapshotRecipients ) ;
+			sendLobbyStateDeltas( recipients ) ;
+		}
+		
+		
+		/**
+		 * Sends a LOBBY_STATE_DELTA to each specified recipient that has enabled
+		 * them and has not yet been sent the current state version.  Recipients
+		 * which have acknowledged the same version receive the same delta, so
+		 * we construct (and encode) it only once for the whole group.
+		 * 
+		 * @param recipients
+		 */
+		private void sendLobbyStateDeltas( boolean [] recipients ) {
+			long version = lobby.getStateVersion() ;
+			boolean [] group = null ;
+			for ( int i = 0; i < recipients.length; i++ ) {
+				if ( !recipients[i] || !lobbyStateDeltaEnabled[i] || lobbyStateSentVersion[i] >= version )
+					continue ;
+				
+				long acked = lobbyStateAckedVersion[i] ;
+				lobbyStateMessage.setAsLobbyStateDelta(lobby, acked) ;
+				
+				if ( group == null )
+					group = new boolean[recipients.length] ;
+				for ( int j = 0; j < recipients.length; j++ ) {
+					group[j] = j >= i && recipients[j] && lobbyStateDeltaEnabled[j]
+							&& lobbyStateSentVersion[j] < version
+							&& lobbyStateAckedVersion[j] == acked ;
+					if ( group[j] )
+						lobbyStateSentVersion[j] = lobbyStateMessage.getStateVersion() ;
+				}
+				mpLayer.sendTo( lobbyStateMessage, group ) ;
+			}
+		}
+		
+		
+		private void disableLobbyStateDeltas( int playerSlot ) {
+			lobbyStateDeltaEnabled[playerSlot] = false ;
+			lobbyStateAckedVersion[playerSlot] = 0 ;
+			lobbyStateSentVersion[playerSlot] = 0 ;
+		}
+		
+		
 		private void kickPlayer( int playerSlot, String text ) {
 			// Let everyone know why
 			tempMessage.setAsKick(playerSlot, text) ;
@@ -187,6 +187,8 @@ public class GameService extends Service
 	boolean mServerGameClosed = false ;
 	boolean mServerGameFull = false ;
 	static final int SERVER_COMMUNICATION_FAILURE_COUNTDOWN = 45 * 1000 ;
+	// On destroy, how long we'll wait for queued saves to reach disk.
+	static final long SAVE_FLUSH_TIMEOUT = 3 * 1000 ;
 
 	
 	// Analytics?
@@ -280,6 +282,11 @@ public class GameService extends Service
 				gameCoordinator.join() ;
 		} catch ( Exception e ) { }
 		
+		// Saves are written behind; give them a chance to finish before
+		// the process is (potentially) killed.
+		if ( gip != null && gip.saveToKey != null && !GameSaver.flushPendingSaves(gip.saveToKey, SAVE_FLUSH_TIMEOUT) )
+			Log.d(TAG, "saves still pending after " + SAVE_FLUSH_TIMEOUT + " ms") ;
+		
 		if ( mAnalyticsInSession )
 			Analytics.stopSession(this) ;
 		
@@ -1,5 +1,11 @@
 package com.peaceray.quantro.model;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -12,13 +18,16 @@ import java.io.Serializable;
 import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Hashtable;
 
+import com.peaceray.quantro.model.game.BrokenGameCopy;
 import com.peaceray.quantro.model.game.Game;
 import com.peaceray.quantro.model.game.GameEvents;
 import com.peaceray.quantro.model.game.GameInformation;
 import com.peaceray.quantro.model.game.GameResult;
 import com.peaceray.quantro.model.game.GameSettings;
+import com.peaceray.quantro.model.state.CheckpointStore;
 import com.peaceray.quantro.model.state.SerializableState;
 
 import android.content.Context;
@@ -84,6 +93,7 @@ public class GameSaver {
 					GameResult gr = null ;
 					GameSettings gs = null ;
 					Bitmap thumbnail = null ;
+					Game snapshot = null ;
 					
 					Context context = mwrContext.get() ;
 					
@@ -95,6 +105,7 @@ public class GameSaver {
 						gr = (GameResult)objs[3] ;
 						gs = (GameSettings)objs[4] ;
 						thumbnail = (Bitmap)objs[5] ;
+						snapshot = (Game)objs[6] ;
 						
 						
 						if ( (listener == null || context == null ) && what == GST_WHAT_STOP ) {
@@ -108,19 +119,19 @@ public class GameSaver {
 					switch ( what ) {
 					case GST_WHAT_SAVE_GAME:
 						Log.d(TAG, "GST_WHAT_SAVE_GAME") ;
-						success = GameSaver.saveGame(context, key, game, gr, gs, thumbnail) ;
+						success = GameSaver.saveGame(context, key, snapshot, gr, gs, thumbnail) ;
 						if ( listener != null )
 							listener.gsl_doneSavingGame(GameSaver.this, mTag, success, hasMessages(), key, game, gr) ;
 						break ;
 					case GST_WHAT_SAVE_CHECKPOINT:
 						Log.d(TAG, "GST_WHAT_SAVE_CHECKPOINT") ;
-						success = GameSaver.saveCheckpoint(context, key, checkpointNum, game, gr) ;
+						success = GameSaver.saveCheckpoint(context, key, checkpointNum, snapshot, gr) ;
 						if ( listener != null )
 							listener.gsl_doneSavingCheckpoint(GameSaver.this, mTag, success, hasMessages(), key, checkpointNum, game, gr) ;
 						break ;
 					case GST_WHAT_SAVE_EPHEMERAL_CHECKPOINT:
 						Log.d(TAG, "GST_WHAT_SAVE_EPHEMERAL_CHECKPOINT") ;
-						success = GameSaver.saveEphemeralCheckpoint(context, key, checkpointNum, game, gr) ;
+						success = GameSaver.saveEphemeralCheckpoint(context, key, checkpointNum, snapshot, gr) ;
 						if ( listener != null )
 							listener.gsl_doneSavingEphemeralCheckpoint(GameSaver.this, mTag, success, hasMessages(), key, checkpointNum, game, gr) ;
 						break ;
@@ -216,6 +227,8 @@ public class GameSaver {
 	
 	public GameSaver saveGame( String key, Game game, GameResult gr, GameSettings gs, Bitmap thumbnail ) {
 		Object [] objs = makeMessageObjs( key, game, gr, gs, thumbnail ) ;
+		// copy now, on the caller's thread; the write happens later.
+		objs[6] = snapshot( game ) ;
 		while ( mThread.mHandler == null ) {
 			try { Thread.sleep(3) ; } catch( InterruptedException e ) { }
 		}
@@ -228,6 +241,8 @@ public class GameSaver {
 	
 	public GameSaver saveCheckpoint( String key, int num, Game game, GameResult gr ) {
 		Object [] objs = makeMessageObjs( key, game, gr, null, null ) ;
+		// copy now, on the caller's thread; the write happens later.
+		objs[6] = snapshot( game ) ;
 		while ( mThread.mHandler == null ) {
 			try { Thread.sleep(3) ; } catch( InterruptedException e ) { }
 		}
@@ -239,6 +254,8 @@ public class GameSaver {
 	
 	public GameSaver saveEphemeralCheckpoint( String key, int num, Game game, GameResult gr ) {
 		Object [] objs = makeMessageObjs( key, game, gr, null, null ) ;
+		// copy now, on the caller's thread; the write happens later.
+		objs[6] = snapshot( game ) ;
 		while ( mThread.mHandler == null ) {
 			try { Thread.sleep(3) ; } catch( InterruptedException e ) { }
 		}
@@ -343,7 +360,7 @@ public class GameSaver {
 	}
 
 	private Object [] makeMessageObjs( String key, Game game, GameResult gr, GameSettings gs, Bitmap thumbnail ) {
-		return new Object[] { mwrListener, key, game, gr, gs, thumbnail } ;
+		return new Object[] { mwrListener, key, game, gr, gs, thumbnail, null } ;
 	}
 	
 	public interface Listener {
@@ -672,11 +689,339 @@ public class GameSaver {
 	private static final String FILENAME_GAME_SYSTEMS = "systems_state.bin" ;
 	private static final String FILENAME_VALID = "valid_save.txt" ;
 	private static final String FILENAME_GAME_RESULT = "game_result.bin" ;
+	private static final String FILENAME_GAME_RESULT_COMPACT = "game_result.qgr" ;
 	private static final String FILENAME_GAME_RESULT_VALID = "valid_result.txt" ;
 	private static final String FILENAME_GAME_SETTINGS = "game_settings.bin" ;
 	private static final String FILENAME_GAME_SETTINGS_VALID = "valid_settings.bin" ;
 	private static final String FILENAME_GAME_THUMBNAIL = "thumbnail.png" ;
 	private static final String FILENAME_GAME_THUMBNAIL_TEMP = "thumbnail_temp.png" ;
+	private static final String FILENAME_GAME_JOURNAL = "game_state.journal" ;
+	
+	// Game states (game, ginfo, gevents, systems) are appended to a journal
+	// in each save directory, rather than rewritten to the .bin files above;
+	// those are read only for saves predating the journal.
+	private static final int JOURNAL_SECTION_VERSION = 0 ;
+	private static final int JOURNAL_SECTION_GAME = 1 ;
+	private static final int JOURNAL_SECTION_GAME_INFORMATION = 2 ;
+	private static final int JOURNAL_SECTION_GAME_EVENTS = 3 ;
+	private static final int JOURNAL_SECTION_GAME_SYSTEMS = 4 ;
+	private static final int JOURNAL_NUM_SECTIONS = 5 ;
+	
+	private static final CheckpointStore CHECKPOINT_STORE = new CheckpointStore() ;
+	
+	// Journal sections are serialized into this buffer, which keeps its
+	// capacity between saves.  Only touched while holding GAME_SAVER_MUTEX.
+	private static final ByteArrayOutputStream JOURNAL_SECTION_BUFFER = new ByteArrayOutputStream( 64 * 1024 ) ;
+	
+	
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// WRITE-BEHIND
+	//
+	// Every save -- synchronous or not, from any GameSaver instance -- is
+	// queued for a single shared writer thread and written in the order
+	// requested.  A save that arrives while an earlier save to the same
+	// target (same key, same kind, same checkpoint number) is still queued
+	// replaces that earlier save's content rather than queueing behind it;
+	// both requests complete when the (newer) content is written.  During
+	// fast play this turns a storm of checkpoints into one write per target,
+	// and means a synchronous save (e.g. on pause) waits only for what is
+	// already queued for other targets, not for a backlog of stale states.
+	//
+	// A save may only jump ahead of later-queued saves for the same key if
+	// the order doesn't matter; saving the game materializes ephemeral
+	// checkpoints, and saving a checkpoint deletes its ephemeral
+	// counterpart, so those never pass each other.
+	//
+	///////////////////////////////////////////////////////////////////////////
+	
+	private static final int PENDING_SAVE_GAME = 0 ;
+	private static final int PENDING_SAVE_CHECKPOINT = 1 ;
+	private static final int PENDING_SAVE_EPHEMERAL_CHECKPOINT = 2 ;
+	private static final int PENDING_SAVE_THUMBNAIL = 3 ;
+	
+	private static final class PendingSave {
+		private final int mWhat ;
+		private final String mKey ;
+		private final int mCheckpointNum ;
+		
+		private Context mContext ;
+		private Game mGame ;
+		private GameResult mGameResult ;
+		private GameSettings mGameSettings ;
+		private Bitmap mThumbnail ;
+		
+		// number of requests coalesced into this one, including itself.
+		private int mRequests ;
+		
+		private boolean mDone ;
+		private boolean mSuccess ;
+		
+		private PendingSave( int what, Context context, String key, int checkpointNum,
+				Game game, GameResult gr, GameSettings gs, Bitmap thumbnail ) {
+			mWhat = what ;
+			mKey = key ;
+			mCheckpointNum = checkpointNum ;
+			// the application context outlives whatever Activity or Service asked.
+			mContext = context == null || context.getApplicationContext() == null
+					? context : context.getApplicationContext() ;
+			mGame = game ;
+			mGameResult = gr ;
+			mGameSettings = gs ;
+			mThumbnail = thumbnail ;
+			mRequests = 1 ;
+		}
+		
+		private boolean sameTarget( PendingSave ps ) {
+			return mWhat == ps.mWhat && mKey.equals( ps.mKey )
+					&& ( mWhat == PENDING_SAVE_GAME || mWhat == PENDING_SAVE_THUMBNAIL
+							|| mCheckpointNum == ps.mCheckpointNum ) ;
+		}
+		
+		/**
+		 * Would swapping the order of this save and the provided one
+		 * change what ends up on disk (beyond which content is newer)?
+		 * @param ps
+		 * @return
+		 */
+		private boolean ordered( PendingSave ps ) {
+			if ( !mKey.equals( ps.mKey ) )
+				return false ;
+			if ( sameTarget( ps ) )
+				return true ;
+			int a = Math.min( mWhat, ps.mWhat ) ;
+			int b = Math.max( mWhat, ps.mWhat ) ;
+			if ( a == PENDING_SAVE_GAME )
+				// game saves materialize ephemeral checkpoints and write thumbnails.
+				return b == PENDING_SAVE_EPHEMERAL_CHECKPOINT || b == PENDING_SAVE_THUMBNAIL ;
+			if ( a == PENDING_SAVE_CHECKPOINT && b == PENDING_SAVE_EPHEMERAL_CHECKPOINT )
+				return mCheckpointNum == ps.mCheckpointNum ;
+			return false ;
+		}
+		
+		/**
+		 * Takes the content of the provided (newer) save as our own.
+		 * Settings and thumbnails are only written when provided, so we
+		 * keep ours if the newer save doesn't have them.
+		 * @param ps
+		 */
+		private void supersede( PendingSave ps ) {
+			mContext = ps.mContext ;
+			mGame = ps.mGame ;
+			mGameResult = ps.mGameResult ;
+			if ( ps.mGameSettings != null )
+				mGameSettings = ps.mGameSettings ;
+			if ( ps.mThumbnail != null )
+				mThumbnail = ps.mThumbnail ;
+			mRequests++ ;
+		}
+		
+		private boolean write() {
+			switch( mWhat ) {
+			case PENDING_SAVE_GAME:
+				return writeGame( mContext, mKey, mGame, mGameResult, mGameSettings, mThumbnail ) ;
+			case PENDING_SAVE_CHECKPOINT:
+				return writeCheckpoint( mContext, mKey, mCheckpointNum, mGame, mGameResult ) ;
+			case PENDING_SAVE_EPHEMERAL_CHECKPOINT:
+				return writeEphemeralCheckpoint( mContext, mKey, mCheckpointNum, mGame, mGameResult ) ;
+			case PENDING_SAVE_THUMBNAIL:
+				return writeGameThumbnail( mContext, mKey, mThumbnail ) ;
+			}
+			return false ;
+		}
+		
+		private synchronized void finish( boolean success ) {
+			mDone = true ;
+			mSuccess = success ;
+			// release references; waiters only need the result.
+			mContext = null ;
+			mGame = null ;
+			mGameResult = null ;
+			mGameSettings = null ;
+			mThumbnail = null ;
+			notifyAll() ;
+		}
+		
+		/**
+		 * Blocks until this save has been written (or discarded) and
+		 * returns whether it succeeded.
+		 * @return
+		 */
+		private synchronized boolean await() {
+			while ( !mDone ) {
+				try {
+					wait() ;
+				} catch ( InterruptedException e ) {
+					// keep waiting; the caller needs to know.
+				}
+			}
+			return mSuccess ;
+		}
+	}
+	
+	
+	/**
+	 * Writes queued PendingSaves one at a time, in order.
+	 */
+	private static class WriteBehindThread extends Thread {
+		
+		private final ArrayList<PendingSave> mQueue ;
+		private PendingSave mWriting ;
+		
+		private WriteBehindThread() {
+			mQueue = new ArrayList<PendingSave>() ;
+			mWriting = null ;
+			setDaemon(true) ;
+			setName(TAG + " write-behind") ;
+		}
+		
+		/**
+		 * Queues the provided save, or coalesces it into an equivalent save
+		 * already queued.  Returns the PendingSave to await: either the
+		 * provided one, or the one it was coalesced into.
+		 * @param ps
+		 * @return
+		 */
+		private synchronized PendingSave submit( PendingSave ps ) {
+			// look backwards for the most recent save to the same target,
+			// stopping at anything we can't pass.
+			for ( int i = mQueue.size() -1; i >= 0; i-- ) {
+				PendingSave queued = mQueue.get(i) ;
+				if ( queued.sameTarget( ps ) ) {
+					queued.supersede( ps ) ;
+					return queued ;
+				}
+				if ( queued.ordered( ps ) )
+					break ;
+			}
+			mQueue.add( ps ) ;
+			notify() ;
+			return ps ;
+		}
+		
+		/**
+		 * Removes any queued saves for the specified key, completing them
+		 * as failures.  A save currently being written is unaffected.
+		 * @param key
+		 */
+		private void discard( String key ) {
+			ArrayList<PendingSave> discarded = new ArrayList<PendingSave>() ;
+			synchronized( this ) {
+				for ( int i = mQueue.size() -1; i >= 0; i-- ) {
+					if ( mQueue.get(i).mKey.equals( key ) )
+						discarded.add( mQueue.remove(i) ) ;
+				}
+				notifyAll() ;
+			}
+			for ( int i = 0; i < discarded.size(); i++ )
+				discarded.get(i).finish( false ) ;
+		}
+		
+		private synchronized boolean isPending( String key ) {
+			if ( mWriting != null && ( key == null || mWriting.mKey.equals( key ) ) )
+				return true ;
+			for ( int i = 0; i < mQueue.size(); i++ )
+				if ( key == null || mQueue.get(i).mKey.equals( key ) )
+					return true ;
+			return false ;
+		}
+		
+		/**
+		 * Waits until no save for the specified key (or any key, if 'null')
+		 * is queued or being written, or until the timeout expires.
+		 * @param key
+		 * @param timeoutMillis Maximum time to wait; <= 0 waits indefinitely.
+		 * @return Whether all such saves are complete.
+		 */
+		private synchronized boolean flush( String key, long timeoutMillis ) {
+			if ( Thread.currentThread() == this )
+				return !isPending( key ) ;
+			long deadline = System.currentTimeMillis() + timeoutMillis ;
+			while ( isPending( key ) ) {
+				long remaining = deadline - System.currentTimeMillis() ;
+				if ( timeoutMillis > 0 && remaining <= 0 )
+					return false ;
+				try {
+					wait( timeoutMillis > 0 ? remaining : 0 ) ;
+				} catch ( InterruptedException e ) {
+					// check again
+				}
+			}
+			return true ;
+		}
+		
+		@Override
+		public void run() {
+			while ( true ) {
+				PendingSave ps ;
+				synchronized( this ) {
+					while ( mQueue.isEmpty() ) {
+						try {
+							wait() ;
+						} catch ( InterruptedException e ) {
+							// check again
+						}
+					}
+					ps = mQueue.remove(0) ;
+					mWriting = ps ;
+				}
+				
+				if ( ps.mRequests > 1 )
+					Log.d(TAG, "writing " + ps.mKey + " (" + ps.mWhat + "), coalesced from " + ps.mRequests + " requests") ;
+				boolean success = false ;
+				try {
+					success = ps.write() ;
+				} catch ( Exception e ) {
+					e.printStackTrace() ;
+				}
+				
+				synchronized( this ) {
+					mWriting = null ;
+					// finish while holding the lock so flush() never sees
+					// an empty queue before the save is complete.
+					ps.finish( success ) ;
+					notifyAll() ;
+				}
+			}
+		}
+	}
+	
+	private static final WriteBehindThread WRITE_BEHIND_THREAD = new WriteBehindThread() ;
+	static {
+		WRITE_BEHIND_THREAD.start() ;
+	}
+	
+	
+	/**
+	 * Blocks until every save queued for the specified key has been written,
+	 * or the timeout expires.  Saves already complete in the usual case;
+	 * call this where a save must be on disk before continuing, e.g.
+	 * before the process may be killed.
+	 * 
+	 * @param key The key, or 'null' to wait for all keys.
+	 * @param timeoutMillis Maximum time to wait; <= 0 waits indefinitely.
+	 * @return Whether all such saves are complete.
+	 */
+	public static boolean flushPendingSaves( String key, long timeoutMillis ) {
+		return WRITE_BEHIND_THREAD.flush( key, timeoutMillis ) ;
+	}
+	
+	
+	/**
+	 * Returns a copy of the provided Game suitable for saving at leisure
+	 * on another thread; the copy is cheap, sharing nothing mutable with
+	 * the original.  BrokenGameCopies are returned as-is; they are only
+	 * ever saved, never changed.
+	 * @param game
+	 * @return
+	 */
+	private static Game snapshot( Game game ) {
+		if ( game == null || game instanceof BrokenGameCopy )
+			return game ;
+		synchronized( game ) {
+			return new BrokenGameCopy( game ) ;
+		}
+	}
 	
 	
 	
@@ -701,6 +1046,81 @@ public class GameSaver {
 	}
 	
 	
+	/**
+	 * Saves the given game (game, game.ginfo, game.gevents, and game systems)
+	 * to a directory derived from the provided key; see writeGame.
+	 * 
+	 * The save is written by the shared write-behind thread, after any
+	 * saves queued before it; this method blocks until it is complete.
+	 * 
+	 * SIDE EFFECT: any Ephemeral Checkpoints become "real" checkpoints.
+	 * 
+	 * @param context Current context
+	 * @param key Key determining file location
+	 * @param game Game object to save
+	 * @return Success (true) or failure (false).
+	 */
+	public static boolean saveGame(
+			Context context, String key, Game game, GameResult gr, GameSettings gs, Bitmap thumbnail ) {
+		return WRITE_BEHIND_THREAD.submit( new PendingSave(
+				PENDING_SAVE_GAME, context, key, 0, game, gr, gs, thumbnail ) ).await() ;
+	}
+	
+	
+	/**
+	 * Saves the provided game as a checkpoint; see writeCheckpoint.
+	 * Blocks until the save is complete.
+	 * 
+	 * Side effect: erases any corresponding ephemeral checkpoint.
+	 * 
+	 * @param context
+	 * @param key
+	 * @param checkpointNum
+	 * @param game
+	 * @param gr
+	 * @return
+	 */
+	public static boolean saveCheckpoint(
+			Context context, String key, int checkpointNum, Game game, GameResult gr ) {
+		return WRITE_BEHIND_THREAD.submit( new PendingSave(
+				PENDING_SAVE_CHECKPOINT, context, key, checkpointNum, game, gr, null, null ) ).await() ;
+	}
+	
+	
+	/**
+	 * Saves the provided game as an ephemeral checkpoint; see
+	 * writeEphemeralCheckpoint.  Blocks until the save is complete.
+	 * 
+	 * @param context
+	 * @param key
+	 * @param checkpointNum
+	 * @param game
+	 * @param gr
+	 * @return
+	 */
+	public static boolean saveEphemeralCheckpoint(
+			Context context, String key, int checkpointNum, Game game, GameResult gr ) {
+		return WRITE_BEHIND_THREAD.submit( new PendingSave(
+				PENDING_SAVE_EPHEMERAL_CHECKPOINT, context, key, checkpointNum, game, gr, null, null ) ).await() ;
+	}
+	
+	
+	/**
+	 * Saves the provided thumbnail for the game at the specified key.
+	 * Blocks until the save is complete.
+	 * 
+	 * @param context
+	 * @param key
+	 * @param thumbnail
+	 * @return
+	 */
+	public static boolean saveGameThumbnail(
+			Context context, String key, Bitmap thumbnail ) {
+		return WRITE_BEHIND_THREAD.submit( new PendingSave(
+				PENDING_SAVE_THUMBNAIL, context, key, 0, null, null, null, thumbnail ) ).await() ;
+	}
+	
+	
 	/**
 	 * Saves the given game (game, game.ginfo, game.gevents, and game systems) in
 	 * a Serialized format to a directory derived from the provided key
@@ -718,17 +1138,13 @@ public class GameSaver {
 	 * @return Success (true) or failure (false).  Upon failure, a
 	 * 			note will be entered in Log.d
 	 */
-	public static boolean saveGame(
+	private static boolean writeGame(
 			Context context, String key, Game game, GameResult gr, GameSettings gs, Bitmap thumbnail ) {
 		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			
 			// Writes current states to files:
-			// SavedGames/<key>/game_state.bin
-			//                 /gevents_state.bin
-			//				   /ginfo_state.bin
-			//                 /systems_states.bin
-			//				   /valid_save.txt
+			// SavedGames/<key>/game_state.journal
 			//				   /game_results.bin
 			//                 /valid_result.bin
 			//				   /game_settings.bin
@@ -763,16 +1179,12 @@ public class GameSaver {
 	 * @param gr
 	 * @return
 	 */
-	public static boolean saveCheckpoint(
+	private static boolean writeCheckpoint(
 			Context context, String key, int checkpointNum, Game game, GameResult gr ) {
 		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			// Writes current states to files:
-			// SavedGames/<key>/Checkpoint_<checkpointNum>/game_state.bin
-			//                							  /gevents_state.bin
-			//				   							  /ginfo_state.bin
-			//                							  /systems_states.bin
-			//				   							  /valid_save.txt
+			// SavedGames/<key>/Checkpoint_<checkpointNum>/game_state.journal
 			//				   							  /game_results.bin
 			//               							  /valid_result.bin
 			
@@ -817,16 +1229,12 @@ public class GameSaver {
 	 * @param gr
 	 * @return
 	 */
-	public static boolean saveEphemeralCheckpoint(
+	private static boolean writeEphemeralCheckpoint(
 			Context context, String key, int checkpointNum, Game game, GameResult gr ) {
 		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			// Writes current states to files:
-			// SavedGames/<key>/Checkpoint_<checkpointNum>/game_state.bin
-			//                							  /gevents_state.bin
-			//				   							  /ginfo_state.bin
-			//                							  /systems_states.bin
-			//				   							  /valid_save.txt
+			// SavedGames/<key>/Checkpoint_<checkpointNum>/game_state.journal
 			//				   							  /game_results.bin
 			//               							  /valid_result.bin
 			
@@ -866,11 +1274,7 @@ public class GameSaver {
 			Context context, File directory, Game game, GameResult gr, GameSettings gs, Bitmap thumbnail) {
 		
 		// Writes current states to files:
-		// SavedGames/<key>/game_state.bin
-		//                 /gevents_state.bin
-		//				   /ginfo_state.bin
-		//                 /systems_states.bin
-		//				   /valid_save.txt
+		// SavedGames/<key>/game_state.journal
 		//		   /game_results.bin
 		//                 /valid_result.bin
 		//				   /game_settings.bin
@@ -878,29 +1282,19 @@ public class GameSaver {
 		
 		
 		try {
-			GameInformation ginfo = game.ginfo ;
-			GameEvents gevents = game.gevents ;
-			
-			// Get the file to the directory.
-			File validFile = fileFromDirectoryFile( directory, FILENAME_VALID ) ;
-			// If does not exist, make it.  If it does, check and remove the "valid" file.
-			if ( directory.exists() && validFile.exists() ) {
-				validFile.delete() ;
-			}
-			else {
+			if ( !directory.exists() )
 				directory.mkdirs() ;
-			}
 			
 			File file ;
 			
-			file = fileFromDirectoryFile( directory, FILENAME_GAME ) ;
-			writeSerializableStateToFile( context, file, game ) ;
-			file = fileFromDirectoryFile( directory, FILENAME_GAME_INFORMATION ) ;
-			writeSerializableStateToFile( context, file, ginfo ) ;
-			file = fileFromDirectoryFile( directory, FILENAME_GAME_EVENTS ) ;
-			writeSerializableStateToFile( context, file, gevents ) ;
-			file = fileFromDirectoryFile( directory, FILENAME_GAME_SYSTEMS ) ;
-			writeSerializableArrayToFile( context, file, game.getSerializablesFromSystems() ) ;
+			// Game states go in the journal.  Its checksums replace
+			// valid_save.txt: an interrupted append is discarded on load,
+			// leaving the previous save.
+			file = fileFromDirectoryFile( directory, FILENAME_GAME_JOURNAL ) ;
+			CHECKPOINT_STORE.append( file, gameStatesToJournalSections( game ) ) ;
+			
+			// Remove any pre-journal save, which would otherwise be stale.
+			deleteLegacyGameStates( directory ) ;
 			
 			if ( gr != null ) {
 				File grValidFile = fileFromDirectoryFile( directory, FILENAME_GAME_RESULT_VALID ) ;
@@ -909,8 +1303,12 @@ public class GameSaver {
 					grValidFile.delete() ;
 				}
 				
+				// Compact format, so listings can read the summary alone.
+				file = fileFromDirectoryFile( directory, FILENAME_GAME_RESULT_COMPACT ) ;
+				writeGameResultToFile( context, file, gr ) ;
 				file = fileFromDirectoryFile( directory, FILENAME_GAME_RESULT ) ;
-				writeSerializableObjectToFile( context, file, gr ) ;
+				if ( file.exists() )
+					file.delete() ;
 				
 				// Create valid file.
 				writeValidFile( context, grValidFile ) ;
@@ -943,9 +1341,6 @@ public class GameSaver {
 				}
 			}
 			
-			// Create valid file.
-			writeValidFile( context, validFile ) ;
-			
 			Log.d(TAG, "game seems to have saved successfully") ;
 			return true ;
 			
@@ -975,17 +1370,13 @@ public class GameSaver {
 	 * @return Success (true) or failure (false).  Upon failure, a
 	 * 			note will be entered in Log.d
 	 */
-	public static boolean saveGameThumbnail(
+	private static boolean writeGameThumbnail(
 			Context context, String key, Bitmap thumbnail ) {
 		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			
 			// Writes current states to files:
-			// SavedGames/<key>/game_state.bin
-			//                 /gevents_state.bin
-			//				   /ginfo_state.bin
-			//                 /systems_states.bin
-			//				   /valid_save.txt
+			// SavedGames/<key>/game_state.journal
 			//				   /game_results.bin
 			//                 /valid_result.bin
 			//				   /game_settings.bin
@@ -1011,8 +1402,7 @@ public class GameSaver {
 			Context context, File directory, Bitmap thumbnail) {
 		
 		try {
-			File validFile = fileFromDirectoryFile( directory, FILENAME_VALID ) ;
-			if ( !directory.exists() || !validFile.exists() ) {
+			if ( !directory.exists() || !hasGameStates( directory ) ) {
 				return false ;
 			}
 			
@@ -1050,6 +1440,10 @@ public class GameSaver {
 	public static boolean loadGameStates( 
 			Context context, String key, Game game ) {
 		
+		// read what we've been asked to write.
+		if ( key != null )
+			WRITE_BEHIND_THREAD.flush( key, 0 ) ;
+		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			// Reads current states from files:
 			// SavedGames/<key>/game_state.bin
@@ -1074,6 +1468,10 @@ public class GameSaver {
 	public static boolean loadCheckpointStates( 
 			Context context, String key, int checkpointNum, Game game ) {
 		
+		// read what we've been asked to write.
+		if ( key != null )
+			WRITE_BEHIND_THREAD.flush( key, 0 ) ;
+		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			// Reads current states from files:
 			// SavedGames/<key>/game_state.bin
@@ -1103,6 +1501,18 @@ public class GameSaver {
 			Context context, File directory, Game game ) {
 		
 		try {
+			byte [][] sections = CHECKPOINT_STORE.load(
+					fileFromDirectoryFile( directory, FILENAME_GAME_JOURNAL ) ) ;
+			if ( sections != null ) {
+				journalSectionsToGameStates( sections, game ) ;
+				
+				// FAILING TO REFRESH WILL CAUSE A CRASH, DUDE
+				game.refresh() ;
+				
+				return true ;
+			}
+			
+			// No journal; maybe a save from before we used one.
 			File validFile = fileFromDirectoryFile( directory, FILENAME_VALID ) ;
 			
 			if ( !validFile.exists() ) {
@@ -1156,6 +1566,32 @@ public class GameSaver {
 		}
 	}
 	
+	/**
+	 * Loads only the summary of the saved GameResult -- mode, score, outcome,
+	 * times -- without decoding per-player blockfields and settings.  Prefer
+	 * this for listing saved games.
+	 * 
+	 * @param context
+	 * @param key
+	 * @return
+	 */
+	public static GameResult.Summary loadGameResultSummary( Context context, String key ) {
+		// Reads game result summary from file:
+		// SavedGames/<key>/game_result.qgr
+		
+		synchronized ( GAME_SAVER_MUTEX ) {
+			try {
+				File keyDir = directoryFileFromKey( context, key ) ;
+				return loadGameResultSummary( context, keyDir ) ;
+			} catch (Exception e) {
+				e.printStackTrace() ;
+				Log.d(TAG, e.toString() ) ;
+				return null ;
+			}
+		}
+	}
+	
+	
 	public static GameSettings loadGameSettings( Context context, String key ) {
 		// Reads gameSettings from file:
 		// SavedGames/<key>/game_settings.bin
@@ -1210,6 +1646,10 @@ public class GameSaver {
 		// Reads game result from file:
 		// SavedGames/<key>/Checkpoint_<checkpointNum>/game_result.bin
 		
+		// read what we've been asked to write.
+		if ( key != null )
+			WRITE_BEHIND_THREAD.flush( key, 0 ) ;
+		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			try {
 				File keyDir = directoryFileFromKey( context, key ) ;
@@ -1241,9 +1681,13 @@ public class GameSaver {
 					return null ;
 				}
 				
+				File file = fileFromDirectoryFile( directory, FILENAME_GAME_RESULT_COMPACT ) ;
+				if ( file.exists() )
+					return readGameResultFromFile( context, file ) ;
+				
 				int version = readValidFile( context, validFile ) ;
 				
-				File file = fileFromDirectoryFile( directory, FILENAME_GAME_RESULT ) ;
+				file = fileFromDirectoryFile( directory, FILENAME_GAME_RESULT ) ;
 				GameResult gr = (GameResult)readSerializableObjectFromFile( context, file, version ) ;
 	
 				return gr ;
@@ -1257,6 +1701,39 @@ public class GameSaver {
 	}
 	
 	
+	public static GameResult.Summary loadGameResultSummary( Context context, File directory ) {
+		synchronized ( GAME_SAVER_MUTEX ) {
+			try {
+				File validFile = fileFromDirectoryFile( directory, FILENAME_GAME_RESULT_VALID ) ;
+				
+				if ( !validFile.exists() ) {
+					Log.d(TAG, "Game Save ValidFile does not exist") ;
+					return null ;
+				}
+				
+				File file = fileFromDirectoryFile( directory, FILENAME_GAME_RESULT_COMPACT ) ;
+				if ( file.exists() ) {
+					FileInputStream fis = new FileInputStream(file) ;
+					try {
+						return GameResult.readSummary( new BufferedInputStream(fis) ) ;
+					} finally {
+						fis.close() ;
+					}
+				}
+				
+				// saved before the compact format; no choice but to read it all.
+				GameResult gr = loadGameResult( context, directory ) ;
+				return gr == null ? null : gr.getSummary() ;
+				
+			} catch (Exception e) {
+				e.printStackTrace() ;
+				Log.d(TAG, e.toString() ) ;
+				return null ;
+			}
+		}
+	}
+	
+	
 	public static GameSettings loadGameSettings( Context context, File directory ) {
 		synchronized ( GAME_SAVER_MUTEX ) {
 			try {
@@ -1334,6 +1811,7 @@ public class GameSaver {
 						delete(chk) ;
 					
 					// now move
+					CHECKPOINT_STORE.close( fileFromDirectoryFile( c, FILENAME_GAME_JOURNAL ) ) ;
 					c.renameTo( chk ) ;
 				}
 			}
@@ -1357,13 +1835,15 @@ public class GameSaver {
 	public static boolean hasGameStates(
 			Context context, String key ) {
 		
+		// read what we've been asked to write.
+		if ( key != null )
+			WRITE_BEHIND_THREAD.flush( key, 0 ) ;
+		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			if ( key == null )
 				return false ;
 			
-			// Check for the existence of a "valid" file.
-			File file = fileFromKeyAndFilename( context, key, FILENAME_VALID ) ;
-			return file.exists() ;
+			return hasGameStates( directoryFileFromKey( context, key ) ) ;
 		}
 	}
 	
@@ -1390,18 +1870,19 @@ public class GameSaver {
 	public static boolean hasCheckpointStates(
 			Context context, String key, int checkpointNum ) {
 		
+		// read what we've been asked to write.
+		if ( key != null )
+			WRITE_BEHIND_THREAD.flush( key, 0 ) ;
+		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			if ( key == null )
 				return false ;
 			
-			// Check for the existence of a "valid" file.
 			File file ;
 			file = directoryFileFromKey( context, key ) ;
 			File chk = fileFromDirectoryFile( file, CHECKPOINT_DIRECTORY_PREFIX + checkpointNum ) ;
-			chk = fileFromDirectoryFile( chk, FILENAME_VALID ) ;
 			File eph = fileFromDirectoryFile( file, EPHEMERAL_CHECKPOINT_DIRECTORY_PREFIX + checkpointNum ) ;
-			eph = fileFromDirectoryFile( eph, FILENAME_VALID ) ;
-			return chk.exists() || eph.exists() ;
+			return hasGameStates( chk ) || hasGameStates( eph ) ;
 		}
 	}
 	
@@ -1434,6 +1915,11 @@ public class GameSaver {
 	public static boolean deleteGame(
 			Context context, String key ) {
 		
+		// queued saves would only be deleted; don't bother writing them.
+		// One already being written must finish before we delete.
+		WRITE_BEHIND_THREAD.discard( key ) ;
+		WRITE_BEHIND_THREAD.flush( key, 0 ) ;
+		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			// Get the file to the directory.
 			File keyDir = directoryFileFromKey( context, key ) ;
@@ -1456,6 +1942,8 @@ public class GameSaver {
 		if (f.isDirectory()) {
 			for (File c : f.listFiles())
 				delete(c);
+		} else {
+			CHECKPOINT_STORE.close(f) ;
 		}
 		if (!f.delete())
 			throw new FileNotFoundException("Failed to delete file: " + f);
@@ -1463,7 +1951,7 @@ public class GameSaver {
 
 	
 	/**
-	 * Deletes ONLY THE valid file for the main game.  This retains checkpoints
+	 * Deletes ONLY THE journal and valid file for the main game.  This retains checkpoints
 	 * and ephemeral checkpoints.
 	 * 
 	 * @param context
@@ -1473,6 +1961,9 @@ public class GameSaver {
 	public static boolean deleteGameButKeepCheckpoints(
 			Context context, String key ) {
 		
+		// queued game saves may materialize checkpoints we're keeping.
+		WRITE_BEHIND_THREAD.flush( key, 0 ) ;
+		
 		synchronized ( GAME_SAVER_MUTEX ) {
 			// Get the file to the directory.
 			File keyDir = directoryFileFromKey( context, key ) ;
@@ -1480,13 +1971,17 @@ public class GameSaver {
 			if ( !keyDir.exists() ) 
 				return true ;
 			
+			File journalFile = fileFromDirectoryFile( keyDir, FILENAME_GAME_JOURNAL ) ;
 			File validFile = fileFromDirectoryFile( keyDir, FILENAME_VALID ) ;
 			
-			if ( !validFile.exists() )
+			if ( !journalFile.exists() && !validFile.exists() )
 				return true ;
 			
 			try {
-				delete(validFile) ;
+				if ( journalFile.exists() )
+					delete(journalFile) ;
+				if ( validFile.exists() )
+					delete(validFile) ;
 				return true ;
 			} catch( IOException e ) {
 				e.printStackTrace() ;
@@ -1535,6 +2030,94 @@ public class GameSaver {
 	}
 	
 	
+	private static boolean hasGameStates( File directory ) {
+		return CHECKPOINT_STORE.has( fileFromDirectoryFile( directory, FILENAME_GAME_JOURNAL ) )
+				|| fileFromDirectoryFile( directory, FILENAME_VALID ).exists() ;
+	}
+	
+	
+	private static void deleteLegacyGameStates( File directory ) {
+		// valid file first, so a partial delete doesn't look like a save.
+		File validFile = fileFromDirectoryFile( directory, FILENAME_VALID ) ;
+		if ( validFile.exists() ) {
+			validFile.delete() ;
+			fileFromDirectoryFile( directory, FILENAME_GAME ).delete() ;
+			fileFromDirectoryFile( directory, FILENAME_GAME_INFORMATION ).delete() ;
+			fileFromDirectoryFile( directory, FILENAME_GAME_EVENTS ).delete() ;
+			fileFromDirectoryFile( directory, FILENAME_GAME_SYSTEMS ).delete() ;
+		}
+	}
+	
+	
+	private static byte [][] gameStatesToJournalSections( Game game ) throws IOException {
+		byte [][] sections = new byte[JOURNAL_NUM_SECTIONS][] ;
+		
+		ByteArrayOutputStream baos = JOURNAL_SECTION_BUFFER ;
+		baos.reset() ;
+		DataOutputStream dos = new DataOutputStream(baos) ;
+		dos.writeInt( VERSION ) ;
+		dos.close() ;
+		sections[JOURNAL_SECTION_VERSION] = baos.toByteArray() ;
+		
+		sections[JOURNAL_SECTION_GAME] = serializableToBytes( game.getStateAsSerializable() ) ;
+		sections[JOURNAL_SECTION_GAME_INFORMATION] = serializableToBytes( game.ginfo.getStateAsSerializable() ) ;
+		sections[JOURNAL_SECTION_GAME_EVENTS] = serializableToBytes( game.gevents.getStateAsSerializable() ) ;
+		
+		Serializable [] systems = game.getSerializablesFromSystems() ;
+		baos.reset() ;
+		ObjectOutputStream oos = new ObjectOutputStream(baos) ;
+		oos.writeInt( systems.length ) ;
+		for ( int i = 0; i < systems.length; i++ )
+			oos.writeObject( systems[i] ) ;
+		oos.close() ;
+		sections[JOURNAL_SECTION_GAME_SYSTEMS] = baos.toByteArray() ;
+		
+		return sections ;
+	}
+	
+	
+	private static void journalSectionsToGameStates( byte [][] sections, Game game ) throws Exception {
+		if ( sections.length != JOURNAL_NUM_SECTIONS )
+			throw new IOException("Game journal has " + sections.length + " sections; expected " + JOURNAL_NUM_SECTIONS) ;
+		
+		DataInputStream dis = new DataInputStream( new ByteArrayInputStream( sections[JOURNAL_SECTION_VERSION] ) ) ;
+		int version = dis.readInt() ;
+		dis.close() ;
+		if ( version > VERSION )
+			throw new IOException("Game journal version " + version + " is newer than " + VERSION) ;
+		
+		game.setStateAsSerializable( (Serializable)bytesToObject( sections[JOURNAL_SECTION_GAME] ) ) ;
+		game.ginfo.setStateAsSerializable( (Serializable)bytesToObject( sections[JOURNAL_SECTION_GAME_INFORMATION] ) ) ;
+		game.gevents.setStateAsSerializable( (Serializable)bytesToObject( sections[JOURNAL_SECTION_GAME_EVENTS] ) ) ;
+		
+		ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( sections[JOURNAL_SECTION_GAME_SYSTEMS] ) ) ;
+		int num = ois.readInt() ;
+		Serializable [] systems = new Serializable[num] ;
+		for ( int i = 0; i < num; i++ )
+			systems[i] = (Serializable)ois.readObject() ;
+		ois.close() ;
+		game.setSystemsFromSerializables(systems) ;
+	}
+	
+	
+	private static byte [] serializableToBytes( Serializable obj ) throws IOException {
+		ByteArrayOutputStream baos = JOURNAL_SECTION_BUFFER ;
+		baos.reset() ;
+		ObjectOutputStream oos = new ObjectOutputStream(baos) ;
+		oos.writeObject( obj ) ;
+		oos.close() ;
+		return baos.toByteArray() ;
+	}
+	
+	
+	private static Object bytesToObject( byte [] bytes ) throws IOException, ClassNotFoundException {
+		ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( bytes ) ) ;
+		Object obj = ois.readObject() ;
+		ois.close() ;
+		return obj ;
+	}
+	
+	
 	private static void writeSerializableObjectToFile (
 			Context context, File file, Serializable obj ) throws Exception {
 		
@@ -1549,51 +2132,23 @@ public class GameSaver {
 	}
 	
 	
-	private static void writeSerializableStateToFile(
-			Context context, File file, SerializableState objectWithState ) throws Exception {
+	private static void writeGameResultToFile(
+			Context context, File file, GameResult gr ) throws Exception {
 		
 		FileOutputStream fos = new FileOutputStream(file) ;
-		ObjectOutputStream oos = new ObjectOutputStream(fos) ;
-		
-		// Write the state to the stream... 
-		oos.writeObject( objectWithState.getStateAsSerializable() ) ;
-		
-		// Shut.  Down.  Everything.
-		oos.close() ;	// Also closes fos
-
-
+		BufferedOutputStream bos = new BufferedOutputStream(fos) ;
+		gr.writeTo( bos ) ;
+		bos.close() ;	// Also closes fos
 	}
 	
-	private static boolean writeSerializableArrayToFile(
-			Context context, File file, Serializable [] objects ) {
+	private static GameResult readGameResultFromFile(
+			Context context, File file ) throws Exception {
 		
+		FileInputStream fis = new FileInputStream(file) ;
 		try {
-			FileOutputStream fos = new FileOutputStream(file) ;
-			ObjectOutputStream oos = new ObjectOutputStream(fos) ;
-			
-			// How big is the array?
-			oos.writeInt( objects.length ) ;
-			
-			// Write the objects...
-			for ( int i = 0; i < objects.length; i++ )
-				oos.writeObject( objects[i] ) ;
-			
-			// Shut.  Down.  Everything.
-			oos.close() ;	// Also closes fos
-			return true ;
-		} catch (FileNotFoundException e) {
-			// Log this error, return false.
-			e.printStackTrace() ;
-			Log.d(TAG, e.toString() ) ;
-			return false ;
-		} catch (IOException e) {
-			e.printStackTrace() ;
-			Log.d(TAG, e.toString() ) ;
-			return false ;
-		} catch (RuntimeException e) {
-			e.printStackTrace() ;
-			Log.d(TAG, e.toString() ) ;
-			return false ;
+			return GameResult.readFrom( new BufferedInputStream(fis) ) ;
+		} finally {
+			fis.close() ;
 		}
 	}
 	
@@ -1,5 +1,7 @@
 package com.peaceray.quantro.model.communications;
 
+import java.util.BitSet;
+
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
@@ -64,6 +66,10 @@ public class MultiplayerClientCommunications extends ClientCommunications
 			// from below 1 to >= 1 displaced rounds, or if this amount of time has
 			// passed since the last update.
 	
+	// The most player slots we can follow.  Per-slot structures are small,
+	// so we allow for large elimination matches.
+	private static final int MAX_PLAYER_SLOTS = 64 ;
+	
 	private static final long REQUEST_ACTION_CYCLE_STATE_FIRST_AFTER = 600 ;	// after 0.6 seconds
 	private static final long REQUEST_ACTION_CYCLE_STATE_EVERY = 3000 ;		// every 3 seconds
 	
@@ -97,13 +103,12 @@ public class MultiplayerClientCommunications extends ClientCommunications
 			
 			outgoingMessage = new GameMessage() ;
 			
-			// TODO: Just 8?
-			playerWaitingFor = new boolean[8] ;
-			playerPaused = new boolean[8] ;
+			playerWaitingFor = new boolean[MAX_PLAYER_SLOTS] ;
+			playerPaused = new boolean[MAX_PLAYER_SLOTS] ;
 			
-			actionCycleStateMostRecentId = new long[8] ;
-			actionCycleStateMostRecent = new ActionCycleStateDescriptor[8] ;
-			for ( int i = 0; i < 8; i++ )
+			actionCycleStateMostRecentId = new long[MAX_PLAYER_SLOTS] ;
+			actionCycleStateMostRecent = new ActionCycleStateDescriptor[MAX_PLAYER_SLOTS] ;
+			for ( int i = 0; i < MAX_PLAYER_SLOTS; i++ )
 				actionCycleStateMostRecent[i] = new ActionCycleStateDescriptor(1, 1) ;
 		}
 		
@@ -298,10 +303,24 @@ public class MultiplayerClientCommunications extends ClientCommunications
 		            		// Second: send all the information.
 		            		if ( lastRealtimeUpdate + REALTIME_UPDATE_EVERY < System.currentTimeMillis() )
 		            			sendRealtimeUpdate() ;
+		            		long seq = actionAdapters[localActionAdapter].communications_getOutgoingActionSequence() ;
 		            		int numActions = actionAdapters[localActionAdapter].communications_readOutgoingActionQueue(buffer, 0, buffer.length) ;
 		            		if ( numActions > 0 && connection.isConnected() ) {
-		            			outgoingMessage.setAsMoveQueue(localActionAdapter, buffer, 0, numActions) ;
-		            			connection.sendMessage(outgoingMessage) ;
+		            			if ( connection.supportsUnreliableMessages() ) {
+		            				// Send sequenced, then repeat our recent queues unreliably.
+		            				// If an earlier datagram was lost, the server can
+		            				// recover its actions from this one without waiting
+		            				// for a resend.
+		            				moveQueueHistory.record(seq, buffer, 0, numActions) ;
+		            				outgoingMessage.setAsMoveQueueSequenced(localActionAdapter, seq, buffer, 0, numActions) ;
+		            				connection.sendMessage(outgoingMessage) ;
+		            				outgoingMessage.setAsMoveQueueRedundant(localActionAdapter,
+		            						moveQueueHistory.getSeq(), moveQueueHistory.getActions(), 0, moveQueueHistory.getLength()) ;
+		            				connection.sendMessageUnreliably(outgoingMessage) ;
+		            			} else {
+		            				outgoingMessage.setAsMoveQueue(localActionAdapter, buffer, 0, numActions) ;
+		            				connection.sendMessage(outgoingMessage) ;
+		            			}
 		            		}
 		            		break ;
 		            		
@@ -437,6 +456,11 @@ public class MultiplayerClientCommunications extends ClientCommunications
 				//Log.d(TAG, "Incoming message: welcome to server" ) ;
 				// Let the server know whether we want to pause or not...
 				welcomed = true ;
+				// A server which states a protocol version will read our reply;
+				// older servers would disconnect us for it.
+				if ( m.getProtocolVersion() > 0 )
+					connection.sendMessage( outgoingMessage.setAsProtocolVersion(
+							Math.min( m.getProtocolVersion(), GameMessage.PROTOCOL_VERSION ) ) ) ;
 				if ( pausedByLocalPlayer )
 					connection.sendMessage( outgoingMessage.setAsPause() ) ;
 				else
@@ -520,6 +544,14 @@ public class MultiplayerClientCommunications extends ClientCommunications
 				actionAdapters[m.getPlayerSlot()].communications_enqueueActions(buffer, 0, len) ;
 				break ;
 				
+			case GameMessage.TYPE_MOVE_QUEUE_SEQUENCED:
+			case GameMessage.TYPE_MOVE_QUEUE_REDUNDANT:
+				// The adapter discards any actions it has already seen.
+				len = m.getMoveQueue(buffer) ;
+				actionAdapters[m.getPlayerSlot()].communications_enqueueActions(buffer, 0, len,
+						m.getMoveQueueSeq(), m.getType() == GameMessage.TYPE_MOVE_QUEUE_SEQUENCED) ;
+				break ;
+				
 			case GameMessage.TYPE_NEXT_CYCLE:
 				//Log.d(TAG, "Incoming message: next cycle" ) ;
 				acsd = actionCycleStateMostRecent[m.getPlayerSlot()] ;
@@ -538,6 +570,14 @@ public class MultiplayerClientCommunications extends ClientCommunications
 				actionAdapters[m.getPlayerSlot()].communications_addPendingAttacks(ad) ;
 				break ;
 				
+			case GameMessage.TYPE_INCOMING_ATTACK_TARGETS:
+				m.getIncomingAttack(ad) ;
+				m.getIncomingAttackTargets(attackTargets) ;
+				for ( int t = attackTargets.nextSetBit(0); t >= 0; t = attackTargets.nextSetBit(t+1) )
+					if ( t < actionAdapters.length && actionAdapters[t] != null )
+						actionAdapters[t].communications_addPendingAttacks(ad) ;
+				break ;
+				
 			case GameMessage.TYPE_PLAYER_WON:
 				// //Log.d(TAG, "Incoming message: player won") ;
 				delegate.ccd_messageWon(MultiplayerClientCommunications.this, m.getPlayerSlot()) ;
@@ -598,15 +638,16 @@ public class MultiplayerClientCommunications extends ClientCommunications
 	
 	// Some temporary structures!
 	AttackDescriptor ad ;
+	BitSet attackTargets ;
 	byte [] buffer ;
+	MoveQueueHistory moveQueueHistory ;
 	
 	long [] waitingForActionCycleStateSince ;
 	
 	public MultiplayerClientCommunications() {
 		thread = null ;
 		pausedByLocalPlayer = false ;
-		actionAdapters = new ActionAdapter[8] ;
-		// TODO: Max of 8 players...?
+		actionAdapters = new ActionAdapter[MAX_PLAYER_SLOTS] ;
 		
 		// initialize abstract class fields
 		nonce = null ;
@@ -619,7 +660,7 @@ public class MultiplayerClientCommunications extends ClientCommunications
 		
 		connection = null ;
 		
-		waitingForActionCycleStateSince = new long[8] ;
+		waitingForActionCycleStateSince = new long[MAX_PLAYER_SLOTS] ;
 	}
 	
 	
@@ -642,10 +683,12 @@ public class MultiplayerClientCommunications extends ClientCommunications
 		
 		// Now's a good time to allocate these structures.
 		buffer = new byte[actionAdapters[0].outgoingActionBufferSize()] ;
+		moveQueueHistory = new MoveQueueHistory() ;
 		
 		// we use this explicitly to contain incoming data,
 		// so it doesn't matter what our settings are.
 		ad = new AttackDescriptor(1,1) ;
+		attackTargets = new BitSet() ;
 
 		
 		// We require that nonce, personalNonce, and name have been set
@@ -704,7 +747,9 @@ public class MultiplayerClientCommunications extends ClientCommunications
 		thread = null ;
 		// Some temporary structures!
 		ad = null ;
+		attackTargets = null ;
 		buffer = null ;
+		moveQueueHistory = null ;
 	}
 
 	@Override
@@ -908,7 +953,7 @@ public class MultiplayerClientCommunications extends ClientCommunications
 		// Nothing to do here.
 	}
 	
-	boolean [] cycleRequested = new boolean[8] ;
+	boolean [] cycleRequested = new boolean[MAX_PLAYER_SLOTS] ;
 	
 	/**
 	 * The provided 'game' object was given as a parameter to
@@ -1,5 +1,7 @@
 package com.peaceray.quantro.model.communications;
 
+import java.util.Arrays;
+
 import android.util.Log;
 
 import com.peaceray.quantro.adapter.action.ActionAdapter;
@@ -49,8 +51,8 @@ public class NoOpClientCommunications extends ClientCommunications {
 	 */
 	public NoOpClientCommunications() {
 		//Log.d(TAG, "constructor") ;
-		actionAdapters = new ActionAdapter[8] ;
-		// TODO: Max of 8 players...?
+		// single player: we report exactly 1 player slot.
+		actionAdapters = new ActionAdapter[1] ;
 		
 		running = false ;
 		paused = false ;
@@ -69,6 +71,17 @@ public class NoOpClientCommunications extends ClientCommunications {
 	}
 
 	
+	/**
+	 * Sized by player count: grows to hold whichever adapters are set.
+	 */
+	@Override
+	public ClientCommunications setActionAdapter( ActionAdapter adapter, int adapterNum ) {
+		if ( adapterNum >= actionAdapters.length )
+			actionAdapters = Arrays.copyOf( actionAdapters, adapterNum + 1 ) ;
+		return super.setActionAdapter( adapter, adapterNum ) ;
+	}
+	
+	
 	/**
 	 * Starts things going.  Very, very simple.
 	 */
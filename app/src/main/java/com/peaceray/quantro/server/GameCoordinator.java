@@ -1,5 +1,6 @@
 package com.peaceray.quantro.server;
 
+import java.util.BitSet;
 import java.util.Random;
 
 import android.os.Looper;
@@ -11,7 +12,10 @@ import com.peaceray.quantro.adapter.action.ActionAdapterWithGameIO;
 import com.peaceray.quantro.communications.SlottedHandler;
 import com.peaceray.quantro.communications.messagepassing.MessagePassingConnection;
 import com.peaceray.quantro.communications.messagepassing.MessagePassingLayer;
+import com.peaceray.quantro.model.communications.AttackRouter;
 import com.peaceray.quantro.model.communications.GameMessage;
+import com.peaceray.quantro.model.communications.MoveQueueHistory;
+import com.peaceray.quantro.model.communications.SpectatorStream;
 import com.peaceray.quantro.model.descriptors.versioned.ActionCycleStateDescriptor;
 import com.peaceray.quantro.model.descriptors.versioned.AttackDescriptor;
 import com.peaceray.quantro.model.game.Game;
@@ -101,6 +105,9 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	// Drop a player if they are still disconnected.
 	private static final int ANDROID_MESSAGE_TYPE_DROP_WAITED_FOR_PLAYER				= 14 ;
 	
+	// A player's game has finished advancing on the GameSimulationPool.
+	private static final int ANDROID_MESSAGE_TYPE_GAME_ADVANCED							= 15 ;
+	
 	// For the above, we use android.os.Message instances with what the Type, arg1
 	// the connection index.
 	
@@ -146,6 +153,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 		boolean [] playerPaused ;
 		
 		boolean [] playerWelcomed ;		// we have sent our welcome package to this player.
+		int [] playerProtocolVersion ;	// as given in their TYPE_PROTOCOL_VERSION; 0 until then.
 		
 		// When we send status updates, we keep a record of that sent, so we don't
 		// send them redundantly.
@@ -180,12 +188,51 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 		// Temporary structures, not needed beyond a single method call.
 		GameMessage tempMessage ;
 		byte [] tempMoveQueue ;
-		AttackDescriptor tempAttackDescriptor ;
 		ActionCycleStateDescriptor tempActionCycleStateDescriptor ;
 		
 		Random r ;
 		
 		private boolean [] tempPlayerBoolean ;
+		private boolean [] tempPlayerBooleanPlain ;
+		private boolean [] tempPlayerBooleanPacked ;
+		private boolean [] tempPlayerBooleanFixed ;
+		
+		// The recent move queues sent for each player, repeated unreliably.
+		private MoveQueueHistory [] playerMoveQueueHistory ;
+		
+		// Games tick on the simulation pool, at most one advance per player
+		// in flight.  An advance requested while one is in flight is
+		// performed once the first completes.
+		private GameSimulationPool simulationPool ;
+		private boolean [] playerAdvancing ;
+		private boolean [] playerAdvanceRequested ;
+		private Runnable [] playerAdvancedCallback ;
+		
+		// A game is not touched while it advances.  Full synchronizations
+		// and realtime updates that arrive meanwhile are held here (only the
+		// latest realtime update matters) and applied once it is done; its
+		// lost / still-playing state is read from the copy taken then.
+		private boolean [] playerFullSynchronizationPending ;
+		private boolean [] playerRealtimeUpdatePending ;
+		private long [] playerRealtimeMillis ;
+		private double [] playerRealtimeDisplacedSeconds ;
+		private double [] playerRealtimeDisplacedRows ;
+		private boolean [] playerHasLost ;
+		private boolean [] playerStillPlaying ;
+		
+		// Attack routing.  Outgoing attacks are drained into attackBatch,
+		// with their targets in attackBatchTargets, before being sent.
+		private AttackRouter attackRouter ;
+		private BitSet activePlayers ;
+		private BitSet attackTargetsAny ;
+		private AttackDescriptor [] attackBatch ;
+		private BitSet [] attackBatchTargets ;
+		private AttackDescriptor [] attackBatchForTarget ;
+		
+		// Spectators with a live connection are served their next cycles
+		// by the feed, rather than by broadcastWithDescriptors.
+		private SpectatorFeedThread spectatorFeed ;
+		private boolean [] playerFedFromSpectatorStream ;
 		
 		public GameCoordinatorThread() {
 			running = true ;
@@ -195,6 +242,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 			playerWaitingFor = new boolean[numPlayers] ;
 			playerPaused = new boolean[numPlayers] ;
 			playerWelcomed = new boolean[numPlayers] ;
+			playerProtocolVersion = new int[numPlayers] ;
 			
 			lastStatusSent = -1 ;
 			lastStatusSentPlayers = new boolean[numPlayers] ;
@@ -210,6 +258,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 				playerWaitingFor[i] = true ;
 				playerPaused[i] = false ;
 				playerWelcomed[i] = false ;
+				playerProtocolVersion[i] = 0 ;
 				
 				for ( int j = 0; j < numPlayers; j++ ) {
 					lastAppliedFullSynchronizationId[i][j] = -1 ;
@@ -236,13 +285,51 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 			// TODO: This assumes all games have the same row/column dimensions.
 			tempMessage = new GameMessage() ;
 			tempMoveQueue = new byte[1024] ;
-			tempAttackDescriptor = new AttackDescriptor( playerGame[0].R(), playerGame[0].C() ) ;
 			tempActionCycleStateDescriptor = new ActionCycleStateDescriptor( playerGame[0].R(), playerGame[0].C() ) ;
 			
 			r = new Random() ;
 			
 			gameStatus = STATUS_WAITING ;
 			tempPlayerBoolean = new boolean[numPlayers] ;
+			tempPlayerBooleanPlain = new boolean[numPlayers] ;
+			tempPlayerBooleanPacked = new boolean[numPlayers] ;
+			tempPlayerBooleanFixed = new boolean[numPlayers] ;
+			playerMoveQueueHistory = new MoveQueueHistory[numPlayers] ;
+			for ( int i = 0; i < numPlayers; i++ )
+				playerMoveQueueHistory[i] = new MoveQueueHistory() ;
+			
+			attackRouter = new AttackRouter() ;
+			activePlayers = new BitSet(numPlayers) ;
+			attackTargetsAny = new BitSet(numPlayers) ;
+			attackBatch = new AttackDescriptor[0] ;
+			attackBatchTargets = new BitSet[0] ;
+			attackBatchForTarget = new AttackDescriptor[0] ;
+			growAttackBatch() ;
+			
+			simulationPool = GameSimulationPool.shared() ;
+			playerAdvancing = new boolean[numPlayers] ;
+			playerAdvanceRequested = new boolean[numPlayers] ;
+			playerAdvancedCallback = new Runnable[numPlayers] ;
+			playerFullSynchronizationPending = new boolean[numPlayers] ;
+			playerRealtimeUpdatePending = new boolean[numPlayers] ;
+			playerRealtimeMillis = new long[numPlayers] ;
+			playerRealtimeDisplacedSeconds = new double[numPlayers] ;
+			playerRealtimeDisplacedRows = new double[numPlayers] ;
+			playerHasLost = new boolean[numPlayers] ;
+			playerStillPlaying = new boolean[numPlayers] ;
+			for ( int i = 0; i < numPlayers; i++ ) {
+				final int slot = i ;
+				recordGameState( slot ) ;
+				playerAdvancedCallback[i] = new Runnable() {
+					@Override
+					public void run() {
+						handler.sendSlottedMessage(ANDROID_MESSAGE_TYPE_GAME_ADVANCED, slot) ;
+					}
+				} ;
+			}
+			
+			spectatorFeed = new SpectatorFeedThread() ;
+			playerFedFromSpectatorStream = new boolean[numPlayers] ;
 		}
 		
 		
@@ -336,9 +423,12 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	            		// Someone's connected!
 	            		playerWaitingSince[slot] = System.currentTimeMillis() ; 		// just in case
 	            		playerWaitingFor[slot] = false ;
-	            		// Welcome them.
+	            		// Welcome them.  They may be a different client than
+	            		// last time, so forget what they told us.
+	            		playerProtocolVersion[slot] = 0 ;
 	            		sendWelcomeMessages( slot ) ;
 	            		playerWelcomed[slot] = true ;
+	            		updateSpectatorFeed( slot ) ;
 	            		updateAndBroadcastGameStatus( false ) ;
 	            		break ;
 	            		
@@ -417,6 +507,10 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	            		handleIncomingMessage( gm, slot ) ;
 	            		break ;
 	            		
+	            	case ANDROID_MESSAGE_TYPE_GAME_ADVANCED:
+	            		handleGameAdvanced( slot ) ;
+	            		break ;
+	            		
 	            	case ANDROID_MESSAGE_TYPE_MPLAYER_DONE_RECEIVING_MESSAGES:
 	            	case ANDROID_MESSAGE_TYPE_DELAYED_HANDLE_CONNECTION_BROKE:
 	            	case ANDROID_MESSAGE_TYPE_DELAYED_HANDLE_CONNECTION_PEER_DISCONNECTED:
@@ -454,6 +548,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	            		playerWaitingSince[slot] = System.currentTimeMillis() ;
 	            		playerWaitingFor[slot] = true ;
 	            		playerWelcomed[slot] = false ;
+	            		updateSpectatorFeed( slot ) ;
 	            		// Tell the world.
 	            		updateAndBroadcastGameStatus(false) ;
 	            		
@@ -466,7 +561,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	            			// look for players whose games are advancing but
 	            			// have not given us an update in the allowed window.
 	            			for ( int player = 0; player < numPlayers; player++ ) {
-	            				if ( playerGame[player].stillPlaying() && !playerSpectating[player]
+	            				if ( playerStillPlaying[player] && !playerSpectating[player]
 	            						&& lastPlayerGameUpdateTime[player] + HUNG_PLAYER_MAX_DELAY < System.currentTimeMillis() ) {
 	            					// disconnect this player
 	            					//Log.d(TAG, "Disconnecting player " + player + " who appears to be hung.") ;
@@ -524,6 +619,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	        				playerWaitingFor[slot] = false ;
 	        				playerSpectating[slot] = true ;
 	        				playerQuit[slot] = true ;
+	        				updateSpectatorFeed( slot ) ;
 	        				
 	        				// player kicked and became a spectator.
 	        				tempMessage.setAsKick(slot, "") ;
@@ -542,10 +638,14 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	            }
 	        };
 	        
+	        spectatorFeed.start() ;
+	        
 	        /*
 	         * Start looping the message queue of this thread.
 	         */
 	        Looper.loop();
+	        
+	        spectatorFeed.finish() ;
 		}
 		
 		
@@ -585,6 +685,26 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 				}
 				break ;
 				
+			case GameMessage.TYPE_MOVE_QUEUE_SEQUENCED:
+			case GameMessage.TYPE_MOVE_QUEUE_REDUNDANT:
+				// As TYPE_MOVE_QUEUE, but the adapter discards actions it has
+				// already seen (redundant queues repeat recent actions).  Sequenced
+				// queues we drop must be noted as such, so a later redundant copy
+				// doesn't apply them after all.
+				boolean sequenced = m.getType() == GameMessage.TYPE_MOVE_QUEUE_SEQUENCED ;
+				int len = m.getMoveQueue(tempMoveQueue) ;
+				if ( gameStatus == STATUS_GO ) {
+					if ( playerActionAdapter[sender].communications_enqueueActions(tempMoveQueue, 0, len, m.getMoveQueueSeq(), sequenced) > 0 ) {
+						lastPlayerGameUpdateTime[sender] = System.currentTimeMillis() ;
+						advanceGame(sender) ;
+					} else if ( sequenced ) {
+						advanceGame(sender) ;
+					}
+				} else if ( sequenced ) {
+					playerActionAdapter[sender].communications_skipIncomingActions(m.getMoveQueueSeq(), len) ;
+				}
+				break ;
+				
 			case GameMessage.TYPE_PAUSE:
 				// This player wants to pause.  Good on them!
 				//System.out.println("GameCoordinator: received pause") ;
@@ -609,9 +729,17 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 				}
 				if ( playerActionAdapter[slot].communications_getMostRecentActionCycle(tempActionCycleStateDescriptor, false) ) {
 					tempMessage.setAsNextCycle(slot, playerActionCycleStatesGenerated[slot], tempActionCycleStateDescriptor) ;
+					tempMessage.setDescriptorsPacked( playerProtocolVersion[sender] >= GameMessage.PROTOCOL_VERSION_PACKED_DESCRIPTORS ) ;
 					mpLayer.connection(sender).sendMessage(tempMessage) ;
 				}
 				break ;
+				
+			case GameMessage.TYPE_PROTOCOL_VERSION:
+				// In reply to our welcome.  From now on we can send them
+				// anything up to this version.
+				playerProtocolVersion[sender] = Math.min( m.getProtocolVersion(), GameMessage.PROTOCOL_VERSION ) ;
+				updateSpectatorFeed( sender ) ;
+				break ;
 			
 			case GameMessage.TYPE_FULL_SYNCHRONIZATION_APPLIED:
 				//Log.v(TAG, "full sync applied by " + sender + " for game " + m.getPlayerSlot()) ;
@@ -638,6 +766,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 				playerWaitingFor[sender] = false ;
 				playerSpectating[sender] = true ;
 				playerQuit[sender] = true ;
+				updateSpectatorFeed( sender ) ;
 				boolean gameRunningAfter = !checkAndSendPlayerWonAndGameOver(false) ;
 				
 				// player quit and became a spectator.
@@ -651,12 +780,15 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 				break ;
 				
 			case GameMessage.TYPE_REALTIME_UPDATE:
-				// apply this realtime update to the appropriate game...
+				// apply this realtime update to the appropriate game, or
+				// hold it until the game is done advancing.
 				// Log.d(TAG, "received realtime displacement " + m.getDisplacedRows()) ;
-				playerGame[sender].setRealtimeMillisAndDisplacementSecondsAndDisplacedAndTransferredRows(
-						m.getMillisecondsTicked(),
-						m.getDisplacedSeconds(),
-						m.getDisplacedRows()) ;
+				playerRealtimeUpdatePending[sender] = true ;
+				playerRealtimeMillis[sender] = m.getMillisecondsTicked() ;
+				playerRealtimeDisplacedSeconds[sender] = m.getDisplacedSeconds() ;
+				playerRealtimeDisplacedRows[sender] = m.getDisplacedRows() ;
+				if ( !playerAdvancing[sender] )
+					applyPendingGameUpdates( sender ) ;
 				break ;
 				
 			default:
@@ -679,24 +811,34 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 		}
 		
 		/**
-		 * Calls 'tick' on the specified game and handles all the fallout
-		 * of this event, including sending status updates to all other players
-		 * if necessary.
+		 * Ticks the specified game on the simulation pool; once it has advanced,
+		 * handleGameAdvanced deals with the fallout, including sending status
+		 * updates to all other players if necessary.
+		 * 
+		 * If this game is already advancing, it will advance again as soon as
+		 * that completes.
 		 * 
 		 * @param slotNumber
 		 */
 		private void advanceGame( int slot ) {
+			if ( playerAdvancing[slot] ) {
+				playerAdvanceRequested[slot] = true ;
+				return ;
+			}
+			
 			// Check for game-over.
-			if ( !playerGame[slot].stillPlaying() ) {
+			recordGameState( slot ) ;
+			if ( !playerStillPlaying[slot] ) {
 				// This game is done.  If we didn't know that before,
 				// we might want to send an update.
 				if ( !playerGameOver[slot] ) {
 					Log.d(TAG, "advanceGame: slot " + slot + " does not have playerGameOver set, but is over") ;
 					playerGameOver[slot] = true ;
 					playerSpectating[slot] = true ;
+					updateSpectatorFeed( slot ) ;
 					// TODO: For > 2 players, we need cleverer win/loss examination.
 					// TODO: For victory conditions other than "your opponent lost", we need better examination.
-					if ( playerGame[slot].hasLost() ) {
+					if ( playerHasLost[slot] ) {
 						Log.d(TAG, "advanceGame: slot " + slot + " has lost") ;
 						// This player lost.
 						tempMessage.setAsPlayerLost( slot ) ;
@@ -714,126 +856,89 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 				return ;
 			}
 			
-			try {
-				//System.out.println("game " + slot + " ticking, state is " + playerGame[slot].s.state) ;
-				playerGame[slot].tick(0) ;
-				//System.out.println("game " + slot + " just ticked, state is " + playerGame[slot].s.state) ;
-			}
-			catch( Exception e ) {
-				e.printStackTrace() ;
-			}
+			playerAdvancing[slot] = true ;
+			playerAdvanceRequested[slot] = false ;
+			simulationPool.advance( playerGame[slot], playerAdvancedCallback[slot] ) ;
+		}
+		
+		
+		/**
+		 * The specified game has finished a tick on the simulation pool.  Sends
+		 * its outgoing moves, attacks and next cycle, checks for a loss, applies
+		 * anything held back during the tick, and advances it again if that was
+		 * requested in the meantime.
+		 * 
+		 * @param slot
+		 */
+		private void handleGameAdvanced( int slot ) {
+			playerAdvancing[slot] = false ;
+			recordGameState( slot ) ;
 			
 			// We have advanced.  Send out outgoing moves, if any.
+			// Players whose connections support unreliable messages get
+			// sequenced queues, each followed by an unreliable repeat of the
+			// last few; the rest get plain queues.
 			int len ;
+			long seq = playerActionAdapter[slot].communications_getOutgoingActionSequence() ;
 			while ( 0 < (len = playerActionAdapter[slot].communications_readOutgoingActionQueue(tempMoveQueue, 0, 1024))  ) {
-				// Broadcast this to all players - EXCEPT player i.
-				tempMessage.setAsMoveQueue(slot, tempMoveQueue, 0, len) ;
-				mpLayer.broadcastExcept( tempMessage, slot ) ;
+				// Send this to all players - EXCEPT player i.
+				boolean anySequenced = false ;
+				boolean anyPlain = false ;
+				for ( int i = 0; i < numPlayers; i++ ) {
+					boolean target = i != slot && mpLayer.connection(i).isActive() ;
+					tempPlayerBoolean[i] = target && mpLayer.supportsUnreliableMessages(i) ;
+					tempPlayerBooleanPlain[i] = target && !tempPlayerBoolean[i] ;
+					anySequenced = anySequenced || tempPlayerBoolean[i] ;
+					anyPlain = anyPlain || tempPlayerBooleanPlain[i] ;
+				}
+				
+				MoveQueueHistory history = playerMoveQueueHistory[slot] ;
+				history.record(seq, tempMoveQueue, 0, len) ;
+				if ( anySequenced ) {
+					tempMessage.setAsMoveQueueSequenced(slot, seq, tempMoveQueue, 0, len) ;
+					mpLayer.sendTo( tempMessage, tempPlayerBoolean ) ;
+					tempMessage.setAsMoveQueueRedundant(slot, history.getSeq(), history.getActions(), 0, history.getLength()) ;
+					mpLayer.sendUnreliablyTo( tempMessage, tempPlayerBoolean ) ;
+				}
+				if ( anyPlain ) {
+					tempMessage.setAsMoveQueue(slot, tempMoveQueue, 0, len) ;
+					mpLayer.sendTo( tempMessage, tempPlayerBooleanPlain ) ;
+				}
+				seq += len ;
 			}
 			
-			// Send out outgoing attacks, if any.
-			while ( playerActionAdapter[slot].communications_getNextOutgoingAttack(tempAttackDescriptor) ) {
-				int t ;
-				// Determine which players receive this attack.  Set tempPlayerBoolean
-				// to whether the indicated player (slot) is a target of this attack.
-				ArrayOps.setEmpty(tempPlayerBoolean) ;
-				switch( tempAttackDescriptor.target_code ) {
-				case AttackDescriptor.TARGET_INCOMING:
-					// self-target.
-					tempPlayerBoolean[slot] = true ;
-					break ;
-				case AttackDescriptor.TARGET_CYCLE_NEXT:
-					// next in line (rotate UP in player slot number)
-					// only affects players who are still in the game.
-					t = (slot + 1) % numPlayers ;
-					while ( t != slot && ( playerGameOver[t] || playerSpectating[t] ) ) {
-						t = (t + 1) % numPlayers ;
-					}
-					if ( t != slot ) {
-						tempPlayerBoolean[t] = true ;
-					}
-					break ;	
-				case AttackDescriptor.TARGET_CYCLE_PREVIOUS:
-					// prev in line (rotate DOWN in player slot number)
-					// only affects players who are still in the game.
-					t = slot == 0 ? numPlayers-1 : slot-1 ;
-					while ( t != slot && ( playerGameOver[t] || playerSpectating[t] ) ) {
-						t = t == 0 ? numPlayers-1 : t-1 ;
-					}
-					if ( t != slot ) {
-						tempPlayerBoolean[t] = true ;
-					}
-					break ;	
-				case AttackDescriptor.TARGET_ALL:
-					// targets all players, including the "creator."
-					for ( int i = 0; i < numPlayers; i++ ) {
-						tempPlayerBoolean[i] = !( playerGameOver[i] || playerSpectating[i] ) ;
-					}
-					break ;
-				case AttackDescriptor.TARGET_ALL_OTHERS:
-					// targets all players, except the "creator."
-					for ( int i = 0; i < numPlayers; i++ ) {
-						tempPlayerBoolean[i] = !( playerGameOver[i] || playerSpectating[i] ) && i != slot ;
-					}
+			// Send out outgoing attacks, if any.  We drain them all before
+			// routing, so that everyone hears of them, and each target queues
+			// them, in one batch.
+			int numAttacks = 0 ;
+			setActivePlayers( activePlayers ) ;
+			while ( true ) {
+				if ( numAttacks == attackBatch.length )
+					growAttackBatch() ;
+				AttackDescriptor ad = attackBatch[numAttacks] ;
+				if ( !playerActionAdapter[slot].communications_getNextOutgoingAttack(ad) )
 					break ;
-				case AttackDescriptor.TARGET_ALL_DIVIDED:
-					// targets all players, dividing the result among the total number.
-					t = 0 ;
-					for ( int i = 0; i < numPlayers; i++ ) {
-						if ( !( playerGameOver[i] || playerSpectating[i] ) ) {
-							t++ ;
-							tempPlayerBoolean[i] = true ;
-						}
-					}
-					// divide attack among 't' players
-					if ( t > 0 ) {
-						tempAttackDescriptor.divideAmong(t) ;
-					}
-					break ;
-				case AttackDescriptor.TARGET_ALL_OTHERS_DIVIDED:
-					// targets all players except the creator, dividing the result among the total number.
-					t = 0 ;
-					for ( int i = 0; i < numPlayers; i++ ) {
-						if ( !( playerGameOver[t] || playerSpectating[t] ) && i != slot ) {
-							t++ ;
-							tempPlayerBoolean[i] = true ;
-						}
-					}
-					// divide attack among 't' players
-					if ( t > 0 ) {
-						tempAttackDescriptor.divideAmong(t) ;
-					}
-					break ;
-				case AttackDescriptor.TARGET_UNSET:
-				default:
+				if ( ad.target_code == AttackDescriptor.TARGET_UNSET )
 					Log.d(TAG, "WARNING: attack descriptor target is UNSET.  Defaulting to TARGET_ALL_OTHERS.") ;
-					for ( int i = 0; i < numPlayers; i++ ) {
-						tempPlayerBoolean[i] = !( playerGameOver[i] || playerSpectating[i] ) && i != slot ;
-					}
-					break ;
-				}
-				
+				attackRouter.route( ad, slot, activePlayers, attackBatchTargets[numAttacks] ) ;
 				// make this an 'incoming attack.'
-				tempAttackDescriptor.target_code = AttackDescriptor.TARGET_INCOMING ;
-				
-				// For each attack target, send a message to ALL
-				// users that that player should be hit with this attack
-				// (note that Player A needs to know that an attack will
-				// soon hit Player B, to properly render things).
-				for ( int target = 0; target < numPlayers; target++ ) {
-					if ( tempPlayerBoolean[target] ) {
-						tempMessage.setAsIncomingAttack(target, tempAttackDescriptor) ;
-						// Send to all players: everyone needs to know.
-						mpLayer.broadcast( tempMessage ) ;
-					}
-				}
+				ad.target_code = AttackDescriptor.TARGET_INCOMING ;
+				numAttacks++ ;
+			}
+			if ( numAttacks > 0 ) {
+				broadcastAttacks( numAttacks ) ;
 				
-				// Perform local update: add this incoming attack to
-				// all targeted players.
-				for ( int target = 0; target < numPlayers; target++ ) {
-					if ( tempPlayerBoolean[target] ) {
-						playerActionAdapter[target].communications_addPendingAttacks(tempAttackDescriptor) ;
-					}
+				// Perform local update: add these incoming attacks to
+				// all targeted players, each in one step.
+				attackTargetsAny.clear() ;
+				for ( int i = 0; i < numAttacks; i++ )
+					attackTargetsAny.or( attackBatchTargets[i] ) ;
+				for ( int target = attackTargetsAny.nextSetBit(0); target >= 0; target = attackTargetsAny.nextSetBit(target+1) ) {
+					int num = 0 ;
+					for ( int i = 0; i < numAttacks; i++ )
+						if ( attackBatchTargets[i].get(target) )
+							attackBatchForTarget[num++] = attackBatch[i] ;
+					playerActionAdapter[target].communications_addPendingAttacks(attackBatchForTarget, num) ;
 				}
 			}
 			
@@ -851,7 +956,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 				} else {
 					tempMessage.setAsNextCycle(slot, playerActionCycleStatesGenerated[slot], tempActionCycleStateDescriptor) ;
 				}
-				mpLayer.broadcast( tempMessage ) ;
+				broadcastWithDescriptors( tempMessage ) ;
 				playerActionAdapter[slot].communications_setNextActionCycle(tempActionCycleStateDescriptor) ;
 				
 				// swap ACSD with temp so we have a record of this.
@@ -859,10 +964,17 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 				playerActionCycleState[slot] = tempActionCycleStateDescriptor ;
 				tempActionCycleStateDescriptor = tempACSD ;
 				playerActionCycleStateSet[slot] = true ;
+				
+				// Spectators read this on the feed thread; publishing only copies
+				// it, and only when someone is watching.
+				if ( spectatorStream.hasCursors() ) {
+					spectatorStream.publish(slot, playerActionCycleStatesGenerated[slot], playerActionCycleState[slot]) ;
+					spectatorFeed.wake() ;
+				}
 			}
 			
 			// Check whether we're about to lose.
-			if ( !playerGame[slot].stillPlaying() ) {
+			if ( !playerStillPlaying[slot] ) {
 				Log.d(TAG, "end of advanceGame: slot " + slot + " is not still playing.") ;
 				// This game is done.  If we didn't know that before,
 				// we might want to send an update.
@@ -870,6 +982,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 					Log.d(TAG, "advanceGame: slot " + slot + " does not have game over set") ;
 					playerGameOver[slot] = true ;
 					playerSpectating[slot] = true ;
+					updateSpectatorFeed( slot ) ;
 					
 					// This player lost.
 					tempMessage.setAsPlayerLost( slot ) ;
@@ -884,6 +997,74 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 					}
 				}
 			}
+			
+			applyPendingGameUpdates( slot ) ;
+			
+			if ( playerAdvanceRequested[slot] )
+				advanceGame(slot) ;
+		}
+		
+		
+		/**
+		 * Records the lost / still-playing state of the specified game, which
+		 * must not be advancing.
+		 * 
+		 * @param slot
+		 */
+		private void recordGameState( int slot ) {
+			playerHasLost[slot] = playerGame[slot].hasLost() ;
+			playerStillPlaying[slot] = playerGame[slot].stillPlaying() ;
+		}
+		
+		
+		/**
+		 * Applies the latest realtime update and sends the full synchronization,
+		 * if either was held back while the specified game advanced.  The game
+		 * must not be advancing.
+		 * 
+		 * @param slot
+		 */
+		private void applyPendingGameUpdates( int slot ) {
+			if ( playerRealtimeUpdatePending[slot] ) {
+				playerRealtimeUpdatePending[slot] = false ;
+				playerGame[slot].setRealtimeMillisAndDisplacementSecondsAndDisplacedAndTransferredRows(
+						playerRealtimeMillis[slot],
+						playerRealtimeDisplacedSeconds[slot],
+						playerRealtimeDisplacedRows[slot]) ;
+			}
+			if ( playerFullSynchronizationPending[slot] ) {
+				playerFullSynchronizationPending[slot] = false ;
+				// no longer needed if we have stopped synchronizing; we
+				// synchronize everyone anew if we start again.
+				if ( gameStatus == STATUS_SYNCHRONIZING )
+					sendFullSynchronization( slot ) ;
+			}
+		}
+		
+		
+		/**
+		 * Broadcasts a full synchronization of the specified game, which must not
+		 * be advancing.
+		 * 
+		 * @param regardingP
+		 */
+		private void sendFullSynchronization( int regardingP ) {
+			long syncID = r.nextLong() ;
+			// Self-apply an action cycle state, if one is available.  This prevents
+			// people from Syncing to a state which is frozen, waiting for another 
+			// content update.  It should also reduce the total amount of data sent.
+			if ( playerActionAdapter[regardingP].communications_getNextActionCycle(tempActionCycleStateDescriptor, true) ) {
+				playerActionAdapter[regardingP].communications_setNextActionCycle(tempActionCycleStateDescriptor) ;
+			}
+			// a full sync resets our cycle-state chain.
+			playerActionCycleStateSet[regardingP] = false ;
+			tempMessage.setAsFullSynchronization(regardingP, syncID, playerGame[regardingP]) ;
+			System.out.println("GameCoordinator: broadcasting sync message regarding " + regardingP) ;
+			mpLayer.broadcast(tempMessage) ;
+			System.out.println("GameCoordinator: did broadcast regarding " + regardingP) ;
+			for ( int toP = 0; toP < numPlayers; toP++ ) {
+				lastSentFullSynchronizationId[toP][regardingP] = syncID ;
+			}
 		}
 		
 		private boolean checkAndSendPlayerWonAndGameOver( boolean sendMessages ) {
@@ -914,13 +1095,13 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 			int aPlayerWhoDidNotLose = -1 ;
 			int numActive = 0 ; 
 			for ( int i = 0; i < numPlayers; i++ ) {
-				if ( !playerGame[i].hasLost() && !playerSpectating[i] ) {
+				if ( !playerHasLost[i] && !playerSpectating[i] ) {
 					numActive += 1 ;
 					aPlayerWhoDidNotLose = i ;
 				}
 			}
 			if ( ( numPlayers > 1 && numActive <= 1 )
-					|| ( numPlayers == 1 && !playerGame[0].stillPlaying() ) ) {
+					|| ( numPlayers == 1 && !playerStillPlaying[0] ) ) {
 				
 				if ( sendMessages ) {
 					if ( aPlayerWhoDidNotLose > -1 ) {
@@ -948,7 +1129,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 			int num = 0 ;
 			for ( int player = 0; player < numPlayers; player++ ) {
 				if ( !playerQuit[player] && !playerSpectating[player] && !playerGameOver[player] ) {
-					if ( playerGame[player].stillPlaying() ) {
+					if ( playerStillPlaying[player] ) {
 						num++ ;
 					}
 				}
@@ -997,6 +1178,127 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 		 * 
 		 * @param playerSlot
 		 */
+		/**
+		 * Broadcasts a TYPE_NEXT_CYCLE message: packed
+		 * to those players who told us they can read packed descriptors, and
+		 * fixed-width to the rest.  Each group shares a single encoding.
+		 * Spectators served by the feed are skipped.
+		 * 
+		 * @param m
+		 */
+		private void broadcastWithDescriptors( GameMessage m ) {
+			boolean anyPacked = false ;
+			boolean anyFixed = false ;
+			for ( int i = 0; i < numPlayers; i++ ) {
+				boolean target = mpLayer.connection(i).isActive() && !playerFedFromSpectatorStream[i] ;
+				tempPlayerBooleanPacked[i] = target
+						&& playerProtocolVersion[i] >= GameMessage.PROTOCOL_VERSION_PACKED_DESCRIPTORS ;
+				tempPlayerBooleanFixed[i] = target && !tempPlayerBooleanPacked[i] ;
+				anyPacked = anyPacked || tempPlayerBooleanPacked[i] ;
+				anyFixed = anyFixed || tempPlayerBooleanFixed[i] ;
+			}
+			
+			if ( anyPacked )
+				mpLayer.sendTo( m.setDescriptorsPacked(true), tempPlayerBooleanPacked ) ;
+			if ( anyFixed )
+				mpLayer.sendTo( m.setDescriptorsPacked(false), tempPlayerBooleanFixed ) ;
+		}
+		
+		
+		/**
+		 * Attaches the player to the spectator feed if they are a spectator
+		 * we have welcomed on a live connection, and detaches them otherwise.
+		 * Call whenever any of those changes.
+		 * 
+		 * @param slot
+		 */
+		private void updateSpectatorFeed( int slot ) {
+			boolean feed = playerSpectating[slot] && playerWelcomed[slot]
+					&& mpLayer.connection(slot).isActive() ;
+			if ( feed ) {
+				spectatorFeed.attach( slot,
+						playerProtocolVersion[slot] >= GameMessage.PROTOCOL_VERSION_PACKED_DESCRIPTORS ) ;
+			} else {
+				spectatorFeed.detach( slot ) ;
+			}
+			playerFedFromSpectatorStream[slot] = feed ;
+		}
+		
+		
+		/**
+		 * Sets 'active' to those players still in the game: neither over nor
+		 * spectating.
+		 * @param active
+		 */
+		private void setActivePlayers( BitSet active ) {
+			active.clear() ;
+			for ( int i = 0; i < numPlayers; i++ )
+				if ( !( playerGameOver[i] || playerSpectating[i] ) )
+					active.set(i) ;
+		}
+		
+		
+		private void growAttackBatch() {
+			int len = attackBatch.length ;
+			int newLen = Math.max( 4, len * 2 ) ;
+			AttackDescriptor [] batch = new AttackDescriptor[newLen] ;
+			BitSet [] targets = new BitSet[newLen] ;
+			System.arraycopy(attackBatch, 0, batch, 0, len) ;
+			System.arraycopy(attackBatchTargets, 0, targets, 0, len) ;
+			for ( int i = len; i < newLen; i++ ) {
+				batch[i] = new AttackDescriptor( playerGame[0].R(), playerGame[0].C() ) ;
+				targets[i] = new BitSet(numPlayers) ;
+			}
+			attackBatch = batch ;
+			attackBatchTargets = targets ;
+			attackBatchForTarget = new AttackDescriptor[newLen] ;
+		}
+		
+		
+		/**
+		 * Tells every player of the first 'num' attacks in attackBatch, and
+		 * their targets (everyone needs to know: Player A must know an attack
+		 * will soon hit Player B to render it properly).  Players who can read
+		 * them get one TYPE_INCOMING_ATTACK_TARGETS per attack; the rest get a
+		 * TYPE_INCOMING_ATTACK per attack and target.
+		 * 
+		 * @param num
+		 */
+		private void broadcastAttacks( int num ) {
+			boolean anyTargets = false ;
+			boolean anyPacked = false ;
+			boolean anyFixed = false ;
+			for ( int i = 0; i < numPlayers; i++ ) {
+				boolean target = mpLayer.connection(i).isActive() ;
+				int version = playerProtocolVersion[i] ;
+				tempPlayerBoolean[i] = target && version >= GameMessage.PROTOCOL_VERSION_ATTACK_TARGETS ;
+				tempPlayerBooleanPacked[i] = target && !tempPlayerBoolean[i]
+						&& version >= GameMessage.PROTOCOL_VERSION_PACKED_DESCRIPTORS ;
+				tempPlayerBooleanFixed[i] = target && version < GameMessage.PROTOCOL_VERSION_PACKED_DESCRIPTORS ;
+				anyTargets = anyTargets || tempPlayerBoolean[i] ;
+				anyPacked = anyPacked || tempPlayerBooleanPacked[i] ;
+				anyFixed = anyFixed || tempPlayerBooleanFixed[i] ;
+			}
+			
+			for ( int i = 0; i < num; i++ ) {
+				BitSet targets = attackBatchTargets[i] ;
+				if ( anyTargets ) {
+					tempMessage.setAsIncomingAttack(targets, attackBatch[i]) ;
+					mpLayer.sendTo( tempMessage.setDescriptorsPacked(true), tempPlayerBoolean ) ;
+				}
+				if ( anyPacked || anyFixed ) {
+					for ( int target = targets.nextSetBit(0); target >= 0; target = targets.nextSetBit(target+1) ) {
+						tempMessage.setAsIncomingAttack(target, attackBatch[i]) ;
+						if ( anyPacked )
+							mpLayer.sendTo( tempMessage.setDescriptorsPacked(true), tempPlayerBooleanPacked ) ;
+						if ( anyFixed )
+							mpLayer.sendTo( tempMessage.setDescriptorsPacked(false), tempPlayerBooleanFixed ) ;
+					}
+				}
+			}
+		}
+		
+		
 		private synchronized void sendWelcomeMessages( int playerSlot ) {
 			// New players are assumed to be non-synchronized.
 			for ( int i = 0; i < numPlayers; i++ )
@@ -1021,7 +1323,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 					playerMPC.sendMessage( tempMessage.setAsKickWarningRetraction(i) ) ;
 				}
 			}
-			playerMPC.sendMessage( tempMessage.setAsWelcomeToServer() ) ;
+			playerMPC.sendMessage( tempMessage.setAsWelcomeToServer( GameMessage.PROTOCOL_VERSION ) ) ;
 			
 			// Broadcast player name.
 			String name = playerMPC.getRemoteName() ;
@@ -1212,24 +1514,12 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 				startPauseTime = System.currentTimeMillis() ;
 			}
 			else if ( newStatus == GameCoordinator.STATUS_SYNCHRONIZING ) {
-				// Send sync messages!
+				// Send sync messages!  Games still advancing are sent theirs
+				// once they are done.
 				for ( int regardingP = 0; regardingP < numPlayers; regardingP++ ) {
-					long syncID = r.nextLong() ;
-					// Self-apply an action cycle state, if one is available.  This prevents
-					// people from Syncing to a state which is frozen, waiting for another 
-					// content update.  It should also reduce the total amount of data sent.
-					if ( playerActionAdapter[regardingP].communications_getNextActionCycle(tempActionCycleStateDescriptor, true) ) {
-						playerActionAdapter[regardingP].communications_setNextActionCycle(tempActionCycleStateDescriptor) ;
-					}
-					// a full sync resets our cycle-state chain.
-					playerActionCycleStateSet[regardingP] = false ;
-					tempMessage.setAsFullSynchronization(regardingP, syncID, playerGame[regardingP]) ;
-					System.out.println("GameCoordinator: broadcasting sync message regarding " + regardingP) ;
-					mpLayer.broadcast(tempMessage) ;
-					System.out.println("GameCoordinator: did broadcast regarding " + regardingP) ;
-					for ( int toP = 0; toP < numPlayers; toP++ ) {
-						lastSentFullSynchronizationId[toP][regardingP] = syncID ;
-					}
+					playerFullSynchronizationPending[regardingP] = playerAdvancing[regardingP] ;
+					if ( !playerAdvancing[regardingP] )
+						sendFullSynchronization( regardingP ) ;
 				}
 			}
 			else if ( newStatus == GameCoordinator.STATUS_GO ) {
@@ -1248,6 +1538,142 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	
 	
 	
+	/**
+	 * Sends spectators their TYPE_NEXT_CYCLE messages from the SpectatorStream.
+	 * 
+	 * The coordinator thread attaches and detaches spectators, and wakes us
+	 * after it publishes; everything else -- opening cursors, building
+	 * Updates, encoding and sending -- happens on this thread, so spectators
+	 * add nothing to the players' real-time path beyond the publish itself.
+	 * A spectator attached anew (e.g. after reconnecting) starts from a keyframe.
+	 * 
+	 * @author Jake
+	 *
+	 */
+	class SpectatorFeedThread extends Thread {
+		
+		private static final long MAX_WAIT = 1000 ;
+		
+		// Set by the coordinator thread.  Guarded by 'this'.
+		private boolean running ;
+		private boolean woken ;
+		private boolean [] attached ;
+		private boolean [] packed ;
+		private int [] generation ;
+		
+		// Ours alone.  cursors[i] is null for those not attached.
+		private SpectatorStream.Cursor [][] cursors ;
+		private int [] cursorGeneration ;
+		private boolean [] target ;
+		private GameMessage message ;
+		
+		public SpectatorFeedThread() {
+			running = true ;
+			woken = false ;
+			attached = new boolean[numPlayers] ;
+			packed = new boolean[numPlayers] ;
+			generation = new int[numPlayers] ;
+			
+			cursors = new SpectatorStream.Cursor[numPlayers][] ;
+			cursorGeneration = new int[numPlayers] ;
+			target = new boolean[numPlayers] ;
+			message = new GameMessage() ;
+		}
+		
+		synchronized void attach( int slot, boolean packedDescriptors ) {
+			if ( !attached[slot] ) {
+				attached[slot] = true ;
+				generation[slot]++ ;
+			}
+			packed[slot] = packedDescriptors ;
+			woken = true ;
+			notify() ;
+		}
+		
+		synchronized void detach( int slot ) {
+			if ( attached[slot] ) {
+				attached[slot] = false ;
+				generation[slot]++ ;
+				woken = true ;
+				notify() ;
+			}
+		}
+		
+		synchronized void wake() {
+			woken = true ;
+			notify() ;
+		}
+		
+		synchronized void finish() {
+			running = false ;
+			notify() ;
+		}
+		
+		@Override
+		public void run() {
+			boolean [] isAttached = new boolean[numPlayers] ;
+			boolean [] isPacked = new boolean[numPlayers] ;
+			int [] gen = new int[numPlayers] ;
+			
+			while ( true ) {
+				synchronized( this ) {
+					if ( running && !woken ) {
+						try {
+							wait( MAX_WAIT ) ;
+						} catch ( InterruptedException e ) {
+							e.printStackTrace() ;
+							running = false ;
+						}
+					}
+					if ( !running )
+						break ;
+					woken = false ;
+					for ( int i = 0; i < numPlayers; i++ ) {
+						isAttached[i] = attached[i] ;
+						isPacked[i] = packed[i] ;
+						gen[i] = generation[i] ;
+					}
+				}
+				
+				for ( int i = 0; i < numPlayers; i++ ) {
+					if ( gen[i] != cursorGeneration[i] ) {
+						closeCursors( i ) ;
+						if ( isAttached[i] )
+							openCursors( i ) ;
+						cursorGeneration[i] = gen[i] ;
+					}
+					if ( cursors[i] == null || !mpLayer.connection(i).isActive() )
+						continue ;
+					
+					target[i] = true ;
+					for ( int slot = 0; slot < numPlayers; slot++ ) {
+						while ( cursors[i][slot].next( message ) )
+							mpLayer.sendTo( message.setDescriptorsPacked(isPacked[i]), target ) ;
+					}
+					target[i] = false ;
+				}
+			}
+			
+			for ( int i = 0; i < numPlayers; i++ )
+				closeCursors( i ) ;
+		}
+		
+		private void openCursors( int spectator ) {
+			cursors[spectator] = new SpectatorStream.Cursor[numPlayers] ;
+			for ( int slot = 0; slot < numPlayers; slot++ )
+				cursors[spectator][slot] = spectatorStream.openCursor( slot ) ;
+		}
+		
+		private void closeCursors( int spectator ) {
+			if ( cursors[spectator] == null )
+				return ;
+			for ( int slot = 0; slot < numPlayers; slot++ )
+				cursors[spectator][slot].close() ;
+			cursors[spectator] = null ;
+		}
+	}
+	
+	
 	// Game status
 	int gameStatus ;
 	private static final int STATUS_WAITING = 0 ;
@@ -1275,6 +1701,9 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	long [] playerActionCycleStateTimeGeneratedOrSent ;
 	GameResult.Builder grBuilder ;
 	
+	// Every action cycle generated, as keyframes and deltas, for spectators.
+	SpectatorStream spectatorStream ;
+	
 	int numPlayers ;
 	int pseudorandom ;
 	
@@ -1318,6 +1747,7 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
         	playerGame[i].setGameEvents( playerGameEvents[i] ) ;
         	playerGame[i].setSystemsFromSerializables(null) ;
         	playerGame[i].setPseudorandom(pseudorandom) ;
+        	playerGame[i].setHeadless(true) ;			// No one is animating these.
         	
         	playerGame[i].makeReady() ;
         	playerGame[i].finalizeConfiguration() ;
@@ -1337,6 +1767,8 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
         	playerActionCycleStateTimeGeneratedOrSent[i] = 0 ;
 		}
 		
+		spectatorStream = new SpectatorStream( numPlayers ) ;
+		
 		gameStatus = GameCoordinator.STATUS_WAITING ;
 		
 		thread = null ;
@@ -1371,6 +1803,21 @@ public class GameCoordinator implements MessagePassingLayer.Delegate {
 	}
 	
 	
+	/**
+	 * Returns the stream of action cycles generated for each player, for
+	 * serving spectators.  We serve our own spectating players from it.
+	 * Others may open a SpectatorStream.Cursor per spectator and watched slot,
+	 * and read from it on any thread other than ours: doing so never blocks
+	 * or slows the players' games.  Close cursors when done; the stream
+	 * records nothing while none are open.
+	 * 
+	 * @return
+	 */
+	public SpectatorStream getSpectatorStream() {
+		return spectatorStream ;
+	}
+	
+	
 	public synchronized void start() throws IllegalStateException {
 		if ( thread != null && thread.isAlive() )
 			throw new IllegalStateException("Can't start if currently running!") ;
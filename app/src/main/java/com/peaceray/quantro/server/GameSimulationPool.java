@@ -0,0 +1,97 @@
+package com.peaceray.quantro.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.peaceray.quantro.model.game.Game;
+
+
+/**
+ * A pool of worker threads on which GameCoordinators advance their
+ * canonical Games.
+ *
+ * Each GameCoordinator re-simulates every player's action cycles from the
+ * move queues they send; before this pool, it did so on its own thread, one
+ * player at a time, and a host running several lobbies did so on as many
+ * threads (all competing for the same cores).  With the pool, a coordinator
+ * thread handles messages and fallout only, and Game.tick() calls from all
+ * coordinators in the process share one set of workers sized to the device.
+ *
+ * The pool makes no ordering promises.  Callers must not advance a Game
+ * again before they have been told that the previous advance completed,
+ * and must not read the Game's ActionAdapter outgoing queues in the
+ * meantime.
+ *
+ * @author Jake
+ *
+ */
+public class GameSimulationPool {
+
+	private static GameSimulationPool sShared ;
+
+	/**
+	 * Returns the process-wide pool, creating it if necessary, with one worker
+	 * per available processor.
+	 * @return
+	 */
+	public static synchronized GameSimulationPool shared() {
+		if ( sShared == null )
+			sShared = new GameSimulationPool( Runtime.getRuntime().availableProcessors() ) ;
+		return sShared ;
+	}
+
+
+	private ExecutorService mExecutor ;
+
+	public GameSimulationPool( int numThreads ) {
+		if ( numThreads < 1 )
+			throw new IllegalArgumentException("Must have at least 1 thread") ;
+
+		final AtomicInteger threadNumber = new AtomicInteger(0) ;
+		mExecutor = Executors.newFixedThreadPool( numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "GameSimulationPool-" + threadNumber.getAndIncrement()) ;
+				// Workers hold no state of their own; never keep the process alive.
+				t.setDaemon(true) ;
+				return t ;
+			}
+		}) ;
+	}
+
+
+	/**
+	 * Ticks the provided game, by 0 seconds, on a worker thread: i.e., applies
+	 * every queued action its ActionAdapter allows.  Once the tick is complete
+	 * (or has thrown), 'onAdvanced' is run on that same worker; it should do
+	 * no more than hand the result back to the caller's thread.
+	 *
+	 * @param game
+	 * @param onAdvanced
+	 */
+	public void advance( final Game game, final Runnable onAdvanced ) {
+		mExecutor.execute( new Runnable() {
+			@Override
+			public void run() {
+				try {
+					game.tick(0) ;
+				} catch ( Exception e ) {
+					e.printStackTrace() ;
+				} finally {
+					onAdvanced.run() ;
+				}
+			}
+		}) ;
+	}
+
+
+	/**
+	 * Stops accepting games.  Advances already submitted will complete.
+	 */
+	public void shutdown() {
+		mExecutor.shutdown() ;
+	}
+
+}
@@ -5,8 +5,9 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.concurrent.ScheduledFuture;
 
-import com.peaceray.quantro.communications.HttpURLConnectionInterruptThread;
+import com.peaceray.quantro.communications.web.WebQueryEngine;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
@@ -139,15 +140,16 @@ public class AppVersion {
 		
 		HttpURLConnection conn = null ;
 		BufferedReader rd = null ;
+		ScheduledFuture<?> deadline = null ;
 		try {
 			URL url = new URL(MIN_VERSION_CODE_URL);
 			conn = (HttpURLConnection) url.openConnection();
 		    conn.setConnectTimeout(timeout) ;
 		    conn.setReadTimeout(timeout) ;
 		    conn.setDoOutput(true);
+		    // the shared timer disconnects us if we take too long.
+		    deadline = WebQueryEngine.shared().scheduleDeadline( conn, timeout ) ;
 		    conn.connect() ;
-		    // wrap a interrupt thread
-		    new HttpURLConnectionInterruptThread( conn, timeout ).start() ;
 		    
 		    // Get the version code
 		    rd = new BufferedReader(new InputStreamReader(conn.getInputStream()));
@@ -164,6 +166,8 @@ public class AppVersion {
 			e.printStackTrace();
 			return -1 ;
 		} finally {
+			if ( deadline != null )
+				deadline.cancel(false) ;
 			try {
 				conn.disconnect() ;
 			} catch ( Exception e ) { }
@@ -187,7 +187,7 @@ public class FreePlayGameLaunchButtonCollage extends QuantroButtonCollage implem
 	// Defines our content
 	private int mGameMode ;
 	private boolean mHasSave ;
-	private GameResult mGameResult ;
+	private GameResult.Summary mGameResult ;
 	private OptionAvailability  mAvailability ;
 	
 	private ColorScheme mColorScheme ;
@@ -262,7 +262,7 @@ public class FreePlayGameLaunchButtonCollage extends QuantroButtonCollage implem
 	private boolean refresh_last_hasSave = false ;
 	private int refresh_last_gameMode = -1 ;
 	private Bitmap refresh_last_gameResultThumbnail = null ;
-	public void refresh(GameResult gr, boolean hasSave) {
+	public void refresh(GameResult.Summary gr, boolean hasSave) {
 		//Log.d(TAG, "refresh.  game mode " + mGameMode + " from previous " + refresh_last_gameMode) ;
 		//long time = System.currentTimeMillis() ;
 		// Determine if the content changed.  If so, call super.refresh.
@@ -127,7 +127,7 @@ public class SinglePlayerGameLaunchButtonStrip extends QuantroButtonStrip
 	protected int mGameMode ;
 	protected boolean mHasSave ;
 	protected boolean mFirstGameIsMain ;
-	protected GameResult mGameResult ;
+	protected GameResult.Summary mGameResult ;
 	
 	protected OptionAvailability mAvailability ;
 	
@@ -284,7 +284,7 @@ public class SinglePlayerGameLaunchButtonStrip extends QuantroButtonStrip
 	}
 	
 	private boolean refresh_last_hasSave = false ;
-	public void refresh(GameResult gr, boolean hasSave) {
+	public void refresh(GameResult.Summary gr, boolean hasSave) {
 		// Determine if the content changed.  If so, call super.refresh.
 		boolean changed = false ;
 		
@@ -438,7 +438,7 @@ public class SinglePlayerGameLaunchButtonStrip extends QuantroButtonStrip
 	 * @param gr
 	 * @return
 	 */
-	private boolean setButtonContent( int buttonIndex, int buttonType, GameResult gr ) {
+	private boolean setButtonContent( int buttonIndex, int buttonType, GameResult.Summary gr ) {
 		// We use TextFormatting to load and format strings with the appropriate info
 		// inserted.  Then, searching the button's content view by Tag for the appropriate
 		// view, we insert that value (if a view for it is found).
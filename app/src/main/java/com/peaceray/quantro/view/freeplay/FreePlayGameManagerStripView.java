@@ -125,7 +125,7 @@ public class FreePlayGameManagerStripView extends RelativeLayout
 		
 		// Okay.  Allocate our ArrayLists and ArrayAdapters.
 		mSinglePlayerGameModes = new ArrayList<Integer>() ;
-		mSinglePlayerGameResults = new ArrayList<GameResult>() ;
+		mSinglePlayerGameResults = new ArrayList<GameResult.Summary>() ;
 		mSinglePlayerGameHasSave = new ArrayList<Boolean>() ;
 		mAvailability = new Hashtable<Integer, OptionAvailability>() ;
 		// if we only support BLIT NONE as our draw settings, we
@@ -234,7 +234,7 @@ public class FreePlayGameManagerStripView extends RelativeLayout
 	// Array adapter
 	private Object mGameModeMutex = new Object() ;
 	private ArrayList<Integer> mSinglePlayerGameModes ;
-	private ArrayList<GameResult> mSinglePlayerGameResults ;
+	private ArrayList<GameResult.Summary> mSinglePlayerGameResults ;
 	private ArrayList<Boolean> mSinglePlayerGameHasSave ;
 	private Hashtable<Integer, OptionAvailability> mAvailability ;
 	private FreePlayGameLaunchButtonCollageAdapter mFreePlayGameLaunchButtonCollageAdapter ;
@@ -395,7 +395,7 @@ public class FreePlayGameManagerStripView extends RelativeLayout
 	}
 
 	@Override
-	public void setGames(int[] gameModes, OptionAvailability [] availability, GameResult[] gameResults ) {
+	public void setGames(int[] gameModes, OptionAvailability [] availability, GameResult.Summary[] gameResults ) {
 		synchronized ( mGameModeMutex ) {
 			mSinglePlayerGameModes.clear() ;
 			mSinglePlayerGameResults.clear() ;
@@ -423,7 +423,7 @@ public class FreePlayGameManagerStripView extends RelativeLayout
 	}
 
 	@Override
-	public void setGameResult(int gameMode, GameResult gr) {
+	public void setGameResult(int gameMode, GameResult.Summary gr) {
 		boolean inserted = false ;
 		synchronized ( mGameModeMutex ) {
 			mSinglePlayerThumnbailCache.remove(Integer.valueOf(gameMode)) ;
@@ -465,7 +465,7 @@ public class FreePlayGameManagerStripView extends RelativeLayout
 	
 
 	@Override
-	public void addGame(int gameMode, OptionAvailability availability, GameResult gr) {
+	public void addGame(int gameMode, OptionAvailability availability, GameResult.Summary gr) {
 		boolean inserted = false ;
 		synchronized ( mGameModeMutex ) {
 			int index = findInsertionPosition( gameMode ) ;
@@ -919,7 +919,7 @@ public class FreePlayGameManagerStripView extends RelativeLayout
 		/**
 		 * Adds the specified object at the end of the array.
 		 */
-		synchronized public void add(Integer obj, GameResult gr, Boolean hasSave) {
+		synchronized public void add(Integer obj, GameResult.Summary gr, Boolean hasSave) {
 			
 			gameModes.add(obj) ;
 			gameResults.add(gr) ;
@@ -931,7 +931,7 @@ public class FreePlayGameManagerStripView extends RelativeLayout
 		}
 		
 		
-		synchronized public void update( Integer obj, GameResult gr, Boolean hasSave ) {
+		synchronized public void update( Integer obj, GameResult.Summary gr, Boolean hasSave ) {
 			
 			if ( gameModes.contains(obj) ) {
 				gameResults.set( gameModes.indexOf(obj), gr ) ;
@@ -949,7 +949,7 @@ public class FreePlayGameManagerStripView extends RelativeLayout
 		}
 		
 		
-		synchronized public void insert( Integer obj, GameResult gr, Boolean hasSave, int index ) {
+		synchronized public void insert( Integer obj, GameResult.Summary gr, Boolean hasSave, int index ) {
 			gameModes.add(index, obj) ;
 			gameResults.add(index, gr) ;
 			gameHasSave.add(index, hasSave) ;
@@ -975,7 +975,7 @@ public class FreePlayGameManagerStripView extends RelativeLayout
 
 
 		ArrayList<Integer> gameModes = new ArrayList<Integer>() ;
-    	ArrayList<GameResult> gameResults = new ArrayList<GameResult>() ;
+    	ArrayList<GameResult.Summary> gameResults = new ArrayList<GameResult.Summary>() ;
     	ArrayList<Boolean> gameHasSave = new ArrayList<Boolean>() ;
     	private SinglePlayerGameModeIndexer mIndexer ;
     	
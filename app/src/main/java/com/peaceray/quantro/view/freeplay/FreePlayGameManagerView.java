@@ -154,7 +154,7 @@ public interface FreePlayGameManagerView {
 	 * 
 	 * Can be called from any thread.
 	 */
-	public void setGames( int [] gameModes, OptionAvailability [] availability, GameResult [] gameResults ) ;
+	public void setGames( int [] gameModes, OptionAvailability [] availability, GameResult.Summary [] gameResults ) ;
 	
 	
 	/**
@@ -166,7 +166,7 @@ public interface FreePlayGameManagerView {
 	 * @param gameMode
 	 * @param gr
 	 */
-	public void setGameResult( int gameMode, GameResult gr ) ;
+	public void setGameResult( int gameMode, GameResult.Summary gr ) ;
 	
 	
 	/**
@@ -196,7 +196,7 @@ public interface FreePlayGameManagerView {
 	 * @param gameMode
 	 * @param gr
 	 */
-	public void addGame( int gameMode, OptionAvailability availability, GameResult gr ) ;
+	public void addGame( int gameMode, OptionAvailability availability, GameResult.Summary gr ) ;
 	
 	
 	/**
@@ -1,5 +1,7 @@
 package com.peaceray.quantro.view.game;
 
+import java.util.Arrays;
+
 import android.graphics.Bitmap;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
@@ -166,8 +168,9 @@ public abstract class PauseViewComponentAdapter {
 	protected boolean mLocalPause ;
 	protected int mThisPlayer ;
 	
-	protected boolean [] mPlayerKickWarning = new boolean[8] ;
-	protected long [] mPlayerKickTime = new long[8] ;
+	// Sized by player count; grown (never shrunk) as needed.
+	protected boolean [] mPlayerKickWarning = new boolean[0] ;
+	protected long [] mPlayerKickTime = new long[0] ;
 	
 	// How do we know where to place piece descriptions?
 	protected Rect mNextPieceRegion ;
@@ -221,6 +224,7 @@ public abstract class PauseViewComponentAdapter {
 	
 	public void setNumberOfPlayers( int number ) {
 		mNumberOfPlayers = number ;
+		ensurePlayerSlots( number ) ;
 		didChange() ;
 	}
 	
@@ -270,12 +274,21 @@ public abstract class PauseViewComponentAdapter {
 	}
 	
 	public void setPlayerKickWarning( boolean warn, int slot, long kickAt ) {
+		ensurePlayerSlots( slot + 1 ) ;
 		mPlayerKickWarning[slot] = warn ;
 		mPlayerKickTime[slot] = kickAt ;
 		if ( mState == STATE_WAITING )
 			didChange() ;
 	}
 	
+	private void ensurePlayerSlots( int slots ) {
+		if ( mPlayerKickWarning.length >= slots )
+			return ;
+		// times first: readers bound their loops by mPlayerKickWarning.
+		mPlayerKickTime = Arrays.copyOf( mPlayerKickTime, slots ) ;
+		mPlayerKickWarning = Arrays.copyOf( mPlayerKickWarning, slots ) ;
+	}
+	
 	// Helpful junk
 	public void setStateConnecting() {
 		setState( STATE_CONNECTING ) ;
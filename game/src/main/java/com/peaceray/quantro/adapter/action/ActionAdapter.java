@@ -511,6 +511,23 @@ public abstract class ActionAdapter {
 	public abstract void game_didChangeRealtime( Game game, long millisecondsTicked, double displacementSeconds, double rowsDisplacedAndTransferred ) ;
 	
 	
+	/**
+	 * A headless Game (see Game.setHeadless) brackets each tick with these
+	 * calls.  Between them, the game_did* notifications above may arrive in
+	 * the dozens; an adapter is free to coalesce whatever it passes on about
+	 * them, so long as it does so by the time game_endNotificationBatch
+	 * returns.  Whatever the adapter records about the game (e.g. its
+	 * outgoing action queue) must be unaffected.
+	 * 
+	 * The default implementations do nothing.
+	 * 
+	 * @param game
+	 */
+	public void game_beginNotificationBatch( Game game ) { }
+	
+	public void game_endNotificationBatch( Game game ) { }
+	
+	
 	//////////////////////////////////////////////////////////////
 	//
 	// Updates from a communications layer
@@ -540,6 +557,36 @@ public abstract class ActionAdapter {
 	 */
 	public abstract void communications_enqueueActions( byte [] moveQ, int index, int length ) ;
 	
+	/**
+	 * As communications_enqueueActions, for a queue of actions numbered by their
+	 * sender (see communications_getOutgoingActionSequence); the first action has
+	 * sequence number 'seq'.  Actions we have already enqueued are skipped, so
+	 * the same actions may be safely received more than once.
+	 * 
+	 * 'reliable' queues must arrive exactly once and in order (a gap means the
+	 * sender discarded those actions).  Other queues -- redundant copies sent
+	 * unreliably -- are applied only if they continue directly from what we
+	 * have already received.
+	 * 
+	 * @param moveQ
+	 * @param index
+	 * @param length
+	 * @param seq
+	 * @param reliable
+	 * @return The number of actions enqueued.
+	 */
+	public abstract int communications_enqueueActions( byte [] moveQ, int index, int length, long seq, boolean reliable ) ;
+	
+	/**
+	 * Notes the receipt of a reliable, sequenced queue of 'length' actions
+	 * beginning at 'seq', without enqueueing them: they have been deliberately
+	 * dropped, and later redundant copies should not enqueue them either.
+	 * 
+	 * @param seq
+	 * @param length
+	 */
+	public abstract void communications_skipIncomingActions( long seq, int length ) ;
+	
 	
 	/**
 	 * Removes all pending actions in the queue.  This method is
@@ -564,6 +611,20 @@ public abstract class ActionAdapter {
 	 */
 	public abstract void communications_addPendingAttacks( AttackDescriptor attackDescriptor ) ;
 	
+	/**
+	 * Adds the first 'num' of these attack descriptors, in order, to the list
+	 * of those pending.  Equivalent to calling communications_addPendingAttacks
+	 * for each, which is what this default implementation does; subclasses
+	 * may add them in one step.
+	 * 
+	 * @param attackDescriptors
+	 * @param num
+	 */
+	public void communications_addPendingAttacks( AttackDescriptor [] attackDescriptors, int num ) {
+		for ( int i = 0; i < num; i++ )
+			communications_addPendingAttacks( attackDescriptors[i] ) ;
+	}
+	
 	/**
 	 * The ActionCycleStateDescriptor includes, as an optional field, a complete
 	 * list of all pending attacks.  It also indicates whether the next queued
@@ -670,6 +731,15 @@ public abstract class ActionAdapter {
 	 */
 	public abstract int communications_getOutgoingActionQueueLength() ;
 	
+	/**
+	 * Every action read by communications_readOutgoingActionQueue (including those
+	 * skipped by reading into 'null') is given a sequence number, counting up
+	 * from 0.  Returns the sequence number the next action read will have.
+	 * 
+	 * @return
+	 */
+	public abstract long communications_getOutgoingActionSequence() ;
+	
 	
 	//////////////////////////////////////////////////////////////
 	//
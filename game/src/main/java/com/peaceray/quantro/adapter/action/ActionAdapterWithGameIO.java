@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import com.peaceray.quantro.model.descriptors.versioned.ActionCycleStateDescriptor;
 import com.peaceray.quantro.model.descriptors.versioned.AttackDescriptor;
 import com.peaceray.quantro.model.game.Game;
+import com.peaceray.quantro.utils.ByteRingBuffer;
 
 public class ActionAdapterWithGameIO extends ActionAdapter {
 	
@@ -33,19 +34,37 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 		// we will probably reach that state very rapidly.
 	
 	// Here are places to store these values.
-	byte [] incomingActionQueue ;
-	int numIncomingActions ;
-	boolean slidingLeft ;
-	boolean slidingRight ;
-	boolean fastFalling ;
-	boolean fastFallingJustStarted ;
-	boolean fastFallAutoLock ;
-	
-	boolean slideLeftOnce ;
-	boolean slideRightOnce ;
-	
-	byte [] outgoingActionQueue ;
-	int numOutgoingActions ;
+	// The action queues are single-producer, single-consumer rings:
+	// incoming is written by controls (or communications) and read by the
+	// game thread; outgoing is written by the game thread and read by
+	// communications.  Neither touches this object's monitor.
+	ByteRingBuffer incomingActionQueue ;
+	volatile boolean slidingLeft ;
+	volatile boolean slidingRight ;
+	volatile boolean fastFalling ;
+	volatile boolean fastFallingJustStarted ;
+	volatile boolean fastFallAutoLock ;
+	
+	volatile boolean slideLeftOnce ;
+	volatile boolean slideRightOnce ;
+	
+	ByteRingBuffer outgoingActionQueue ;
+	
+	// Notification batching (see game_beginNotificationBatch), touched only
+	// by the game thread.  While batching, we tell the GAL about enqueued
+	// actions only at the end of each action cycle and of the batch.
+	boolean batchingNotifications ;
+	boolean batchedEnqueueNotification ;
+	
+	// Sequence numbers for actions through the communications layer, all
+	// touched only by the communications thread.  Outgoing: the number of the
+	// next action read.  Incoming: the number of the next action expected, and
+	// the end of the last reliable queue.  Until a reliable sequenced queue
+	// arrives (or after an unsequenced one) we cannot place redundant queues.
+	long outgoingActionSeq ;
+	long incomingActionSeq ;
+	long incomingReliableActionSeq ;
+	boolean incomingActionSeqValid ;
 	
 	RealtimeData realtimeData ;
 	
@@ -75,8 +94,7 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 		shouldTick = true ;
 		dequeueActionsDiscards = true ;
 		
-		incomingActionQueue = new byte[QUEUE_SIZE] ;
-		numIncomingActions = 0 ;
+		incomingActionQueue = new ByteRingBuffer(QUEUE_SIZE) ;
 		slidingLeft = false ;
 		slidingRight = false ;
 		slideLeftOnce = false ;
@@ -85,8 +103,11 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 		fastFalling = false ;
 		fastFallingJustStarted = false ;
 		
-		outgoingActionQueue = new byte[QUEUE_SIZE];
-		numOutgoingActions = 0 ;
+		outgoingActionQueue = new ByteRingBuffer(QUEUE_SIZE) ;
+		outgoingActionSeq = 0 ;
+		incomingActionSeq = 0 ;
+		incomingReliableActionSeq = 0 ;
+		incomingActionSeqValid = false ;
 		
 		realtimeData = new RealtimeData() ;
 		
@@ -120,13 +141,13 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 	// since they were set for a now-incorrect game state.
 	
 	public synchronized void emptyActionQueues() {
-		numIncomingActions = 0 ;
-		numOutgoingActions = 0 ;
+		incomingActionQueue.clear() ;
+		outgoingActionQueue.clear() ;
 	}
 	
 	public synchronized void emptyAllQueues() {
-		numIncomingActions = 0 ;
-		numOutgoingActions = 0 ;
+		incomingActionQueue.clear() ;
+		outgoingActionQueue.clear() ;
 		
 		numOutgoingAttacks = 0 ;
 		numIncomingAttacks = 0 ;
@@ -136,224 +157,235 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 		outgoingActionCycleStatePending = false ;
 	}
 	
-	// Queueing incoming/outgoing actions
-	protected void enqueue_move( int moveDirection, byte [] q, int index ) {
+	// Queueing incoming/outgoing actions.  A full queue is an error: dropping
+	// an action (especially END_ACTION_CYCLE) would desynchronize the game.
+	private static void offerOrThrow( ByteRingBuffer q, byte code ) {
+		if ( !q.offer(code) )
+			throw new IllegalStateException("Action queue is full (" + q.capacity() + " bytes)") ;
+	}
+	
+	private static void ensureCapacity( ByteRingBuffer q, int length ) {
+		if ( length > q.remainingCapacity() )
+			throw new IllegalStateException("Action queue has room for " + q.remainingCapacity() + " of " + length + " actions") ;
+	}
+	
+	protected void enqueue_move( int moveDirection, ByteRingBuffer q ) {
 		switch( moveDirection ) {
 		case MOVE_DIRECTION_LEFT:
-			q[index] = CODE_MOVE_LEFT;
+			offerOrThrow(q, CODE_MOVE_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_RIGHT:
-			q[index] = CODE_MOVE_RIGHT;
+			offerOrThrow(q, CODE_MOVE_RIGHT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN:
-			q[index] = CODE_DROP;
+			offerOrThrow(q, CODE_DROP) ;
 			break ;
 		}
 	}
-	protected void enqueueIncoming_move( int moveDirection ) { enqueue_move( moveDirection, incomingActionQueue, numIncomingActions++ ) ; }
-	protected void enqueueOutgoing_move( int moveDirection ) { enqueue_move( moveDirection, outgoingActionQueue, numOutgoingActions++ ) ; }
+	protected void enqueueIncoming_move( int moveDirection ) { enqueue_move( moveDirection, incomingActionQueue ) ; }
+	protected void enqueueOutgoing_move( int moveDirection ) { enqueue_move( moveDirection, outgoingActionQueue ) ; }
 	
-	protected void enqueue_turnCW(int moveDirection, byte [] q, int index) {
+	protected void enqueue_turnCW(int moveDirection, ByteRingBuffer q) {
 		switch( moveDirection ) {
 		case MOVE_DIRECTION_NONE:
-			q[index] = CODE_TURN_CW;
+			offerOrThrow(q, CODE_TURN_CW) ;
 			break ;
 		case MOVE_DIRECTION_LEFT:
-			q[index] = CODE_TURN_CW_LEAN_LEFT;
+			offerOrThrow(q, CODE_TURN_CW_LEAN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_RIGHT:
-			q[index] = CODE_TURN_CW_LEAN_RIGHT;
+			offerOrThrow(q, CODE_TURN_CW_LEAN_RIGHT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN:
-			q[index] = CODE_TURN_CW_LEAN_DOWN;
+			offerOrThrow(q, CODE_TURN_CW_LEAN_DOWN) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_LEFT:
-			q[index] = CODE_TURN_CW_LEAN_DOWN_LEFT;
+			offerOrThrow(q, CODE_TURN_CW_LEAN_DOWN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_RIGHT:
-			q[index] = CODE_TURN_CW_LEAN_DOWN_RIGHT;
+			offerOrThrow(q, CODE_TURN_CW_LEAN_DOWN_RIGHT) ;
 			break ;
 		}
 	}
-	protected void enqueueIncoming_turnCW(int moveDirection) { enqueue_turnCW( moveDirection, incomingActionQueue, numIncomingActions++ ) ; }
-	protected void enqueueOutgoing_turnCW(int moveDirection) { enqueue_turnCW( moveDirection, outgoingActionQueue, numOutgoingActions++ ) ; }
+	protected void enqueueIncoming_turnCW(int moveDirection) { enqueue_turnCW( moveDirection, incomingActionQueue ) ; }
+	protected void enqueueOutgoing_turnCW(int moveDirection) { enqueue_turnCW( moveDirection, outgoingActionQueue ) ; }
 	
-	protected void enqueue_turnCCW(int moveDirection, byte [] q, int index) {
+	protected void enqueue_turnCCW(int moveDirection, ByteRingBuffer q) {
 		switch( moveDirection ) {
 		case MOVE_DIRECTION_NONE:
-			q[index] = CODE_TURN_CCW;
+			offerOrThrow(q, CODE_TURN_CCW) ;
 			break ;
 		case MOVE_DIRECTION_LEFT:
-			q[index] = CODE_TURN_CCW_LEAN_LEFT;
+			offerOrThrow(q, CODE_TURN_CCW_LEAN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_RIGHT:
-			q[index] = CODE_TURN_CCW_LEAN_RIGHT;
+			offerOrThrow(q, CODE_TURN_CCW_LEAN_RIGHT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN:
-			q[index] = CODE_TURN_CCW_LEAN_DOWN;
+			offerOrThrow(q, CODE_TURN_CCW_LEAN_DOWN) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_LEFT:
-			q[index] = CODE_TURN_CCW_LEAN_DOWN_LEFT;
+			offerOrThrow(q, CODE_TURN_CCW_LEAN_DOWN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_RIGHT:
-			q[index] = CODE_TURN_CCW_LEAN_DOWN_RIGHT;
+			offerOrThrow(q, CODE_TURN_CCW_LEAN_DOWN_RIGHT) ;
 			break ;
 		}
 	}
-	protected void enqueueIncoming_turnCCW(int moveDirection) { enqueue_turnCCW( moveDirection, incomingActionQueue, numIncomingActions++ ) ; }
-	protected void enqueueOutgoing_turnCCW(int moveDirection) { enqueue_turnCCW( moveDirection, outgoingActionQueue, numOutgoingActions++ ) ; }
+	protected void enqueueIncoming_turnCCW(int moveDirection) { enqueue_turnCCW( moveDirection, incomingActionQueue ) ; }
+	protected void enqueueOutgoing_turnCCW(int moveDirection) { enqueue_turnCCW( moveDirection, outgoingActionQueue ) ; }
 	
-	protected void enqueue_turnCW180(int moveDirection, byte [] q, int index) {
+	protected void enqueue_turnCW180(int moveDirection, ByteRingBuffer q) {
 		switch( moveDirection ) {
 		case MOVE_DIRECTION_NONE:
-			q[index] = CODE_TURN_CW_180;
+			offerOrThrow(q, CODE_TURN_CW_180) ;
 			break ;
 		case MOVE_DIRECTION_LEFT:
-			q[index] = CODE_TURN_CW_180_LEAN_LEFT;
+			offerOrThrow(q, CODE_TURN_CW_180_LEAN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_RIGHT:
-			q[index] = CODE_TURN_CW_180_LEAN_RIGHT;
+			offerOrThrow(q, CODE_TURN_CW_180_LEAN_RIGHT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN:
-			q[index] = CODE_TURN_CW_180_LEAN_DOWN;
+			offerOrThrow(q, CODE_TURN_CW_180_LEAN_DOWN) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_LEFT:
-			q[index] = CODE_TURN_CW_180_LEAN_DOWN_LEFT;
+			offerOrThrow(q, CODE_TURN_CW_180_LEAN_DOWN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_RIGHT:
-			q[index] = CODE_TURN_CW_180_LEAN_DOWN_RIGHT;
+			offerOrThrow(q, CODE_TURN_CW_180_LEAN_DOWN_RIGHT) ;
 			break ;
 		}
 	}
-	protected void enqueueIncoming_turnCW180(int moveDirection) { enqueue_turnCW180( moveDirection, incomingActionQueue, numIncomingActions++ ) ; }
-	protected void enqueueOutgoing_turnCW180(int moveDirection) { enqueue_turnCW180( moveDirection, outgoingActionQueue, numOutgoingActions++ ) ; }
+	protected void enqueueIncoming_turnCW180(int moveDirection) { enqueue_turnCW180( moveDirection, incomingActionQueue ) ; }
+	protected void enqueueOutgoing_turnCW180(int moveDirection) { enqueue_turnCW180( moveDirection, outgoingActionQueue ) ; }
 	
-	protected void enqueue_turnCCW180(int moveDirection, byte [] q, int index) {
+	protected void enqueue_turnCCW180(int moveDirection, ByteRingBuffer q) {
 		switch( moveDirection ) {
 		case MOVE_DIRECTION_NONE:
-			q[index] = CODE_TURN_CCW_180;
+			offerOrThrow(q, CODE_TURN_CCW_180) ;
 			break ;
 		case MOVE_DIRECTION_LEFT:
-			q[index] = CODE_TURN_CCW_180_LEAN_LEFT;
+			offerOrThrow(q, CODE_TURN_CCW_180_LEAN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_RIGHT:
-			q[index] = CODE_TURN_CCW_180_LEAN_RIGHT;
+			offerOrThrow(q, CODE_TURN_CCW_180_LEAN_RIGHT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN:
-			q[index] = CODE_TURN_CCW_180_LEAN_DOWN;
+			offerOrThrow(q, CODE_TURN_CCW_180_LEAN_DOWN) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_LEFT:
-			q[index] = CODE_TURN_CCW_180_LEAN_DOWN_LEFT;
+			offerOrThrow(q, CODE_TURN_CCW_180_LEAN_DOWN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_RIGHT:
-			q[index] = CODE_TURN_CCW_180_LEAN_DOWN_RIGHT;
+			offerOrThrow(q, CODE_TURN_CCW_180_LEAN_DOWN_RIGHT) ;
 			break ;
 		}
 	}
-	protected void enqueueIncoming_turnCCW180(int moveDirection) { enqueue_turnCCW180( moveDirection, incomingActionQueue, numIncomingActions++ ) ; }
-	protected void enqueueOutgoing_turnCCW180(int moveDirection) { enqueue_turnCCW180( moveDirection, outgoingActionQueue, numOutgoingActions++ ) ; }
+	protected void enqueueIncoming_turnCCW180(int moveDirection) { enqueue_turnCCW180( moveDirection, incomingActionQueue ) ; }
+	protected void enqueueOutgoing_turnCCW180(int moveDirection) { enqueue_turnCCW180( moveDirection, outgoingActionQueue ) ; }
 	
-	protected void enqueue_flip(int moveDirection, byte [] q, int index) {
+	protected void enqueue_flip(int moveDirection, ByteRingBuffer q) {
 		switch( moveDirection ) {
 		case MOVE_DIRECTION_NONE:
-			q[index] = CODE_FLIP;
+			offerOrThrow(q, CODE_FLIP) ;
 			break ;
 		case MOVE_DIRECTION_LEFT:
-			q[index] = CODE_FLIP_LEAN_LEFT;
+			offerOrThrow(q, CODE_FLIP_LEAN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_RIGHT:
-			q[index] = CODE_FLIP_LEAN_RIGHT;
+			offerOrThrow(q, CODE_FLIP_LEAN_RIGHT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN:
-			q[index] = CODE_FLIP_LEAN_DOWN;
+			offerOrThrow(q, CODE_FLIP_LEAN_DOWN) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_LEFT:
-			q[index] = CODE_FLIP_LEAN_DOWN_LEFT;
+			offerOrThrow(q, CODE_FLIP_LEAN_DOWN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_RIGHT:
-			q[index] = CODE_FLIP_LEAN_DOWN_RIGHT;
+			offerOrThrow(q, CODE_FLIP_LEAN_DOWN_RIGHT) ;
 			break ;
 		}
 	}
-	protected void enqueueIncoming_flip(int moveDirection) { enqueue_flip( moveDirection, incomingActionQueue, numIncomingActions++ ) ; }
-	protected void enqueueOutgoing_flip(int moveDirection) { enqueue_flip( moveDirection, outgoingActionQueue, numOutgoingActions++ ) ; }
+	protected void enqueueIncoming_flip(int moveDirection) { enqueue_flip( moveDirection, incomingActionQueue ) ; }
+	protected void enqueueOutgoing_flip(int moveDirection) { enqueue_flip( moveDirection, outgoingActionQueue ) ; }
 	
 	
 	
-	protected void enqueue_useReserve(int moveDirection, byte [] q, int index) { 
+	protected void enqueue_useReserve(int moveDirection, ByteRingBuffer q) { 
 		switch( moveDirection ) {
 		case MOVE_DIRECTION_NONE:
-			q[index] = CODE_USE_RESERVE;
+			offerOrThrow(q, CODE_USE_RESERVE) ;
 			break ;
 		case MOVE_DIRECTION_LEFT:
-			q[index] = CODE_USE_RESERVE_LEAN_LEFT;
+			offerOrThrow(q, CODE_USE_RESERVE_LEAN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_RIGHT:
-			q[index] = CODE_USE_RESERVE_LEAN_RIGHT;
+			offerOrThrow(q, CODE_USE_RESERVE_LEAN_RIGHT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN:
-			q[index] = CODE_USE_RESERVE_LEAN_DOWN;
+			offerOrThrow(q, CODE_USE_RESERVE_LEAN_DOWN) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_LEFT:
-			q[index] = CODE_USE_RESERVE_LEAN_DOWN_LEFT;
+			offerOrThrow(q, CODE_USE_RESERVE_LEAN_DOWN_LEFT) ;
 			break ;
 		case MOVE_DIRECTION_DOWN_RIGHT:
-			q[index] = CODE_USE_RESERVE_LEAN_DOWN_RIGHT;
+			offerOrThrow(q, CODE_USE_RESERVE_LEAN_DOWN_RIGHT) ;
 			break ;
 		}
 	}
-	protected void enqueueIncoming_useReserve(int moveDirection) { enqueue_useReserve( moveDirection, incomingActionQueue, numIncomingActions++ ) ; } 
-	protected void enqueueOutgoing_useReserve(int moveDirection) { enqueue_useReserve( moveDirection, outgoingActionQueue, numOutgoingActions++ ) ; } 
+	protected void enqueueIncoming_useReserve(int moveDirection) { enqueue_useReserve( moveDirection, incomingActionQueue ) ; } 
+	protected void enqueueOutgoing_useReserve(int moveDirection) { enqueue_useReserve( moveDirection, outgoingActionQueue ) ; } 
 	
-	protected void enqueueIncoming_issueSpecialAttack() { enqueue_useReserve( MOVE_DIRECTION_NONE, incomingActionQueue, numIncomingActions++ ) ; } 
-	protected void enqueueOutgoing_issueSpecialAttack() { enqueue_useReserve( MOVE_DIRECTION_NONE, outgoingActionQueue, numOutgoingActions++ ) ; } 
+	protected void enqueueIncoming_issueSpecialAttack() { enqueue_useReserve( MOVE_DIRECTION_NONE, incomingActionQueue ) ; } 
+	protected void enqueueOutgoing_issueSpecialAttack() { enqueue_useReserve( MOVE_DIRECTION_NONE, outgoingActionQueue ) ; } 
 	
-	protected void enqueue_fall(byte [] q, int index) { q[index] = CODE_FALL ; }
-	protected void enqueueIncoming_fall() { enqueue_fall( incomingActionQueue, numIncomingActions++ ) ; } 
-	protected void enqueueOutgoing_fall() { enqueue_fall( outgoingActionQueue, numOutgoingActions++ ) ; } 
+	protected void enqueue_fall(ByteRingBuffer q) { offerOrThrow(q, CODE_FALL) ; }
+	protected void enqueueIncoming_fall() { enqueue_fall( incomingActionQueue ) ; } 
+	protected void enqueueOutgoing_fall() { enqueue_fall( outgoingActionQueue ) ; } 
 	
-	protected void enqueue_lock(byte [] q, int index) { q[index] = CODE_LOCK ; }
-	protected void enqueueIncoming_lock() { enqueue_lock( incomingActionQueue, numIncomingActions++ ) ; } 
-	protected void enqueueOutgoing_lock() { enqueue_lock( outgoingActionQueue, numOutgoingActions++ ) ; } 
+	protected void enqueue_lock(ByteRingBuffer q) { offerOrThrow(q, CODE_LOCK) ; }
+	protected void enqueueIncoming_lock() { enqueue_lock( incomingActionQueue ) ; } 
+	protected void enqueueOutgoing_lock() { enqueue_lock( outgoingActionQueue ) ; } 
 	
-	protected void enqueue_endActionCycle(byte [] q, int index) { q[index] = CODE_END_ACTION_CYCLE ; }
-	protected void enqueueIncoming_endActionCycle() { enqueue_endActionCycle( incomingActionQueue, numIncomingActions++ ) ; } 
-	protected void enqueueOutgoing_endActionCycle() { enqueue_endActionCycle( outgoingActionQueue, numOutgoingActions++ ) ; } 
+	protected void enqueue_endActionCycle(ByteRingBuffer q) { offerOrThrow(q, CODE_END_ACTION_CYCLE) ; }
+	protected void enqueueIncoming_endActionCycle() { enqueue_endActionCycle( incomingActionQueue ) ; } 
+	protected void enqueueOutgoing_endActionCycle() { enqueue_endActionCycle( outgoingActionQueue ) ; } 
 	
-	protected void enqueue_advance(byte [] q, int index) { q[index] = CODE_ADVANCE ; }
-	protected void enqueueIncoming_advance() { enqueue_advance( incomingActionQueue, numIncomingActions++ ) ; } 
-	protected void enqueueOutgoing_advance() { enqueue_advance( outgoingActionQueue, numOutgoingActions++ ) ; } 
+	protected void enqueue_advance(ByteRingBuffer q) { offerOrThrow(q, CODE_ADVANCE) ; }
+	protected void enqueueIncoming_advance() { enqueue_advance( incomingActionQueue ) ; } 
+	protected void enqueueOutgoing_advance() { enqueue_advance( outgoingActionQueue ) ; } 
 	
 	
 	
-	protected void enqueue_autolock(byte [] q, int index) { q[index] = CODE_AUTOLOCK ; }
-	protected void enqueueIncoming_autolock() { enqueue_autolock( incomingActionQueue, numIncomingActions++ ) ; }
+	protected void enqueue_autolock(ByteRingBuffer q) { offerOrThrow(q, CODE_AUTOLOCK) ; }
+	protected void enqueueIncoming_autolock() { enqueue_autolock( incomingActionQueue ) ; }
 	
 	
-	protected void enqueue_fall_or_autolock(byte [] q, int index) { q[index] = CODE_FALL_OR_AUTOLOCK ; }
-	protected void enqueueIncoming_fall_or_autolock() { enqueue_fall_or_autolock( incomingActionQueue, numIncomingActions++ ) ; }
+	protected void enqueue_fall_or_autolock(ByteRingBuffer q) { offerOrThrow(q, CODE_FALL_OR_AUTOLOCK) ; }
+	protected void enqueueIncoming_fall_or_autolock() { enqueue_fall_or_autolock( incomingActionQueue ) ; }
 	
 	
 	
 	// How to queue incoming actions from the controls?  Just call our
 	// "enqueue" methods.
-	public synchronized void controls_move(int moveDirection) { enqueueIncoming_move(moveDirection) ; }
-	public synchronized void controls_turnCW(int moveDirection) { enqueueIncoming_turnCW(moveDirection) ; /*System.err.println("AAWGIO: turn CW 90 lean " + moveDirectionToString(moveDirection)) ; */ }
-	public synchronized void controls_turnCCW(int moveDirection) { enqueueIncoming_turnCCW(moveDirection) ; /*System.err.println("AAWGIO: turn CCW 90 lean " + moveDirectionToString(moveDirection)) ; */ }
-	public synchronized void controls_turnCW180(int moveDirection) { enqueueIncoming_turnCW180(moveDirection) ; /*System.err.println("AAWGIO: turn CW 180 lean " + moveDirectionToString(moveDirection)) ; */ }
-	public synchronized void controls_turnCCW180(int moveDirection) { enqueueIncoming_turnCCW180(moveDirection) ; /*System.err.println("AAWGIO: turn CCW 180 lean " + moveDirectionToString(moveDirection)) ; */ }
-	public synchronized void controls_flip(int moveDirection) { enqueueIncoming_flip(moveDirection) ; /*System.err.println("AAWGIO: flip lean " + moveDirectionToString(moveDirection)) ; */ }
-	public synchronized void controls_useReserve(int moveDirection) { enqueueIncoming_useReserve(moveDirection) ; /*System.err.println("AAWGIO: reserve lean " + moveDirectionToString(moveDirection)) ; */ } 
-	
-	public synchronized void controls_fall() { enqueueIncoming_fall() ; }
-	public synchronized void controls_autolock() { enqueueIncoming_autolock() ; }
-	public synchronized void controls_fall_or_autolock() { enqueueIncoming_fall_or_autolock() ; } ;
+	public void controls_move(int moveDirection) { enqueueIncoming_move(moveDirection) ; }
+	public void controls_turnCW(int moveDirection) { enqueueIncoming_turnCW(moveDirection) ; /*System.err.println("AAWGIO: turn CW 90 lean " + moveDirectionToString(moveDirection)) ; */ }
+	public void controls_turnCCW(int moveDirection) { enqueueIncoming_turnCCW(moveDirection) ; /*System.err.println("AAWGIO: turn CCW 90 lean " + moveDirectionToString(moveDirection)) ; */ }
+	public void controls_turnCW180(int moveDirection) { enqueueIncoming_turnCW180(moveDirection) ; /*System.err.println("AAWGIO: turn CW 180 lean " + moveDirectionToString(moveDirection)) ; */ }
+	public void controls_turnCCW180(int moveDirection) { enqueueIncoming_turnCCW180(moveDirection) ; /*System.err.println("AAWGIO: turn CCW 180 lean " + moveDirectionToString(moveDirection)) ; */ }
+	public void controls_flip(int moveDirection) { enqueueIncoming_flip(moveDirection) ; /*System.err.println("AAWGIO: flip lean " + moveDirectionToString(moveDirection)) ; */ }
+	public void controls_useReserve(int moveDirection) { enqueueIncoming_useReserve(moveDirection) ; /*System.err.println("AAWGIO: reserve lean " + moveDirectionToString(moveDirection)) ; */ } 
+	
+	public void controls_fall() { enqueueIncoming_fall() ; }
+	public void controls_autolock() { enqueueIncoming_autolock() ; }
+	public void controls_fall_or_autolock() { enqueueIncoming_fall_or_autolock() ; } ;
 	// performs a piece lock IF a long enough wait would lock the piece in
 	// its current position.  i.e., if the piece is currently resting on
 	// the ground and waiting on a ts.canLock() response, this will lock 
 	// immediately.  Otherwise, it has no effect.
 	
-	public synchronized void controls_slide( int moveDirection, boolean isSliding ) {
+	public void controls_slide( int moveDirection, boolean isSliding ) {
 		switch( moveDirection ) {
 		case MOVE_DIRECTION_LEFT:
 			slidingLeft = isSliding ;
@@ -365,7 +397,7 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 		}
 	}
 	
-	public synchronized void controls_slideOnce( int moveDirection ) {
+	public void controls_slideOnce( int moveDirection ) {
 		switch( moveDirection ) {
 		case MOVE_DIRECTION_LEFT:
 			slideLeftOnce = true ;
@@ -419,27 +451,91 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 
 	// In this implementation, communications_enqueue* are functionally 
 	// equivalent to controls_* methods.  We simply call the
-	// protected "enqueue_*" methods.
-	public synchronized void communications_enqueueMove(int moveDirection) { enqueueIncoming_move(moveDirection) ; } 
-	public synchronized void communications_enqueueTurnCW(int moveDirection) { enqueueIncoming_turnCW(moveDirection) ; } 
-	public synchronized void communications_enqueueTurnCCW(int moveDirection) { enqueueIncoming_turnCCW(moveDirection) ; } 
-	public synchronized void communications_enqueueTurnCW180(int moveDirection) { enqueueIncoming_turnCW180(moveDirection) ; } 
-	public synchronized void communications_enqueueTurnCCW180(int moveDirection) { enqueueIncoming_turnCCW180(moveDirection) ; } 
-	public synchronized void communications_enqueueUseReserve(int moveDirection) { enqueueIncoming_useReserve(moveDirection) ; } 
+	// protected "enqueue_*" methods.  Note that the incoming queue
+	// has a single producer: a given adapter should be fed either by
+	// controls_* or by communications_enqueue*, never both at once.
+	public void communications_enqueueMove(int moveDirection) { enqueueIncoming_move(moveDirection) ; } 
+	public void communications_enqueueTurnCW(int moveDirection) { enqueueIncoming_turnCW(moveDirection) ; } 
+	public void communications_enqueueTurnCCW(int moveDirection) { enqueueIncoming_turnCCW(moveDirection) ; } 
+	public void communications_enqueueTurnCW180(int moveDirection) { enqueueIncoming_turnCW180(moveDirection) ; } 
+	public void communications_enqueueTurnCCW180(int moveDirection) { enqueueIncoming_turnCCW180(moveDirection) ; } 
+	public void communications_enqueueUseReserve(int moveDirection) { enqueueIncoming_useReserve(moveDirection) ; } 
 	
-	public synchronized void communications_enqueueFall() { enqueueIncoming_fall() ; } 
-	public synchronized void communications_enqueueLock() { enqueueIncoming_lock() ; } 
+	public void communications_enqueueFall() { enqueueIncoming_fall() ; } 
+	public void communications_enqueueLock() { enqueueIncoming_lock() ; } 
 	
-	public synchronized void communications_enqueueEndActionCycle() { enqueueIncoming_endActionCycle() ; } 
+	public void communications_enqueueEndActionCycle() { enqueueIncoming_endActionCycle() ; } 
 	
-	public synchronized void communications_enqueueAdvance() { enqueueIncoming_advance() ; }
+	public void communications_enqueueAdvance() { enqueueIncoming_advance() ; }
 	
 	
 	/**
 	 * Equivalent to calling the appropriate method above for each move in the provided queue.
 	 * @param moveQ
 	 */
-	public synchronized void communications_enqueueActions( byte [] moveQ, int index, int length ) {
+	public void communications_enqueueActions( byte [] moveQ, int index, int length ) {
+		// unsequenced: we can no longer say where redundant queues fit.
+		incomingActionSeqValid = false ;
+		enqueueIncomingActions( moveQ, index, length ) ;
+	}
+	
+	
+	/**
+	 * Enqueues the provided actions, skipping any we have already received.
+	 * See ActionAdapter for details.
+	 */
+	public int communications_enqueueActions( byte [] moveQ, int index, int length, long seq, boolean reliable ) {
+		long start ;
+		if ( reliable ) {
+			start = reliableIncomingActionStart( seq ) ;
+		} else if ( !incomingActionSeqValid || seq > incomingActionSeq ) {
+			// we can't tell whether the actions before this queue were
+			// dropped or are still on their way.  Wait for the reliable copy.
+			return 0 ;
+		} else {
+			start = incomingActionSeq ;
+		}
+		
+		long end = seq + length ;
+		int skip = end <= start ? length : (int)(start - seq) ;
+		// all or nothing: fail before touching the sequence state.
+		ensureCapacity( incomingActionQueue, length - skip ) ;
+		if ( reliable )
+			noteReliableIncomingActions( seq, length ) ;
+		if ( skip == length )
+			return 0 ;
+		enqueueIncomingActions( moveQ, index + skip, length - skip ) ;
+		incomingActionSeq = end ;
+		return length - skip ;
+	}
+	
+	
+	public void communications_skipIncomingActions( long seq, int length ) {
+		noteReliableIncomingActions( seq, length ) ;
+		incomingActionSeq = Math.max( incomingActionSeq, seq + length ) ;
+	}
+	
+	
+	private long reliableIncomingActionStart( long seq ) {
+		// Reliable queues arrive in order.  One that moves backwards means
+		// the sender has started over (e.g. a new adapter after a restart).
+		if ( !incomingActionSeqValid || seq < incomingReliableActionSeq )
+			return seq ;
+		// A gap is actions the sender discarded; skip them.
+		return Math.max( incomingActionSeq, seq ) ;
+	}
+	
+	private void noteReliableIncomingActions( long seq, int length ) {
+		incomingActionSeq = reliableIncomingActionStart( seq ) ;
+		incomingReliableActionSeq = seq + length ;
+		incomingActionSeqValid = true ;
+	}
+	
+	
+	private void enqueueIncomingActions( byte [] moveQ, int index, int length ) {
+		// each code enqueues at most one byte, so this guarantees the
+		// whole queue fits before we add any of it.
+		ensureCapacity( incomingActionQueue, length ) ;
 		for ( int i = index; i < index+length; i++ ) {
 			switch( moveQ[i] ) {
 			// simple movement
@@ -503,8 +599,8 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 	 * synchronization update is pending.
 	 */
 	synchronized public void communications_clearForSynchronization() {
-		numIncomingActions = 0 ;
-		numOutgoingActions = 0 ;
+		incomingActionQueue.clear() ;
+		outgoingActionQueue.clear() ;
 		numOutgoingAttacks = 0 ;
 		numIncomingAttacks = 0 ;
 		numIncomingAttacksForNextCycle = 0 ;
@@ -514,13 +610,13 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 	
 	
 	// How to set up outgoing actions?
-	public synchronized void game_didMove(int moveDirection) { enqueueOutgoing_move(moveDirection) ; if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
-	public synchronized void game_didTurnCW(int moveDirection) { enqueueOutgoing_turnCW(moveDirection) ; if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
-	public synchronized void game_didTurnCCW(int moveDirection) { enqueueOutgoing_turnCCW(moveDirection) ; if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
-	public synchronized void game_didTurnCW180(int moveDirection) { enqueueOutgoing_turnCW180(moveDirection) ; if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
-	public synchronized void game_didTurnCCW180(int moveDirection) { enqueueOutgoing_turnCCW180(moveDirection) ; if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
-	public synchronized void game_didFlip(int moveDirection) { enqueueOutgoing_flip(moveDirection) ; if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
-	public synchronized void game_didUseReserve(int moveDirection) { enqueueOutgoing_useReserve(moveDirection); if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
+	public void game_didMove(int moveDirection) { enqueueOutgoing_move(moveDirection) ; didEnqueueActions(false); }
+	public void game_didTurnCW(int moveDirection) { enqueueOutgoing_turnCW(moveDirection) ; didEnqueueActions(false); }
+	public void game_didTurnCCW(int moveDirection) { enqueueOutgoing_turnCCW(moveDirection) ; didEnqueueActions(false); }
+	public void game_didTurnCW180(int moveDirection) { enqueueOutgoing_turnCW180(moveDirection) ; didEnqueueActions(false); }
+	public void game_didTurnCCW180(int moveDirection) { enqueueOutgoing_turnCCW180(moveDirection) ; didEnqueueActions(false); }
+	public void game_didFlip(int moveDirection) { enqueueOutgoing_flip(moveDirection) ; didEnqueueActions(false); }
+	public void game_didUseReserve(int moveDirection) { enqueueOutgoing_useReserve(moveDirection); didEnqueueActions(false); }
 	
 	/**
 	 * The player used a special that issued an attack.  We provide a specific
@@ -538,8 +634,18 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 			gal.gal_gameHasOutOfSequenceAttack(this) ;
 	}
 	
-	public synchronized void game_didFall() { enqueueOutgoing_fall(); if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
-	public synchronized void game_didLock() { enqueueOutgoing_lock(); if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
+	private void didEnqueueActions( boolean actionCycleEnds ) {
+		if ( batchingNotifications && !actionCycleEnds ) {
+			batchedEnqueueNotification = true ;
+			return ;
+		}
+		batchedEnqueueNotification = false ;
+		if ( gal != null )
+			gal.gal_gameDidEnqueueActions(this, actionCycleEnds) ;
+	}
+	
+	public void game_didFall() { enqueueOutgoing_fall(); didEnqueueActions(false); }
+	public void game_didLock() { enqueueOutgoing_lock(); didEnqueueActions(false); }
 	
 	public synchronized void game_didEnter() {
 		// if a piece just entered, we don't maintain the "JustStarted"
@@ -551,9 +657,9 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 	// If, for whatever reason, there is no longer a falling piece being
 	// moved about (e.g. it locked, it was moved to Reserve and no piece
 	// replaced it, etc.).
-	public synchronized void game_didEndActionCycle() { enqueueOutgoing_endActionCycle(); if (gal != null) gal.gal_gameDidEnqueueActions(this, true); }
+	public void game_didEndActionCycle() { enqueueOutgoing_endActionCycle(); didEnqueueActions(true); }
 	
-	public synchronized void game_didAdvance() { enqueueOutgoing_advance(); if (gal != null) gal.gal_gameDidEnqueueActions(this, false); }
+	public void game_didAdvance() { enqueueOutgoing_advance(); didEnqueueActions(false); }
 	
 	
 	public synchronized void game_hasOutgoingAttack( Game game ) {
@@ -610,6 +716,19 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 	}
 	
 	
+	@Override
+	public void game_beginNotificationBatch( Game game ) {
+		batchingNotifications = true ;
+	}
+	
+	@Override
+	public void game_endNotificationBatch( Game game ) {
+		batchingNotifications = false ;
+		if ( batchedEnqueueNotification )
+			didEnqueueActions(false) ;
+	}
+	
+	
 	
 	////////////////////////////////////////////////////////////////////////
 	//
@@ -642,8 +761,11 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 			}
 			numIncomingAttacks = 0 ;
 			
-			while ( numDequeued < numIncomingActions && incomingActionQueue[numDequeued] != CODE_END_ACTION_CYCLE ) {
-				byte code = incomingActionQueue[numDequeued] ;
+			// Snapshot the queue length once; anything the producer appends
+			// while we work will be picked up on the next call.
+			int numIncomingActions = incomingActionQueue.size() ;
+			while ( numDequeued < numIncomingActions && incomingActionQueue.peek(numDequeued) != CODE_END_ACTION_CYCLE ) {
+				byte code = incomingActionQueue.peek(numDequeued) ;
 				
 				// Note: in the case that dequeueActionsDiscards is false, we should immediately
 				// terminate this loop if this action cannot be performed.
@@ -684,10 +806,8 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 				// while we are still fastfalling and the game says doing this is OK.
 			}
 			
-			// Slide incomingActionQueue back a bit.
-			for ( int i = numDequeued; i < numIncomingActions; i++ )
-				incomingActionQueue[i-numDequeued] = incomingActionQueue[i] ;
-			numIncomingActions -= numDequeued ;
+			// Consume what we dequeued.
+			incomingActionQueue.skip(numDequeued) ;
 		}
 		
 		// no longer "slide once"
@@ -716,16 +836,14 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 	 */
 	public void game_fakeDequeueActions( Game game ) {
 		if ( !dequeueActionsDiscards ) {
+			int numIncomingActions = incomingActionQueue.size() ;
 			int numRemoved = 0 ;
 			while ( numRemoved < numIncomingActions
-					&& incomingActionQueue[numRemoved] != CODE_END_ACTION_CYCLE ) {
+					&& incomingActionQueue.peek(numRemoved) != CODE_END_ACTION_CYCLE ) {
 				numRemoved++ ;
 			}
 			
-			// Slide incomingActionQueue back a bit.
-			for ( int i = numRemoved; i < numIncomingActions; i++ )
-				incomingActionQueue[i-numRemoved] = incomingActionQueue[i] ;
-			numIncomingActions -= numRemoved ;
+			incomingActionQueue.skip(numRemoved) ;
 			
 			slideLeftOnce = false ;
 			slideRightOnce = false ;
@@ -1024,11 +1142,8 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 			numIncomingAttacksForNextCycle = 0 ;
 			
 			// Step past any "end cycle" events in the action queue.
-			if ( numIncomingActions > 0 && incomingActionQueue[0] == CODE_END_ACTION_CYCLE ) {
-				for ( int i = 1; i < numIncomingActions; i++ )
-					incomingActionQueue[i-1] = incomingActionQueue[i] ;
-				numIncomingActions-- ;
-			}
+			if ( !incomingActionQueue.isEmpty() && incomingActionQueue.peek(0) == CODE_END_ACTION_CYCLE )
+				incomingActionQueue.skip(1) ;
 			
 			// Ready to go!
 			returnValue = true ;
@@ -1094,6 +1209,21 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 	}
 	
 	
+	/**
+	 * Adds the first 'num' of these attack descriptors, in order, to the list
+	 * of those pending: as communications_addPendingAttacks for each, but
+	 * holding our lock only once.
+	 * 
+	 * @param attackDescriptors
+	 * @param num
+	 */
+	@Override
+	public synchronized void communications_addPendingAttacks( AttackDescriptor [] attackDescriptors, int num ) {
+		for ( int i = 0; i < num; i++ )
+			communications_addPendingAttacks( attackDescriptors[i] ) ;
+	}
+	
+	
 	/**
 	 * The ActionCycleStateDescriptor includes, as an optional field, a complete
 	 * list of all pending attacks.  It also indicates whether the next queued
@@ -1213,37 +1343,36 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 	 * 
 	 * Returns the number of bytes read.
 	 * 
+	 * This is a batch drain: the whole range is copied with at most two
+	 * array copies and released to the game thread with a single write.
+	 * Should only be called from one (communications) thread.
+	 * 
 	 * @param b
 	 * @param ind
 	 * @param length
 	 * @return
 	 */
-	public synchronized int communications_readOutgoingActionQueue( byte [] b, int ind, int length ) {
-		
-		int numDequeued = 0 ;
-		
+	public int communications_readOutgoingActionQueue( byte [] b, int ind, int length ) {
+		int num ;
 		if ( b == null ) {
 			// no need to copy into a null array; feign dequeue.
-			numDequeued = Math.max(0, Math.min(length - ind, numOutgoingActions)) ;
+			num = outgoingActionQueue.skip( Math.max(0, length - ind) ) ;
 		} else {
-			while ( numDequeued < numOutgoingActions && numDequeued < length ) {
-				b[ind+numDequeued] = outgoingActionQueue[numDequeued] ;
-				numDequeued++ ;
-			}
+			num = outgoingActionQueue.drain(b, ind, length) ;
 		}
 		
-		// Slide outgoingActionQueue back a bit.
-		for ( int i = numDequeued; i < numOutgoingActions; i++ )
-			outgoingActionQueue[i-numDequeued] = outgoingActionQueue[i] ;
-		numOutgoingActions -= numDequeued ;
-		
-		return numDequeued ;
-		
+		outgoingActionSeq += num ;
+		return num ;
+	}
+	
+	
+	public long communications_getOutgoingActionSequence() {
+		return outgoingActionSeq ;
 	}
 	
 	
 	public int communications_getOutgoingActionQueueLength() {
-		return numOutgoingActions ;
+		return outgoingActionQueue.size() ;
 	}
 	
 	
@@ -1259,11 +1388,11 @@ public class ActionAdapterWithGameIO extends ActionAdapter {
 	
 	
 	public int incomingActionBufferSize() {
-		return QUEUE_SIZE ;
+		return incomingActionQueue.capacity() ;
 	}
 	
 	public int outgoingActionBufferSize() {
-		return QUEUE_SIZE ;
+		return outgoingActionQueue.capacity() ;
 	}
 	
 	
@@ -0,0 +1,155 @@
+package com.peaceray.quantro.communications;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * An EncodedMessage is the complete wire representation of a Message --
+ * type, length prefix and content -- captured once and never altered
+ * afterwards.
+ *
+ * The purpose is fan-out.  When the same Message is sent to many peers
+ * (e.g. a host forwarding a player's NEXT_CYCLE to every other slot),
+ * encoding it once and sharing the resulting bytes between all outgoing
+ * queues avoids re-encoding or copying it per recipient.  Because the
+ * content is immutable, an EncodedMessage may be referenced from any
+ * number of queues and threads simultaneously.
+ *
+ * Message instances can be pointed at an EncodedMessage using
+ * Message.setAsEncoded; writing such a Message simply writes the
+ * shared bytes.
+ *
+ * @author Jake
+ *
+ */
+public final class EncodedMessage {
+
+	private final Class<? extends Message> messageClass ;
+	private final byte type ;
+	private final byte [] bytes ;
+
+
+	private EncodedMessage( Class<? extends Message> messageClass, byte type, byte [] bytes ) {
+		this.messageClass = messageClass ;
+		this.type = type ;
+		this.bytes = bytes ;
+	}
+
+
+	/**
+	 * Encodes the provided Message.  The Message is not altered, and
+	 * no reference to it is retained; the caller may reuse it immediately.
+	 *
+	 * @param m
+	 * @return
+	 */
+	public static EncodedMessage encode( Message m ) {
+		byte [] b = new byte[m.lengthAsBytes()] ;
+		ByteBuffer bb = ByteBuffer.wrap(b) ;
+		try {
+			m.write(bb) ;
+		} catch ( IOException e ) {
+			// ByteBuffers do not throw IOExceptions.
+			throw new IllegalStateException("Unexpected IOException encoding message type " + m.getType()) ;
+		}
+		if ( bb.position() != b.length )
+			throw new IllegalStateException("Message type " + m.getType() + " reported length " + b.length + " but wrote " + bb.position()) ;
+		return new EncodedMessage( m.getClass(), m.getType(), b ) ;
+	}
+
+
+	/**
+	 * The Message subclass that was encoded; decodeInto expects an
+	 * instance of this class.
+	 * @return
+	 */
+	public Class<? extends Message> getMessageClass() {
+		return messageClass ;
+	}
+
+
+	/**
+	 * The type of the encoded Message.
+	 * @return
+	 */
+	public byte getType() {
+		return type ;
+	}
+
+
+	/**
+	 * The total number of bytes in the encoding, including the
+	 * type / length prefix.
+	 * @return
+	 */
+	public int length() {
+		return bytes.length ;
+	}
+
+
+	/**
+	 * Will this encoding fit in the provided destination?  Streams and
+	 * channels always fit; ByteBuffers only if they have enough remaining.
+	 *
+	 * @param outputDest
+	 * @return
+	 */
+	public boolean fits( Object outputDest ) {
+		if ( outputDest instanceof ByteBuffer )
+			return bytes.length <= ((ByteBuffer)outputDest).remaining() ;
+		return true ;
+	}
+
+
+	/**
+	 * Writes the encoded bytes to the provided OutputStream, WritableByteChannel
+	 * or ByteBuffer.  Many threads may call this method at once.
+	 *
+	 * @param outputDest
+	 * @throws IOException
+	 */
+	public void write( Object outputDest ) throws IOException {
+		if ( outputDest instanceof OutputStream ) {
+			OutputStream os = (OutputStream)outputDest ;
+			os.write(bytes, 0, bytes.length) ;
+			os.flush() ;
+		} else if ( outputDest instanceof WritableByteChannel ) {
+			// wrap() shares our array; it does not copy.  The wrapper is
+			// read-only so the channel cannot alter our content.
+			ByteBuffer bb = ByteBuffer.wrap(bytes).asReadOnlyBuffer() ;
+			WritableByteChannel channel = (WritableByteChannel)outputDest ;
+			while ( bb.hasRemaining() ) {
+				if ( channel.write(bb) < 0 )
+					throw new IOException("Output channel is broken or cannot write") ;
+			}
+		} else if ( outputDest instanceof ByteBuffer ) {
+			((ByteBuffer)outputDest).put(bytes) ;
+		} else
+			throw new IllegalArgumentException("Provided output dest must be an OutputStream, a ByteBuffer, or a WriteableByteChannel") ;
+	}
+
+
+	/**
+	 * Decodes this message into the provided instance, which should be
+	 * of the same Message subclass as that originally encoded.  Used
+	 * by connections that deliver Message objects rather than bytes.
+	 *
+	 * @param m
+	 * @return 'm'
+	 * @throws IOException If the encoding could not be read by 'm'.
+	 */
+	public Message decodeInto( Message m ) throws IOException {
+		m.resetForRead() ;
+		try {
+			if ( !m.read( ByteBuffer.wrap(bytes).asReadOnlyBuffer() ) )
+				throw new IOException("Incomplete read of encoded message type " + type) ;
+		} catch ( ClassNotFoundException e ) {
+			throw new IOException("Could not decode message type " + type + ": " + e.getMessage()) ;
+		}
+		return m ;
+	}
+
+}
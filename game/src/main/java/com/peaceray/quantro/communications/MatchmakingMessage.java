@@ -131,6 +131,45 @@ public class MatchmakingMessage extends Message {
 		int len ;
 		
 		switch( type ) {
+		case TYPE_PROMISE:
+			// duration
+			// unique_id byte length
+			// unique_id
+			// request_id byte length
+			// request_id
+			return 8 + 8 + user_id[0].getBytes().length + request_id[0].getBytes().length ;
+			
+		case TYPE_MATCHMAKER_REJECT_FULL:
+		case TYPE_MATCHMAKER_REJECT_INVALID_NONCE:
+		case TYPE_MATCHMAKER_REJECT_NONCE_IN_USE:
+		case TYPE_MATCHMAKER_REJECT_PORT_RANDOMIZATION:
+		case TYPE_MATCHMAKER_REJECT_UNSPECIFIED:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_ADDRESS_MISMATCH:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_CONTENT_MISMATCH:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_SIGNATURE:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_PROOF:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_EXPIRED:
+			// unique_id and request_id, each with a byte length
+			return 8 + user_id[0].getBytes().length + request_id[0].getBytes().length ;
+			
+		case TYPE_MATCH_CHALLENGE:
+		case TYPE_MATCH:
+			// intent
+			// nonce
+			// then for local, followed by remote:
+			// unique_id byte length, unique_id, request_id byte length, request_id
+			// request age
+			// # udp_socket_address
+			// udp_socket_addresses
+			len = 1 + nonce.lengthAsBytes() ;
+			for ( int u = 0; u < 2; u++ ) {
+				len += 8 + user_id[u].getBytes().length + request_id[u].getBytes().length ;
+				len += 8 + 4 ;
+				for ( int j = 0; j < udp_addr[u].length; j++ )
+					len += ByteArrayOps.lengthOfSocketAddressAsBytes(udp_addr[u][j]) ;
+			}
+			return len ;
+			
 		case TYPE_REQUEST_CHALLENGE:
 			// intent
 			// nonce
@@ -176,6 +215,47 @@ public class MatchmakingMessage extends Message {
 		byte [] textAsBytes ;
 		
 		switch( type ) {
+		case TYPE_PROMISE:
+			// Written by the matchmaker.  Duration, then user_id and request_id.
+			ByteArrayOps.writeLongAsBytes(duration[0], byteArray, 0) ;
+			len = 8 ;
+			len = writeIDs( 0, len ) ;
+			this.writeBytesInByteArray(outputDest, byteArray, 0, len) ;
+			break ;
+			
+		case TYPE_MATCHMAKER_REJECT_FULL:
+		case TYPE_MATCHMAKER_REJECT_INVALID_NONCE:
+		case TYPE_MATCHMAKER_REJECT_NONCE_IN_USE:
+		case TYPE_MATCHMAKER_REJECT_PORT_RANDOMIZATION:
+		case TYPE_MATCHMAKER_REJECT_UNSPECIFIED:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_ADDRESS_MISMATCH:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_CONTENT_MISMATCH:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_SIGNATURE:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_PROOF:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_EXPIRED:
+			// Written by the matchmaker.  Echo the user_id and request_id.
+			len = writeIDs( 0, 0 ) ;
+			this.writeBytesInByteArray(outputDest, byteArray, 0, len) ;
+			break ;
+			
+		case TYPE_MATCH_CHALLENGE:
+		case TYPE_MATCH:
+			// Written by the matchmaker.  Intent and nonce, then local and
+			// remote info; see readMessageContent for the format.
+			byteArray[0] = intent ;
+			len = nonce.writeAsBytes(byteArray, 1) + 1 ;
+			for ( int u = 0; u < 2; u++ ) {
+				len = writeIDs( u, len ) ;
+				ByteArrayOps.writeLongAsBytes(duration[u], byteArray, len) ;
+				len += 8 ;
+				ByteArrayOps.writeIntAsBytes(udp_addr[u].length, byteArray, len) ;
+				len += 4 ;
+				for ( int j = 0; j < udp_addr[u].length; j++ )
+					len += ByteArrayOps.writeSocketAddressAsBytes(udp_addr[u][j], byteArray, len) ;
+			}
+			this.writeBytesInByteArray(outputDest, byteArray, 0, len) ;
+			break ;
+			
 		case TYPE_REQUEST_CHALLENGE:
 			// this is the one of only two types we write.  Its format is:
 			// intent
@@ -264,6 +344,24 @@ public class MatchmakingMessage extends Message {
 		}
 	}
 
+	/**
+	 * Writes user_id[u] and request_id[u], each preceded by its byte length,
+	 * into byteArray at 'len'.  Returns the new length.
+	 */
+	private int writeIDs( int u, int len ) {
+		byte [] textAsBytes ;
+		for ( int s = 0; s < 2; s++ ) {
+			textAsBytes = s == 0 ? user_id[u].getBytes() : request_id[u].getBytes() ;
+			ByteArrayOps.writeIntAsBytes(textAsBytes.length, byteArray, len) ;
+			len += 4 ;
+			for ( int i = 0; i < textAsBytes.length; i++ )
+				byteArray[len+i] = textAsBytes[i] ;
+			len += textAsBytes.length ;
+		}
+		return len ;
+	}
+	
+
 	@Override
 	protected boolean readMessageContent(Object inputSource)
 			throws IOException, ClassNotFoundException {
@@ -358,7 +456,7 @@ public class MatchmakingMessage extends Message {
 			
 			requestPort[0] = ByteArrayOps.readIntAsBytes(byteArray, len) ;
 			len += 4 ;
-			if ( udp_addr == null )
+			if ( udp_addr == null || udp_addr[0] == null || udp_addr[0].length == 0 )
 				udp_addr = new SocketAddress[2][2] ;
 			udp_addr[0][0] = ByteArrayOps.readSocketAddressAsBytes(byteArray, len) ;
 			len += ByteArrayOps.lengthOfSocketAddressAsBytes(udp_addr[0][0]) ;
@@ -386,7 +484,7 @@ public class MatchmakingMessage extends Message {
 			
 			requestPort[0] = ByteArrayOps.readIntAsBytes(byteArray, len) ;
 			len += 4 ;
-			if ( udp_addr == null )
+			if ( udp_addr == null || udp_addr[0] == null || udp_addr[0].length == 0 )
 				udp_addr = new SocketAddress[2][2] ;
 			udp_addr[0][0] = ByteArrayOps.readSocketAddressAsBytes(byteArray, len) ;
 			len += ByteArrayOps.lengthOfSocketAddressAsBytes(udp_addr[0][0]) ;
@@ -677,6 +775,113 @@ public class MatchmakingMessage extends Message {
 		this.failed_punches = numFailedHolePunches ;
 	}
 	
+	////////////////////////////////////////////////////////////////////////
+	//
+	// MATCHMAKER MESSAGES
+	//
+	// Sent by the matchmaker, not the seeker.  Included so that a matchmaker
+	// (e.g. LocalMatchmaker) can be written against this class.
+	//
+	
+	public MatchmakingMessage setAsPromise( String user_id, String request_id, long duration ) {
+		nullOutsideReferences() ;
+		
+		type = TYPE_PROMISE ;
+		this.user_id[0] = user_id ;
+		this.request_id[0] = request_id ;
+		this.duration[0] = duration ;
+		return this ;
+	}
+	
 	
+	/**
+	 * Sets this message as a matchmaker rejection of the provided type, which
+	 * must be one of the TYPE_MATCHMAKER_REJECT_* constants.
+	 */
+	public MatchmakingMessage setAsReject( byte type, String user_id, String request_id ) {
+		nullOutsideReferences() ;
+		
+		switch( type ) {
+		case TYPE_MATCHMAKER_REJECT_FULL:
+		case TYPE_MATCHMAKER_REJECT_INVALID_NONCE:
+		case TYPE_MATCHMAKER_REJECT_NONCE_IN_USE:
+		case TYPE_MATCHMAKER_REJECT_PORT_RANDOMIZATION:
+		case TYPE_MATCHMAKER_REJECT_UNSPECIFIED:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_ADDRESS_MISMATCH:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_CONTENT_MISMATCH:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_SIGNATURE:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_PROOF:
+		case TYPE_MATCHMAKER_REJECT_MATCHTICKET_EXPIRED:
+			break ;
+		default:
+			throw new IllegalArgumentException("Type " + type + " is not a matchmaker rejection") ;
+		}
+		
+		this.type = type ;
+		this.user_id[0] = user_id ;
+		this.request_id[0] = request_id ;
+		return this ;
+	}
+	
+	
+	public MatchmakingMessage setAsMatch( byte intent, Nonce nonce,
+			String localUserID, String localRequestID, long localAge, SocketAddress [] localAddresses,
+			String remoteUserID, String remoteRequestID, long remoteAge, SocketAddress [] remoteAddresses ) {
+		nullOutsideReferences() ;
+		
+		setAsMatch( TYPE_MATCH, intent, nonce,
+				localUserID, localRequestID, localAge, localAddresses,
+				remoteUserID, remoteRequestID, remoteAge, remoteAddresses ) ;
+		return this ;
+	}
+	
+	public MatchmakingMessage setAsMatchChallenge( byte intent, Nonce nonce,
+			String localUserID, String localRequestID, long localAge, SocketAddress [] localAddresses,
+			String remoteUserID, String remoteRequestID, long remoteAge, SocketAddress [] remoteAddresses ) {
+		nullOutsideReferences() ;
+		
+		setAsMatch( TYPE_MATCH_CHALLENGE, intent, nonce,
+				localUserID, localRequestID, localAge, localAddresses,
+				remoteUserID, remoteRequestID, remoteAge, remoteAddresses ) ;
+		return this ;
+	}
+	
+	private void setAsMatch( byte type, byte intent, Nonce nonce,
+			String localUserID, String localRequestID, long localAge, SocketAddress [] localAddresses,
+			String remoteUserID, String remoteRequestID, long remoteAge, SocketAddress [] remoteAddresses ) {
+		
+		this.type = type ;
+		this.intent = intent ;
+		this.nonce = nonce ;
+		this.user_id[0] = localUserID ;
+		this.user_id[1] = remoteUserID ;
+		this.request_id[0] = localRequestID ;
+		this.request_id[1] = remoteRequestID ;
+		this.duration[0] = localAge ;
+		this.duration[1] = remoteAge ;
+		
+		if ( udp_addr == null || udp_addr.length != 2 )
+			udp_addr = new SocketAddress[2][] ;
+		for ( int u = 0; u < 2; u++ ) {
+			SocketAddress [] addr = u == 0 ? localAddresses : remoteAddresses ;
+			if ( udp_addr[u] == null || udp_addr[u].length != addr.length )
+				udp_addr[u] = new SocketAddress[addr.length] ;
+			for ( int j = 0; j < addr.length; j++ )
+				udp_addr[u][j] = addr[j] ;
+		}
+	}
+	
+	
+	/**
+	 * The port from which the seeker says its request was sent; -1 if
+	 * it was sent from the match socket itself.
+	 */
+	public int getRequestPort() {
+		return requestPort[0] ;
+	}
+	
+	public int getNumFailedHolePunches() {
+		return failed_punches ;
+	}
 	
 }
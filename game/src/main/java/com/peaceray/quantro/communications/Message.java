@@ -100,10 +100,15 @@ public abstract class Message {
 	// Some necessary information.
 	protected long num ;
 	protected int playerSlot ;
+	protected int protocolVersion ;
 	protected Nonce nonce ;
 	protected String string ;
 	protected boolean significant ;
 	
+	// If set, this Message is a stand-in for a shared, pre-encoded
+	// Message; writing it writes these bytes verbatim.
+	protected EncodedMessage encoded ;
+	
 	
 	// For reading messages!
 	// Values for reading a message.
@@ -112,6 +117,8 @@ public abstract class Message {
 	protected int length ;
 	protected int contentBytesRead ;
 	protected boolean readComplete ;
+	// 'length' as read, plus the prefix.  Subclasses may consume 'length'.
+	private int totalLengthRead ;
 	
 	
 	public Message() {
@@ -170,6 +177,8 @@ public abstract class Message {
 	protected void nullOutsideReferences() {
 		string = null ;
 		nonce = null ;
+		encoded = null ;
+		protocolVersion = 0 ;
 	}
 	
 	
@@ -528,8 +537,12 @@ public abstract class Message {
 		case TYPE_SERVER_CLOSING:
 		case TYPE_SERVER_CLOSING_FOREVER:
 		case TYPE_DISCONNECT_MESSAGE_PASSING_CONNECTION:
-		case TYPE_WELCOME_TO_SERVER:
 			return 0 ;
+			
+		// Welcome may carry the server's protocol version.  Older readers
+		// skip the content, so it is omitted if there is none.
+		case TYPE_WELCOME_TO_SERVER:
+			return protocolVersion > 0 ? 4 : 0 ;
 		
 		// Global nonce
 		case TYPE_NONCE:
@@ -617,9 +630,15 @@ public abstract class Message {
 		case TYPE_SERVER_CLOSING:
 		case TYPE_SERVER_CLOSING_FOREVER:
 		case TYPE_DISCONNECT_MESSAGE_PASSING_CONNECTION:
-		case TYPE_WELCOME_TO_SERVER:
 			// Write nothing.  There is no content.
 			return ;
+			
+		case TYPE_WELCOME_TO_SERVER:
+			if ( protocolVersion > 0 ) {
+				ByteArrayOps.writeIntAsBytes(protocolVersion, eightByteArray, 0) ;
+				this.writeBytesInByteArray(outputObject, eightByteArray, 0, 4) ;
+			}
+			return ;
 		
 		// Nonce values, personal or global.  It's
 		// basically the same thing.
@@ -712,6 +731,8 @@ public abstract class Message {
 	
 	
 	public final boolean fits( Object outputDest ) throws IOException {
+		if ( encoded != null )
+			return encoded.fits(outputDest) ;
 		if ( outputDest instanceof OutputStream )
 			return true ;
 		else if ( outputDest instanceof WritableByteChannel )
@@ -726,8 +747,16 @@ public abstract class Message {
 	/**
 	 * This method writes the message to the provided OutputStream.
 	 * Subclass message types will be written using 
+	 * 
+	 * @return The number of bytes written, including the 5-byte type
+	 * 		and length prefix.
 	 */
-	public final void write( Object outputDest ) throws IOException {
+	public final int write( Object outputDest ) throws IOException {
+		if ( encoded != null ) {
+			encoded.write(outputDest) ;
+			return encoded.length() ;
+		}
+		
 		makeByteArrayIfNeeded() ;
 		
 		// We write type and length, then write content.
@@ -741,6 +770,30 @@ public abstract class Message {
 		writeContent(outputDest) ;
 		
 		// Done.
+		return 5 + len ;
+	}
+	
+	
+	/**
+	 * The total number of bytes 'write' will produce for this
+	 * message, including the 5-byte type and length prefix.
+	 * @return
+	 */
+	public final int lengthAsBytes() {
+		if ( encoded != null )
+			return encoded.length() ;
+		return 5 + contentLength() ;
+	}
+	
+	
+	/**
+	 * The total number of bytes consumed by the most recent read, including
+	 * the 5-byte type and length prefix.  Only meaningful once 'read'
+	 * has returned true; unlike lengthAsBytes, never re-encodes.
+	 * @return
+	 */
+	public final int lengthAsRead() {
+		return totalLengthRead ;
 	}
 	
 	
@@ -762,6 +815,7 @@ public abstract class Message {
 		lengthRead = false ;
 		contentBytesRead = 0 ;
 		length = 0 ;
+		totalLengthRead = 0 ;
 	}
 	
 	
@@ -818,6 +872,7 @@ public abstract class Message {
 			}
 			
 			length = ByteArrayOps.readIntAsBytes(eightByteArray, 0) ;
+			totalLengthRead = 5 + length ;
 			lengthRead = true ;
 			
 		}
@@ -853,7 +908,11 @@ public abstract class Message {
 		case TYPE_SERVER_CLOSING:
 		case TYPE_SERVER_CLOSING_FOREVER:
 		case TYPE_DISCONNECT_MESSAGE_PASSING_CONNECTION:
+			break ;
+			
+		// Protocol version, if provided.
 		case TYPE_WELCOME_TO_SERVER:
+			protocolVersion = length >= 4 ? ByteArrayOps.readIntAsBytes(byteArray, 0) : 0 ;
 			break ;
 		
 		// Global nonce.  Write a long.
@@ -990,6 +1049,10 @@ public abstract class Message {
 		return num ;
 	}
 	
+	public final int getProtocolVersion() {
+		return protocolVersion ;
+	}
+	
 	
 	/**
 	 * Sets this as an unknown message.
@@ -1154,9 +1217,25 @@ public abstract class Message {
 	
 	
 	public Message setAsWelcomeToServer() {
+		return setAsWelcomeToServer( 0 ) ;
+	}
+	
+	
+	/**
+	 * Sets this as a welcome which also advertises the server's protocol
+	 * version -- a Message subclass' notion of which optional message
+	 * formats it understands.  Clients which don't know about protocol
+	 * versions ignore it; those which do may reply (in a subclass message)
+	 * with the version they will accept.  0 is the version of servers
+	 * which never advertise one.
+	 * 
+	 * @param protocolVersion
+	 */
+	public Message setAsWelcomeToServer( int protocolVersion ) {
 		nullOutsideReferences() ;
 		
 		type = TYPE_WELCOME_TO_SERVER ;
+		this.protocolVersion = protocolVersion ;
 		return this ;
 	}
 	
@@ -1276,15 +1355,44 @@ public abstract class Message {
 		return this ;
 	}
 	
+	/**
+	 * Sets this message as a stand-in for the provided encoding.  Only
+	 * the message type is available through getters; writing this
+	 * message writes the encoded bytes exactly, without re-encoding.
+	 * The EncodedMessage is shared, not copied.
+	 * 
+	 * @param em
+	 * @return
+	 */
+	public final Message setAsEncoded( EncodedMessage em ) {
+		nullOutsideReferences() ;
+		
+		type = em.getType() ;
+		encoded = em ;
+		return this ;
+	}
+	
+	
+	/**
+	 * Is this message a stand-in for an EncodedMessage?
+	 * @return
+	 */
+	public final boolean isEncoded() {
+		return encoded != null ;
+	}
+	
+	
 	public Message setAs( Message m ) {
 		nullOutsideReferences() ;
 		
 		this.type = m.getType() ;
 		this.playerSlot = m.playerSlot ;
+		this.protocolVersion = m.protocolVersion ;
 		this.nonce = m.nonce ;
 		this.string = m.string ;
 		this.num = m.num ;
 		this.significant = m.significant ;
+		this.encoded = m.encoded ;
 		
 		return this ;
 	}
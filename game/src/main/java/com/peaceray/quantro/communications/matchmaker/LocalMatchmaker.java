@@ -0,0 +1,844 @@
+package com.peaceray.quantro.communications.matchmaker;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import com.peaceray.quantro.communications.CoordinationMessage;
+import com.peaceray.quantro.communications.MatchmakingMessage;
+import com.peaceray.quantro.communications.Message;
+import com.peaceray.quantro.communications.nonce.Nonce;
+import com.peaceray.quantro.communications.nonce.NonceMap;
+import com.peaceray.quantro.utils.ByteArrayOps;
+
+
+/**
+ * A LocalMatchmaker is a pure-Java stand-in for the UDP matchmaker and
+ * mediator that MatchSeeker, MatchSeekingListener and MatchRouter normally
+ * contact.  It exists so that matchmaking can be run (and load-tested)
+ * without the external service; point a MatchSeeker's matchmaker address
+ * at getMatchmakerAddress() and it will behave exactly as it would against
+ * the real thing.
+ *
+ * Everything happens on a single thread: both DatagramChannels (matchmaker
+ * and mediator) are registered with one Selector, and every request is
+ * answered from that thread without blocking.  Per-request work is a handful
+ * of HashMap operations, so one thread comfortably serves tens of thousands
+ * of concurrent seekers.
+ *
+ * MATCHMAKING: seekers send TYPE_REQUEST_MATCH (or TYPE_REQUEST_CHALLENGE)
+ * messages.  Seekers with the same intent and nonce, different user IDs and
+ * compatible roles (see Policy) are paired immediately and both receive a
+ * TYPE_MATCH giving the other's observed and self-reported addresses.  A seeker
+ * for which no partner is waiting receives a TYPE_PROMISE and is held for the
+ * promise duration; if a partner arrives in that time, the match is sent then.
+ * Keep-alives are accepted and ignored, as the seeker will re-request when
+ * its promise lapses.
+ *
+ * MEDIATION: on the optional mediator channel we accept CoordinationMessage
+ * pings (answered with pongs) and mediator update subscriptions.  A subscriber
+ * registers with TYPE_REQUEST_MEDIATOR_UPDATES, giving an intent, the session
+ * nonce and its personal nonce; thereafter, whenever a seeker requests a match
+ * for that intent and nonce, the subscriber receives a TYPE_MEDIATOR_UPDATE
+ * echoing its registration.  A host can use this to begin seeking only when
+ * someone is looking for it.  Subscriptions lapse after the subscription
+ * duration unless renewed by repeating the request.
+ *
+ * Matchticket verification is outside our scope (we have no access to the
+ * keys used by the web service).  The Policy provided at construction decides
+ * whether to accept a request and what role it plays.
+ *
+ * @author Jake
+ *
+ */
+public class LocalMatchmaker extends Thread {
+
+	/**
+	 * Decides whether a matchmaking request is acceptable, and what role
+	 * the requester plays.  Called on the matchmaker thread; implementations
+	 * must be fast and must not block.
+	 *
+	 * @author Jake
+	 *
+	 */
+	public interface Policy {
+
+		/**
+		 * Returned by 'validate' to accept a request.
+		 */
+		public static final byte ACCEPT = -1 ;
+
+		/**
+		 * Peers can be matched with anyone.  Hosts are matched only with
+		 * clients or peers, clients only with hosts or peers.
+		 */
+		public static final int ROLE_PEER = 0 ;
+		public static final int ROLE_HOST = 1 ;
+		public static final int ROLE_CLIENT = 2 ;
+
+		/**
+		 * Examines the provided request, sent from 'source', and returns either
+		 * ACCEPT or one of the MatchmakingMessage.TYPE_MATCHMAKER_REJECT_*
+		 * types.
+		 *
+		 * @param request
+		 * @param source
+		 * @return
+		 */
+		public byte validate( MatchmakingMessage request, SocketAddress source ) ;
+
+		/**
+		 * The role played by the requester; one of ROLE_*.  Only called for
+		 * accepted requests.
+		 *
+		 * @param request
+		 * @return
+		 */
+		public int role( MatchmakingMessage request ) ;
+	}
+
+
+	/**
+	 * Accepts every request and treats every requester as a peer.
+	 */
+	public static final Policy POLICY_ACCEPT_ALL = new Policy() {
+		@Override
+		public byte validate( MatchmakingMessage request, SocketAddress source ) {
+			return ACCEPT ;
+		}
+
+		@Override
+		public int role( MatchmakingMessage request ) {
+			return ROLE_PEER ;
+		}
+	} ;
+
+
+	public static final long DEFAULT_PROMISE_DURATION = 1000 * 30 ;		// 30 seconds
+	public static final long DEFAULT_SUBSCRIPTION_DURATION = 1000 * 60 ;	// 1 minute
+	public static final int DEFAULT_MAX_SEEKERS = 100000 ;
+	public static final int DEFAULT_MAX_SUBSCRIBERS = 100000 ;
+
+	// At most this many datagrams are read from one channel before we
+	// service the other.  Keeps the mediator responsive under a request flood.
+	private static final int MAX_RECEIVES_PER_SELECT = 256 ;
+
+	// Upper limit on the time between expiration sweeps.
+	private static final long MAX_SELECT_TIMEOUT = 1000 ;
+
+	private static final int SOCKET_BUFFER_SIZE = 1024 * 1024 ;
+
+
+
+	////////////////////////////////////////////////////////////////////////
+	//
+	// RECORDS
+	//
+	// Seekers and subscribers both expire.  Each is held in a FIFO in the order
+	// its expiration was set; because every expiration is (time set) + (a
+	// constant duration), FIFO order is expiration order.  A renewal sets
+	// 'renewed' rather than moving the record, and the sweep moves renewed
+	// records to the back of the queue when it reaches them.
+	//
+
+	private static class Expiring {
+		long expires ;
+		boolean renewed ;
+		boolean live ;
+	}
+
+	private static final class Seeker extends Expiring {
+		String requestID ;
+		String userID ;
+		byte intent ;
+		Nonce nonce ;
+		int role ;
+		boolean challenge ;
+		SocketAddress source ;
+		SocketAddress [] addresses ;
+		long timeArrived ;
+	}
+
+	private static final class Subscriber extends Expiring {
+		String key ;
+		byte intent ;
+		Nonce nonce ;
+		Nonce personalNonce ;
+		SocketAddress source ;
+	}
+
+	private static final class Bucket {
+		// waiting seekers, indexed by role.  May contain records that are
+		// no longer live; these are discarded lazily.
+		final ArrayDeque<Seeker> [] waiting = newSeekerQueues(3) ;
+		int numWaiting ;
+		final ArrayList<Subscriber> subscribers = new ArrayList<Subscriber>() ;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		private static ArrayDeque<Seeker> [] newSeekerQueues( int num ) {
+			ArrayDeque<Seeker> [] queues = new ArrayDeque[num] ;
+			for ( int i = 0; i < num; i++ )
+				queues[i] = new ArrayDeque<Seeker>() ;
+			return queues ;
+		}
+
+		boolean isEmpty() {
+			return numWaiting == 0 && subscribers.isEmpty() ;
+		}
+	}
+
+
+	// Configuration
+	private final Policy mPolicy ;
+	private long mPromiseDuration ;
+	private long mSubscriptionDuration ;
+	private int mMaxSeekers ;
+	private int mMaxSubscribers ;
+
+	// Channels
+	private final Selector mSelector ;
+	private final DatagramChannel mMatchmakerChannel ;
+	private final DatagramChannel mMediatorChannel ;
+
+	// State.  Accessed only by the matchmaker thread.
+	private final HashMap<String, Seeker> mSeekers ;
+	private final HashMap<String, Subscriber> mSubscribers ;
+	private final NonceMap<Bucket> [] mBuckets ;		// indexed by intent
+	private final ArrayDeque<Seeker> mSeekerExpirations ;
+	private final ArrayDeque<Subscriber> mSubscriberExpirations ;
+
+	private final ByteBuffer mInBuffer ;
+	private final ByteBuffer mOutBuffer ;
+	private final MatchmakingMessage mMatchmakingIn ;
+	private final MatchmakingMessage mMatchmakingOut ;
+	private final CoordinationMessage mCoordinationIn ;
+	private final CoordinationMessage mCoordinationOut ;
+
+	private volatile boolean mRunning ;
+
+	// Statistics.  Written only by the matchmaker thread.
+	private volatile long mPacketsReceived ;
+	private volatile long mPacketsSent ;
+	private volatile long mPacketsDropped ;
+	private volatile long mPacketsMalformed ;
+	private volatile long mMatches ;
+	private volatile long mPromises ;
+	private volatile long mRejections ;
+	private volatile long mMediatorUpdates ;
+	private volatile int mNumSeekersWaiting ;
+	private volatile int mNumSubscribers ;
+
+
+	/**
+	 * Constructs a LocalMatchmaker bound to the provided addresses.  Either may
+	 * have port 0, in which case an ephemeral port is chosen; use
+	 * getMatchmakerAddress() and getMediatorAddress() to learn the result.
+	 *
+	 * @param matchmakerBind The address on which to receive MatchmakingMessages.
+	 * @param mediatorBind The address on which to receive CoordinationMessages.
+	 * 			If null, we provide no mediator.
+	 * @param policy Request validation policy.  If null, POLICY_ACCEPT_ALL.
+	 * @throws IOException If either channel could not be opened or bound.
+	 */
+	public LocalMatchmaker( SocketAddress matchmakerBind, SocketAddress mediatorBind, Policy policy ) throws IOException {
+		if ( matchmakerBind == null )
+			throw new NullPointerException("Must provide a matchmaker address") ;
+
+		mPolicy = policy == null ? POLICY_ACCEPT_ALL : policy ;
+		mPromiseDuration = DEFAULT_PROMISE_DURATION ;
+		mSubscriptionDuration = DEFAULT_SUBSCRIPTION_DURATION ;
+		mMaxSeekers = DEFAULT_MAX_SEEKERS ;
+		mMaxSubscribers = DEFAULT_MAX_SUBSCRIBERS ;
+
+		mSeekers = new HashMap<String, Seeker>() ;
+		mSubscribers = new HashMap<String, Subscriber>() ;
+		mBuckets = newBucketMaps() ;
+		mSeekerExpirations = new ArrayDeque<Seeker>() ;
+		mSubscriberExpirations = new ArrayDeque<Subscriber>() ;
+
+		mInBuffer = ByteBuffer.allocate(8192) ;
+		mOutBuffer = ByteBuffer.allocateDirect(8192) ;
+		mMatchmakingIn = new MatchmakingMessage() ;
+		mMatchmakingOut = new MatchmakingMessage() ;
+		mCoordinationIn = new CoordinationMessage() ;
+		mCoordinationOut = new CoordinationMessage() ;
+
+		Selector selector = null ;
+		DatagramChannel matchmaker = null ;
+		DatagramChannel mediator = null ;
+		try {
+			selector = Selector.open() ;
+			matchmaker = openChannel( matchmakerBind, selector ) ;
+			if ( mediatorBind != null )
+				mediator = openChannel( mediatorBind, selector ) ;
+		} catch ( IOException ioe ) {
+			closeSafely( matchmaker ) ;
+			closeSafely( mediator ) ;
+			if ( selector != null ) {
+				try {
+					selector.close() ;
+				} catch ( IOException e ) { }
+			}
+			throw ioe ;
+		}
+
+		mSelector = selector ;
+		mMatchmakerChannel = matchmaker ;
+		mMediatorChannel = mediator ;
+
+		mRunning = true ;
+		setName("LocalMatchmaker") ;
+	}
+
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static NonceMap<Bucket> [] newBucketMaps() {
+		NonceMap<Bucket> [] maps = new NonceMap[2] ;
+		maps[MatchmakingMessage.INTENT_LOBBY] = new NonceMap<Bucket>() ;
+		maps[MatchmakingMessage.INTENT_GAME] = new NonceMap<Bucket>() ;
+		return maps ;
+	}
+
+	private static DatagramChannel openChannel( SocketAddress bind, Selector selector ) throws IOException {
+		DatagramChannel channel = DatagramChannel.open() ;
+		try {
+			channel.socket().setReceiveBufferSize(SOCKET_BUFFER_SIZE) ;
+			channel.socket().setSendBufferSize(SOCKET_BUFFER_SIZE) ;
+			channel.socket().bind(bind) ;
+			channel.configureBlocking(false) ;
+			channel.register(selector, SelectionKey.OP_READ) ;
+		} catch ( IOException ioe ) {
+			closeSafely( channel ) ;
+			throw ioe ;
+		}
+		return channel ;
+	}
+
+	private static void closeSafely( DatagramChannel channel ) {
+		if ( channel != null ) {
+			try {
+				channel.close() ;
+			} catch ( IOException e ) { }
+		}
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	//
+	// CONFIGURATION
+	//
+	// These settings should be made before start().
+	//
+
+	/**
+	 * The duration we promise to hold an unmatched seeker.
+	 * @param millis
+	 */
+	public void setPromiseDuration( long millis ) {
+		if ( millis <= 0 )
+			throw new IllegalArgumentException("Promise duration must be positive") ;
+		mPromiseDuration = millis ;
+	}
+
+	/**
+	 * The time for which a mediator update subscription is held.
+	 * @param millis
+	 */
+	public void setSubscriptionDuration( long millis ) {
+		if ( millis <= 0 )
+			throw new IllegalArgumentException("Subscription duration must be positive") ;
+		mSubscriptionDuration = millis ;
+	}
+
+	/**
+	 * The maximum number of unmatched seekers held at once.  Beyond this
+	 * point, new seekers receive TYPE_MATCHMAKER_REJECT_FULL.
+	 * @param num
+	 */
+	public void setMaxSeekers( int num ) {
+		mMaxSeekers = num ;
+	}
+
+	/**
+	 * The maximum number of mediator subscriptions held at once.  Beyond
+	 * this point, new subscribers receive TYPE_MEDIATOR_TOO_BUSY_TO_UPDATE.
+	 * @param num
+	 */
+	public void setMaxSubscribers( int num ) {
+		mMaxSubscribers = num ;
+	}
+
+
+	public SocketAddress getMatchmakerAddress() {
+		return mMatchmakerChannel.socket().getLocalSocketAddress() ;
+	}
+
+	/**
+	 * @return The mediator address, or 'null' if we have no mediator.
+	 */
+	public SocketAddress getMediatorAddress() {
+		return mMediatorChannel == null ? null : mMediatorChannel.socket().getLocalSocketAddress() ;
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	//
+	// STATISTICS
+	//
+	// May be read from any thread.
+	//
+
+	public long getPacketsReceived() { return mPacketsReceived ; }
+	public long getPacketsSent() { return mPacketsSent ; }
+	public long getPacketsDropped() { return mPacketsDropped ; }
+	public long getPacketsMalformed() { return mPacketsMalformed ; }
+	public long getMatches() { return mMatches ; }
+	public long getPromises() { return mPromises ; }
+	public long getRejections() { return mRejections ; }
+	public long getMediatorUpdates() { return mMediatorUpdates ; }
+	public int getNumSeekersWaiting() { return mNumSeekersWaiting ; }
+	public int getNumSubscribers() { return mNumSubscribers ; }
+
+
+	/**
+	 * Stops the matchmaker and closes its channels.  The thread terminates
+	 * shortly afterwards.
+	 */
+	public void halt() {
+		mRunning = false ;
+		mSelector.wakeup() ;
+	}
+
+
+	@Override
+	public void run() {
+		try {
+			while ( mRunning ) {
+				long now = System.currentTimeMillis() ;
+				sweepExpirations( now ) ;
+
+				long timeout = MAX_SELECT_TIMEOUT ;
+				Seeker s = mSeekerExpirations.peek() ;
+				if ( s != null )
+					timeout = Math.min(timeout, s.expires - now) ;
+				Subscriber sub = mSubscriberExpirations.peek() ;
+				if ( sub != null )
+					timeout = Math.min(timeout, sub.expires - now) ;
+
+				// select(0) blocks forever; never pass it.
+				if ( timeout <= 0 )
+					mSelector.selectNow() ;
+				else
+					mSelector.select(timeout) ;
+
+				Iterator<SelectionKey> iter = mSelector.selectedKeys().iterator() ;
+				while ( iter.hasNext() ) {
+					SelectionKey key = iter.next() ;
+					iter.remove() ;
+					if ( key.isValid() && key.isReadable() )
+						receive( (DatagramChannel)key.channel() ) ;
+				}
+			}
+		} catch ( IOException ioe ) {
+			ioe.printStackTrace() ;
+		} finally {
+			mRunning = false ;
+			closeSafely( mMatchmakerChannel ) ;
+			closeSafely( mMediatorChannel ) ;
+			try {
+				mSelector.close() ;
+			} catch ( IOException e ) { }
+		}
+	}
+
+
+	private void receive( DatagramChannel channel ) throws IOException {
+		for ( int i = 0; i < MAX_RECEIVES_PER_SELECT; i++ ) {
+			mInBuffer.clear() ;
+			SocketAddress source = channel.receive(mInBuffer) ;
+			if ( source == null )
+				return ;
+			mInBuffer.flip() ;
+			mPacketsReceived++ ;
+
+			// A datagram holds exactly one message: type, length, content.
+			// Verify before handing it to a Message, which would otherwise
+			// trust the length it reads.
+			int remaining = mInBuffer.remaining() ;
+			if ( remaining < 5 || ByteArrayOps.readIntAsBytes(mInBuffer.array(), 1) != remaining - 5 ) {
+				mPacketsMalformed++ ;
+				continue ;
+			}
+
+			long now = System.currentTimeMillis() ;
+			try {
+				if ( channel == mMatchmakerChannel ) {
+					mMatchmakingIn.resetForRead() ;
+					if ( mMatchmakingIn.read(mInBuffer) )
+						handleMatchmaking( mMatchmakingIn, source, now ) ;
+				} else {
+					mCoordinationIn.resetForRead() ;
+					if ( mCoordinationIn.read(mInBuffer) )
+						handleCoordination( mCoordinationIn, source, now ) ;
+				}
+			} catch ( IOException e ) {
+				mPacketsMalformed++ ;
+			} catch ( ClassNotFoundException e ) {
+				mPacketsMalformed++ ;
+			} catch ( RuntimeException e ) {
+				// content inconsistent with its own length fields
+				mPacketsMalformed++ ;
+			}
+		}
+	}
+
+
+	private void send( DatagramChannel channel, Message m, SocketAddress dest ) {
+		try {
+			mOutBuffer.clear() ;
+			m.write(mOutBuffer) ;
+			mOutBuffer.flip() ;
+			// non-blocking: 0 means the socket send buffer is full.
+			if ( channel.send(mOutBuffer, dest) == 0 )
+				mPacketsDropped++ ;
+			else
+				mPacketsSent++ ;
+		} catch ( IOException e ) {
+			mPacketsDropped++ ;
+		}
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	//
+	// MATCHMAKING
+	//
+
+	private void handleMatchmaking( MatchmakingMessage m, SocketAddress source, long now ) {
+		switch( m.getType() ) {
+		case MatchmakingMessage.TYPE_REQUEST_MATCH:
+		case MatchmakingMessage.TYPE_REQUEST_CHALLENGE:
+			handleRequest( m, source, now ) ;
+			break ;
+		default:
+			// Keep-alives and anything else.  Seekers re-request when their
+			// promise lapses, so there is nothing to refresh.
+			break ;
+		}
+	}
+
+
+	private void handleRequest( MatchmakingMessage m, SocketAddress source, long now ) {
+		String userID = m.getLocalUserID() ;
+		String requestID = m.getLocalRequestID() ;
+
+		byte reject = mPolicy.validate( m, source ) ;
+		if ( reject == Policy.ACCEPT && !validIntent( m.getIntent() ) )
+			reject = MatchmakingMessage.TYPE_MATCHMAKER_REJECT_UNSPECIFIED ;
+		if ( reject == Policy.ACCEPT && m.getRequestPort() >= 0
+				&& m.getRequestPort() != ((InetSocketAddress)source).getPort() )
+			reject = MatchmakingMessage.TYPE_MATCHMAKER_REJECT_PORT_RANDOMIZATION ;
+
+		Seeker s = mSeekers.get(requestID) ;
+		if ( reject == Policy.ACCEPT && s != null && !s.userID.equals(userID) )
+			reject = MatchmakingMessage.TYPE_MATCHMAKER_REJECT_UNSPECIFIED ;
+		if ( reject == Policy.ACCEPT && s == null && mSeekers.size() >= mMaxSeekers )
+			reject = MatchmakingMessage.TYPE_MATCHMAKER_REJECT_FULL ;
+
+		if ( reject != Policy.ACCEPT ) {
+			mRejections++ ;
+			send( mMatchmakerChannel, mMatchmakingOut.setAsReject(reject, userID, requestID), source ) ;
+			return ;
+		}
+
+		if ( s != null ) {
+			// A repeat of a request we are holding: a lost promise, or a
+			// seeker re-requesting after the promise lapsed.  Renew it,
+			// updating its addresses in case of NAT rebinding.
+			s.source = source ;
+			s.addresses = addresses( source, m.getLocalSocketAddress(0) ) ;
+			s.challenge = m.getType() == MatchmakingMessage.TYPE_REQUEST_CHALLENGE ;
+			s.expires = now + mPromiseDuration ;
+			s.renewed = true ;
+			notifySubscribers( mBuckets[s.intent].get(s.nonce) ) ;
+			promise( s ) ;
+			return ;
+		}
+
+		s = new Seeker() ;
+		s.requestID = requestID ;
+		s.userID = userID ;
+		s.intent = m.getIntent() ;
+		s.nonce = m.getNonce() ;
+		s.role = mPolicy.role(m) ;
+		s.challenge = m.getType() == MatchmakingMessage.TYPE_REQUEST_CHALLENGE ;
+		s.source = source ;
+		s.addresses = addresses( source, m.getLocalSocketAddress(0) ) ;
+		s.timeArrived = now ;
+
+		Bucket b = bucket( s.intent, s.nonce ) ;
+		notifySubscribers( b ) ;
+
+		Seeker partner = takePartner( b, s ) ;
+		if ( partner != null ) {
+			match( s, partner, now ) ;
+			if ( b.isEmpty() )
+				mBuckets[s.intent].remove(s.nonce) ;
+			return ;
+		}
+
+		// Nobody to match.  Hold and promise.
+		s.live = true ;
+		s.expires = now + mPromiseDuration ;
+		mSeekers.put(requestID, s) ;
+		mSeekerExpirations.add(s) ;
+		b.waiting[s.role].add(s) ;
+		b.numWaiting++ ;
+		mNumSeekersWaiting = mSeekers.size() ;
+		promise( s ) ;
+	}
+
+
+	private void promise( Seeker s ) {
+		mPromises++ ;
+		send( mMatchmakerChannel, mMatchmakingOut.setAsPromise(s.userID, s.requestID, s.expires - System.currentTimeMillis()), s.source ) ;
+	}
+
+
+	/**
+	 * Removes and returns the longest-waiting live seeker in 'b' who can be
+	 * matched with 's', or null if there is none.
+	 */
+	private Seeker takePartner( Bucket b, Seeker s ) {
+		Seeker best = null ;
+		int bestRole = -1 ;
+		for ( int role = 0; role < b.waiting.length; role++ ) {
+			if ( !compatible( s.role, role ) )
+				continue ;
+			Seeker candidate = firstCandidate( b.waiting[role], s ) ;
+			if ( candidate != null && ( best == null || candidate.timeArrived < best.timeArrived ) ) {
+				best = candidate ;
+				bestRole = role ;
+			}
+		}
+
+		if ( best != null ) {
+			b.waiting[bestRole].remove(best) ;		// usually the head; O(1)
+			b.numWaiting-- ;
+			best.live = false ;
+			mSeekers.remove(best.requestID) ;
+			mNumSeekersWaiting = mSeekers.size() ;
+		}
+		return best ;
+	}
+
+	private Seeker firstCandidate( ArrayDeque<Seeker> q, Seeker s ) {
+		// discard dead records from the head, then look for the first
+		// seeker belonging to a different user.
+		while ( !q.isEmpty() && !q.peek().live )
+			q.poll() ;
+		Iterator<Seeker> iter = q.iterator() ;
+		while ( iter.hasNext() ) {
+			Seeker candidate = iter.next() ;
+			if ( candidate.live && !candidate.userID.equals(s.userID) )
+				return candidate ;
+		}
+		return null ;
+	}
+
+	private static boolean compatible( int role1, int role2 ) {
+		if ( role1 == Policy.ROLE_PEER || role2 == Policy.ROLE_PEER )
+			return true ;
+		return role1 != role2 ;
+	}
+
+
+	private void match( Seeker s1, Seeker s2, long now ) {
+		mMatches++ ;
+		for ( int i = 0; i < 2; i++ ) {
+			Seeker local = i == 0 ? s1 : s2 ;
+			Seeker remote = i == 0 ? s2 : s1 ;
+			if ( local.challenge ) {
+				mMatchmakingOut.setAsMatchChallenge(local.intent, local.nonce,
+						local.userID, local.requestID, now - local.timeArrived, local.addresses,
+						remote.userID, remote.requestID, now - remote.timeArrived, remote.addresses) ;
+			} else {
+				mMatchmakingOut.setAsMatch(local.intent, local.nonce,
+						local.userID, local.requestID, now - local.timeArrived, local.addresses,
+						remote.userID, remote.requestID, now - remote.timeArrived, remote.addresses) ;
+			}
+			send( mMatchmakerChannel, mMatchmakingOut, local.source ) ;
+		}
+	}
+
+
+	/**
+	 * The addresses we report for a seeker: the address we observed,
+	 * followed by the address it reported (if different).  Peers attempt
+	 * them in order.
+	 */
+	private static SocketAddress [] addresses( SocketAddress observed, SocketAddress reported ) {
+		if ( reported == null || reported.equals(observed) )
+			return new SocketAddress[]{ observed } ;
+		return new SocketAddress[]{ observed, reported } ;
+	}
+
+	private static boolean validIntent( byte intent ) {
+		return intent == MatchmakingMessage.INTENT_LOBBY || intent == MatchmakingMessage.INTENT_GAME ;
+	}
+
+	/**
+	 * Returns the bucket for this intent and nonce, creating it if needed.
+	 */
+	private Bucket bucket( byte intent, Nonce nonce ) {
+		Bucket b = mBuckets[intent].get(nonce) ;
+		if ( b == null ) {
+			b = new Bucket() ;
+			mBuckets[intent].put(nonce, b) ;
+		}
+		return b ;
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	//
+	// MEDIATION
+	//
+
+	private void handleCoordination( CoordinationMessage m, SocketAddress source, long now ) {
+		String key ;
+		Subscriber sub ;
+		Bucket b ;
+
+		switch( m.getType() ) {
+		case CoordinationMessage.TYPE_PING:
+			send( mMediatorChannel, mCoordinationOut.setAsPong(), source ) ;
+			break ;
+
+		case CoordinationMessage.TYPE_REQUEST_MEDIATOR_UPDATES:
+			if ( !validIntent( m.getIntent() ) )
+				break ;
+			key = subscriberKey( m ) ;
+			sub = mSubscribers.get(key) ;
+			if ( sub != null ) {
+				sub.source = source ;
+				sub.expires = now + mSubscriptionDuration ;
+				sub.renewed = true ;
+			} else if ( mSubscribers.size() >= mMaxSubscribers ) {
+				send( mMediatorChannel, mCoordinationOut.setAsMediatorTooBusyToUpdate(), source ) ;
+				break ;
+			} else {
+				sub = new Subscriber() ;
+				sub.key = key ;
+				sub.intent = m.getIntent() ;
+				sub.nonce = m.getNonce() ;
+				sub.personalNonce = m.getTargetNonce() ;
+				sub.source = source ;
+				sub.expires = now + mSubscriptionDuration ;
+				sub.live = true ;
+				mSubscribers.put(key, sub) ;
+				mSubscriberExpirations.add(sub) ;
+				bucket( sub.intent, sub.nonce ).subscribers.add(sub) ;
+				mNumSubscribers = mSubscribers.size() ;
+			}
+			send( mMediatorChannel, mCoordinationOut.setAsMediatorWillUpdate(), source ) ;
+			break ;
+
+		case CoordinationMessage.TYPE_STOP_MEDIATOR_UPDATES:
+			if ( !validIntent( m.getIntent() ) )
+				break ;
+			sub = mSubscribers.get( subscriberKey( m ) ) ;
+			if ( sub != null )
+				unsubscribe( sub ) ;
+			break ;
+
+		default:
+			break ;
+		}
+	}
+
+
+	private static String subscriberKey( CoordinationMessage m ) {
+		return m.getIntent() + ":" + m.getNonce().toString() + ":" + m.getTargetNonce().toString() ;
+	}
+
+
+	private void notifySubscribers( Bucket b ) {
+		if ( b == null || mMediatorChannel == null )
+			return ;
+		int num = b.subscribers.size() ;
+		for ( int i = 0; i < num; i++ ) {
+			Subscriber sub = b.subscribers.get(i) ;
+			mMediatorUpdates++ ;
+			send( mMediatorChannel, mCoordinationOut.setAsMediatorUpdate(sub.intent, sub.nonce, sub.personalNonce), sub.source ) ;
+		}
+	}
+
+
+	private void unsubscribe( Subscriber sub ) {
+		sub.live = false ;
+		mSubscribers.remove(sub.key) ;
+		mNumSubscribers = mSubscribers.size() ;
+		Bucket b = mBuckets[sub.intent].get(sub.nonce) ;
+		if ( b != null ) {
+			b.subscribers.remove(sub) ;
+			if ( b.isEmpty() )
+				mBuckets[sub.intent].remove(sub.nonce) ;
+		}
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	//
+	// EXPIRATION
+	//
+
+	private void sweepExpirations( long now ) {
+		while ( !mSeekerExpirations.isEmpty() ) {
+			Seeker s = mSeekerExpirations.peek() ;
+			if ( !s.live ) {
+				mSeekerExpirations.poll() ;
+			} else if ( s.renewed ) {
+				mSeekerExpirations.poll() ;
+				s.renewed = false ;
+				mSeekerExpirations.add(s) ;
+			} else if ( s.expires <= now ) {
+				mSeekerExpirations.poll() ;
+				s.live = false ;
+				mSeekers.remove(s.requestID) ;
+				mNumSeekersWaiting = mSeekers.size() ;
+				Bucket b = mBuckets[s.intent].get(s.nonce) ;
+				if ( b != null ) {
+					b.numWaiting-- ;
+					if ( b.isEmpty() )
+						mBuckets[s.intent].remove(s.nonce) ;
+				}
+			} else
+				break ;
+		}
+
+		while ( !mSubscriberExpirations.isEmpty() ) {
+			Subscriber sub = mSubscriberExpirations.peek() ;
+			if ( !sub.live ) {
+				mSubscriberExpirations.poll() ;
+			} else if ( sub.renewed ) {
+				mSubscriberExpirations.poll() ;
+				sub.renewed = false ;
+				mSubscriberExpirations.add(sub) ;
+			} else if ( sub.expires <= now ) {
+				mSubscriberExpirations.poll() ;
+				unsubscribe( sub ) ;
+			} else
+				break ;
+		}
+	}
+
+}
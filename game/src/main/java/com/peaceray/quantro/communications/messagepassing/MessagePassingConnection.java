@@ -2,8 +2,10 @@ package com.peaceray.quantro.communications.messagepassing;
 
 import java.net.SocketAddress;
 
+import com.peaceray.quantro.communications.EncodedMessage;
 import com.peaceray.quantro.communications.Message;
 import com.peaceray.quantro.communications.nonce.Nonce;
+import com.peaceray.quantro.communications.telemetry.ConnectionTelemetry;
 
 
 /**
@@ -472,6 +474,69 @@ public abstract class MessagePassingConnection {
 	 */
 	public abstract boolean sendMessage( Message m ) throws IllegalStateException ;
 	
+	/**
+	 * Attempts to send the provided pre-encoded message to the connected peer.
+	 * Behaves exactly as sendMessage, but the encoding is shared rather than
+	 * copied: implementations must not re-encode or alter it, and may retain
+	 * a reference to it until sent.  Intended for broadcasts, where a message
+	 * is encoded once and sent through many connections.
+	 * 
+	 * @param em
+	 * @return Whether it appears the message was successfully sent.
+	 * @throws IllegalStateException Under the same circumstances as sendMessage.
+	 */
+	public abstract boolean sendEncodedMessage( EncodedMessage em ) throws IllegalStateException ;
+	
+	
+	/**
+	 * Can this connection currently send messages unreliably (see
+	 * sendMessageUnreliably)?  Support may depend on the remote peer, and so
+	 * may change from 'false' to 'true' shortly after connecting.
+	 * 
+	 * The default implementation returns false.
+	 * @return
+	 */
+	public boolean supportsUnreliableMessages() {
+		return false ;
+	}
+	
+	
+	/**
+	 * Attempts to send the provided message without any delivery guarantee:
+	 * it will never be resent, and may be lost or arrive out of order with
+	 * respect to every other message.  Intended for redundant, time-sensitive
+	 * content that the recipient can deduplicate.  'm' is not retained.
+	 * 
+	 * The default implementation returns false.
+	 * 
+	 * @param m
+	 * @return Whether the message was handed off for sending.  Returns 'false'
+	 * 		if unreliable messages are not supported, or not connected.
+	 */
+	public boolean sendMessageUnreliably( Message m ) {
+		return false ;
+	}
+
+
+
+	//
+	// TELEMETRY
+	// Every Connection records statistics about the messages it passes, which
+	// persist across reconnects.  Subclasses are responsible for recording
+	// into this object.
+	//
+
+	private final ConnectionTelemetry telemetry = new ConnectionTelemetry() ;
+
+	/**
+	 * The live telemetry for this Connection.  Take a snapshot() before
+	 * examining it in detail.
+	 * @return
+	 */
+	public ConnectionTelemetry getTelemetry() {
+		return telemetry ;
+	}
+
 	
 	
 	//
@@ -1,6 +1,9 @@
 package com.peaceray.quantro.communications.messagepassing;
 
+import com.peaceray.quantro.communications.EncodedMessage;
 import com.peaceray.quantro.communications.Message;
+import com.peaceray.quantro.communications.telemetry.ConnectionTelemetry;
+import com.peaceray.quantro.communications.telemetry.TelemetryDumpThread;
 
 /**
  * The MessagePassingLayer acts as an array of MessagePassingConnections,
@@ -14,7 +17,7 @@ import com.peaceray.quantro.communications.Message;
  * @author Jake
  *
  */
-public class MessagePassingLayer implements MessagePassingConnection.Delegate {
+public class MessagePassingLayer implements MessagePassingConnection.Delegate, TelemetryDumpThread.Source {
 	
 	/**
 	 * The MessagePassingLayer acts as a "wrapper" to the delegate methods of
@@ -84,6 +87,8 @@ public class MessagePassingLayer implements MessagePassingConnection.Delegate {
 	// Delegate!
 	MessagePassingLayer.Delegate delegate ;
 	
+	TelemetryDumpThread telemetryDumpThread ;
+	
 	
 	public MessagePassingLayer( int numConnections ) {
 		mpcs = new MessagePassingConnection[numConnections] ;
@@ -168,7 +173,8 @@ public class MessagePassingLayer implements MessagePassingConnection.Delegate {
 		
 		
 	/**
-	 * Upon return, all Connections will be in 'inactive' state.
+	 * Upon return, all Connections will be in 'inactive' state, and any
+	 * telemetry dump will have been stopped.
 	 * 
 	 * This method will catch any exceptions that result from its calls.
 	 */
@@ -176,6 +182,8 @@ public class MessagePassingLayer implements MessagePassingConnection.Delegate {
 		if ( !allConnectionsSet )
 			throw new IllegalStateException("Some connections not yet set!") ;
 		
+		stopTelemetryDump() ;
+		
 		for ( int i = 0; i < mpcs.length; i++ ) {
 			MessagePassingConnection mpc = mpcs[i] ;
 			
@@ -390,11 +398,58 @@ public class MessagePassingLayer implements MessagePassingConnection.Delegate {
 	 * 
 	 * Returns 'false' if any of our active connections are not Connected,
 	 * or if some Connected connection returned 'false' on the send.
+	 * 
+	 * The message is encoded once, and that single encoding is shared
+	 * by every recipient (see broadcastEncodedExcept).  'm' is not retained
+	 * and may be altered as soon as this method returns.
 	 */
 	public synchronized boolean broadcastExcept( Message m, int exemptConnection ) {
 		if ( !allConnectionsSet )
 			throw new IllegalStateException("Some connections not yet set!") ;
 		
+		int numTargets = 0 ;
+		for ( int i = 0; i < mpcs.length; i++ ) {
+			if ( i != exemptConnection && mpcs[i].isActive()
+					&& mpcs[i].connectionStatus() == MessagePassingConnection.Status.CONNECTED )
+				numTargets++ ;
+		}
+		
+		// A single recipient gets the message directly; more than one
+		// share a single encoding.
+		EncodedMessage em = numTargets > 1 ? EncodedMessage.encode(m) : null ;
+		return broadcastExcept( m, em, exemptConnection ) ;
+	}
+	
+	
+	/**
+	 * Broadcasts the provided pre-encoded message to ALL Connected connections.
+	 * Equivalent to broadcastEncodedExcept( em, -1 ).
+	 */
+	public synchronized boolean broadcastEncoded( EncodedMessage em ) {
+		return broadcastEncodedExcept( em, -1 ) ;
+	}
+	
+	
+	/**
+	 * As broadcastExcept, but for a message which has already been encoded.
+	 * The same immutable EncodedMessage is handed to every recipient
+	 * connection; none of them re-encode or copy it.  Callers fanning a
+	 * message out to several layers (e.g. players and spectators) should
+	 * encode once and use this method for each.
+	 */
+	public synchronized boolean broadcastEncodedExcept( EncodedMessage em, int exemptConnection ) {
+		if ( !allConnectionsSet )
+			throw new IllegalStateException("Some connections not yet set!") ;
+		
+		return broadcastExcept( null, em, exemptConnection ) ;
+	}
+	
+	
+	/**
+	 * Sends 'em' if non-null, otherwise 'm', to every Connected connection
+	 * except the one exempt.
+	 */
+	private boolean broadcastExcept( Message m, EncodedMessage em, int exemptConnection ) {
 		boolean ok = true ;
 		
 		for ( int i = 0; i < mpcs.length; i++ ) {
@@ -408,7 +463,7 @@ public class MessagePassingLayer implements MessagePassingConnection.Delegate {
 				}
 				else {
 					//System.out.println("MPL.broadcast: sending to " + i) ;
-					ok = mpc.sendMessage(m) && ok ;
+					ok = ( em != null ? mpc.sendEncodedMessage(em) : mpc.sendMessage(m) ) && ok ;
 				}
 			}
 		}
@@ -444,6 +499,15 @@ public class MessagePassingLayer implements MessagePassingConnection.Delegate {
 			if ( targets[i] && !mpcs[i].isActive() )
 				throw new IllegalArgumentException("Inactive Connection specified as a target") ;
 		
+		int numTargets = 0 ;
+		for ( int i = 0; i < mpcs.length; i++ )
+			if ( targets[i] && mpcs[i].connectionStatus() == MessagePassingConnection.Status.CONNECTED )
+				numTargets++ ;
+		
+		// A single recipient gets the message directly; more than one
+		// share a single encoding.
+		EncodedMessage em = numTargets > 1 ? EncodedMessage.encode(m) : null ;
+		
 		boolean ok = true ;
 		
 		for ( int i = 0; i < mpcs.length; i++ ) {
@@ -452,7 +516,9 @@ public class MessagePassingLayer implements MessagePassingConnection.Delegate {
 				MessagePassingConnection.Status status = mpc.connectionStatus() ;
 				if ( status != MessagePassingConnection.Status.CONNECTED )
 					ok = false ;
-				else {
+				else if ( em != null ) {
+					ok = mpc.sendEncodedMessage(em) && ok ;
+				} else {
 					ok = mpc.sendMessage(m) && ok ;
 				}
 			}
@@ -462,6 +528,113 @@ public class MessagePassingLayer implements MessagePassingConnection.Delegate {
 	}
 	
 	
+	/**
+	 * Does the specified connection currently support unreliable messages?
+	 * Inactive connections do not.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public synchronized boolean supportsUnreliableMessages( int index ) {
+		MessagePassingConnection mpc = mpcs[index] ;
+		return mpc != null && mpc.isActive() && mpc.supportsUnreliableMessages() ;
+	}
+	
+	
+	/**
+	 * Sends the provided message unreliably (see MessagePassingConnection.
+	 * sendMessageUnreliably) to the specified targets.  Targets which are
+	 * not connected, or do not support unreliable messages, are skipped.
+	 * 
+	 * Returns 'true' if every specified target accepted the message.
+	 * 
+	 * @param m
+	 * @param targets
+	 * @return
+	 */
+	public synchronized boolean sendUnreliablyTo( Message m, boolean [] targets ) {
+		if ( !allConnectionsSet )
+			throw new IllegalStateException("Some connections not yet set!") ;
+		
+		boolean ok = true ;
+		for ( int i = 0; i < mpcs.length; i++ ) {
+			if ( targets[i] ) {
+				MessagePassingConnection mpc = mpcs[i] ;
+				ok = mpc.isActive() && mpc.sendMessageUnreliably(m) && ok ;
+			}
+		}
+		return ok ;
+	}
+
+
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// TELEMETRY
+	//
+	// Each Connection records its own ConnectionTelemetry, which persists
+	// across reconnects.  We aggregate on request.
+	//
+	////////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns a snapshot of the telemetry for the specified connection.
+	 * @param index
+	 * @return
+	 */
+	public synchronized ConnectionTelemetry telemetrySnapshot( int index ) {
+		MessagePassingConnection mpc = mpcs[index] ;
+		return mpc == null ? new ConnectionTelemetry() : mpc.getTelemetry().snapshot() ;
+	}
+
+
+	/**
+	 * Returns a snapshot of the telemetry for all our connections, combined.
+	 * @return
+	 */
+	public synchronized ConnectionTelemetry telemetrySnapshot() {
+		ConnectionTelemetry ct = null ;
+		for ( int i = 0; i < mpcs.length; i++ ) {
+			if ( mpcs[i] == null )
+				continue ;
+			if ( ct == null )
+				ct = mpcs[i].getTelemetry().snapshot() ;
+			else
+				ct.add( mpcs[i].getTelemetry() ) ;
+		}
+		return ct == null ? new ConnectionTelemetry() : ct ;
+	}
+
+
+	@Override
+	public ConnectionTelemetry tds_telemetrySnapshot() {
+		return telemetrySnapshot() ;
+	}
+
+
+	/**
+	 * Begins dumping our combined telemetry every 'periodMillis', to the
+	 * provided delegate, which must not be null.  Replaces any previous
+	 * dump.  Dumping stops upon stopTelemetryDump() or deactivate().
+	 *
+	 * @param name
+	 * @param periodMillis
+	 * @param delegate
+	 */
+	public synchronized void startTelemetryDump( String name, long periodMillis, TelemetryDumpThread.Delegate delegate ) {
+		stopTelemetryDump() ;
+		telemetryDumpThread = new TelemetryDumpThread( name, this, periodMillis, delegate ) ;
+		telemetryDumpThread.start() ;
+	}
+
+
+	public synchronized void stopTelemetryDump() {
+		if ( telemetryDumpThread != null ) {
+			telemetryDumpThread.stopDumping() ;
+			telemetryDumpThread = null ;
+		}
+	}
+
+
 	////////////////////////////////////////////////////////////////////////////
 	//
 	// MESSAGE PASSING CONNECTION DELEGATE METHODS
@@ -1,8 +1,10 @@
 package com.peaceray.quantro.communications.messagepassing;
 
+import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 
+import com.peaceray.quantro.communications.EncodedMessage;
 import com.peaceray.quantro.communications.Message;
 import com.peaceray.quantro.communications.nonce.Nonce;
 
@@ -335,6 +337,7 @@ public class MessagePassingPairedConnection extends MessagePassingConnection {
 				mIncomingMessageQueue.add(mCurrentMessage) ;
 			
 			mCurrentMessage = mIncomingMessageQueue.remove(0) ;
+			getTelemetry().recordReceived( mCurrentMessage, -1, mIncomingMessageQueueLength ) ;
 			mIncomingMessageQueueLength-- ;
 			
 			// Autoupdate remote name?
@@ -403,6 +406,7 @@ public class MessagePassingPairedConnection extends MessagePassingConnection {
 			// Now copy.
 			mPartner.mIncomingMessageQueue.get(mPartner.mIncomingMessageQueueLength).setAs(m) ;
 			mPartner.mIncomingMessageQueueLength++ ;
+			getTelemetry().recordSent( m, -1, mPartner.mIncomingMessageQueueLength ) ;
 			
 			// Okay, inform the partner's delegate.  This is our last operation.
 			if ( mPartner.mDelegate != null )
@@ -412,6 +416,59 @@ public class MessagePassingPairedConnection extends MessagePassingConnection {
 		}
 	}
 
+	/**
+	 * Paired connections deliver Message instances, not bytes, so the
+	 * encoding is decoded directly into the partner's queue.  This is
+	 * no more work than the copy performed by sendMessage.
+	 */
+	@Override
+	public boolean sendEncodedMessage(EncodedMessage em) throws IllegalStateException {
+		synchronized( mLock ) {
+			if ( mStatus == Status.INACTIVE )
+				throw new IllegalArgumentException("Inactive") ;
+			if ( mStatus == Status.NEVER_CONNECTED
+					|| mStatus == Status.PENDING
+					|| mStatus == Status.DISCONNECTED )
+				throw new IllegalArgumentException("Disconnected or never connected") ;
+			
+			if ( mStatus != Status.CONNECTED )
+				return false ;
+			
+			Class<?> c = em.getMessageClass() ;
+			if ( mMessageClass == null ) {
+				mMessageClass = c ;
+				mPartner.mMessageClass = c ;
+			} else if ( mMessageClass != c )
+				throw new IllegalArgumentException("Provided EncodedMessage has class " + c + "; expecting class " + mMessageClass) ;
+			
+			if ( mPartner.mIncomingMessageQueueLength == mPartner.mIncomingMessageQueue.size() ) {
+				try {
+					mPartner.mIncomingMessageQueue.add( (Message)(mMessageClass.newInstance()) ) ;
+				} catch( IllegalAccessException iae ) {
+					iae.printStackTrace() ;
+					throw new IllegalArgumentException("Failed allocating a new Message instance of subclass " + mMessageClass) ;
+				} catch (InstantiationException e) {
+					e.printStackTrace();
+					throw new IllegalArgumentException("Failed allocating a new Message instance of subclass " + mMessageClass) ;
+				}
+			}
+			
+			try {
+				em.decodeInto( mPartner.mIncomingMessageQueue.get(mPartner.mIncomingMessageQueueLength) ) ;
+			} catch ( IOException e ) {
+				e.printStackTrace() ;
+				return false ;
+			}
+			mPartner.mIncomingMessageQueueLength++ ;
+			getTelemetry().recordSent( em, mPartner.mIncomingMessageQueueLength ) ;
+			
+			if ( mPartner.mDelegate != null )
+				mPartner.mDelegate.mpcd_messagePassingConnectionDidReceiveMessage(mPartner) ;
+			
+			return true ;
+		}
+	}
+
 	@Override
 	public Nonce getNonce() {
 		return mNonce ;
@@ -7,6 +7,7 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.BlockingQueue;
 
+import com.peaceray.quantro.communications.EncodedMessage;
 import com.peaceray.quantro.communications.Message;
 import com.peaceray.quantro.communications.MessageReader;
 import com.peaceray.quantro.communications.MultipleMessageReader;
@@ -206,6 +207,7 @@ public abstract class MessagePassingWrappedSocketConnection
 		
 		this.wsock = wsock ;
 		this.wsock_remoteAddress = wsock.getRemoteSocketAddress() ;
+		this.wsock.setTelemetry( getTelemetry() ) ;
 		
 		this.wsock_messageAware = wsock.isObjectAware(messageClass) ;
 		
@@ -492,9 +494,11 @@ public abstract class MessagePassingWrappedSocketConnection
 				lastMessageRead = null ;
 			}
 			pollDataObjectSourceQueueForMetaMessages() ;
-			if ( wsock_rbq.size() > 0 ) {
+			int queueDepth = wsock_rbq.size() ;
+			if ( queueDepth > 0 ) {
 				lastMessageRead = (Message) wsock_rbq.poll() ;
 				if ( lastMessageRead != null ) {
+					getTelemetry().recordReceived( lastMessageRead, lastMessageRead.lengthAsRead(), queueDepth ) ;
 					if ( lastMessageRead.getType() == Message.TYPE_MY_NAME && lastMessageRead.getName() != null )
 						updateRemoteName( lastMessageRead.getName() ) ;
 					pollDataObjectSourceQueueForMetaMessages() ;
@@ -505,9 +509,12 @@ public abstract class MessagePassingWrappedSocketConnection
 			boolean hadRoom = roomForMessage() ;
 			// If we have a message available, return it.
 			if ( this.lastMessageIndexRead != this.lastMessageIndexRetrieved ) {
+				int queueDepth = ( this.lastMessageIndexRetrieved - this.lastMessageIndexRead
+						+ this.incomingMessageQueue.length ) % this.incomingMessageQueue.length ;
 				this.lastMessageIndexRead += 1 ;
 				this.lastMessageIndexRead %= this.incomingMessageQueue.length ;
 				Message m = this.incomingMessageQueue[this.lastMessageIndexRead] ;
+				getTelemetry().recordReceived( m, m.lengthAsRead(), queueDepth ) ;
 				
 				// Note: in normal operation, the message reader delegate method
 				// will inform it to read the next message upon the previous
@@ -571,6 +578,8 @@ public abstract class MessagePassingWrappedSocketConnection
 					Message outgoing = (Message)wsock.getDataObjectEmptyInstance() ;
 					outgoing.setAs(m) ;
 					this.wsock_wbq.add(outgoing) ;
+					// the WrappedSocket records its length once written.
+					getTelemetry().recordSent( m, -1, this.wsock_wbq.size() ) ;
 					this.wsock.dataObjectAvailable() ;
 					// we expect the WrappedSocket to return this message to the pool
 					// when possible, so don't bother retaining a reference to it.
@@ -585,7 +594,8 @@ public abstract class MessagePassingWrappedSocketConnection
 			} else {
 				try {
 					////System.err.println("writing message type " + m.getType()) ;
-					m.write( wsock_wbc ) ;
+					int bytes = m.write( wsock_wbc ) ;
+					getTelemetry().recordSent( m, bytes, -1 ) ;
 					return true ;
 				} catch( IOException e ) {
 					// Whoops.  Something went wrong.  Don't know what, so...
@@ -608,6 +618,95 @@ public abstract class MessagePassingWrappedSocketConnection
 
 	
 	
+	/**
+	 * Sends a pre-encoded message.  For message-aware sockets, the shared
+	 * encoding is placed on the outgoing queue by reference; for byte-based
+	 * sockets its bytes are written directly.  Neither case re-encodes.
+	 */
+	@Override
+	public synchronized boolean sendEncodedMessage(EncodedMessage em) throws IllegalStateException {
+		if ( !this.isActive() )
+			throw new IllegalStateException("Inactive Connections cannot send messages.") ;
+		Status status =  this.connectionStatus() ;
+		if ( status == MessagePassingConnection.Status.NEVER_CONNECTED
+				|| status == MessagePassingConnection.Status.PENDING
+				|| status == MessagePassingConnection.Status.FAILED ) {
+			throw new IllegalStateException("Must wait for a connection before sending messages.") ;
+		}
+		if ( status == MessagePassingConnection.Status.DISCONNECTED )
+			throw new IllegalStateException("You disconnected this Connection!  Why you trying to send messages on it, dog?") ;
+		
+		if ( status == MessagePassingConnection.Status.CONNECTED ) {
+			if ( this.wsock_messageAware ) {
+				try {
+					Message outgoing = (Message)wsock.getDataObjectEmptyInstance() ;
+					outgoing.setAsEncoded(em) ;
+					this.wsock_wbq.add(outgoing) ;
+					getTelemetry().recordSent( em, this.wsock_wbq.size() ) ;
+					this.wsock.dataObjectAvailable() ;
+					return true ;
+				} catch ( Exception e ) {
+					this.wsock.close();
+					this.setConnectionStatus(MessagePassingConnection.Status.BROKEN) ;
+					return false ;
+				}
+			} else {
+				try {
+					em.write( wsock_wbc ) ;
+					getTelemetry().recordSent( em, -1 ) ;
+					return true ;
+				} catch( IOException e ) {
+					e.printStackTrace() ;
+					if ( mmreader != null ) {
+						mmreader.remove(mmreaderToken) ;
+					} else if ( mreader != null ) {
+						this.mreader.stop();
+					}
+					this.wsock.close();
+					this.setConnectionStatus(MessagePassingConnection.Status.BROKEN) ;
+					return false ;
+				}
+			}
+		}
+		
+		return false ;
+	}
+	
+	
+	@Override
+	public synchronized boolean supportsUnreliableMessages() {
+		return wsock_messageAware && wsock != null && wsock.supportsUnreliableDataObjects() ;
+	}
+	
+	
+	/**
+	 * Sends the message as an unreliable data object of our (message-aware)
+	 * WrappedSocket, if it supports them.  Never breaks the connection: a
+	 * failed unreliable send is indistinguishable from a lost one.
+	 */
+	@Override
+	public synchronized boolean sendMessageUnreliably(Message m) {
+		if ( !this.isActive() || this.connectionStatus() != MessagePassingConnection.Status.CONNECTED )
+			return false ;
+		if ( !supportsUnreliableMessages() )
+			return false ;
+		
+		try {
+			Message outgoing = (Message)wsock.getDataObjectEmptyInstance() ;
+			outgoing.setAs(m) ;
+			if ( wsock.sendDataObjectUnreliably(outgoing) ) {
+				getTelemetry().recordSentUnreliably( m, true ) ;
+				return true ;
+			}
+			wsock.recycleDataObjectInstance(outgoing) ;
+		} catch ( Exception e ) {
+			// nothing; treat as lost.
+		}
+		getTelemetry().recordSentUnreliably( m, false ) ;
+		return false ;
+	}
+	
+	
 	private synchronized boolean roomForMessage() {
 		if ( this.wsock_messageAware )
 			throw new IllegalStateException("roomForMessage() only appropriate for byte-based wrapped sockets") ;
@@ -7,6 +7,7 @@ import java.util.Iterator;
 
 import com.peaceray.quantro.communications.MatchmakingMessage;
 import com.peaceray.quantro.communications.nonce.Nonce;
+import com.peaceray.quantro.communications.nonce.NonceMap;
 import com.peaceray.quantro.communications.wrapper.AdministratedWrappedSocketAdministrator;
 import com.peaceray.quantro.communications.wrapper.WrappedSocket;
 import com.peaceray.quantro.lobby.InternetLobby;
@@ -261,7 +262,7 @@ public class MatchRouter implements MatchSeekingListener.Requester {
 	 * A list of nonces which will ONLY be matched to a Requester that specifies
 	 * their remote personanl nonce at request time.
 	 */
-	private ArrayList<Nonce> mReservedNonces ;
+	private NonceMap<Nonce> mReservedNonces ;
 	
 	
 	private WeakReference<UpdateListener> mwrUpdateListener ;
@@ -399,10 +400,11 @@ public class MatchRouter implements MatchSeekingListener.Requester {
 		// allocate our personal structures
 		mwrUpdateListener = new WeakReference<UpdateListener> (updateListener) ;
 		mRequesters = new ArrayList<RequesterPack>() ;
-		mReservedNonces = new ArrayList<Nonce>() ;
+		mReservedNonces = new NonceMap<Nonce>( reservedNonces == null ? 0 : reservedNonces.length ) ;
 		if ( reservedNonces != null ) {
 			for ( int i = 0; i < reservedNonces.length; i++ ) {
-				mReservedNonces.add(reservedNonces[i]) ;
+				if ( reservedNonces[i] != null )
+					mReservedNonces.put(reservedNonces[i], reservedNonces[i]) ;
 			}
 		}
 	}
@@ -463,7 +465,7 @@ public class MatchRouter implements MatchSeekingListener.Requester {
 						}
 					}
 				}
-				if ( rp == null && !mReservedNonces.contains(personalNonce) ) {
+				if ( rp == null && !mReservedNonces.containsKey(personalNonce) ) {
 					logV("MatchFound: no reserved nonce found, looking for one not concerned with nonces...") ;
 					iter = mRequesters.iterator() ;
 					for ( ; iter.hasNext() && rp == null ; ) {
@@ -3,6 +3,7 @@ package com.peaceray.quantro.communications.nonce;
 import java.io.IOException;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.util.Random;
 
@@ -31,6 +32,14 @@ import com.peaceray.quantro.utils.Base64;
  * Nonce.ZERO (i.e., a randomly-generate Nonce will NEVER be equal
  * to Nonce.ZERO).
  * 
+ * Nonces are compared constantly (every message header carries one), so
+ * each Nonce computes a 128-bit fingerprint of its bytes -- two longs --
+ * when constructed.  hashCode() and the first stage of equals() use
+ * the fingerprint, and neither allocates.  Both the String and the
+ * byte-array encoding are cached once first needed.  NonceMap uses
+ * the fingerprint for O(1) lookups, including lookups directly against
+ * an encoded Nonce in a message buffer.
+ * 
  * @author Jake
  *
  */
@@ -53,6 +62,17 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 	private byte [] bytes ;
 	private String stringRepresentation ;
 	
+	// Cached: the byte encoding (length byte and value bytes) as written by
+	// writeAsBytes, and a 128-bit fingerprint of the value bytes.  Derived
+	// entirely from 'bytes'; not serialized.
+	private transient byte [] encoding ;
+	private transient long fingerprintHigh ;
+	private transient long fingerprintLow ;
+	
+	// Fingerprint seeds.  Arbitrary, but must differ.
+	private static final long FINGERPRINT_SEED_HIGH = 0xcbf29ce484222325L ;
+	private static final long FINGERPRINT_SEED_LOW = 0x84222325cbf29ce4L ;
+	
 	
 	///////////////////////////////////////////////////////////////////////////
 	//
@@ -68,8 +88,71 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 			throw new IllegalArgumentException("Must provide the same number of bytes.") ;
 		
 		stringRepresentation = null ;
+		encoding = null ;
 		for ( int i = 0; i < this.bytes.length; i++ )
 			this.bytes[i] = bytes[i] ;
+		setFingerprint() ;
+	}
+	
+	
+	/**
+	 * Computes the fingerprint for the current 'bytes'.  Every code path
+	 * which sets 'bytes' must call this.
+	 */
+	private void setFingerprint() {
+		fingerprintHigh = fingerprint( bytes, 0, bytes.length, FINGERPRINT_SEED_HIGH ) ;
+		fingerprintLow = fingerprint( bytes, 0, bytes.length, FINGERPRINT_SEED_LOW ) ;
+	}
+	
+	/**
+	 * A 64-bit hash of ar[offset .. offset+len).  FNV-1a over the bytes,
+	 * finished with the MurmurHash3 64-bit mixer so that every input bit
+	 * affects every output bit.
+	 */
+	private static long fingerprint( byte [] ar, int offset, int len, long seed ) {
+		long h = seed ^ len ;
+		for ( int i = 0; i < len; i++ ) {
+			h ^= ar[offset + i] & 0xff ;
+			h *= 0x100000001b3L ;
+		}
+		h ^= h >>> 33 ;
+		h *= 0xff51afd7ed558ccdL ;
+		h ^= h >>> 33 ;
+		h *= 0xc4ceb9fe1a85ec53L ;
+		h ^= h >>> 33 ;
+		return h ;
+	}
+	
+	/**
+	 * The low fingerprint of the Nonce encoded at ar[index], as written by
+	 * writeAsBytes; equal to the encoded Nonce's fingerprintLow().
+	 * Allocates nothing.
+	 * 
+	 * @param ar
+	 * @param index
+	 * @return
+	 */
+	static long fingerprintLowOfEncoding( byte [] ar, int index ) {
+		int len = ar[index] - Nonce.LENGTH_TO_BYTE_REPRESENTATION_OFFSET ;
+		return fingerprint( ar, index + 1, len, FINGERPRINT_SEED_LOW ) ;
+	}
+	
+	/**
+	 * The low 64 bits of this Nonce's fingerprint.  Two equal Nonces have
+	 * equal fingerprints.
+	 * @return
+	 */
+	public long fingerprintLow() {
+		return fingerprintLow ;
+	}
+	
+	/**
+	 * The high 64 bits of this Nonce's fingerprint.  Two equal Nonces have
+	 * equal fingerprints.
+	 * @return
+	 */
+	public long fingerprintHigh() {
+		return fingerprintHigh ;
 	}
 	
 	
@@ -109,6 +192,8 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 			Nonce n = new Nonce() ;
 			n.bytes = databytes ;
 			n.stringRepresentation = null ;
+			n.encoding = null ;
+			n.setFingerprint() ;
 			return n ;
 		} catch( Exception e ) {
 			e.printStackTrace() ;
@@ -126,6 +211,7 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 		r.nextBytes(bytes) ;
 		
 		stringRepresentation = null ;	// only set string when first needed
+		setFingerprint() ;
 	}
 	
 	/**
@@ -140,6 +226,7 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 		r.nextBytes(bytes) ;
 		
 		stringRepresentation = null ;	// only set string when first needed
+		setFingerprint() ;
 	}
 	
 	/**
@@ -154,6 +241,9 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 			bytes[i] = n.bytes[i] ;
 		
 		stringRepresentation = n.stringRepresentation ;
+		encoding = n.encoding ;
+		fingerprintHigh = n.fingerprintHigh ;
+		fingerprintLow = n.fingerprintLow ;
 	}
 	
 	/**
@@ -170,6 +260,7 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 			bytes[i] = ar[i+1] ;
 		
 		stringRepresentation = null ;
+		setFingerprint() ;
 	}
 	
 	/**
@@ -187,6 +278,23 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 			bytes[i] = ar[i+offset+1] ;
 		
 		stringRepresentation = null ;
+		setFingerprint() ;
+	}
+	
+	/**
+	 * Constructs a Nonce object by reading its byte representation from the
+	 * provided ByteBuffer, beginning at its current position.  The position
+	 * is advanced past the Nonce.  As with Nonce( byte [] ), the
+	 * representation must have been written by a Nonce object.
+	 * 
+	 * @param bb
+	 */
+	public Nonce( ByteBuffer bb ) {
+		bytes = new byte[bb.get() - Nonce.LENGTH_TO_BYTE_REPRESENTATION_OFFSET] ;
+		bb.get(bytes) ;
+		
+		stringRepresentation = null ;
+		setFingerprint() ;
 	}
 	
 	/**
@@ -204,6 +312,7 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 		String strRepConv = Nonce.fromSMSSafe(strRep) ;
 		bytes = Base64.decode(strRepConv, Base64.URL_SAFE) ;
 		stringRepresentation = strRepConv ;
+		setFingerprint() ;
 	}
 	
 	
@@ -242,6 +351,7 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 		
 		Nonce n = new Nonce() ;
 		n.bytes = extendedBytes ;
+		n.setFingerprint() ;
 		return n ;
 	}
 	
@@ -291,9 +401,7 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 	
 	@Override
 	public int hashCode() {
-		if ( bytes.length > 0 )
-			return bytes[0] ;
-		return 0 ;
+		return (int)( fingerprintLow ^ (fingerprintLow >>> 32) ) ;
 	}
 	
 	/**
@@ -318,8 +426,14 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 	public boolean equals( Nonce n ) {
 		if ( n == null )
 			return false ;
+		if ( n == this )
+			return true ;
 		if ( bytes.length != n.bytes.length )
 			return false ;
+		// Unequal fingerprints mean unequal nonces.  Equal fingerprints
+		// almost certainly mean equal nonces, but we confirm.
+		if ( fingerprintLow != n.fingerprintLow || fingerprintHigh != n.fingerprintHigh )
+			return false ;
 		for ( int i = 0; i < bytes.length; i++ )
 			if ( bytes[i] != n.bytes[i] )
 				return false ;
@@ -376,7 +490,7 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 		if ( obj instanceof Nonce )
 			return this.equals( (Nonce)obj ) ;
 		if ( obj instanceof byte [] )
-			return this.equals( (byte[]) obj ) ;
+			return this.equals( (byte[]) obj, 0 ) ;
 		if ( obj instanceof String ) 
 			return this.equals( (String) obj ) ;
 		return false ;
@@ -462,11 +576,41 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 	 */
 	public int writeAsBytes( byte [] ar, int index ) {
 		// Write the length as the first byte, then the rest.
-		ar[index] = (byte) ( bytes.length + Nonce.LENGTH_TO_BYTE_REPRESENTATION_OFFSET ) ;
-		for ( int i = 0; i < bytes.length; i++ )
-			ar[i+index+1] = bytes[i] ;
-		
-		return bytes.length + 1 ;
+		byte [] enc = encoding() ;
+		System.arraycopy(enc, 0, ar, index, enc.length) ;
+		return enc.length ;
+	}
+	
+	/**
+	 * Writes the Nonce as bytes into the provided ByteBuffer at its
+	 * current position, advancing the position.  The format is that
+	 * of writeAsBytes( byte [], int ).
+	 * 
+	 * @param bb
+	 * @return The number of bytes written.
+	 * 
+	 * @throws java.nio.BufferOverflowException
+	 */
+	public int writeAsBytes( ByteBuffer bb ) {
+		byte [] enc = encoding() ;
+		bb.put(enc) ;
+		return enc.length ;
+	}
+	
+	/**
+	 * Returns the cached byte encoding, creating it if necessary.  Nonces
+	 * are immutable (except MutableNonces, which reset the cache), so the
+	 * array is never altered once created.
+	 */
+	private byte [] encoding() {
+		byte [] enc = encoding ;
+		if ( enc == null ) {
+			enc = new byte[bytes.length + 1] ;
+			enc[0] = (byte) ( bytes.length + Nonce.LENGTH_TO_BYTE_REPRESENTATION_OFFSET ) ;
+			System.arraycopy(bytes, 0, enc, 1, bytes.length) ;
+			encoding = enc ;
+		}
+		return enc ;
 	}
 	
 	/**
@@ -506,9 +650,7 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 	
 	private void writeObject(java.io.ObjectOutputStream stream) throws IOException {
 		// Write as byte representation
-		byte [] rep = new byte[ this.lengthAsBytes() ] ;
-		this.writeAsBytes(rep, 0) ;
-		stream.write(rep) ;
+		stream.write(encoding()) ;
 	}
 	
 	private void readObject(java.io.ObjectInputStream stream) throws IOException, ClassNotFoundException {
@@ -519,6 +661,8 @@ public class Nonce implements Serializable, Comparable<Nonce> {
 			bytes[i] = stream.readByte() ;
 		
 		stringRepresentation = null ;
+		encoding = null ;
+		setFingerprint() ;
 	}
 	
 	@SuppressWarnings("unused")
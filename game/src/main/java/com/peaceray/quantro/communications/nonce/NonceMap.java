@@ -0,0 +1,232 @@
+package com.peaceray.quantro.communications.nonce;
+
+
+/**
+ * A map from Nonces to values, implemented as an open-addressed hash
+ * table (linear probing) over parallel arrays.
+ *
+ * Lookups use the Nonce's precomputed fingerprint, so they neither
+ * allocate nor rehash the Nonce's bytes.  In addition to lookup by Nonce,
+ * values can be looked up by an *encoded* Nonce -- the byte representation
+ * written by Nonce.writeAsBytes -- sitting in a message buffer, without
+ * constructing a Nonce object at all.
+ *
+ * Like HashMap, NonceMap is not synchronized; callers sharing one between
+ * threads must synchronize externally.  Null keys are not permitted; null
+ * values are, but get() cannot distinguish them from absence (use
+ * containsKey).
+ *
+ * @author Jake
+ *
+ * @param <V>
+ */
+public class NonceMap<V> {
+
+	private static final int DEFAULT_CAPACITY = 16 ;
+
+	private Nonce [] mKeys ;
+	private Object [] mValues ;
+	private int mMask ;
+	private int mSize ;
+
+
+	public NonceMap() {
+		this( DEFAULT_CAPACITY ) ;
+	}
+
+	/**
+	 * Constructs a NonceMap able to hold at least 'expected' entries without
+	 * resizing.
+	 * @param expected
+	 */
+	public NonceMap( int expected ) {
+		if ( expected < 0 )
+			throw new IllegalArgumentException("Expected size must be non-negative") ;
+		allocate( tableSizeFor( expected ) ) ;
+	}
+
+
+	private static int tableSizeFor( int expected ) {
+		// load factor at most 1/2
+		int cap = Integer.highestOneBit( Math.max(DEFAULT_CAPACITY / 2, expected) * 2 - 1 ) << 1 ;
+		return Math.max(cap, DEFAULT_CAPACITY) ;
+	}
+
+	private void allocate( int capacity ) {
+		mKeys = new Nonce[capacity] ;
+		mValues = new Object[capacity] ;
+		mMask = capacity - 1 ;
+		mSize = 0 ;
+	}
+
+	private int slot( long fingerprint ) {
+		// the fingerprint is already well-mixed; its low bits will do.
+		return (int)fingerprint & mMask ;
+	}
+
+
+	public int size() {
+		return mSize ;
+	}
+
+	public boolean isEmpty() {
+		return mSize == 0 ;
+	}
+
+
+	/**
+	 * Returns the value mapped to 'key', or null if there is none.
+	 * @param key
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public V get( Nonce key ) {
+		int i = indexOf( key ) ;
+		return i < 0 ? null : (V)mValues[i] ;
+	}
+
+	/**
+	 * Returns the value mapped to the Nonce whose byte representation
+	 * (as written by Nonce.writeAsBytes) begins at ar[index], or null if
+	 * there is none.  No Nonce object is constructed.
+	 *
+	 * @param ar
+	 * @param index
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public V get( byte [] ar, int index ) {
+		int i = slot( Nonce.fingerprintLowOfEncoding(ar, index) ) ;
+		while ( true ) {
+			Nonce k = mKeys[i] ;
+			if ( k == null )
+				return null ;
+			if ( k.equals(ar, index) )
+				return (V)mValues[i] ;
+			i = (i + 1) & mMask ;
+		}
+	}
+
+	public boolean containsKey( Nonce key ) {
+		return indexOf( key ) >= 0 ;
+	}
+
+
+	/**
+	 * Maps 'key' to 'value', returning the previous value (or null).
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public V put( Nonce key, V value ) {
+		if ( key == null )
+			throw new NullPointerException("NonceMap does not permit null keys") ;
+
+		int i = slot( key.fingerprintLow() ) ;
+		while ( true ) {
+			Nonce k = mKeys[i] ;
+			if ( k == null )
+				break ;
+			if ( k.equals(key) ) {
+				V prev = (V)mValues[i] ;
+				mValues[i] = value ;
+				return prev ;
+			}
+			i = (i + 1) & mMask ;
+		}
+
+		mKeys[i] = key ;
+		mValues[i] = value ;
+		mSize++ ;
+		if ( mSize * 2 > mKeys.length )
+			resize( mKeys.length * 2 ) ;
+		return null ;
+	}
+
+
+	/**
+	 * Removes the mapping for 'key', if any, returning its value.
+	 * @param key
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove( Nonce key ) {
+		int i = indexOf( key ) ;
+		if ( i < 0 )
+			return null ;
+		V prev = (V)mValues[i] ;
+
+		// Backward-shift deletion: move later members of this probe run
+		// into the gap, so that lookups never need tombstones.
+		int gap = i ;
+		int j = i ;
+		while ( true ) {
+			j = (j + 1) & mMask ;
+			Nonce k = mKeys[j] ;
+			if ( k == null )
+				break ;
+			int home = slot( k.fingerprintLow() ) ;
+			// k may fill the gap iff its home slot is not cyclically within (gap, j].
+			if ( ( (j - home) & mMask ) >= ( (j - gap) & mMask ) ) {
+				mKeys[gap] = k ;
+				mValues[gap] = mValues[j] ;
+				gap = j ;
+			}
+		}
+		mKeys[gap] = null ;
+		mValues[gap] = null ;
+		mSize-- ;
+		return prev ;
+	}
+
+
+	public void clear() {
+		for ( int i = 0; i < mKeys.length; i++ ) {
+			mKeys[i] = null ;
+			mValues[i] = null ;
+		}
+		mSize = 0 ;
+	}
+
+
+	/**
+	 * Returns the keys currently in the map, in no particular order.
+	 * The array is newly allocated.
+	 * @return
+	 */
+	public Nonce [] keys() {
+		Nonce [] keys = new Nonce[mSize] ;
+		int n = 0 ;
+		for ( int i = 0; i < mKeys.length; i++ )
+			if ( mKeys[i] != null )
+				keys[n++] = mKeys[i] ;
+		return keys ;
+	}
+
+
+	private int indexOf( Nonce key ) {
+		if ( key == null )
+			return -1 ;
+		int i = slot( key.fingerprintLow() ) ;
+		while ( true ) {
+			Nonce k = mKeys[i] ;
+			if ( k == null )
+				return -1 ;
+			if ( k == key || k.equals(key) )
+				return i ;
+			i = (i + 1) & mMask ;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize( int capacity ) {
+		Nonce [] keys = mKeys ;
+		Object [] values = mValues ;
+		allocate( capacity ) ;
+		for ( int i = 0; i < keys.length; i++ )
+			if ( keys[i] != null )
+				put( keys[i], (V)values[i] ) ;
+	}
+
+}
@@ -0,0 +1,311 @@
+package com.peaceray.quantro.communications.telemetry;
+
+import com.peaceray.quantro.communications.EncodedMessage;
+import com.peaceray.quantro.communications.Message;
+
+
+/**
+ * Network statistics for a single connection, or (see add()) aggregated
+ * over many.  Connections record into a live ConnectionTelemetry as they
+ * send and receive; pollers should take a snapshot() rather than reading
+ * the live instance piecemeal.
+ *
+ * We track:
+ *
+ * 		Round-trip time: milliseconds from first send to ACK, for messages
+ * 			ACKed after a single send (ambiguous otherwise).
+ * 		Sends per message: the number of times each ACKed message was
+ * 			sent.  1 means no resends.
+ * 		Queue depth: the number of messages waiting in the outgoing queue
+ * 			just after each send, and in the incoming queue just before each
+ * 			read.
+ * 		Message size: in bytes, as written, for messages sent and received.
+ * 			Sizes are those the transport's own write or read produced;
+ * 			recording never encodes a message a second time.
+ * 		Message counts, and total bytes, by Message class and type.
+ *
+ * Which of these are available depends on the connection; for example, a
+ * local paired connection never resends and so records no round trips,
+ * and never encodes Messages and so records no sizes for them.
+ *
+ * Thread-safe.
+ *
+ * @author Jake
+ *
+ */
+public class ConnectionTelemetry {
+
+	private final Histogram mRoundTrip ;
+	private final Histogram mSendsPerMessage ;
+	private final Histogram mOutgoingQueueDepth ;
+	private final Histogram mIncomingQueueDepth ;
+	private final Histogram mSentSize ;
+	private final Histogram mReceivedSize ;
+	private final MessageTypeCounter mSent ;
+	private final MessageTypeCounter mReceived ;
+
+	private long mUnreliableSent ;
+	private long mUnreliableRefused ;
+
+	private long mTimeStarted ;
+
+
+	public ConnectionTelemetry() {
+		mRoundTrip = new Histogram() ;
+		mSendsPerMessage = new Histogram() ;
+		mOutgoingQueueDepth = new Histogram() ;
+		mIncomingQueueDepth = new Histogram() ;
+		mSentSize = new Histogram() ;
+		mReceivedSize = new Histogram() ;
+		mSent = new MessageTypeCounter() ;
+		mReceived = new MessageTypeCounter() ;
+		mTimeStarted = System.currentTimeMillis() ;
+	}
+
+
+	/**
+	 * Returns a new ConnectionTelemetry holding a copy of our current content.
+	 * @return
+	 */
+	public ConnectionTelemetry snapshot() {
+		ConnectionTelemetry ct = new ConnectionTelemetry() ;
+		ct.add( this ) ;
+		synchronized( this ) {
+			ct.mTimeStarted = mTimeStarted ;
+		}
+		return ct ;
+	}
+
+
+	/**
+	 * Adds the content of the provided telemetry to our own.  Our start
+	 * time becomes the earlier of the two.
+	 * @param ct
+	 */
+	public void add( ConnectionTelemetry ct ) {
+		if ( ct == this )
+			throw new IllegalArgumentException("Cannot add a ConnectionTelemetry to itself") ;
+		mRoundTrip.add( ct.mRoundTrip ) ;
+		mSendsPerMessage.add( ct.mSendsPerMessage ) ;
+		mOutgoingQueueDepth.add( ct.mOutgoingQueueDepth ) ;
+		mIncomingQueueDepth.add( ct.mIncomingQueueDepth ) ;
+		mSentSize.add( ct.mSentSize ) ;
+		mReceivedSize.add( ct.mReceivedSize ) ;
+		mSent.add( ct.mSent ) ;
+		mReceived.add( ct.mReceived ) ;
+		long unreliableSent, unreliableRefused, timeStarted ;
+		synchronized( ct ) {
+			unreliableSent = ct.mUnreliableSent ;
+			unreliableRefused = ct.mUnreliableRefused ;
+			timeStarted = ct.mTimeStarted ;
+		}
+		synchronized( this ) {
+			mUnreliableSent += unreliableSent ;
+			mUnreliableRefused += unreliableRefused ;
+			mTimeStarted = Math.min( mTimeStarted, timeStarted ) ;
+		}
+	}
+
+
+	/**
+	 * Discards everything recorded so far.
+	 */
+	public void clear() {
+		mRoundTrip.clear() ;
+		mSendsPerMessage.clear() ;
+		mOutgoingQueueDepth.clear() ;
+		mIncomingQueueDepth.clear() ;
+		mSentSize.clear() ;
+		mReceivedSize.clear() ;
+		mSent.clear() ;
+		mReceived.clear() ;
+		synchronized( this ) {
+			mUnreliableSent = 0 ;
+			mUnreliableRefused = 0 ;
+			mTimeStarted = System.currentTimeMillis() ;
+		}
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// RECORDING
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	public void recordRoundTrip( long millis ) {
+		mRoundTrip.record( millis ) ;
+	}
+
+	public void recordAcknowledged( int numTimesSent ) {
+		mSendsPerMessage.record( numTimesSent ) ;
+	}
+
+	/**
+	 * Records a message sent (or queued for send).  We never encode a
+	 * message ourselves to learn its length: provide the count its write
+	 * produced, or -1 if it is queued for a transport to write later (which
+	 * should then call recordSentBytes).
+	 * @param m
+	 * @param bytes The bytes written, or -1 if not yet written.
+	 * @param queueDepth The number of messages in the outgoing queue, including
+	 * 		this one, or -1 if unknown.
+	 */
+	public void recordSent( Message m, int bytes, int queueDepth ) {
+		if ( bytes >= 0 ) {
+			mSentSize.record( bytes ) ;
+			mSent.record( m, bytes ) ;
+		} else {
+			mSent.record( m, 0 ) ;
+		}
+		if ( queueDepth >= 0 )
+			mOutgoingQueueDepth.record( queueDepth ) ;
+	}
+
+	/**
+	 * Records the length of a message previously recorded by recordSent
+	 * with unknown length, once a transport has written it.
+	 * @param m
+	 * @param bytes
+	 */
+	public void recordSentBytes( Message m, int bytes ) {
+		mSentSize.record( bytes ) ;
+		mSent.recordBytes( m, bytes ) ;
+	}
+
+	/**
+	 * Records a pre-encoded message sent (or queued for send).
+	 * @param em
+	 * @param queueDepth The number of messages in the outgoing queue, including
+	 * 		this one, or -1 if unknown.
+	 */
+	public void recordSent( EncodedMessage em, int queueDepth ) {
+		int length = em.length() ;
+		mSentSize.record( length ) ;
+		mSent.record( em.getMessageClass(), em.getType(), length ) ;
+		if ( queueDepth >= 0 )
+			mOutgoingQueueDepth.record( queueDepth ) ;
+	}
+
+	/**
+	 * Records an attempt to send a message unreliably.  If sent, the message
+	 * is also recorded as by recordSent, with its length still unknown.
+	 * @param m
+	 * @param sent
+	 */
+	public void recordSentUnreliably( Message m, boolean sent ) {
+		if ( sent )
+			recordSent( m, -1, -1 ) ;
+		synchronized( this ) {
+			if ( sent )
+				mUnreliableSent++ ;
+			else
+				mUnreliableRefused++ ;
+		}
+	}
+
+	/**
+	 * Records a message received.
+	 * @param m
+	 * @param bytes The bytes its read consumed (see Message.lengthAsRead),
+	 * 		or -1 if it was never encoded.
+	 * @param queueDepth The number of messages in the incoming queue, including
+	 * 		this one, or -1 if unknown.
+	 */
+	public void recordReceived( Message m, int bytes, int queueDepth ) {
+		if ( bytes >= 0 ) {
+			mReceivedSize.record( bytes ) ;
+			mReceived.record( m, bytes ) ;
+		} else {
+			mReceived.record( m, 0 ) ;
+		}
+		if ( queueDepth >= 0 )
+			mIncomingQueueDepth.record( queueDepth ) ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// ACCESS
+	//
+	// Histograms and counters are returned by reference; take a snapshot()
+	// first if you need them to remain consistent with each other.
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	public Histogram roundTrip() {
+		return mRoundTrip ;
+	}
+
+	public Histogram sendsPerMessage() {
+		return mSendsPerMessage ;
+	}
+
+	public Histogram outgoingQueueDepth() {
+		return mOutgoingQueueDepth ;
+	}
+
+	public Histogram incomingQueueDepth() {
+		return mIncomingQueueDepth ;
+	}
+
+	public Histogram sentSize() {
+		return mSentSize ;
+	}
+
+	public Histogram receivedSize() {
+		return mReceivedSize ;
+	}
+
+	public MessageTypeCounter sent() {
+		return mSent ;
+	}
+
+	public MessageTypeCounter received() {
+		return mReceived ;
+	}
+
+	public synchronized long unreliableSent() {
+		return mUnreliableSent ;
+	}
+
+	public synchronized long unreliableRefused() {
+		return mUnreliableRefused ;
+	}
+
+	/**
+	 * The time at which recording began: construction, or the last
+	 * call to clear().
+	 * @return
+	 */
+	public synchronized long timeStarted() {
+		return mTimeStarted ;
+	}
+
+
+	/**
+	 * A human-readable, multi-line summary.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder() ;
+		appendTo( sb, "" ) ;
+		return sb.toString() ;
+	}
+
+	public void appendTo( StringBuilder sb, String indent ) {
+		sb.append(indent).append("over ").append(System.currentTimeMillis() - timeStarted()).append(" ms\n") ;
+		sb.append(indent).append("round trip (ms) : ").append(mRoundTrip).append('\n') ;
+		sb.append(indent).append("sends per message : ").append(mSendsPerMessage).append('\n') ;
+		sb.append(indent).append("outgoing queue : ").append(mOutgoingQueueDepth).append('\n') ;
+		sb.append(indent).append("incoming queue : ").append(mIncomingQueueDepth).append('\n') ;
+		sb.append(indent).append("sent size : ").append(mSentSize).append('\n') ;
+		sb.append(indent).append("received size : ").append(mReceivedSize).append('\n') ;
+		sb.append(indent).append("unreliable : ").append(unreliableSent()).append(" sent, ").append(unreliableRefused()).append(" refused\n") ;
+		sb.append(indent).append("sent:\n") ;
+		mSent.appendTo( sb, indent + "\t" ) ;
+		sb.append(indent).append("received:\n") ;
+		mReceived.appendTo( sb, indent + "\t" ) ;
+	}
+
+}
@@ -0,0 +1,201 @@
+package com.peaceray.quantro.communications.telemetry;
+
+
+/**
+ * A fixed-size histogram of non-negative long values, with logarithmic
+ * (power-of-two) buckets: bucket 0 holds values <= 0, and bucket i > 0
+ * holds values in [2^(i-1), 2^i).  Resolution is therefore coarse -- within
+ * a factor of 2 -- but recording is cheap, allocation-free, and the
+ * histogram has the same size whether it holds milliseconds or megabytes.
+ *
+ * Count, sum, minimum and maximum are tracked exactly.
+ *
+ * Histograms are thread-safe; recording threads (e.g. a socket administrator)
+ * and polling threads may share one.
+ *
+ * @author Jake
+ *
+ */
+public class Histogram {
+
+	public static final int NUM_BUCKETS = 64 ;
+
+	private final long [] mCounts ;
+	private long mCount ;
+	private long mSum ;
+	private long mMin ;
+	private long mMax ;
+
+
+	public Histogram() {
+		mCounts = new long[NUM_BUCKETS] ;
+		clear() ;
+	}
+
+	public Histogram( Histogram h ) {
+		this() ;
+		add( h ) ;
+	}
+
+
+	/**
+	 * The bucket into which 'value' falls.
+	 * @param value
+	 * @return
+	 */
+	public static int bucketFor( long value ) {
+		if ( value <= 0 )
+			return 0 ;
+		return 64 - Long.numberOfLeadingZeros( value ) ;
+	}
+
+	/**
+	 * The smallest value placed in the specified bucket.
+	 * @param bucket
+	 * @return
+	 */
+	public static long bucketLowerBound( int bucket ) {
+		return bucket <= 0 ? 0 : 1L << (bucket - 1) ;
+	}
+
+	/**
+	 * The largest value placed in the specified bucket.
+	 * @param bucket
+	 * @return
+	 */
+	public static long bucketUpperBound( int bucket ) {
+		if ( bucket <= 0 )
+			return 0 ;
+		if ( bucket >= NUM_BUCKETS - 1 )
+			return Long.MAX_VALUE ;
+		return (1L << bucket) - 1 ;
+	}
+
+
+	public synchronized void record( long value ) {
+		mCounts[bucketFor(value)]++ ;
+		if ( mCount == 0 || value < mMin )
+			mMin = value ;
+		if ( mCount == 0 || value > mMax )
+			mMax = value ;
+		mCount++ ;
+		mSum += value ;
+	}
+
+
+	/**
+	 * Adds every value recorded in 'h' to this histogram.
+	 * @param h
+	 */
+	public void add( Histogram h ) {
+		if ( h == this )
+			throw new IllegalArgumentException("Cannot add a Histogram to itself") ;
+		long [] counts = new long[NUM_BUCKETS] ;
+		long count, sum, min, max ;
+		synchronized( h ) {
+			System.arraycopy(h.mCounts, 0, counts, 0, NUM_BUCKETS) ;
+			count = h.mCount ;
+			sum = h.mSum ;
+			min = h.mMin ;
+			max = h.mMax ;
+		}
+		if ( count == 0 )
+			return ;
+		synchronized( this ) {
+			for ( int i = 0; i < NUM_BUCKETS; i++ )
+				mCounts[i] += counts[i] ;
+			if ( mCount == 0 || min < mMin )
+				mMin = min ;
+			if ( mCount == 0 || max > mMax )
+				mMax = max ;
+			mCount += count ;
+			mSum += sum ;
+		}
+	}
+
+
+	public synchronized void clear() {
+		for ( int i = 0; i < NUM_BUCKETS; i++ )
+			mCounts[i] = 0 ;
+		mCount = 0 ;
+		mSum = 0 ;
+		mMin = 0 ;
+		mMax = 0 ;
+	}
+
+
+	public synchronized long count() {
+		return mCount ;
+	}
+
+	public synchronized long count( int bucket ) {
+		return mCounts[bucket] ;
+	}
+
+	public synchronized long sum() {
+		return mSum ;
+	}
+
+	/**
+	 * The minimum value recorded, or 0 if empty.
+	 * @return
+	 */
+	public synchronized long min() {
+		return mMin ;
+	}
+
+	/**
+	 * The maximum value recorded, or 0 if empty.
+	 * @return
+	 */
+	public synchronized long max() {
+		return mMax ;
+	}
+
+	/**
+	 * The mean value recorded, or 0 if empty.
+	 * @return
+	 */
+	public synchronized double mean() {
+		return mCount == 0 ? 0 : ((double)mSum) / mCount ;
+	}
+
+
+	/**
+	 * An upper bound on the given quantile (0 <= q <= 1) of recorded values:
+	 * the upper bound of the bucket in which it falls, limited by max().
+	 * Returns 0 if empty.
+	 *
+	 * @param q
+	 * @return
+	 */
+	public synchronized long quantile( double q ) {
+		if ( q < 0 || q > 1 )
+			throw new IllegalArgumentException("Quantile must be in [0, 1]") ;
+		if ( mCount == 0 )
+			return 0 ;
+		long rank = Math.max(1, (long)Math.ceil(q * mCount)) ;
+		long seen = 0 ;
+		for ( int i = 0; i < NUM_BUCKETS; i++ ) {
+			seen += mCounts[i] ;
+			if ( seen >= rank )
+				return Math.min( mMax, bucketUpperBound(i) ) ;
+		}
+		return mMax ;
+	}
+
+
+	@Override
+	public synchronized String toString() {
+		if ( mCount == 0 )
+			return "n=0" ;
+		return "n=" + mCount
+				+ " min=" + mMin
+				+ " mean=" + String.format("%.1f", mean())
+				+ " p50<=" + quantile(0.5)
+				+ " p90<=" + quantile(0.9)
+				+ " p99<=" + quantile(0.99)
+				+ " max=" + mMax ;
+	}
+
+}
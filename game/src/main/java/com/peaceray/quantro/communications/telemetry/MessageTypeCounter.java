@@ -0,0 +1,219 @@
+package com.peaceray.quantro.communications.telemetry;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.peaceray.quantro.communications.Message;
+
+
+/**
+ * Counts Messages -- and their total bytes -- by Message class and type.
+ * Types are only meaningful within a class (a GameMessage and a LobbyMessage
+ * may share a type value), so each class keeps its own counts.
+ *
+ * Thread-safe.
+ *
+ * @author Jake
+ *
+ */
+public class MessageTypeCounter {
+
+	private static final int NUM_TYPES = 256 ;
+
+	// by class, indexed by (type & 0xff).
+	private final HashMap<Class<?>, long []> mCounts ;
+	private final HashMap<Class<?>, long []> mBytes ;
+
+
+	public MessageTypeCounter() {
+		mCounts = new HashMap<Class<?>, long []>() ;
+		mBytes = new HashMap<Class<?>, long []>() ;
+	}
+
+	public MessageTypeCounter( MessageTypeCounter mtc ) {
+		this() ;
+		add( mtc ) ;
+	}
+
+
+	/**
+	 * Counts the provided message, of the given length in bytes.
+	 * @param m
+	 * @param length
+	 */
+	public void record( Message m, int length ) {
+		record( m.getClass(), m.getType(), 1, length ) ;
+	}
+
+	/**
+	 * Counts a message of the given class and type, of the given length in bytes.
+	 * @param c
+	 * @param type
+	 * @param length
+	 */
+	public void record( Class<?> c, byte type, int length ) {
+		record( c, type, 1, length ) ;
+	}
+
+	/**
+	 * Adds bytes to the provided message's type without counting another
+	 * message: for when a message is counted before its length is known.
+	 * @param m
+	 * @param length
+	 */
+	public void recordBytes( Message m, int length ) {
+		record( m.getClass(), m.getType(), 0, length ) ;
+	}
+
+	private synchronized void record( Class<?> c, byte type, long num, long bytes ) {
+		long [] counts = mCounts.get(c) ;
+		long [] b = mBytes.get(c) ;
+		if ( counts == null ) {
+			counts = new long[NUM_TYPES] ;
+			b = new long[NUM_TYPES] ;
+			mCounts.put(c, counts) ;
+			mBytes.put(c, b) ;
+		}
+		counts[type & 0xff] += num ;
+		b[type & 0xff] += bytes ;
+	}
+
+
+	/**
+	 * The number of messages counted of the specified class and type.
+	 * @param c
+	 * @param type
+	 * @return
+	 */
+	public synchronized long count( Class<?> c, byte type ) {
+		long [] counts = mCounts.get(c) ;
+		return counts == null ? 0 : counts[type & 0xff] ;
+	}
+
+	/**
+	 * The total length, in bytes, of messages counted of the specified class and type.
+	 * @param c
+	 * @param type
+	 * @return
+	 */
+	public synchronized long bytes( Class<?> c, byte type ) {
+		long [] b = mBytes.get(c) ;
+		return b == null ? 0 : b[type & 0xff] ;
+	}
+
+	/**
+	 * The total number of messages counted.
+	 * @return
+	 */
+	public synchronized long total() {
+		long total = 0 ;
+		Iterator<long []> iter = mCounts.values().iterator() ;
+		for ( ; iter.hasNext() ; ) {
+			long [] counts = iter.next() ;
+			for ( int i = 0; i < NUM_TYPES; i++ )
+				total += counts[i] ;
+		}
+		return total ;
+	}
+
+
+	/**
+	 * Adds every count in 'mtc' to our own.
+	 * @param mtc
+	 */
+	public void add( MessageTypeCounter mtc ) {
+		if ( mtc == this )
+			throw new IllegalArgumentException("Cannot add a MessageTypeCounter to itself") ;
+		ArrayList<Class<?>> classes = new ArrayList<Class<?>>() ;
+		ArrayList<long []> counts = new ArrayList<long []>() ;
+		ArrayList<long []> bytes = new ArrayList<long []>() ;
+		synchronized( mtc ) {
+			Iterator<Map.Entry<Class<?>, long []>> iter = mtc.mCounts.entrySet().iterator() ;
+			for ( ; iter.hasNext() ; ) {
+				Map.Entry<Class<?>, long []> entry = iter.next() ;
+				classes.add( entry.getKey() ) ;
+				counts.add( entry.getValue().clone() ) ;
+				bytes.add( mtc.mBytes.get(entry.getKey()).clone() ) ;
+			}
+		}
+		for ( int i = 0; i < classes.size(); i++ ) {
+			long [] c = counts.get(i) ;
+			long [] b = bytes.get(i) ;
+			for ( int t = 0; t < NUM_TYPES; t++ )
+				if ( c[t] > 0 )
+					record( classes.get(i), (byte)t, c[t], b[t] ) ;
+		}
+	}
+
+
+	public synchronized void clear() {
+		mCounts.clear() ;
+		mBytes.clear() ;
+	}
+
+
+	/**
+	 * Writes one line per (class, type) with a nonzero count, using the
+	 * name of the class's TYPE_ constant where one exists.
+	 * @param sb
+	 * @param indent
+	 */
+	public synchronized void appendTo( StringBuilder sb, String indent ) {
+		Iterator<Map.Entry<Class<?>, long []>> iter = mCounts.entrySet().iterator() ;
+		for ( ; iter.hasNext() ; ) {
+			Map.Entry<Class<?>, long []> entry = iter.next() ;
+			Class<?> c = entry.getKey() ;
+			long [] counts = entry.getValue() ;
+			long [] bytes = mBytes.get(c) ;
+			String [] names = typeNames(c) ;
+			for ( int t = 0; t < NUM_TYPES; t++ ) {
+				if ( counts[t] == 0 )
+					continue ;
+				sb.append(indent).append(c.getSimpleName()).append('.') ;
+				sb.append(names[t] != null ? names[t] : "type " + (byte)t) ;
+				sb.append(" : ").append(counts[t]).append(" (").append(bytes[t]).append(" bytes)\n") ;
+			}
+		}
+	}
+
+
+	private static final HashMap<Class<?>, String []> TYPE_NAMES = new HashMap<Class<?>, String []>() ;
+
+	/**
+	 * The names of the static final 'TYPE_' byte constants declared by
+	 * Class 'c' and its superclasses, indexed by (type & 0xff).
+	 */
+	private static String [] typeNames( Class<?> c ) {
+		synchronized( TYPE_NAMES ) {
+			String [] names = TYPE_NAMES.get(c) ;
+			if ( names != null )
+				return names ;
+			names = new String[NUM_TYPES] ;
+			for ( Class<?> k = c; k != null; k = k.getSuperclass() ) {
+				Field [] fields = k.getDeclaredFields() ;
+				for ( int i = 0; i < fields.length; i++ ) {
+					Field f = fields[i] ;
+					int mod = f.getModifiers() ;
+					if ( !Modifier.isStatic(mod) || !Modifier.isFinal(mod) || f.getType() != byte.class
+							|| !f.getName().startsWith("TYPE_") )
+						continue ;
+					try {
+						f.setAccessible(true) ;
+						int index = f.getByte(null) & 0xff ;
+						if ( names[index] == null )
+							names[index] = f.getName() ;
+					} catch ( Exception e ) {
+						// no name; fall back to the number.
+					}
+				}
+			}
+			TYPE_NAMES.put(c, names) ;
+			return names ;
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.peaceray.quantro.communications.telemetry;
+
+
+/**
+ * Periodically polls a telemetry Source for a snapshot and hands it to a
+ * Delegate, which decides where it goes (e.g. the app's log).  Intended for
+ * diagnosing degraded matches: start one alongside a MessagePassingLayer
+ * and read the dumps afterwards.
+ *
+ * Stop with stopDumping(); the thread terminates promptly.
+ *
+ * @author Jake
+ *
+ */
+public class TelemetryDumpThread extends Thread {
+
+	public interface Source {
+		/**
+		 * Returns a snapshot of current telemetry; the caller may
+		 * retain it.
+		 * @return
+		 */
+		public ConnectionTelemetry tds_telemetrySnapshot() ;
+	}
+
+	public interface Delegate {
+		/**
+		 * A periodic dump.  Called on the dump thread.
+		 * @param thread
+		 * @param name The name given to the thread at construction.
+		 * @param snapshot
+		 */
+		public void tdtd_telemetryDump( TelemetryDumpThread thread, String name, ConnectionTelemetry snapshot ) ;
+	}
+
+
+	private final Source mSource ;
+	private final Delegate mDelegate ;
+	private final String mName ;
+	private final long mPeriod ;
+
+	private volatile boolean mRunning ;
+
+
+	/**
+	 * @param name A name identifying the source, included with each dump.
+	 * @param source
+	 * @param periodMillis Time between dumps.
+	 * @param delegate Receives each dump.  Required.
+	 */
+	public TelemetryDumpThread( String name, Source source, long periodMillis, Delegate delegate ) {
+		if ( source == null )
+			throw new NullPointerException("Must provide a telemetry Source") ;
+		if ( delegate == null )
+			throw new NullPointerException("Must provide a Delegate to receive dumps") ;
+		if ( periodMillis <= 0 )
+			throw new IllegalArgumentException("Period must be positive") ;
+		mName = name ;
+		mSource = source ;
+		mPeriod = periodMillis ;
+		mDelegate = delegate ;
+		mRunning = true ;
+		setDaemon(true) ;
+	}
+
+
+	public void stopDumping() {
+		mRunning = false ;
+		this.interrupt() ;
+	}
+
+
+	@Override
+	public void run() {
+		while ( mRunning ) {
+			try {
+				Thread.sleep(mPeriod) ;
+			} catch ( InterruptedException e ) {
+				// probably stopDumping.  Check.
+				continue ;
+			}
+			if ( !mRunning )
+				break ;
+
+			mDelegate.tdtd_telemetryDump(this, mName, mSource.tds_telemetrySnapshot()) ;
+		}
+	}
+
+}
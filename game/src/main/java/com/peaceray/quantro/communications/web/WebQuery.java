@@ -13,8 +13,9 @@ import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
 
-import com.peaceray.quantro.communications.HttpURLConnectionInterruptThread;
 import com.peaceray.quantro.communications.nonce.Nonce;
 
 /**
@@ -293,6 +294,19 @@ public class WebQuery {
 	}
 	
 	
+	/**
+	 * As query( timeout ), but performed by the shared WebQueryEngine; returns
+	 * immediately.  The Future's get() returns the responses, or throws an
+	 * ExecutionException wrapping what query() would have thrown.
+	 * 
+	 * @param timeout How long should we wait for a response before giving up?
+	 * @return
+	 */
+	public Future<Response []> queryAsync( int timeout ) {
+		return WebQueryEngine.shared().submit( this, timeout ) ;
+	}
+	
+	
 	private Response parseResponse( String [] responseLines ) {
 		Response response = new Response() ;
 		
@@ -444,11 +458,14 @@ public class WebQuery {
 			data = data == null ? keyValuePair : data + "&" + keyValuePair ;
 		}
 		
-		// Post the message.
+		// Post the message.  The connection is kept alive for reuse: we read
+		// the response through and close it, disconnecting only on failure.
 		String [] responseLines = null ;
 		HttpURLConnection conn = null ;
 		OutputStreamWriter wr = null ;
 		InputStreamReader isr = null ;
+		ScheduledFuture<?> deadline = null ;
+		boolean ok = false ;
 		try {
 			URL url = new URL(mQueryURL);
 			conn = (HttpURLConnection) url.openConnection(Proxy.NO_PROXY);
@@ -457,15 +474,14 @@ public class WebQuery {
 		    conn.setDoOutput(true);
 		    // try request properties...
 		    try {
-		    	conn.setRequestProperty("Connection", "close") ;
 		    	System.setProperty("java.net.preferIPv4Stack" , "true");
 		    } catch ( Exception e ) {
 		    	//System.err.println("Problems setting request property...") ;
 		    	//e.printStackTrace() ;
 		    }
+		    // the shared timer disconnects us if we take too long.
+		    deadline = WebQueryEngine.shared().scheduleDeadline( conn, timeout ) ;
 		    conn.connect() ;
-		    // wrap a interrupt thread
-		    new HttpURLConnectionInterruptThread( conn, timeout ).start() ;
 		    wr = new OutputStreamWriter(conn.getOutputStream());
 		    wr.write(data);
 		    wr.flush();
@@ -481,16 +497,25 @@ public class WebQuery {
 		    
 		    char[] b = new char[2048] ;
 		    for ( int n; (n = isr.read(b)) != -1; sb.append(b, 0, n) ) ;
+		    // If the deadline has already fired, it may disconnect us at
+		    // any moment; don't return this connection to the pool.
+		    if ( !deadline.cancel(false) )
+		    	throw new IOException("Deadline passed") ;
 		    wr.close() ;
 		    isr.close() ;
 		    responseLines = sb.toString().split("[\\r\\n]+") ;
+		    ok = true ;
 		} catch ( IOException e ) {
 			//e.printStackTrace() ;
 			throw new SocketTimeoutException("Could not read response in time from " + mQueryURL + " with data " + data) ;
 		} finally {
-			try {
-				conn.disconnect() ;
-			} catch ( Exception e ) { }
+			if ( deadline != null )
+				deadline.cancel(false) ;
+			if ( !ok ) {
+				try {
+					conn.disconnect() ;
+				} catch ( Exception e ) { }
+			}
 			try {
 				wr.close() ;
 			} catch ( Exception e ) { }
@@ -0,0 +1,152 @@
+package com.peaceray.quantro.communications.web;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The WebQueryEngine performs WebQueries off the caller's thread, and
+ * enforces the deadlines of every query in the process.
+ *
+ * Previously each query opened a connection with "Connection: close" and
+ * started a thread that slept for the whole timeout just to disconnect it;
+ * a burst of lobby refreshes cost a thread and a TCP / TLS handshake per
+ * query.  Now:
+ *
+ * 		Deadlines share a single timer thread.  A query that finishes in
+ * 		time cancels its deadline; one that doesn't is disconnected by it.
+ *
+ * 		Connections are kept alive.  HttpURLConnection pools a connection
+ * 		once its response is read through and closed (rather than
+ * 		disconnected), so consecutive queries to the same host reuse it.
+ *
+ * 		submit() runs queries on a small, fixed set of workers and returns
+ * 		a Future.  Bursts queue for a worker rather than each opening a
+ * 		connection, so they are served by as many kept-alive connections as
+ * 		there are workers.
+ *
+ * WebQuery.query() blocks as it always has, but uses the shared timer and
+ * kept-alive connections as well.
+ *
+ * @author Jake
+ *
+ */
+public class WebQueryEngine {
+
+	public static final int DEFAULT_MAX_CONCURRENT_QUERIES = 4 ;
+
+	private static WebQueryEngine sShared ;
+
+	/**
+	 * Returns the process-wide engine, creating it if necessary.
+	 * @return
+	 */
+	public static synchronized WebQueryEngine shared() {
+		if ( sShared == null )
+			sShared = new WebQueryEngine( DEFAULT_MAX_CONCURRENT_QUERIES ) ;
+		return sShared ;
+	}
+
+
+	private final ThreadPoolExecutor mExecutor ;
+	private final ScheduledExecutorService mTimer ;
+
+
+	public WebQueryEngine( int maxConcurrentQueries ) {
+		if ( maxConcurrentQueries < 1 )
+			throw new IllegalArgumentException("Must allow at least 1 concurrent query") ;
+
+		mExecutor = new ThreadPoolExecutor(
+				maxConcurrentQueries, maxConcurrentQueries,
+				30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new NamedDaemonThreadFactory("WebQueryEngine-")) ;
+		// Workers are only needed during bursts.
+		mExecutor.allowCoreThreadTimeOut(true) ;
+
+		// Cancelled deadlines remain queued until they would have fired
+		// (setRemoveOnCancelPolicy needs a newer Android than we support);
+		// they are small, and do nothing when they do.
+		mTimer = new ScheduledThreadPoolExecutor(
+				1, new NamedDaemonThreadFactory("WebQueryEngine-deadline-")) ;
+	}
+
+
+	/**
+	 * Performs the query on one of our workers.  The Future's get() returns
+	 * the query's responses, or throws an ExecutionException wrapping the
+	 * exception query() would have thrown (a SocketTimeoutException if there
+	 * was no response in time).
+	 *
+	 * @param query
+	 * @param timeout	In milliseconds, measured from when the query begins.
+	 * @return
+	 */
+	public Future<WebQuery.Response []> submit( final WebQuery query, final int timeout ) {
+		return mExecutor.submit( new Callable<WebQuery.Response []>() {
+			@Override
+			public WebQuery.Response [] call() throws Exception {
+				return query.query(timeout) ;
+			}
+		}) ;
+	}
+
+
+	/**
+	 * Schedules the disconnection of 'conn' after 'timeout' milliseconds.
+	 * Cancel the returned future once the response has been read; if
+	 * cancel() returns false, the connection has been (or is being)
+	 * disconnected and the response should be considered lost.
+	 *
+	 * WebQuery uses this for every query; other HttpURLConnections (e.g.
+	 * AppVersion's) may share it rather than starting a thread of their own.
+	 *
+	 * @param conn
+	 * @param timeout
+	 * @return
+	 */
+	public ScheduledFuture<?> scheduleDeadline( final HttpURLConnection conn, int timeout ) {
+		return mTimer.schedule( new Runnable() {
+			@Override
+			public void run() {
+				conn.disconnect() ;
+			}
+		}, timeout, TimeUnit.MILLISECONDS ) ;
+	}
+
+
+	/**
+	 * Stops accepting queries.  Those already submitted will complete.
+	 */
+	public void shutdown() {
+		mExecutor.shutdown() ;
+		mTimer.shutdown() ;
+	}
+
+
+	private static final class NamedDaemonThreadFactory implements ThreadFactory {
+		private final String mPrefix ;
+		private final AtomicInteger mNumber = new AtomicInteger(0) ;
+
+		NamedDaemonThreadFactory( String prefix ) {
+			mPrefix = prefix ;
+		}
+
+		@Override
+		public Thread newThread( Runnable r ) {
+			Thread t = new Thread(r, mPrefix + mNumber.getAndIncrement()) ;
+			t.setDaemon(true) ;
+			return t ;
+		}
+	}
+
+}
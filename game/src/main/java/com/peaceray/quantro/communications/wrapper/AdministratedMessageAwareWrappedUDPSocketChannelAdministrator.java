@@ -19,6 +19,7 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import com.peaceray.quantro.communications.Message;
+import com.peaceray.quantro.communications.telemetry.ConnectionTelemetry;
 import com.peaceray.quantro.utils.Debug;
 
 
@@ -135,11 +136,6 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		private static final long MIN_TIME_SELECTING = 0 ;			// even if a socket has data in need of immediate send,
 																		// we wait a minimum of this much time.
 		private static final long MAX_TIME_SELECTING = 1000 ;		// this gives us time to add new administrated threads.
-		private static final long MIN_DELAY_BEFORE_FIRST_RESEND = 2000 ;	// Even if our ping appears very low, we wait at least this long before the first resend (further resends might be more frequent).
-		private static final long MIN_DELAY_BEFORE_RESEND = 500 ;		// Even if our ping appears very low, we wait at least this long between resends.
-		private static final long MAX_DELAY_BEFORE_RESEND = 3000 ;		// After 2 seconds, resend the previous message.
-															// If we have low average ping, we may attempt to resend
-															// sooner.
 		private static final long MAX_WRAPPED_SOCKET_SYNC_LEEWAY = 200 ;	// There is overhead every time we step through
 															// the .select() loop.  If possible, we'd prefer to do a little more work
 															// each time rather than loop often.  However, we still want each socket
@@ -291,10 +287,7 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 							if ( !ws.isClosed() && ws.timeSinceLastReceived() < MAX_TIME_WITHOUT_RECEIVE && ws.timeWaitingForAck() < MAX_TIME_WITHOUT_ACK ) {
 								long timeSelectingThisSocket = MAX_TIME_SELECTING ;
 								
-								long firstResendAfter = firstResendDelay( ws ) ;
-								long subsequentResendAfter = resendDelay( ws ) ;
-								
-								long needsSendAfter = ws.getTimeUntilSendNeeded(firstResendAfter, subsequentResendAfter) ;
+								long needsSendAfter = ws.getTimeUntilSendNeeded() ;
 								if ( needsSendAfter >= 0 )
 									timeSelectingThisSocket = Math.min( timeSelectingThisSocket, needsSendAfter ) ;
 								
@@ -315,6 +308,16 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 								if ( ws.isReadyToWrapOutgoingMessage() && ws.hasOutgoingContentToWrap() ) {
 									timeSelecting = 0 ;
 								}
+								// the same goes for unreliable content, which need not wait for space.
+								if ( ws.hasUnreliableContentToWrap() ) {
+									timeSelecting = 0 ;
+								}
+								
+								// another: a partially filled bundle must go out by its deadline, which
+								// is much shorter than our sync leeway.
+								long needsFlushAfter = ws.getTimeUntilBundleFlushNeeded() ;
+								if ( needsFlushAfter >= 0 )
+									timeSelecting = Math.min(timeSelecting, needsFlushAfter) ;
 							} else if ( ws.isClosed() ) {
 								log("--work thread-- removing closed socket when determining time to select") ;
 								removeFromRecords(mSelector, ws) ;
@@ -349,8 +352,13 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 					}
 					
 					// perform our selection!
+					// Note that select(0) blocks indefinitely; if a send is due
+					// now, only check for what's already available.
 					try {
-						mSelector.select(timeSelecting) ;
+						if ( timeSelecting > 0 )
+							mSelector.select(timeSelecting) ;
+						else
+							mSelector.selectNow() ;
 					} catch (IOException e) {
 						// TODO: figure out why the selector might throw here.
 						log( e, "Select threw an IOException.  Cause unknown!  (fatal)") ;
@@ -437,8 +445,6 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 								removeFromRecords( mSelector, ws ) ;
 								i-- ;
 							} else {
-								long firstResendAfter = firstResendDelay( ws ) ;
-								long subsequentResendAfter = resendDelay( ws ) ;
 								// perform writes, if needed and possible
 								
 								// wrap new outgoing messages, if space is available.
@@ -460,7 +466,7 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 								// for.
 								int numSends = 0 ;
 								while( (ws.hasUnsentOutgoingMessage() || (numSends < 1 && ws.hasOutgoingMessage()))
-										&& ws.getTimeUntilSendNeeded(firstResendAfter, subsequentResendAfter) == 0
+										&& ws.getTimeUntilSendNeeded() == 0
 										&& ws.isReadyToSendOutgoingMessage() ) {
 									if ( ws.sendOneWrappedMessage() ) {
 										numSends++ ;
@@ -470,6 +476,18 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 									}
 								}
 								
+								// Unreliable messages are never windowed or resent; send
+								// them as soon as we can.
+								while ( ws.hasUnreliableContentToWrap() && ws.isReadyToSendOutgoingMessage() ) {
+									ws.wrapAndSendUnreliableMessage() ;
+								}
+								
+								// Messages and ACKs for a peer accepting bundles are coalesced
+								// into a single datagram, sent once full or after a short delay.
+								if ( ws.getTimeUntilBundleFlushNeeded() == 0 && ws.isReadyToSendOutgoingMessage() ) {
+									ws.flushBundle() ;
+								}
+								
 								// unwrap incoming messages from our queue and write them
 								// to our pipe.  Do a big "shotgun blast" style, then 
 								// individual iteration.
@@ -509,23 +527,6 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		}
 		
 		
-		private long resendDelay( WrappedSocket ws ) {
-			long avgPing = ws.averagePing() ;
-			long resendEvery = avgPing >= 0 	? Math.min(2 * avgPing, MAX_DELAY_BEFORE_RESEND)
-											: MAX_DELAY_BEFORE_RESEND ;
-			resendEvery = Math.max( resendEvery, MIN_DELAY_BEFORE_RESEND) ;
-			return resendEvery ;
-		}
-		
-		private long firstResendDelay( WrappedSocket ws ) {
-			long avgPing = ws.averagePing() ;
-			long resendEvery = avgPing >= 0 	? Math.min(2 * avgPing, MAX_DELAY_BEFORE_RESEND)
-											: MAX_DELAY_BEFORE_RESEND ;
-			resendEvery = Math.max( resendEvery, MIN_DELAY_BEFORE_FIRST_RESEND) ;
-			return resendEvery ;
-		}
-		
-		
 		private void removeFromRecords( Selector selector, AdministratedWrappedSocket ws ) {
 			// Remove from our records.  This is called inside the
 			// thread's run loop, so safely touch our members.  Tee hee.
@@ -621,7 +622,27 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		
 		private static final int MAX_MESSAGES_SENT_WITHOUT_ACK = 64 ;
 		
+		// RETRANSMISSION: resends are timed by a smoothed RTT estimator (see
+		// RetransmissionTimer), backing off exponentially for repeated resends
+		// of the same message.  Before any RTT samples arrive we use the initial value.
+		private static final long INITIAL_RTO = 1000 ;
+		private static final long MIN_RTO = 200 ;
+		private static final long MAX_RTO = 3000 ;
+		// If the remote peer selectively ACKs this many messages beyond one
+		// we have sent only once, we assume it was lost and resend immediately
+		// rather than waiting for its timeout.
+		private static final int FAST_RESEND_THRESHOLD = 3 ;
+		
+		// BUNDLING: for peers that accept them, outgoing messages and ACKs are
+		// collected into a BUNDLE datagram, which is sent when full or when the
+		// first message in it has waited this long.  This reduces our packet rate
+		// (and per-packet overhead) severalfold when a game cycle produces
+		// a few small messages plus ACKs.
+		private static final long BUNDLE_COALESCE_DELAY = 5 ;
+		
 		private static final int MAX_MESSAGES_IN_QUEUE = 64 ;
+		// Unreliable messages beyond this many awaiting send are refused.
+		private static final int MAX_UNRELIABLE_MESSAGES_IN_QUEUE = 16 ;
 		
 		private Class<?> mMessageClass ;
 		
@@ -637,12 +658,21 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		// are synchronized over these object.
 		private ByteBuffer mDatagramSend ;
 		private ByteBuffer mDatagramReceive ;
+		// Bundles: the one we are filling for send, and the last datagram
+		// received (less its prefix), which may be a bundle.
+		private ByteBuffer mBundle ;
+		private boolean mBundleHasContent ;
+		private long mBundleDeadline ;
+		private ByteBuffer mReceivedDatagram ;
 		
 		// Queues: for passing messages between this and our MPC.
 		DataObjectSenderReceiver<Message> mDOSR ;
 		private LinkedBlockingQueue<Message> mMessagePool ;
 		private LinkedBlockingQueue<Message> mSendQueue ;
 		private LinkedBlockingQueue<Message> mReceiveQueue ;
+		// Messages to be sent as UNRELIABLE_OBJs, and the buffer used to wrap them.
+		private LinkedBlockingQueue<Message> mUnreliableSendQueue ;
+		private ByteBuffer mUnreliableMessage ;
 		// we might have started to wrap up a message as OBJ_BYTES,
 		// but not had enough space for it.  We don't want to repeat
 		// the transition to raw bytes every time, so we do it once
@@ -656,14 +686,20 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		
 		// MESSAGES: We store incoming and outgoing messages as ByteBuffers.
 		// Outgoing messages get collected in a fixed-length array which
-		// we cycle through by message number.
+		// we cycle through by message number: a sliding window from the
+		// lowest unacknowledged message to mSentMessageCount.  Messages awaiting
+		// ACK are exactly those in mResendSchedule, ordered by the time at
+		// which they next need a send.
 		private long mSentMessageCount = 0 ;
 		private ByteBuffer [] mSentMessages ;
-		private boolean [] mSentMessageWaitingForACK ;
-		private long [] mSentMessageTimeLastSent ;
 		private long [] mSentMessageTimeFirstSent ;
 		private int [] mSentMessageNumberTimesSent ;
 		private long mSentMessageTimeLastMessageSent ;
+		private ResendSchedule mResendSchedule ;
+		private RetransmissionTimer mRetransmissionTimer ;
+		private int mSentMessageNumUnsent ;
+		private long mSentMessageLowestUnacked ;
+		private long mSentMessageHighestAcked ;
 		
 		// Incoming messages are collected in a queue, ordered by message number,
 		// and dequeued into our ReceiveSinkChannel as needed.
@@ -674,6 +710,12 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		private long mReceivedMessageLastTimeReceived ;
 		// ACKs are sent using this single ByteBuffer, holding a standard ACK message.
 		private ByteBuffer mReceivedMessageACK ;
+		// The protocol version advertised by the remote peer; 0 until it does.
+		// At SACK_VERSION our ACKs carry a cumulative point and SACK bitmap; at
+		// BUNDLE_VERSION we coalesce outgoing messages into BUNDLEs; at
+		// UNRELIABLE_VERSION we can send UNRELIABLE_OBJs.  Read by outside
+		// threads in supportsUnreliableDataObjects().
+		private volatile byte mRemoteVersion ;
 		
 		
 		// SELECTORS: As a convenience to the administrator, we have selectors
@@ -712,8 +754,12 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 			mReleasedFromAdministration = false ;
 			
 			// Our datagram data-holders for send/receives.
-			mDatagramSend = ByteBuffer.allocate(MAX_MESSAGE_LENGTH + mDatagramPrefix.length) ;
-			mDatagramReceive = ByteBuffer.allocate(MAX_MESSAGE_LENGTH + mDatagramPrefix.length) ;
+			mDatagramSend = ByteBuffer.allocate(MAX_BUNDLE_LENGTH + mDatagramPrefix.length) ;
+			mDatagramReceive = ByteBuffer.allocate(MAX_BUNDLE_LENGTH + mDatagramPrefix.length) ;
+			mBundle = ByteBuffer.allocate(MAX_BUNDLE_LENGTH) ;
+			mBundle.limit(0) ;
+			mBundleHasContent = false ;
+			mReceivedDatagram = ByteBuffer.allocate(MAX_BUNDLE_LENGTH) ;
 			
 			// Piped sink/source for outside users to send data along this wrapped
 			// socket.  We create and store references to this, and close them ourselves,
@@ -721,23 +767,30 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 			mMessagePool = new LinkedBlockingQueue<Message>() ;
 			mSendQueue = new LinkedBlockingQueue<Message>() ;
 			mReceiveQueue = new LinkedBlockingQueue<Message>() ;
+			mUnreliableSendQueue = new LinkedBlockingQueue<Message>() ;
+			mUnreliableMessage = ByteBuffer.allocate(MAX_MESSAGE_LENGTH) ;
 			
 			
 			// Space and bookkeeping for outgoing messages.
 			mSentMessageCount = 0 ;
 			mSentMessages = new ByteBuffer[MAX_MESSAGES_SENT_WITHOUT_ACK] ;
-			mSentMessageWaitingForACK = new boolean[MAX_MESSAGES_SENT_WITHOUT_ACK] ;
-			mSentMessageTimeLastSent = new long[MAX_MESSAGES_SENT_WITHOUT_ACK] ;
 			mSentMessageTimeFirstSent = new long[MAX_MESSAGES_SENT_WITHOUT_ACK] ;
 			mSentMessageNumberTimesSent = new int[MAX_MESSAGES_SENT_WITHOUT_ACK] ;
 			for ( int i = 0; i < MAX_MESSAGES_SENT_WITHOUT_ACK; i++ ) {
 				mSentMessages[i] = ByteBuffer.allocate(MAX_MESSAGE_LENGTH) ;
-				mSentMessageWaitingForACK[i] = false ;
-				mSentMessageTimeLastSent[i] = 0 ;
 				mSentMessageTimeFirstSent[i] = 0 ;
 				mSentMessageNumberTimesSent[i] = 0 ;
 			}
 			mSentMessageTimeLastMessageSent = 0 ;
+			mResendSchedule = new ResendSchedule(MAX_MESSAGES_SENT_WITHOUT_ACK) ;
+			mRetransmissionTimer = new RetransmissionTimer(INITIAL_RTO, MIN_RTO, MAX_RTO) ;
+			mSentMessageNumUnsent = 0 ;
+			mSentMessageLowestUnacked = 0 ;
+			mSentMessageHighestAcked = -1 ;
+			
+			// Our first message is always a SYN advertising selective ACK
+			// support.  Older peers see an ordinary SYN.
+			wrapNewOutgoingSYNMessageForSend() ;
 			
 			// Space and bookkeeping for incoming messages.
 			mReceivedMessageQueue = new ArrayList<ByteBuffer>() ;
@@ -745,7 +798,8 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 			mReceivedMessage = ByteBuffer.allocate(MAX_MESSAGE_LENGTH) ;
 			mReceivedMessageNumberWaitingFor = 0 ;
 			mReceivedMessageLastTimeReceived = System.currentTimeMillis() ;
-			mReceivedMessageACK = ByteBuffer.allocate(9) ;
+			mReceivedMessageACK = ByteBuffer.allocate(MAX_MESSAGE_LENGTH) ;
+			mRemoteVersion = 0 ;
 			
 			// We require all our internal Channels - those which we read
 			// or write to, as opposed to those solely under outside control
@@ -778,6 +832,11 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		 * This method only 'blocks' if the underlying channel is blocking and is not
 		 * ready for a send.
 		 * 
+		 * If the remote peer accepts bundles, the message is instead appended to
+		 * our outgoing bundle (once, regardless of 'numSends': repeats within a
+		 * single datagram would be pointless) and 'true' is returned.  The bundle is
+		 * sent when full or by flushBundle().
+		 * 
 		 * ADMINISTRATOR: Call this method only if our mDatagramChannel is ready for
 		 * 		a WRITE operation.
 		 * 
@@ -785,6 +844,88 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		 * @throws IOException 
 		 */
 		private boolean sendWrappedMessage( ByteBuffer wrappedMessage, int numSends ) throws IOException {
+			if ( mRemoteVersion >= BUNDLE_VERSION )
+				return bundleWrappedMessage( wrappedMessage ) ;
+			return sendDatagram( wrappedMessage, numSends ) ;
+		}
+		
+		
+		/**
+		 * Appends the provided message to our outgoing bundle, first sending the
+		 * bundle if there is no room.  Returns whether the message was bundled.
+		 * 
+		 * @param wrappedMessage
+		 * @return
+		 * @throws IOException
+		 */
+		private boolean bundleWrappedMessage( ByteBuffer wrappedMessage ) throws IOException {
+			synchronized( mDatagramSend ) {
+				int len = wrappedMessage.limit() ;
+				if ( !mBundleHasContent || !fitsInBUNDLE( mBundle, len ) ) {
+					if ( mBundleHasContent )
+						flushBundle() ;
+					setAsBUNDLE_positionForFirst( mBundle ) ;
+					mBundleHasContent = true ;
+					mBundleDeadline = System.currentTimeMillis() + BUNDLE_COALESCE_DELAY ;
+				}
+				appendToBUNDLE( mBundle, wrappedMessage ) ;
+				return true ;
+			}
+		}
+		
+		
+		/**
+		 * Returns the time until our outgoing bundle should be sent, 0 if
+		 * immediately, or -1 if we have no bundle waiting.
+		 * 
+		 * @return
+		 */
+		private long getTimeUntilBundleFlushNeeded() {
+			if ( !mBundleHasContent )
+				return -1 ;
+			return Math.max(0, mBundleDeadline - System.currentTimeMillis()) ;
+		}
+		
+		
+		/**
+		 * Sends our outgoing bundle, if any.  A bundle holding a single message
+		 * is sent as just that message.  The bundle is discarded whether or not the
+		 * send succeeds; every non-ACK message in it will be resent if necessary.
+		 * 
+		 * @return Whether a datagram was sent.
+		 * @throws IOException
+		 */
+		private boolean flushBundle() throws IOException {
+			synchronized( mDatagramSend ) {
+				if ( !mBundleHasContent )
+					return false ;
+				mBundleHasContent = false ;
+				mBundle.flip() ;
+				boolean didSend ;
+				if ( getBUNDLECount( mBundle ) == 1 ) {
+					// just send the unit.
+					getBUNDLE_positionForFirst( mBundle ) ;
+					mBundle.position( mBundle.position() + 2 ) ;
+					didSend = sendDatagram( mBundle.slice(), 1 ) ;
+				} else {
+					didSend = sendDatagram( mBundle, 1 ) ;
+				}
+				mBundle.clear().limit(0) ;
+				return didSend ;
+			}
+		}
+		
+		
+		/**
+		 * Sends the provided datagram content -- a wrapped message or bundle --
+		 * prepended by our prefix, 'numSends' times.
+		 * 
+		 * @param wrappedMessage
+		 * @param numSends
+		 * @return Whether at least one send succeeded.
+		 * @throws IOException
+		 */
+		private boolean sendDatagram( ByteBuffer wrappedMessage, int numSends ) throws IOException {
 			synchronized( mDatagramSend ) {
 				wrappedMessage.position(0) ;
 				
@@ -800,7 +941,10 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 					mTotalBytesSent += bytesSent ;
 					didSend = bytesSent > 0 || didSend ;
 					
-					if ( didSend && !isACK(wrappedMessage) )
+					// ACKs don't count when judging the need for a SYN.  Bundles
+					// were counted as their messages were added to them (see
+					// sendWrappedMessageWithIndex).
+					if ( didSend && !isACK(wrappedMessage) && !isBUNDLE(wrappedMessage) )
 						mSentMessageTimeLastMessageSent = System.currentTimeMillis() ;
 				}
 				
@@ -917,7 +1061,12 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 			// an available byte buffer.  A byte buffer is available if
 			// we are NOT waiting for ACK.
 			int index = messageNumToSentMessageIndex( this.mSentMessageCount ) ;
-			return !mSentMessageWaitingForACK[index] ;
+			return !isSentMessageWaitingForACK(index) ;
+		}
+		
+		
+		private boolean isSentMessageWaitingForACK( int index ) {
+			return mResendSchedule.contains(index) ;
 		}
 		
 		
@@ -955,19 +1104,11 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		}
 		
 		private boolean hasOutgoingMessage() {
-			for ( int i = 0; i < mSentMessageWaitingForACK.length; i++ ) {
-				if ( mSentMessageWaitingForACK[i] )
-					return true ;
-			}
-			return false ;
+			return !mResendSchedule.isEmpty() ;
 		}
 		
 		private boolean hasUnsentOutgoingMessage() {
-			for ( int i = 0; i < mSentMessageWaitingForACK.length; i++ ) {
-				if ( mSentMessageWaitingForACK[i] && mSentMessageNumberTimesSent[i] == 0 )
-					return true ;
-			}
-			return false ;
+			return mSentMessageNumUnsent > 0 ;
 		}
 		
 		
@@ -988,20 +1129,33 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 			ByteBuffer msg = mSentMessages[index] ;
 			
 			if ( packageNextContentMessageFromSendQueue( msg, mSentMessageCount ) ) {
-				// update metadata
-				mSentMessageTimeLastSent[index] = 0 ;		// never sent
-				mSentMessageTimeFirstSent[index] = 0 ;		// never sent
-				mSentMessageNumberTimesSent[index] = 0 ;	// never sent
-				mSentMessageWaitingForACK[index] = true ;
-				
-				// this message will now be sent the next time we trigger a send.
-				
-				// this is another message...
-				mSentMessageCount++ ;
+				scheduleNewOutgoingMessage( index ) ;
 			}
 		}
 		
 		
+		/**
+		 * Performs bookkeeping for a newly wrapped outgoing message, held at the
+		 * provided index with number mSentMessageCount.  The message is scheduled
+		 * for immediate send, and the message count incremented.
+		 * 
+		 * @param index
+		 */
+		private void scheduleNewOutgoingMessage( int index ) {
+			mSentMessageTimeFirstSent[index] = 0 ;		// never sent
+			mSentMessageNumberTimesSent[index] = 0 ;	// never sent
+			mSentMessageNumUnsent++ ;
+			// unsent messages have deadline 0; among them, lower
+			// message numbers go first.
+			mResendSchedule.schedule(index, 0, mSentMessageCount) ;
+			
+			// this message will now be sent the next time we trigger a send.
+			
+			// this is another message...
+			mSentMessageCount++ ;
+		}
+		
+		
 		/**
 		 * Attempts to set 'bb' to the next appropriate content message
 		 * based on our SendQueue and available metadata.
@@ -1036,7 +1190,7 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 					// check if it fits.
 					if ( m != null && ( mSendQueueTopMessageAsBytes == null && m.fits(bb) ) ) {
 						// append and increment.
-						m.write(bb) ;
+						recordSentBytes( m, m.write(bb) ) ;
 						setAsOBJ_incrementCount(bb) ;
 						logV("wrapMessage: Packaging the " + getMessageOBJCount(bb) + "th message, type " + m.getType() + ", into one packet (" + messageNum + ")") ;
 						// pop, return to pool, peek next.
@@ -1055,7 +1209,7 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 							// as a series of OBJ_BYTES messages.  First, convert it to a byte array.
 							if ( mSendQueueTopMessageAsBytes == null ) {
 								ByteArrayOutputStream baos = new ByteArrayOutputStream() ;
-								m.write(baos) ;
+								recordSentBytes( m, m.write(baos) ) ;
 								mSendQueueTopMessageAsBytes = baos.toByteArray() ;
 								mSendQueueTopMessageAsBytesPosition = 0 ;
 							}
@@ -1086,50 +1240,77 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		
 		
 		/**
-		 * Wraps a new outgoing SYN message, including it in our message collection.
+		 * Messages queued with us were recorded without a length; record
+		 * it now that we have written them.
+		 */
+		private void recordSentBytes( Message m, int bytes ) {
+			ConnectionTelemetry telemetry = getTelemetry() ;
+			if ( telemetry != null )
+				telemetry.recordSentBytes( m, bytes ) ;
+		}
+		
+		
+		/**
+		 * Do we have unreliable messages waiting to be sent?
+		 * @return
+		 */
+		private boolean hasUnreliableContentToWrap() {
+			return mUnreliableSendQueue.size() > 0 ;
+		}
+		
+		
+		/**
+		 * Wraps as many unreliable messages as fit into a single UNRELIABLE_OBJ
+		 * and sends it (or adds it to our bundle).  The message is not numbered,
+		 * retained or scheduled for resend.  A message too large to fit in an
+		 * UNRELIABLE_OBJ on its own is discarded.
 		 * 
-		 * This method does not touch any Selectable asset.
+		 * ADMINISTRATOR: Call this method only if our mDatagramChannel is ready for
+		 * 		a WRITE operation.
+		 * 
+		 * @return Whether a message was sent.
+		 * @throws IOException
 		 */
-		private void wrapNewOutgoingSYNMessageForSend() {
-			if ( !isReadyToWrapOutgoingMessage() )
-				throw new IllegalStateException("wrapOutgoingSYNMessageForSend was called, but have no space for outgoing message.") ;
-			
-			int index = messageNumToSentMessageIndex( this.mSentMessageCount ) ;
-			ByteBuffer msg = mSentMessages[index] ;
-			setAsSYN( msg, mSentMessageCount ) ;
-			// mark the appropriate metadata.
-			mSentMessageTimeLastSent[index] = 0 ;		// never sent
-			mSentMessageTimeFirstSent[index] = 0 ;		// never sent
-			mSentMessageNumberTimesSent[index] = 0 ;	// never sent
-			mSentMessageWaitingForACK[index] = true ;
-			// this happens last: many methods look for this value
-			// before checking the others.
+		private boolean wrapAndSendUnreliableMessage() throws IOException {
+			ByteBuffer bb = mUnreliableMessage ;
+			setAsUNRELIABLE_OBJ_positionForFirst(bb) ;
 			
-			// this message will now be sent the next time we trigger a send.
+			Message m ;
+			while ( (m = mUnreliableSendQueue.peek()) != null ) {
+				if ( m.fits(bb) ) {
+					recordSentBytes( m, m.write(bb) ) ;
+					setAsOBJ_incrementCount(bb) ;
+				} else if ( getMessageOBJCount(bb) > 0 ) {
+					break ;
+				} else {
+					logV("wrapUnreliable: discarding message type " + m.getType() + ", too large for a single message") ;
+				}
+				mUnreliableSendQueue.poll() ;
+				recycleDataObjectInstance(m) ;
+			}
 			
-			// this is another message...
-			mSentMessageCount++ ;
+			if ( getMessageOBJCount(bb) == 0 )
+				return false ;
+			bb.flip() ;
+			return sendWrappedMessage(bb, 1) ;
 		}
 		
 		
 		/**
-		 * Returns the number of messages which are presently in need of a send.
+		 * Wraps a new outgoing SYN message, including it in our message collection.
 		 * 
-		 * @param timeBetweenSends We need a resend iff more than 'timeBetweenSends'
-		 * 		has passed since the last send of a message in need of acknowledgment.
-		 * @return
+		 * This method does not touch any Selectable asset.
 		 */
-		@SuppressWarnings("unused")
-		private int getNumMessagesNeedingSend( long timeBetweenSends ) {
-			long currentTime = System.currentTimeMillis() ;
-			int num = 0 ;
-			for ( int i = 0; i < mSentMessageWaitingForACK.length; i++ ) {
-				if ( mSentMessageWaitingForACK[i] && mSentMessageTimeLastSent[i] + timeBetweenSends < currentTime ) {
-					num++ ;
-				}
-			}
+		private void wrapNewOutgoingSYNMessageForSend() {
+			if ( !isReadyToWrapOutgoingMessage() )
+				throw new IllegalStateException("wrapOutgoingSYNMessageForSend was called, but have no space for outgoing message.") ;
 			
-			return num ;
+			int index = messageNumToSentMessageIndex( this.mSentMessageCount ) ;
+			ByteBuffer msg = mSentMessages[index] ;
+			// Every SYN advertises selective ACK support; older peers
+			// read only the standard SYN prefix.
+			setAsSYN_advertisingVersion( msg, mSentMessageCount, UNRELIABLE_VERSION ) ;
+			scheduleNewOutgoingMessage( index ) ;
 		}
 		
 		
@@ -1146,25 +1327,10 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		 * 		send immediately.  Returns -1 if we could wait indefinitely and
 		 * 		never need to resend.
 		 */
-		private long getTimeUntilSendNeeded( long timeBeforeFirstResend, long timeBetweenAdditionalResend ) {
-			long currentTime = System.currentTimeMillis() ;
-			long minTime = Long.MAX_VALUE ;
-			
-			for ( int i = 0; i < mSentMessageWaitingForACK.length; i++ ) {
-				if ( mSentMessageWaitingForACK[i] ) {
-					long timeBetweenSends = this.mSentMessageNumberTimesSent[i] < 2
-							? timeBeforeFirstResend 
-							: timeBetweenAdditionalResend ;
-					long timeTill = mSentMessageTimeLastSent[i] + timeBetweenSends - currentTime ;
-					minTime = Math.min(minTime, timeTill) ;
-				}
-			}
-			
-			if ( minTime < 0 )
-				return 0 ;		// resend immediately
-			else if ( minTime == Long.MAX_VALUE )
+		private long getTimeUntilSendNeeded() {
+			if ( mResendSchedule.isEmpty() )
 				return -1 ;		// no resends ever
-			return minTime ;
+			return Math.max(0, mResendSchedule.peekDeadline() - System.currentTimeMillis()) ;
 		}
 		
 		
@@ -1189,9 +1355,9 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		 * Examines our messages still awaiting acknowledgement, selects one needing
 		 * a resend most urgently, and sends it.
 		 * 
-		 * Our "urgency" policy: we pick the message with the fewest total sends.
-		 * In the event of a tie, we pick the message which has gone the longest
-		 * without a send.  If there is STILL a tie, take the lowest message number.
+		 * Our "urgency" policy: we pick the message with the earliest send deadline.
+		 * Messages never sent have deadline 0, so they always go first, in order
+		 * of message number.
 		 * 
 		 * Note: this method does not check whether any messages are actually in need
 		 * of a resend.  If some messages are, though, we guarantee that one of them
@@ -1205,42 +1371,7 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		 * @throws IOException 
 		 */
 		private boolean sendOneWrappedMessage() throws IOException {
-			int mostUrgentIndex = -1 ;
-			int mostUrgentNumSends = Integer.MAX_VALUE ;
-			long mostUrgentTimeSinceSend = 0 ;
-			long mostUrgentMessageNum = Long.MAX_VALUE ;
-			
-			long currentTime = System.currentTimeMillis() ;
-			
-			for ( int i = 0; i < mSentMessages.length; i++ ) {
-				if ( this.mSentMessageWaitingForACK[i] ) {
-					int numSends = this.mSentMessageNumberTimesSent[i] ;
-					long timeSinceSend = currentTime - this.mSentMessageTimeLastSent[i] ;
-					long messageNum = getMessageNum( mSentMessages[i] ) ;
-					
-					// more urgent?
-					boolean urgent = false ;
-					if ( numSends < mostUrgentNumSends )
-						urgent = true ;
-					else if ( numSends == mostUrgentNumSends ) {
-						if ( timeSinceSend > mostUrgentTimeSinceSend )
-							urgent = true ;
-						else if ( timeSinceSend == mostUrgentTimeSinceSend ) {
-							if ( messageNum < mostUrgentMessageNum ) {
-								urgent = true ;
-							}
-						}
-					}
-					
-					if ( urgent ) {
-						mostUrgentIndex = i ;
-						mostUrgentNumSends = numSends ;
-						mostUrgentTimeSinceSend = timeSinceSend ;
-						mostUrgentMessageNum = messageNum ;
-					}
-				}
-			}
-			
+			int mostUrgentIndex = mResendSchedule.peek() ;
 			if ( mostUrgentIndex > -1 ) {
 				// send!
 				return sendWrappedMessageWithIndex( mostUrgentIndex ) ;
@@ -1250,44 +1381,6 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		}
 		
 		
-		/**
-		 * Sends all our currently wrapped outgoing messages (those still awaiting
-		 * acknowledgment) that are in need of a send or resend, according to timeBetweenSends.
-		 * 
-		 * Returns the number of messages so sent.
-		 * 
-		 * Note: this "shotgun approach" method may end up sending multiple Datagrams on
-		 * our DatagramChannel.  This is in violation of our usual "Select -> Send" policy
-		 * of one operation (read/write) per select.
-		 * 
-		 * ADMINISTRATOR: Take great care calling this method.  It could potentially perform
-		 * 		up to 64 consecutive Datagram sends on our channel before returning.
-		 * 
-		 * @param timeBetweenSends The amount of time we should wait before resending a message.
-		 * 		If <= 0, no time is needed and we resend all messages.
-		 * @return The number of messages successfully sent.
-		 * @throws IOException 
-		 */
-		@SuppressWarnings("unused")
-		private int sendAllWrappedMessages( long timeBetweenSends ) throws IOException {
-			long currentTime = System.currentTimeMillis() ;
-			int numSent = 0 ;
-			for ( int i = 0; i < mSentMessages.length; i++ ) {
-				if ( mSentMessageWaitingForACK[i] ) {
-					// should we send or resend this message?
-					long timeSinceLast = currentTime - this.mSentMessageTimeLastSent[i] ;
-					if ( timeBetweenSends < 0 || timeSinceLast > timeBetweenSends ) {
-						boolean sent = sendWrappedMessageWithIndex(i) ;
-						if ( sent )
-							numSent++ ;
-					}
-				}
-			}
-			
-			return numSent ;
-		}
-		
-		
 		/**
 		 * Should only be called internally as a send-message helper.  Performs bookkeeping
 		 * and adjustment of metadata.
@@ -1298,16 +1391,20 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		 */
 		private boolean sendWrappedMessageWithIndex( int index ) throws IOException {
 			if ( sendWrappedMessage( mSentMessages[index], shotgunSentMessageByIndex(index) ) ) {
-				mSentMessageTimeLastSent[index] = System.currentTimeMillis() ;
-				if ( mSentMessageNumberTimesSent[index] == 0 )
-					mSentMessageTimeFirstSent[index] = System.currentTimeMillis() ;
+				long currentTime = System.currentTimeMillis() ;
+				mSentMessageTimeLastMessageSent = currentTime ;
+				if ( mSentMessageNumberTimesSent[index] == 0 ) {
+					mSentMessageTimeFirstSent[index] = currentTime ;
+					mSentMessageNumUnsent-- ;
+				}
 				mSentMessageNumberTimesSent[index]++ ;
 				if ( mSentMessageNumberTimesSent[index] > 2 ) {
-					logV("sendWrappedMessageWithIndex sent message of type " + getMessageType(mSentMessages[index]) + " for the " + mSentMessageNumberTimesSent[index] + "th time " + (mSentMessageTimeLastSent[index] - mSentMessageTimeFirstSent[index]) + " after initial, avg. ping " + this.averagePing() + ", strength " + this.successRate()) ;
+					logV("sendWrappedMessageWithIndex sent message of type " + getMessageType(mSentMessages[index]) + " for the " + mSentMessageNumberTimesSent[index] + "th time " + (currentTime - mSentMessageTimeFirstSent[index]) + " after initial, avg. ping " + this.averagePing() + ", RTO " + mRetransmissionTimer.rto() + ", strength " + this.successRate()) ;
 				}
-				// adjust number times sent last: we don't want a situation
-				// where we EVERY (even for a single tick) think we have
-				// sent a message but have an incorrect 'firstTimeSent' time.
+				// reschedule: resend after the RTO, backed off by the number of sends.
+				mResendSchedule.schedule(index,
+						currentTime + mRetransmissionTimer.backoff(mSentMessageNumberTimesSent[index]),
+						getMessageNum(mSentMessages[index])) ;
 				return true ;
 			}
 			return false ;
@@ -1335,8 +1432,10 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		
 		
 		/**
-		 * Receives one wrapped message from our DatagramChannel, automatically sending
-		 * an ACK in response.
+		 * Receives one datagram from our DatagramChannel, automatically sending
+		 * an ACK in response.  The datagram may be a single wrapped message or a
+		 * bundle of them; each bundled message is processed as if received
+		 * alone, and the bundle is answered with a single (selective) ACK.
 		 * 
 		 * Returns whether a message was received (and put in the queue for sending down
 		 * the local incoming pipe).
@@ -1350,70 +1449,97 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		 * @throws IOException 
 		 */
 		private boolean receiveOneWrappedMessageAndSendWrappedACK() throws IOException {
-			if ( receiveWrappedMessage( mReceivedMessage ) ) {
+			if ( !receiveWrappedMessage( mReceivedDatagram ) || !mReceivedDatagram.hasRemaining() )
+				return false ;
+			
+			if ( !isBUNDLE( mReceivedDatagram ) ) {
+				if ( mReceivedDatagram.limit() > mReceivedMessage.capacity() )
+					return false ;
+				mReceivedMessage.clear() ;
+				mReceivedMessage.put( mReceivedDatagram ) ;
+				mReceivedMessage.flip() ;
+				
 				if ( isACK( mReceivedMessage ) ) {
 					consumeReceivedWrappedMessageACK() ;
 					return false ;
+				} else if ( isUNRELIABLE_OBJ( mReceivedMessage ) ) {
+					consumeReceivedUnreliableMessage() ;
+					return false ;
 				} else {
 					// a real message.
-					long receivedNumber = getMessageNum( mReceivedMessage ) ;
+					long receivedNumber = consumeReceivedWrappedMessageContent() ;
 					
 					// send the ACK.
 					sendNewWrappedMessageACK( receivedNumber ) ;
 					
-					// enqueue for DATA receive.
-					enqueueReceivedWrappedMessageContent() ;
-					
 					return true ;
 				}
 			}
 			
+			// A bundle.  Only peers that have seen our extended SYN send these,
+			// and they understand selective ACKs, so one ACK (naming the last
+			// message) acknowledges everything we enqueue from the bundle.
+			int count = getBUNDLECount( mReceivedDatagram ) ;
+			getBUNDLE_positionForFirst( mReceivedDatagram ) ;
+			long lastReceivedNumber = -1 ;
+			for ( int i = 0; i < count && getBUNDLE_nextUnit( mReceivedDatagram, mReceivedMessage ); i++ ) {
+				if ( isACK( mReceivedMessage ) )
+					consumeReceivedWrappedMessageACK() ;
+				else if ( isUNRELIABLE_OBJ( mReceivedMessage ) )
+					consumeReceivedUnreliableMessage() ;
+				else if ( isType( mReceivedMessage ) )
+					lastReceivedNumber = consumeReceivedWrappedMessageContent() ;
+			}
+			
+			if ( lastReceivedNumber >= 0 ) {
+				sendNewWrappedMessageACK( lastReceivedNumber ) ;
+				return true ;
+			}
 			return false ;
 		}
 		
 		
 		/**
-		 * Receives one wrapped message from our DatagramChannel.
-		 * 
-		 * The ACK is not sent.  Instead, this method returns the received
-		 * message number (>= 0), which can be provided to sendNewWrappedMessageACK()
-		 * by the caller to perform the acknowledgment.
-		 * 
-		 * ACK is EXTREMELY important.  Remember to send it.
+		 * A helper method for consuming a received (non-ACK) message, residing in
+		 * mReceivedMessage: notes any protocol version it advertises, and
+		 * enqueues it for receipt.  The ACK is not sent; that is the caller's
+		 * responsibility, and should happen after this call so that a selective
+		 * ACK includes this message.
 		 * 
-		 * ADMINISTRATOR: This message receives from our DatagramChannel.  Use this
-		 * 		only if the channel has been selected for READ operation.
-		 * 
-		 * 		This method requires more use on your part, and more possibility of
-		 * 		error, than receiveOnWrappedMessageAndSendWrappedACK().  Only
-		 * 		use this method if 
-		 * 		1. Our DatagramChannel has NOT been selected for WRITE, -or-
-		 * 		2. Our DatagramChannel has been selected for WRITE but we intend
-		 * 			to use that immediate WRITE for sending some other (non-ACK) message.
+		 * @return The number of the message received.
+		 * @throws IOException
+		 */
+		private long consumeReceivedWrappedMessageContent() throws IOException {
+			long receivedNumber = getMessageNum( mReceivedMessage ) ;
+			if ( isSYN( mReceivedMessage ) )
+				mRemoteVersion = (byte)Math.max( mRemoteVersion, getMessageSYNVersion( mReceivedMessage ) ) ;
+			
+			// enqueue for DATA receive.
+			enqueueReceivedWrappedMessageContent() ;
+			return receivedNumber ;
+		}
+		
+		
+		/**
+		 * A helper method for consuming a received UNRELIABLE_OBJ, residing in
+		 * mReceivedMessage.  Its objects go directly to our receive queue; there
+		 * is no ACK, and no ordering with respect to other messages.
 		 * 
-		 * @return The message number of the received message, or -1 if SYN or DATA message
-		 * 			was received.
-		 * @throws IOException 
+		 * @throws IOException
 		 */
-		@SuppressWarnings("unused")
-		private long receiveOneWrappedMessageAndDelegateACKToCaller() throws IOException {
-			if ( receiveWrappedMessage( mReceivedMessage ) ) {
-				if ( isACK( mReceivedMessage ) ) {
-					consumeReceivedWrappedMessageACK() ;
-					return -1 ;
-				} else {
-					// a real message.
-					long receivedNumber = getMessageNum( mReceivedMessage ) ;
-					// This is where we would send an ACK -- except we don't.
-					
-					// enqueue for DATA receive.
-					enqueueReceivedWrappedMessageContent() ;
-					
-					return receivedNumber ;
+		private void consumeReceivedUnreliableMessage() throws IOException {
+			int numMessages = getMessageOBJCount( mReceivedMessage ) ;
+			getMessageOBJ_positionForFirst( mReceivedMessage ) ;
+			try {
+				for ( int i = 0; i < numMessages; i++ ) {
+					Message m = (Message)getDataObjectEmptyInstance() ;
+					m.resetForRead() ;
+					m.read( mReceivedMessage ) ;
+					addToReceiveQueue(m) ;
 				}
+			} catch ( ClassNotFoundException e ) {
+				log(e, "malformed UNRELIABLE_OBJ; discarding the remainder") ;
 			}
-			
-			return -1 ;
 		}
 		
 		
@@ -1421,29 +1547,90 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		 * A Helper method for consuming a received ACK.  The ACK is assumed to
 		 * reside in mReceivedMessage.  We mark the appropriate message of ours
 		 * as received.
+		 * 
+		 * If the ACK is selective, we also mark every message it covers as
+		 * received, and immediately resend any message which the remote peer
+		 * has evidently skipped.
 		 */
 		private void consumeReceivedWrappedMessageACK() {
 			if ( !isACK( mReceivedMessage ) ) {
 				throw new IllegalStateException("Received message is not an ACK.") ;
 			}
 			
+			long currentTime = System.currentTimeMillis() ;
 			long msgNum = getMessageNum(mReceivedMessage) ;
-			// check that it's within our 'sent message' collection.
-			if ( msgNum >= 0 && msgNum < this.mSentMessageCount && msgNum >= this.mSentMessageCount - MAX_MESSAGES_SENT_WITHOUT_ACK ) {
-				int msgIndex = this.messageNumToSentMessageIndex(msgNum) ;
-				if ( this.mSentMessageWaitingForACK[msgIndex] ) {
-					// verify message number then mark as ACKed.
-					if ( msgNum == getMessageNum( this.mSentMessages[msgIndex] ) ) {
-						mSentMessageWaitingForACK[msgIndex] = false ;
-					}
-					
-					this.noteAck(
-							System.currentTimeMillis() - mSentMessageTimeFirstSent[msgIndex],
-							mSentMessageNumberTimesSent[msgIndex]) ;
+			ackSentMessage( msgNum, true, currentTime ) ;
+			
+			if ( isACK_SACK( mReceivedMessage ) ) {
+				long cumulative = getMessageACKCumulative( mReceivedMessage ) ;
+				long bitmap = getMessageACKBitmap( mReceivedMessage ) ;
+				long upTo = Math.min( cumulative, mSentMessageCount ) ;
+				for ( long num = mSentMessageLowestUnacked; num < upTo; num++ )
+					ackSentMessage( num, false, currentTime ) ;
+				for ( int i = 0; i < SACK_BITMAP_LENGTH && bitmap != 0; i++ ) {
+					if ( ( bitmap & 1 ) != 0 )
+						ackSentMessage( cumulative + 1 + i, false, currentTime ) ;
+					bitmap >>>= 1 ;
 				}
 			}
 			
+			// slide the window forward past acknowledged messages.
+			while ( mSentMessageLowestUnacked < mSentMessageCount
+					&& !isSentMessageWaitingForACK( messageNumToSentMessageIndex(mSentMessageLowestUnacked) ) )
+				mSentMessageLowestUnacked++ ;
+			
+			// Fast resend: a message sent once, with several later messages
+			// already acknowledged, was probably lost.  Don't wait for its timeout.
+			for ( long num = mSentMessageLowestUnacked; num + FAST_RESEND_THRESHOLD <= mSentMessageHighestAcked; num++ ) {
+				int index = messageNumToSentMessageIndex(num) ;
+				if ( isSentMessageWaitingForACK(index) && mSentMessageNumberTimesSent[index] == 1
+						&& mResendSchedule.deadline(index) > currentTime ) {
+					mResendSchedule.schedule(index, currentTime, num) ;
+				}
+			}
+		}
+		
+		
+		/**
+		 * Marks the sent message with the provided number as acknowledged, if
+		 * it is in our window and awaiting ACK.
+		 * 
+		 * @param msgNum
+		 * @param explicit Was this message explicitly named by an ACK (as opposed to
+		 * 			covered by a cumulative point or SACK bitmap)?  Only explicit
+		 * 			ACKs provide round-trip samples.
+		 * @param currentTime
+		 * @return Whether the message was newly acknowledged.
+		 */
+		private boolean ackSentMessage( long msgNum, boolean explicit, long currentTime ) {
+			// check that it's within our 'sent message' collection.
+			if ( msgNum < mSentMessageLowestUnacked || msgNum >= mSentMessageCount )
+				return false ;
+			int msgIndex = this.messageNumToSentMessageIndex(msgNum) ;
+			if ( !isSentMessageWaitingForACK(msgIndex) || msgNum != getMessageNum( this.mSentMessages[msgIndex] ) )
+				return false ;
+			int numTimesSent = mSentMessageNumberTimesSent[msgIndex] ;
+			if ( numTimesSent == 0 ) {
+				// can't have been received if never sent.
+				return false ;
+			}
+			
+			mResendSchedule.remove(msgIndex) ;
+			mSentMessageHighestAcked = Math.max( mSentMessageHighestAcked, msgNum ) ;
 			
+			long elapsed = currentTime - mSentMessageTimeFirstSent[msgIndex] ;
+			// Karn's rule: a message sent more than once gives an ambiguous sample.
+			if ( explicit && numTimesSent == 1 )
+				mRetransmissionTimer.sample( elapsed ) ;
+			this.noteAck( elapsed, numTimesSent ) ;
+
+			ConnectionTelemetry telemetry = getTelemetry() ;
+			if ( telemetry != null ) {
+				if ( explicit && numTimesSent == 1 )
+					telemetry.recordRoundTrip( elapsed ) ;
+				telemetry.recordAcknowledged( numTimesSent ) ;
+			}
+			return true ;
 		}
 		
 		
@@ -1520,7 +1707,21 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 		 * @throws IOException 
 		 */
 		private void sendNewWrappedMessageACK( long messageNum ) throws IOException {
-			setAsACK(mReceivedMessageACK, messageNum) ;
+			if ( mRemoteVersion >= SACK_VERSION ) {
+				// cumulative point: everything before the first gap in our queue.
+				int size = mReceivedMessageQueueIsValid.size() ;
+				int gap = 0 ;
+				while ( gap < size && mReceivedMessageQueueIsValid.get(gap) )
+					gap++ ;
+				long bitmap = 0 ;
+				for ( int i = 0; i < SACK_BITMAP_LENGTH && gap + 1 + i < size; i++ ) {
+					if ( mReceivedMessageQueueIsValid.get(gap + 1 + i) )
+						bitmap |= 1L << i ;
+				}
+				setAsACK_SACK(mReceivedMessageACK, messageNum, mReceivedMessageNumberWaitingFor + gap, bitmap) ;
+			} else {
+				setAsACK(mReceivedMessageACK, messageNum) ;
+			}
 			sendWrappedMessage(mReceivedMessageACK, shotgun(ACK, 0)) ;
 		}
 		
@@ -1789,14 +1990,14 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 
 		@Override
 		public long timeWaitingForAck() {
-			long maxTime = 0 ;
-			long curTime = System.currentTimeMillis() ;
-			for ( int i = 0; i < mSentMessageWaitingForACK.length; i++ ) {
-				if ( mSentMessageWaitingForACK[i] && this.mSentMessageNumberTimesSent[i] > 0 ) {
-					maxTime = Math.max( maxTime, curTime - mSentMessageTimeFirstSent[i] ) ;
-				}
-			}
-			return maxTime ;
+			// messages are first sent in order, so the lowest unacknowledged
+			// message has been waiting longest.
+			if ( mSentMessageLowestUnacked >= mSentMessageCount )
+				return 0 ;
+			int index = messageNumToSentMessageIndex( mSentMessageLowestUnacked ) ;
+			if ( !isSentMessageWaitingForACK(index) || mSentMessageNumberTimesSent[index] == 0 )
+				return 0 ;
+			return System.currentTimeMillis() - mSentMessageTimeFirstSent[index] ;
 		}
 
 		@Override
@@ -1908,6 +2109,24 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 			}
 		}
 		
+		@Override
+		public boolean supportsUnreliableDataObjects() {
+			return mRemoteVersion >= UNRELIABLE_VERSION ;
+		}
+		
+		@Override
+		public boolean sendDataObjectUnreliably( Object o ) {
+			if ( mClosedFromOutside || !supportsUnreliableDataObjects() || !(o instanceof Message) )
+				return false ;
+			// Unreliable content is only useful if current.  Rather than
+			// build a backlog, refuse it.
+			if ( mUnreliableSendQueue.size() >= MAX_UNRELIABLE_MESSAGES_IN_QUEUE )
+				return false ;
+			mUnreliableSendQueue.add( (Message)o ) ;
+			dataObjectAvailable() ;
+			return true ;
+		}
+		
 		@Override
 		public void dataObjectAvailable() {
 			// prompt a message wrap by the administrator (i.e., interrupt it)
@@ -1955,6 +2174,8 @@ public class AdministratedMessageAwareWrappedUDPSocketChannelAdministrator imple
 									mSentMessageCount++ ;
 								}
 							}
+							// nobody else will send a partial bundle.
+							flushBundle() ;
 						}
 						
 						// delay a bit.  If this throws an InterruptedException, we quit out
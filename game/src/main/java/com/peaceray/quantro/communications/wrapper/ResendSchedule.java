@@ -0,0 +1,164 @@
+package com.peaceray.quantro.communications.wrapper;
+
+
+/**
+ * A deadline-ordered schedule of outgoing messages awaiting acknowledgement,
+ * for use by WrappedSocket implementations that keep their outgoing messages
+ * in a fixed-length window.
+ *
+ * Each entry is a window index (0 <= index < capacity) paired with the time
+ * at which that message next needs a send.  The schedule is an indexed
+ * binary min-heap: the most urgent message is available in constant time,
+ * and inserting, rescheduling or removing a message (e.g. upon ACK) takes
+ * logarithmic time.  Previously we scanned every window slot each time the
+ * administrator wanted to know when the next send was due.
+ *
+ * Ties between equal deadlines are broken by 'order' -- typically the
+ * message number -- so that messages never yet sent (deadline 0) go out
+ * in the order they were wrapped.
+ *
+ * Not synchronized; the administrator thread is the only user.
+ *
+ * @author Jake
+ *
+ */
+class ResendSchedule {
+
+	private final int [] mHeap ;			// heap position -> window index
+	private final int [] mPosition ;		// window index -> heap position, or -1
+	private final long [] mDeadline ;		// by window index
+	private final long [] mOrder ;			// by window index
+	private int mSize ;
+
+
+	ResendSchedule( int capacity ) {
+		mHeap = new int[capacity] ;
+		mPosition = new int[capacity] ;
+		mDeadline = new long[capacity] ;
+		mOrder = new long[capacity] ;
+		clear() ;
+	}
+
+
+	int size() {
+		return mSize ;
+	}
+
+	boolean isEmpty() {
+		return mSize == 0 ;
+	}
+
+	boolean contains( int index ) {
+		return mPosition[index] >= 0 ;
+	}
+
+	void clear() {
+		for ( int i = 0; i < mPosition.length; i++ )
+			mPosition[i] = -1 ;
+		mSize = 0 ;
+	}
+
+
+	/**
+	 * Returns the window index of the most urgent message, or -1 if
+	 * the schedule is empty.
+	 * @return
+	 */
+	int peek() {
+		return mSize == 0 ? -1 : mHeap[0] ;
+	}
+
+	/**
+	 * Returns the deadline of the most urgent message, or Long.MAX_VALUE
+	 * if the schedule is empty.
+	 * @return
+	 */
+	long peekDeadline() {
+		return mSize == 0 ? Long.MAX_VALUE : mDeadline[mHeap[0]] ;
+	}
+
+	long deadline( int index ) {
+		return mDeadline[index] ;
+	}
+
+
+	/**
+	 * Schedules the message at window 'index' for send at 'deadline'.
+	 * If already scheduled, the message is moved to its new deadline.
+	 *
+	 * @param index
+	 * @param deadline
+	 * @param order Tie-breaker among equal deadlines; lower goes first.
+	 */
+	void schedule( int index, long deadline, long order ) {
+		mDeadline[index] = deadline ;
+		mOrder[index] = order ;
+		int pos = mPosition[index] ;
+		if ( pos < 0 ) {
+			pos = mSize++ ;
+			mHeap[pos] = index ;
+			mPosition[index] = pos ;
+		}
+		siftDown( siftUp( pos ) ) ;
+	}
+
+
+	/**
+	 * Removes the message at window 'index' from the schedule, if present.
+	 * @param index
+	 */
+	void remove( int index ) {
+		int pos = mPosition[index] ;
+		if ( pos < 0 )
+			return ;
+		mPosition[index] = -1 ;
+		mSize-- ;
+		if ( pos == mSize )
+			return ;
+		int last = mHeap[mSize] ;
+		mHeap[pos] = last ;
+		mPosition[last] = pos ;
+		siftDown( siftUp( pos ) ) ;
+	}
+
+
+	private boolean before( int indexA, int indexB ) {
+		if ( mDeadline[indexA] != mDeadline[indexB] )
+			return mDeadline[indexA] < mDeadline[indexB] ;
+		return mOrder[indexA] < mOrder[indexB] ;
+	}
+
+	private int siftUp( int pos ) {
+		int index = mHeap[pos] ;
+		while ( pos > 0 ) {
+			int parent = (pos - 1) >> 1 ;
+			if ( !before( index, mHeap[parent] ) )
+				break ;
+			mHeap[pos] = mHeap[parent] ;
+			mPosition[mHeap[pos]] = pos ;
+			pos = parent ;
+		}
+		mHeap[pos] = index ;
+		mPosition[index] = pos ;
+		return pos ;
+	}
+
+	private void siftDown( int pos ) {
+		int index = mHeap[pos] ;
+		while ( true ) {
+			int child = 2 * pos + 1 ;
+			if ( child >= mSize )
+				break ;
+			if ( child + 1 < mSize && before( mHeap[child + 1], mHeap[child] ) )
+				child++ ;
+			if ( !before( mHeap[child], index ) )
+				break ;
+			mHeap[pos] = mHeap[child] ;
+			mPosition[mHeap[pos]] = pos ;
+			pos = child ;
+		}
+		mHeap[pos] = index ;
+		mPosition[index] = pos ;
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.peaceray.quantro.communications.wrapper;
+
+
+/**
+ * Estimates round-trip time for a WrappedSocket connection and derives
+ * from it a retransmission timeout (RTO).
+ *
+ * We use the standard smoothed estimator (as in TCP; see RFC 6298):
+ *
+ * 		SRTT <- 7/8 SRTT + 1/8 R
+ * 		RTTVAR <- 3/4 RTTVAR + 1/4 |SRTT - R|
+ * 		RTO = SRTT + max( G, 4 * RTTVAR )
+ *
+ * clamped to [min, max].  Unlike our previous "2 * average ping" rule, the
+ * variance term keeps the timeout tight on steady connections while backing
+ * off on jittery (e.g. mobile) ones.
+ *
+ * Callers are responsible for Karn's rule: only provide samples for messages
+ * that were sent exactly once, since the ACK for a resent message cannot be
+ * attributed to a particular send.  Repeated timeouts for the same message
+ * should back off exponentially; see backoff().
+ *
+ * @author Jake
+ *
+ */
+class RetransmissionTimer {
+
+	private static final double ALPHA = 0.125 ;
+	private static final double BETA = 0.25 ;
+	private static final int K = 4 ;
+	private static final long GRANULARITY = 10 ;
+
+	private final long mInitialRTO ;
+	private final long mMinRTO ;
+	private final long mMaxRTO ;
+
+	private double mSmoothedRTT = -1 ;
+	private double mRTTVariation = 0 ;
+	private long mRTO ;
+
+
+	RetransmissionTimer( long initialRTO, long minRTO, long maxRTO ) {
+		if ( minRTO <= 0 || minRTO > maxRTO )
+			throw new IllegalArgumentException("Require 0 < minRTO <= maxRTO") ;
+		mInitialRTO = initialRTO ;
+		mMinRTO = minRTO ;
+		mMaxRTO = maxRTO ;
+		mRTO = clamp( initialRTO ) ;
+	}
+
+
+	/**
+	 * Incorporates a new round-trip sample, in milliseconds.
+	 * @param rtt
+	 */
+	void sample( long rtt ) {
+		if ( rtt < 0 )
+			return ;
+		if ( mSmoothedRTT < 0 ) {
+			mSmoothedRTT = rtt ;
+			mRTTVariation = rtt / 2.0 ;
+		} else {
+			mRTTVariation = (1 - BETA) * mRTTVariation + BETA * Math.abs( mSmoothedRTT - rtt ) ;
+			mSmoothedRTT = (1 - ALPHA) * mSmoothedRTT + ALPHA * rtt ;
+		}
+		mRTO = clamp( Math.round( mSmoothedRTT + Math.max( GRANULARITY, K * mRTTVariation ) ) ) ;
+	}
+
+
+	/**
+	 * The current retransmission timeout, in milliseconds.
+	 * @return
+	 */
+	long rto() {
+		return mRTO ;
+	}
+
+
+	/**
+	 * The timeout to use after a message has been sent 'numSends' times
+	 * without acknowledgement: the RTO, doubled for each send after the
+	 * first, up to our maximum.
+	 *
+	 * @param numSends
+	 * @return
+	 */
+	long backoff( int numSends ) {
+		long timeout = mRTO ;
+		for ( int i = 1; i < numSends && timeout < mMaxRTO; i++ )
+			timeout *= 2 ;
+		return Math.min( timeout, mMaxRTO ) ;
+	}
+
+
+	/**
+	 * The smoothed round-trip time, or -1 if no samples have been provided.
+	 * @return
+	 */
+	long smoothedRTT() {
+		return mSmoothedRTT < 0 ? -1 : Math.round( mSmoothedRTT ) ;
+	}
+
+	long rttVariation() {
+		return Math.round( mRTTVariation ) ;
+	}
+
+
+	void reset() {
+		mSmoothedRTT = -1 ;
+		mRTTVariation = 0 ;
+		mRTO = clamp( mInitialRTO ) ;
+	}
+
+
+	private long clamp( long rto ) {
+		return Math.max( mMinRTO, Math.min( mMaxRTO, rto ) ) ;
+	}
+
+}
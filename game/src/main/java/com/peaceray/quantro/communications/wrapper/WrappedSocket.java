@@ -11,6 +11,8 @@ import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import com.peaceray.quantro.communications.telemetry.ConnectionTelemetry;
+
 /**
  * A SocketWrapper provides a means of interacting with TCP (Socket) or
  * UDP (DatagramSocket) socket objects that forces guaranteed in-order delivery of 
@@ -192,6 +194,28 @@ public abstract class WrappedSocket {
 	public abstract long bytesReceived() ;
 	
 	
+	private volatile ConnectionTelemetry mTelemetry ;
+	
+	/**
+	 * Provides a ConnectionTelemetry into which this WrappedSocket should
+	 * record transport-level statistics -- round-trip times and resends --
+	 * for those implementations that track them.  Set 'null' to stop.
+	 * 
+	 * @param telemetry
+	 */
+	public void setTelemetry( ConnectionTelemetry telemetry ) {
+		mTelemetry = telemetry ;
+	}
+	
+	/**
+	 * The ConnectionTelemetry provided by setTelemetry, or null.
+	 * @return
+	 */
+	protected ConnectionTelemetry getTelemetry() {
+		return mTelemetry ;
+	}
+	
+	
 	///////////////////////////////////////////////////////////////////////////
 	//
 	// I/O
@@ -343,6 +367,37 @@ public abstract class WrappedSocket {
 	public abstract void dataObjectAvailable() throws IllegalStateException ;
 	
 	
+	/**
+	 * Can this WrappedSocket currently send data objects unreliably (see
+	 * sendDataObjectUnreliably)?  Support may depend on the remote peer, and
+	 * so may change from 'false' to 'true' shortly after connecting.
+	 * 
+	 * The default implementation returns false.
+	 * @return
+	 */
+	public boolean supportsUnreliableDataObjects() {
+		return false ;
+	}
+	
+	/**
+	 * Sends the provided data object -- an instance from getDataObjectEmptyInstance --
+	 * without any delivery guarantee.  It will never be resent, and may be lost, or
+	 * arrive out of order with respect to every other data object.  Received unreliable
+	 * objects appear in the same source queue as all others.
+	 * 
+	 * If this method returns 'true', the WrappedSocket has taken ownership of the
+	 * object (as if it had been placed on the sink queue).  Otherwise, the caller retains it.
+	 * 
+	 * The default implementation returns false.
+	 * 
+	 * @param o
+	 * @return Whether the object was accepted for sending.
+	 */
+	public boolean sendDataObjectUnreliably( Object o ) {
+		return false ;
+	}
+	
+	
 	///////////////////////////////////////////////////////////////////////////
 	//
 	// CLOSING CONNECTIONS
@@ -443,6 +498,50 @@ public abstract class WrappedSocket {
 	//	OBJ_BYTES_END: The last in a series of Byte-wise Object representations.
 	//
 	//
+	// SELECTIVE ACKNOWLEDGEMENT
+	//
+	// Some implementations support selective ACKs, which let a single ACK
+	// acknowledge every message up to a cumulative point plus a bitmap of
+	// 64 messages beyond it.  A lost ACK then no longer forces a resend, and
+	// the sender learns of "holes" (and can retransmit them immediately)
+	// without waiting for a timeout.
+	//
+	// Support is negotiated with a handshake that older implementations
+	// never notice.  A supporting sender makes its first message an extended
+	// SYN, carrying one extra byte (the highest protocol version it supports):
+	//		[ 1 | <unique msg Num as 8B long> | <version> ]
+	// Older implementations only ever read the first 9 bytes of a SYN, and so
+	// treat this as an ordinary SYN.  A supporting receiver, having seen
+	// version SACK_VERSION or higher, responds to every DATA / SYN / OBJ
+	// message with an extended ACK:
+	//		[ 2 | <msg Num as 8B long> | <SACK version> | <cumulative as 8B long> | <bitmap as 8B long> ]
+	// where every message number < cumulative has been received, and bit i of
+	// the bitmap indicates that message (cumulative + 1 + i) has been received.
+	// Because extended ACKs are only sent to peers that announced support,
+	// older peers never receive them.
+	//
+	//
+	// BUNDLES
+	//
+	// Peers announcing BUNDLE_VERSION or higher also accept BUNDLE datagrams,
+	// which pack several of the messages above -- e.g. a few OBJs and the ACKs
+	// for what we just received -- into one datagram of up to MAX_BUNDLE_LENGTH:
+	//		[ 7 | <unit count as 1B> | <unit length as 2B> | <unit> | <unit length as 2B> | <unit> ... ]
+	// BUNDLEs have no message number of their own and are never ACKed; each
+	// unit within is treated exactly as if it had arrived in its own datagram.
+	// Individual units remain limited to MAX_MESSAGE_LENGTH.
+	//
+	//
+	// UNRELIABLE OBJECTS
+	//
+	// Peers announcing UNRELIABLE_VERSION or higher also accept UNRELIABLE_OBJ
+	// messages, laid out exactly as OBJ (the message num is unused and 0):
+	//		[ 8 | 0 as 8B long | <object count as 4B int> | <objects> ]
+	// These are delivered immediately upon receipt, are never ACKed or resent,
+	// and do not occupy the window of messages awaiting ACK.  Objects too large
+	// for a single message cannot be sent this way.
+	//
+	//
 	// Something to note: "message num" is an incrementing 'long' that counts
 	// from 0 as messages are sent from a particular source.  The two parties
 	// on either end of a WrappedSocket maintain their own message nums, incrementing
@@ -479,6 +578,8 @@ public abstract class WrappedSocket {
 	protected static final byte OBJ_BYTES_START = 4 ;
 	protected static final byte OBJ_BYTES_MIDDLE = 5 ;
 	protected static final byte OBJ_BYTES_END = 6 ;
+	protected static final byte BUNDLE = 7 ;
+	protected static final byte UNRELIABLE_OBJ = 8 ;
 	
 	private static final int POSITION_TYPE = 0 ;
 	private static final int POSITION_NUM = 1 ;
@@ -495,6 +596,31 @@ public abstract class WrappedSocket {
 	private static final int POSITION_OBJ_BYTES_LEN = 9 ;
 	private static final int POSITION_OBJ_BYTES = 13 ;
 	
+	// selective ack...
+	private static final int POSITION_SACK_VERSION = 9 ;
+	private static final int POSITION_SACK_CUMULATIVE = 10 ;
+	private static final int POSITION_SACK_BITMAP = 18 ;
+	private static final int LENGTH_SYN_ADVERTISING_VERSION = 10 ;
+	private static final int LENGTH_ACK_SACK = 26 ;
+	
+	// bundles...
+	private static final int POSITION_BUNDLE_COUNT = 1 ;
+	private static final int POSITION_BUNDLE = 2 ;
+	private static final int MAX_BUNDLE_COUNT = 255 ;
+	
+	// protocol versions, as advertised by extended SYNs.  Each
+	// version includes the capabilities of those before it.
+	protected static final byte SACK_VERSION = 1 ;
+	protected static final byte BUNDLE_VERSION = 2 ;
+	protected static final byte UNRELIABLE_VERSION = 3 ;
+	protected static final int SACK_BITMAP_LENGTH = 64 ;
+	
+	// Bundles must fit in a single unfragmented datagram.  We have no portable
+	// way to discover the path MTU from Java (we can neither set DF nor see
+	// ICMP), so we size bundles to fit the IPv6 minimum MTU of 1280 bytes
+	// after IP / UDP headers and our datagram prefix.
+	protected static final int MAX_BUNDLE_LENGTH = 1200 ;
+	
 	protected static final int MAX_MESSAGE_LENGTH = 512 ;
 	protected static final int MAX_MESSAGE_OBJ_BYTES_LEN = MAX_MESSAGE_LENGTH - POSITION_OBJ_BYTES ;
 	
@@ -678,6 +804,101 @@ public abstract class WrappedSocket {
 	}
 	
 	
+	/**
+	 * Sets the provided ByteBuffer to an extended SYN message, which
+	 * also announces the highest protocol version we understand (e.g.
+	 * SACK_VERSION).  Upon return, the byte buffer will have limit 10
+	 * and will be positioned at 0.
+	 * 
+	 * @param bb
+	 * @param messageNum
+	 * @param version
+	 */
+	protected static void setAsSYN_advertisingVersion( ByteBuffer bb, long messageNum, byte version ) {
+		bb.position(0) ;
+		bb.mark() ;
+		bb.limit(LENGTH_SYN_ADVERTISING_VERSION) ;
+		
+		// content
+		bb.put(SYN) ;
+		bb.putLong(messageNum) ;
+		bb.put(version) ;
+		bb.reset() ;
+	}
+	
+	
+	/**
+	 * Sets the provided ByteBuffer to an extended ACK message, acknowledging
+	 * 'messageNum', every message number below 'cumulative', and those
+	 * message numbers (cumulative + 1 + i) for which bit i of 'bitmap' is set.
+	 * Upon return, the byte buffer will have limit 26 and will be positioned at 0.
+	 * 
+	 * Only send this message to a peer that has advertised SACK support.
+	 * 
+	 * @param bb
+	 * @param messageNum
+	 * @param cumulative
+	 * @param bitmap
+	 */
+	protected static void setAsACK_SACK( ByteBuffer bb, long messageNum, long cumulative, long bitmap ) {
+		bb.position(0) ;
+		bb.mark() ;
+		bb.limit(LENGTH_ACK_SACK) ;
+		
+		// content
+		bb.put(ACK) ;
+		bb.putLong(messageNum) ;
+		bb.put(SACK_VERSION) ;
+		bb.putLong(cumulative) ;
+		bb.putLong(bitmap) ;
+		bb.reset() ;
+	}
+	
+	
+	/**
+	 * Sets the provided ByteBuffer to an empty BUNDLE, positioned so
+	 * that units can be appended with appendToBUNDLE.
+	 * 
+	 * @param bb A ByteBuffer with capacity at least MAX_BUNDLE_LENGTH.
+	 */
+	protected static void setAsBUNDLE_positionForFirst( ByteBuffer bb ) {
+		bb.clear().limit(MAX_BUNDLE_LENGTH) ;
+		
+		bb.put(BUNDLE) ;
+		bb.put((byte)0) ;
+		// currently holds 0 units
+	}
+	
+	/**
+	 * Does the provided BUNDLE, prepared with setAsBUNDLE_positionForFirst,
+	 * have room for another unit of the given length?
+	 * 
+	 * @param bb
+	 * @param unitLength
+	 * @return
+	 */
+	protected static boolean fitsInBUNDLE( ByteBuffer bb, int unitLength ) {
+		return getBUNDLECount(bb) < MAX_BUNDLE_COUNT && bb.remaining() >= 2 + unitLength ;
+	}
+	
+	/**
+	 * Appends the provided message, from position 0 to its limit, to the
+	 * BUNDLE.  The caller should check fitsInBUNDLE first.  Upon return, 'unit'
+	 * is positioned at its limit.
+	 * 
+	 * @param bb
+	 * @param unit
+	 */
+	protected static void appendToBUNDLE( ByteBuffer bb, ByteBuffer unit ) {
+		unit.position(0) ;
+		if ( !fitsInBUNDLE( bb, unit.remaining() ) )
+			throw new IllegalArgumentException("Unit of length " + unit.remaining() + " does not fit in bundle.") ;
+		bb.putShort((short)unit.remaining()) ;
+		bb.put(unit) ;
+		bb.put(POSITION_BUNDLE_COUNT, (byte)(getBUNDLECount(bb) + 1)) ;
+	}
+	
+	
 	/**
 	 * Sets the provided ByteBuffer to prepare for OBJ style writing.
 	 * From here objects can be written at the current position; just 
@@ -693,6 +914,21 @@ public abstract class WrappedSocket {
 		// currently holds 0 objects
 	}
 	
+	/**
+	 * As setAsOBJ_positionForFirst, but for an UNRELIABLE_OBJ message.
+	 * Use setAsOBJ_incrementCount after each object write.  Only send
+	 * this message to a peer that has advertised UNRELIABLE_VERSION.
+	 * @param bb
+	 */
+	protected static void setAsUNRELIABLE_OBJ_positionForFirst( ByteBuffer bb ) {
+		bb.clear().limit(MAX_MESSAGE_LENGTH) ;
+		
+		bb.put(UNRELIABLE_OBJ) ;
+		bb.putLong(0) ;
+		bb.putInt(0) ;
+		// currently holds 0 objects
+	}
+	
 	/**
 	 * Increments the number of objects counted as being included in the ByteBuffer.
 	 * Make this call after every object write to 'bb'.
@@ -796,10 +1032,48 @@ public abstract class WrappedSocket {
 		return ACK == bb.get(POSITION_TYPE) ;
 	}
 	
+	/**
+	 * Is this message an extended SYN, announcing that the sender
+	 * understands selective ACKs?
+	 * @param bb The ByteBuffer holding the message.
+	 * 		Position, limit, mark, etc. are NOT affected.
+	 * @return
+	 */
+	protected static boolean isSYN_advertisingSACK( ByteBuffer bb ) {
+		return isSYN(bb) && bb.limit() >= LENGTH_SYN_ADVERTISING_VERSION
+				&& bb.get(POSITION_SACK_VERSION) >= SACK_VERSION ;
+	}
+	
+	/**
+	 * Is this message an extended ACK, carrying a cumulative point and
+	 * selective ACK bitmap?
+	 * @param bb The ByteBuffer holding the message.
+	 * 		Position, limit, mark, etc. are NOT affected.
+	 * @return
+	 */
+	protected static boolean isACK_SACK( ByteBuffer bb ) {
+		return isACK(bb) && bb.limit() >= LENGTH_ACK_SACK
+				&& bb.get(POSITION_SACK_VERSION) >= SACK_VERSION ;
+	}
+	
+	/**
+	 * Is this datagram a BUNDLE of messages?
+	 * @param bb The ByteBuffer holding the message.
+	 * 		Position, limit, mark, etc. are NOT affected.
+	 * @return
+	 */
+	protected static boolean isBUNDLE( ByteBuffer bb ) {
+		return BUNDLE == bb.get(POSITION_TYPE) ;
+	}
+	
 	protected static boolean isOBJ( ByteBuffer bb ) {
 		return OBJ == bb.get(POSITION_TYPE) ;
 	}
 	
+	protected static boolean isUNRELIABLE_OBJ( ByteBuffer bb ) {
+		return UNRELIABLE_OBJ == bb.get(POSITION_TYPE) ;
+	}
+	
 	protected static boolean isOBJ_BYTES( ByteBuffer bb ) {
 		byte type = bb.get(POSITION_TYPE) ;
 		switch( type ) {
@@ -838,6 +1112,45 @@ public abstract class WrappedSocket {
 	}
 	
 	
+	/**
+	 * Returns the protocol version advertised by a SYN message; 0 if
+	 * it is an ordinary SYN.
+	 * @param msg
+	 * @return
+	 */
+	protected static byte getMessageSYNVersion( ByteBuffer msg ) {
+		if ( isSYN(msg) )
+			return msg.limit() >= LENGTH_SYN_ADVERTISING_VERSION ? msg.get(POSITION_SACK_VERSION) : 0 ;
+		throw new IllegalArgumentException("Provided message is not a well-formatted SYN message.") ;
+	}
+	
+	
+	/**
+	 * Returns the cumulative point of an extended ACK: every message
+	 * number below this value has been received.
+	 * @param msg
+	 * @return
+	 */
+	protected static long getMessageACKCumulative( ByteBuffer msg ) {
+		if ( isACK_SACK(msg) )
+			return msg.getLong(POSITION_SACK_CUMULATIVE) ;
+		throw new IllegalArgumentException("Provided message is not a well-formatted extended ACK message.") ;
+	}
+	
+	
+	/**
+	 * Returns the selective ACK bitmap of an extended ACK: bit i is set
+	 * iff message number (cumulative + 1 + i) has been received.
+	 * @param msg
+	 * @return
+	 */
+	protected static long getMessageACKBitmap( ByteBuffer msg ) {
+		if ( isACK_SACK(msg) )
+			return msg.getLong(POSITION_SACK_BITMAP) ;
+		throw new IllegalArgumentException("Provided message is not a well-formatted extended ACK message.") ;
+	}
+	
+	
 	/**
 	 * Returns the message num.
 	 * @param bb The ByteBuffer holding the message.
@@ -1006,12 +1319,12 @@ public abstract class WrappedSocket {
 	
 	
 	/**
-	 * Returns the number of Objects encoded in the OBJ message.
+	 * Returns the number of Objects encoded in the OBJ (or UNRELIABLE_OBJ) message.
 	 * @param msg
 	 * @return
 	 */
 	protected static int getMessageOBJCount( ByteBuffer msg ) {
-		if ( isOBJ(msg) ) {
+		if ( isOBJ(msg) || isUNRELIABLE_OBJ(msg) ) {
 			return msg.getInt(POSITION_OBJ_COUNT) ;
 		}
 		throw new IllegalArgumentException("Provided message is not a well-formatted OBJ message.") ;
@@ -1023,7 +1336,7 @@ public abstract class WrappedSocket {
 	 * @return
 	 */
 	protected static void getMessageOBJ_positionForFirst( ByteBuffer msg ) {
-		if ( isOBJ(msg) ) {
+		if ( isOBJ(msg) || isUNRELIABLE_OBJ(msg) ) {
 			msg.position(POSITION_OBJ) ;
 			return ;
 		}
@@ -1044,4 +1357,56 @@ public abstract class WrappedSocket {
 		throw new IllegalArgumentException("Provided message is not a well-formatted OBJ_BYTES message.") ;
 	}
 	
+	
+	/**
+	 * Returns the number of units packed in the BUNDLE.
+	 * @param msg
+	 * @return
+	 */
+	protected static int getBUNDLECount( ByteBuffer msg ) {
+		if ( isBUNDLE(msg) )
+			return msg.get(POSITION_BUNDLE_COUNT) & 0xff ;
+		throw new IllegalArgumentException("Provided message is not a well-formatted BUNDLE message.") ;
+	}
+	
+	/**
+	 * Position this BUNDLE to prepare for the first getBUNDLE_nextUnit call.
+	 * @param msg
+	 */
+	protected static void getBUNDLE_positionForFirst( ByteBuffer msg ) {
+		if ( isBUNDLE(msg) ) {
+			msg.position(POSITION_BUNDLE) ;
+			return ;
+		}
+		throw new IllegalArgumentException("Provided message is not a well-formatted BUNDLE message.") ;
+	}
+	
+	/**
+	 * Copies the next unit of the BUNDLE, beginning at its current position,
+	 * into 'unit', which will be positioned at 0 with limit set to the unit
+	 * length.  The BUNDLE is advanced to the following unit.
+	 * 
+	 * Returns 'false', leaving 'unit' unspecified, if the BUNDLE has no more
+	 * units or the next is malformed (truncated, or too long for 'unit').
+	 * 
+	 * @param msg
+	 * @param unit
+	 * @return
+	 */
+	protected static boolean getBUNDLE_nextUnit( ByteBuffer msg, ByteBuffer unit ) {
+		if ( msg.remaining() < 2 )
+			return false ;
+		int len = msg.getShort(msg.position()) & 0xffff ;
+		if ( len < POSITION_NUM + 8 || len > unit.capacity() || len > msg.remaining() - 2 )
+			return false ;
+		msg.position(msg.position() + 2) ;
+		int limit = msg.limit() ;
+		msg.limit(msg.position() + len) ;
+		unit.clear() ;
+		unit.put(msg) ;
+		unit.flip() ;
+		msg.limit(limit) ;
+		return true ;
+	}
+	
 }
@@ -6,6 +6,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.concurrent.Future;
 
 import com.peaceray.quantro.communications.nonce.Nonce;
 import com.peaceray.quantro.communications.web.WebQuery;
@@ -288,16 +289,61 @@ public class InternetLobby extends Lobby implements Serializable {
 		
 		lobbies.clear() ;
 		
+		// step one is to get a lobby list.
+		ArrayList<Nonce> nonces = new ArrayList<Nonce>() ;
+		getLobbyNonceList( nonces, DEFAULT_TIMEOUT ) ;
+		for ( int i = 0; i < nonces.size(); i++ ) {
+			InternetLobby il = new InternetLobby() ;
+			il.setLobbyNonce(nonces.get(i)) ;
+			il.mOrigin = ORIGIN_PUBLIC_LIST ;
+			lobbies.add(il) ;
+		}
+		
+		// now -- SECOND STEP!  If requested, we refreshAll.
+		if ( autorefresh )
+			refreshAll( lobbies, timeout ) ;
+	}
+	
+	
+	/**
+	 * Retrieves the nonces of the lobbies on the public list, in the order
+	 * provided by the server.  This is the first step of getLobbyList, and
+	 * involves no more than a single, small query: nonces only.
+	 * 
+	 * @param nonces Cleared, then filled with the listed nonces.
+	 * @param timeout
+	 * @throws CommunicationErrorException
+	 */
+	static void getLobbyNonceList( ArrayList<Nonce> nonces, int timeout ) throws CommunicationErrorException {
+		getLobbyNonceList( nonces, queryLobbyNonceList( timeout ) ) ;
+	}
+	
+	/**
+	 * Begins the query for getLobbyNonceList on the shared WebQueryEngine,
+	 * returning immediately.  Provide the result to
+	 * getLobbyNonceList( nonces, query ) to retrieve the nonces.
+	 * 
+	 * @param timeout
+	 * @return
+	 */
+	static Future<WebQuery.Response []> queryLobbyNonceList( int timeout ) {
+		return makeSimpleWebQuery( WebConsts.ACTION_LIST, null, null ).queryAsync( timeout ) ;
+	}
+	
+	/**
+	 * As getLobbyNonceList( nonces, timeout ), using the responses of a query
+	 * begun by queryLobbyNonceList.  Blocks until the query is complete.
+	 * 
+	 * @param nonces Cleared, then filled with the listed nonces.
+	 * @param query
+	 * @throws CommunicationErrorException
+	 */
+	static void getLobbyNonceList( ArrayList<Nonce> nonces, Future<WebQuery.Response []> query ) throws CommunicationErrorException {
+		
+		nonces.clear() ;
+		
 		try {
-			// step one is to get a lobby list.
-			WebQuery webQuery = makeSimpleWebQuery( WebConsts.ACTION_LIST, null, null ) ;
-			WebQuery.Response [] responses ;
-			try {
-				responses = webQuery.query( DEFAULT_TIMEOUT ) ;
-			} catch ( Exception e ) {
-				//e.printStackTrace() ;
-				throw new CommunicationErrorException().setError(WebConsts.ERROR_TIMEOUT, WebConsts.REASON_NONE) ;
-			}
+			WebQuery.Response [] responses = responsesOf( query ) ;
 			
 			if ( responses == null || responses.length == 0 ) {
 				throw new CommunicationErrorException().setError(WebConsts.ERROR_TIMEOUT, WebConsts.REASON_NONE) ;
@@ -310,16 +356,8 @@ public class InternetLobby extends Lobby implements Serializable {
 			
 			// this should be a list of nonces, separated by [L].
 			int numLobbies = responses[0].getNumberOfSections(WebConsts.SECTION_HEADER_LOBBY) ;
-			for ( int i = 0; i < numLobbies; i++ ) {
-				InternetLobby il = new InternetLobby() ;
-				il.setLobbyNonce(responses[0].getResponseVariableNonce(WebConsts.VAR_NONCE, WebConsts.SECTION_HEADER_LOBBY, i)) ;
-				il.mOrigin = ORIGIN_PUBLIC_LIST ;
-				lobbies.add(il) ;
-			}
-			
-			// now -- SECOND STEP!  If requested, we refreshAll.
-			if ( autorefresh )
-				refreshAll( lobbies, timeout ) ;
+			for ( int i = 0; i < numLobbies; i++ )
+				nonces.add(responses[0].getResponseVariableNonce(WebConsts.VAR_NONCE, WebConsts.SECTION_HEADER_LOBBY, i)) ;
 		} catch ( Exception e ) {
 			//e.printStackTrace() ;
 			if ( e instanceof CommunicationErrorException )
@@ -346,8 +384,24 @@ public class InternetLobby extends Lobby implements Serializable {
 	}
 	
 	public static void refreshAll( ArrayList<InternetLobby> lobbies, int timeout ) throws CommunicationErrorException {
+		refreshAll( lobbies, queryStatus( lobbies, timeout ) ) ;
+	}
+	
+	
+	/**
+	 * Begins the batched status query for refreshAll on the shared
+	 * WebQueryEngine, returning immediately.  Provide the result, along with
+	 * the same lobbies, to refreshAll( lobbies, query ) to apply it.  Lets
+	 * the caller do other work -- or make other queries -- in the meantime.
+	 * 
+	 * @param lobbies
+	 * @param timeout
+	 * @return The query, or 'null' if 'lobbies' is empty.
+	 * @throws CommunicationErrorException If the query could not be constructed.
+	 */
+	public static Future<WebQuery.Response []> queryStatus( ArrayList<InternetLobby> lobbies, int timeout ) throws CommunicationErrorException {
 		if ( lobbies.size() == 0 )
-			return ;
+			return null ;
 		
 		Hashtable<String, Object> keyedRequest = new Hashtable<String,Object>() ;
 		try {
@@ -367,16 +421,23 @@ public class InternetLobby extends Lobby implements Serializable {
 			throw new CommunicationErrorException().setError(WebConsts.ERROR_UNKNOWN, WebConsts.REASON_NONE) ;
 		}
 		
-		// Query and get a response.
-		WebQuery webQuery = makeWebQuery(keyedRequest) ;
+		return makeWebQuery(keyedRequest).queryAsync(timeout) ;
+	}
+	
+	
+	/**
+	 * As refreshAll( lobbies, timeout ), using the responses of a query begun
+	 * by queryStatus( lobbies, ... ).  Blocks until the query is complete.
+	 * 
+	 * @param lobbies
+	 * @param query
+	 * @throws CommunicationErrorException
+	 */
+	public static void refreshAll( ArrayList<InternetLobby> lobbies, Future<WebQuery.Response []> query ) throws CommunicationErrorException {
+		if ( lobbies.size() == 0 )
+			return ;
 		
-		WebQuery.Response [] responses ;
-		try {
-			responses = webQuery.query(timeout) ;
-		} catch( Exception e ) {
-			//e.printStackTrace() ;
-			responses = null ;
-		}
+		WebQuery.Response [] responses = responsesOf( query ) ;
 		
 		if ( responses == null ) {
 			for ( int i = 0; i < lobbies.size(); i++ )
@@ -398,6 +459,23 @@ public class InternetLobby extends Lobby implements Serializable {
 	
 
 	
+	/**
+	 * Waits for the provided query, returning its responses, or 'null' if
+	 * it failed or timed out.
+	 */
+	private static WebQuery.Response [] responsesOf( Future<WebQuery.Response []> query ) {
+		try {
+			return query.get() ;
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt() ;
+			return null ;
+		} catch ( Exception e ) {
+			//e.printStackTrace() ;
+			return null ;
+		}
+	}
+	
+	
 	/**
 	 * Refresh as much data as possible from 
 	 * @return
@@ -675,6 +753,33 @@ public class InternetLobby extends Lobby implements Serializable {
 	}
 	
 	
+	/**
+	 * Does this lobby present the same listing as the one provided?  Compares
+	 * those values shown when browsing lobbies -- status, name, description,
+	 * size, hosted players, public / itinerant, host and port -- and not those
+	 * which change with every refresh (age, maintenance deadline) or are
+	 * local to us (origin, errors).
+	 * 
+	 * @param l
+	 * @return
+	 */
+	protected boolean hasSameListingAs( InternetLobby l ) {
+		return mStatus == l.mStatus
+				&& mMediatorPort == l.mMediatorPort
+				&& mPublic == l.mPublic
+				&& mItinerant == l.mItinerant
+				&& mHostedPlayers == l.mHostedPlayers
+				&& getMaxPeople() == l.getMaxPeople()
+				&& stringsEqual( getLobbyName(), l.getLobbyName() )
+				&& stringsEqual( mDescription, l.mDescription )
+				&& stringsEqual( mHostName, l.mHostName ) ;
+	}
+	
+	private static boolean stringsEqual( String s1, String s2 ) {
+		return s1 == null ? s2 == null : s1.equals(s2) ;
+	}
+	
+	
 	protected static WebQuery makeWebQuery( Hashtable<String, Object> args ) {
 		WebQuery.Builder builder = new WebQuery.Builder() ;
 		builder.setURL(WebConsts.QUANTRO_LOBBY_WEB_URL) ;
@@ -0,0 +1,597 @@
+package com.peaceray.quantro.lobby;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.Future;
+
+import com.peaceray.quantro.communications.nonce.Nonce;
+import com.peaceray.quantro.communications.web.WebQuery;
+import com.peaceray.quantro.lobby.exception.CommunicationErrorException;
+
+
+/**
+ * A cached directory of the public InternetLobbies, keyed by nonce, kept
+ * up-to-date by a background refresher.
+ *
+ * InternetLobby.getLobbyList( ..., true ) followed by refreshAll( ) re-fetches
+ * and re-parses the full status of every listed lobby each time the list is
+ * shown.  The directory instead polls the list itself -- a single, small
+ * query returning nonces only -- once per interval, and requests the status of
+ * only those lobbies which are new to the list, whose last status is older
+ * than the status max age, or whose status was specifically requested.
+ * Stale and requested statuses don't depend on the list, so they are fetched
+ * in a single, batched status query made alongside it; the statuses of
+ * lobbies new to the list follow in a second batch once it arrives.
+ *
+ * Every refresh which alters the directory (lobbies added, removed, or whose
+ * listing has changed) advances its version by 1.  Listeners are told of the
+ * changes made by each refresh as they happen; anyone else can ask for the
+ * changes since a version they have already seen.
+ *
+ * Refreshes are coalesced.  Only one refresh is performed at a time, and any
+ * number of refresh requests made while one is underway are satisfied by the
+ * single refresh that follows it.
+ *
+ * InternetLobby instances provided by the directory are never altered by it
+ * once provided; the directory refreshes private copies and replaces its
+ * instance with the refreshed copy, so callers may read (or refresh) the
+ * instances they hold without coordinating with the refresher.  As a
+ * consequence a lobby's instance changes with each status refresh: match
+ * lobbies by nonce, not identity.
+ *
+ * @author Jake
+ *
+ */
+public class InternetLobbyDirectory {
+
+	public static final long DEFAULT_LIST_INTERVAL = 1000 * 15 ;		// 15 seconds
+	public static final long DEFAULT_STATUS_MAX_AGE = 1000 * 60 ;		// 1 minute
+
+	// Removals are remembered for getChangesSince; beyond this many, the
+	// oldest are forgotten.
+	private static final int MAX_RETAINED_REMOVALS = 256 ;
+
+
+	/**
+	 * Callbacks made after each refresh, from the thread which performed it
+	 * (usually the directory's own).  Listeners should not block, and must
+	 * not call refresh().
+	 *
+	 * @author Jake
+	 *
+	 */
+	public interface Listener {
+
+		/**
+		 * The directory has changed.  'changes' describes the changes made by
+		 * a single refresh; it is never 'reset'.  It is not used again by the
+		 * directory, and may be retained, but should not be altered.
+		 *
+		 * @param directory
+		 * @param changes
+		 */
+		public void ild_changed( InternetLobbyDirectory directory, Changes changes ) ;
+
+		/**
+		 * A refresh failed.  The directory is unchanged, except that
+		 * lobbies which have left the list may have been removed (with a
+		 * call to ild_changed before this one).
+		 *
+		 * @param directory
+		 * @param error
+		 * @param reason
+		 */
+		public void ild_failed( InternetLobbyDirectory directory, int error, int reason ) ;
+
+	}
+
+
+	/**
+	 * The difference between two versions of the directory.
+	 *
+	 * @author Jake
+	 *
+	 */
+	public static class Changes {
+
+		/**
+		 * The version described.
+		 */
+		public long version ;
+
+		/**
+		 * If 'true', the changes requested could not be determined (they go
+		 * back further than the removals we remember).  'added' holds every
+		 * lobby in the directory, and anything not among them should be
+		 * considered removed.
+		 */
+		public boolean reset ;
+
+		public final ArrayList<InternetLobby> added = new ArrayList<InternetLobby>() ;
+		public final ArrayList<InternetLobby> changed = new ArrayList<InternetLobby>() ;
+		public final ArrayList<InternetLobby> removed = new ArrayList<InternetLobby>() ;
+
+		public boolean isEmpty() {
+			return !reset && added.size() == 0 && changed.size() == 0 && removed.size() == 0 ;
+		}
+
+		void clear() {
+			version = 0 ;
+			reset = false ;
+			added.clear() ;
+			changed.clear() ;
+			removed.clear() ;
+		}
+	}
+
+
+	private static final class Entry {
+		InternetLobby lobby ;		// as provided to callers; replaced, never altered
+		InternetLobby listing ;		// our own copy, as of the last status
+
+		long addedIn ;
+		long changedIn ;			// for removed entries, the version of removal
+		long statusAt ;				// System.currentTimeMillis() of the last status
+
+		Entry( InternetLobby lobby ) {
+			this.lobby = lobby ;
+		}
+	}
+
+
+	private final long mListInterval ;
+	private final long mStatusMaxAge ;
+	private final int mTimeout ;
+
+	// The directory.  Guarded by 'this'.
+	private final HashMap<Nonce, Entry> mEntries ;
+	private final ArrayList<Entry> mListed ;			// in the order listed
+	private final ArrayList<Entry> mRemoved ;			// oldest first
+	private long mRemovalsForgottenThrough ;
+	private long mVersion ;
+
+	private final ArrayList<Listener> mListeners ;
+
+	// Refresh coalescing.  Guarded by 'this'.  Refreshes are numbered;
+	// a request is satisfied by the first refresh to begin after it.
+	private long mRefreshRequested ;
+	private long mRefreshBegun ;
+	private long mRefreshCompleted ;
+	private boolean mRefreshing ;
+	private int mRefreshError ;
+	private int mRefreshReason ;
+	private long mRefreshCompletedAt ;
+	private final HashSet<Nonce> mStatusRequested ;
+
+	private Thread mThread ;
+	private boolean mRunning ;
+
+
+	public InternetLobbyDirectory() {
+		this( DEFAULT_LIST_INTERVAL, DEFAULT_STATUS_MAX_AGE, InternetLobby.DEFAULT_TIMEOUT ) ;
+	}
+
+	/**
+	 *
+	 * @param listInterval How often, in milliseconds, the background refresher
+	 * 			polls the lobby list.
+	 * @param statusMaxAge How old, in milliseconds, a listed lobby's status
+	 * 			may become before it is requested again.
+	 * @param timeout The timeout for each query.
+	 */
+	public InternetLobbyDirectory( long listInterval, long statusMaxAge, int timeout ) {
+		if ( listInterval <= 0 )
+			throw new IllegalArgumentException("List interval must be positive") ;
+		if ( statusMaxAge < 0 )
+			throw new IllegalArgumentException("Status max age must be non-negative") ;
+
+		mListInterval = listInterval ;
+		mStatusMaxAge = statusMaxAge ;
+		mTimeout = timeout ;
+
+		mEntries = new HashMap<Nonce, Entry>() ;
+		mListed = new ArrayList<Entry>() ;
+		mRemoved = new ArrayList<Entry>() ;
+		mRemovalsForgottenThrough = 0 ;
+		mVersion = 0 ;
+
+		mListeners = new ArrayList<Listener>() ;
+
+		mStatusRequested = new HashSet<Nonce>() ;
+	}
+
+
+	public synchronized void addListener( Listener listener ) {
+		if ( listener != null && !mListeners.contains(listener) )
+			mListeners.add(listener) ;
+	}
+
+	public synchronized void removeListener( Listener listener ) {
+		mListeners.remove(listener) ;
+	}
+
+
+	/**
+	 * Starts the background refresher, which refreshes the directory
+	 * immediately and once per list interval thereafter, and performs any
+	 * refresh requested in the meantime.  Has no effect if already started.
+	 */
+	public synchronized void start() {
+		if ( mRunning )
+			return ;
+		mRunning = true ;
+		mThread = new Thread( new Runnable() {
+			@Override
+			public void run() {
+				refresherLoop( Thread.currentThread() ) ;
+			}
+		}, "InternetLobbyDirectory" ) ;
+		mThread.setDaemon(true) ;
+		mThread.start() ;
+	}
+
+
+	/**
+	 * Stops the background refresher.  A refresh already underway will
+	 * complete.  The directory retains its contents, and may be started again.
+	 */
+	public synchronized void stop() {
+		mRunning = false ;
+		mThread = null ;
+		notifyAll() ;
+	}
+
+
+	public synchronized boolean isRunning() {
+		return mRunning ;
+	}
+
+
+	/**
+	 * The current version of the directory.  Versions begin at 0 (empty) and
+	 * advance by 1 with every refresh that changes the directory.
+	 *
+	 * @return
+	 */
+	public synchronized long getVersion() {
+		return mVersion ;
+	}
+
+
+	/**
+	 * Sets the provided ArrayList to the lobbies currently in the directory,
+	 * in the order the server listed them, returning the version they represent.
+	 *
+	 * @param lobbies
+	 * @return
+	 */
+	public synchronized long getLobbies( ArrayList<InternetLobby> lobbies ) {
+		lobbies.clear() ;
+		for ( int i = 0; i < mListed.size(); i++ )
+			lobbies.add( mListed.get(i).lobby ) ;
+		return mVersion ;
+	}
+
+
+	/**
+	 * Sets 'changes' to describe the difference between the provided version
+	 * of the directory and the current one.  A lobby changed in several
+	 * versions appears once; one added after 'version' is 'added' (never
+	 * 'changed'), regardless of any changes since.
+	 *
+	 * @param version A version previously provided by this directory.
+	 * @param changes
+	 */
+	public synchronized void getChangesSince( long version, Changes changes ) {
+		changes.clear() ;
+		changes.version = mVersion ;
+
+		if ( version < mRemovalsForgottenThrough ) {
+			changes.reset = true ;
+			getLobbies( changes.added ) ;
+			return ;
+		}
+
+		Iterator<Entry> iter = mEntries.values().iterator() ;
+		for ( ; iter.hasNext() ; ) {
+			Entry e = iter.next() ;
+			if ( e.addedIn > version )
+				changes.added.add( e.lobby ) ;
+			else if ( e.changedIn > version )
+				changes.changed.add( e.lobby ) ;
+		}
+
+		for ( int i = mRemoved.size() - 1; i >= 0; i-- ) {
+			Entry e = mRemoved.get(i) ;
+			if ( e.changedIn <= version )
+				break ;
+			// a lobby both added and removed since 'version' was never seen.
+			if ( e.addedIn <= version )
+				changes.removed.add( e.lobby ) ;
+		}
+	}
+
+
+	/**
+	 * Requests a refresh, to be performed by the background refresher (if
+	 * started) as soon as any refresh already underway is complete.  Returns
+	 * immediately.  Any number of requests made before that refresh begins
+	 * are satisfied by it.
+	 */
+	public synchronized void requestRefresh() {
+		mRefreshRequested = mRefreshBegun + 1 ;
+		notifyAll() ;
+	}
+
+
+	/**
+	 * As requestRefresh(), but ensures that the next refresh includes the
+	 * status of the specified lobby (if it is still listed), no matter how
+	 * recently its status was retrieved.
+	 *
+	 * @param nonce
+	 */
+	public synchronized void requestStatus( Nonce nonce ) {
+		if ( nonce != null )
+			mStatusRequested.add(nonce) ;
+		requestRefresh() ;
+	}
+
+
+	/**
+	 * Refreshes the directory, blocking until complete.  If a refresh is
+	 * already underway, this call waits for it to complete and then for
+	 * the refresh that follows, which is shared with all other callers
+	 * waiting at that time (and performed by whichever of them gets to it
+	 * first, or by the background refresher).
+	 *
+	 * @return The version of the directory after the refresh.
+	 * @throws CommunicationErrorException If the refresh failed.
+	 */
+	public long refresh() throws CommunicationErrorException {
+		long ticket ;
+		synchronized( this ) {
+			requestRefresh() ;
+			ticket = mRefreshRequested ;
+		}
+		return refreshUntil( ticket ) ;
+	}
+
+
+	private long refreshUntil( long ticket ) throws CommunicationErrorException {
+		while ( true ) {
+			long number ;
+			synchronized( this ) {
+				while ( mRefreshing && mRefreshCompleted < ticket ) {
+					try {
+						wait() ;
+					} catch ( InterruptedException e ) {
+						throw new CommunicationErrorException().setError(WebConsts.ERROR_UNKNOWN, WebConsts.REASON_NONE) ;
+					}
+				}
+				if ( mRefreshCompleted >= ticket ) {
+					if ( mRefreshError != WebConsts.ERROR_NONE )
+						throw new CommunicationErrorException().setError(mRefreshError, mRefreshReason) ;
+					return mVersion ;
+				}
+				// our turn.
+				mRefreshing = true ;
+				number = ++mRefreshBegun ;
+			}
+
+			performRefresh( number ) ;
+		}
+	}
+
+
+	private void refresherLoop( Thread thread ) {
+		while ( true ) {
+			long ticket ;
+			synchronized( this ) {
+				// wait until the interval has elapsed, or someone asks.
+				while ( mRunning && mThread == thread
+						&& mRefreshRequested <= mRefreshCompleted
+						&& System.currentTimeMillis() - mRefreshCompletedAt < mListInterval ) {
+					long remaining = mListInterval - ( System.currentTimeMillis() - mRefreshCompletedAt ) ;
+					try {
+						wait( Math.max( 1, remaining ) ) ;
+					} catch ( InterruptedException e ) {
+						return ;
+					}
+				}
+				if ( !mRunning || mThread != thread )
+					return ;
+				if ( mRefreshRequested <= mRefreshCompleted )
+					mRefreshRequested = mRefreshBegun + 1 ;
+				ticket = mRefreshRequested ;
+			}
+
+			try {
+				refreshUntil( ticket ) ;
+			} catch ( CommunicationErrorException e ) {
+				// listeners have been told.
+			}
+		}
+	}
+
+
+	/**
+	 * Performs a single refresh: the list query alongside a batched status
+	 * query for stale and requested lobbies, then a batched status query for
+	 * those new to the list.  Must be called with mRefreshing set, and only
+	 * by the caller that set it.
+	 *
+	 * @param number
+	 */
+	private void performRefresh( long number ) {
+		ArrayList<Nonce> listed = new ArrayList<Nonce>() ;
+		ArrayList<InternetLobby> batch = new ArrayList<InternetLobby>() ;
+		ArrayList<InternetLobby> newLobbies = new ArrayList<InternetLobby>() ;
+		HashSet<Nonce> requested ;
+
+		int error = WebConsts.ERROR_NONE ;
+		int reason = WebConsts.REASON_NONE ;
+		Changes changes = null ;
+
+		// Which of the statuses we have do we need again?  Refresh copies,
+		// never instances we have provided.
+		long now = System.currentTimeMillis() ;
+		synchronized( this ) {
+			requested = new HashSet<Nonce>( mStatusRequested ) ;
+			mStatusRequested.clear() ;
+			for ( int i = 0; i < mListed.size(); i++ ) {
+				Entry e = mListed.get(i) ;
+				if ( requested.contains( e.lobby.getLobbyNonce() ) || now - e.statusAt >= mStatusMaxAge )
+					batch.add(e.listing.newInstance()) ;
+			}
+		}
+
+		try {
+			// Step 1: the list, and those statuses.  The list is the only
+			// query made when nothing is new or stale.
+			Future<WebQuery.Response []> listQuery = InternetLobby.queryLobbyNonceList( mTimeout ) ;
+			Future<WebQuery.Response []> batchQuery = InternetLobby.queryStatus( batch, mTimeout ) ;
+			InternetLobby.getLobbyNonceList( listed, listQuery ) ;
+
+			// Step 2: those new to the list.
+			synchronized( this ) {
+				for ( int i = 0; i < listed.size(); i++ ) {
+					Nonce n = listed.get(i) ;
+					if ( !mEntries.containsKey(n) )
+						newLobbies.add( InternetLobby.newUnrefreshedInstance( n, InternetLobby.ORIGIN_PUBLIC_LIST ) ) ;
+				}
+			}
+			Future<WebQuery.Response []> newQuery = InternetLobby.queryStatus( newLobbies, mTimeout ) ;
+
+			// Step 3: apply both.  Stale lobbies that have since left the
+			// list are dropped by apply().
+			try {
+				InternetLobby.refreshAll( batch, batchQuery ) ;
+				InternetLobby.refreshAll( newLobbies, newQuery ) ;
+				batch.addAll( newLobbies ) ;
+			} catch ( CommunicationErrorException cee ) {
+				error = cee.getError() ;
+				reason = cee.getErrorReason() ;
+				batch.clear() ;
+				newLobbies.clear() ;
+			}
+		} catch ( CommunicationErrorException cee ) {
+			error = cee.getError() ;
+			reason = cee.getErrorReason() ;
+			listed = null ;
+		}
+
+		ArrayList<Listener> listeners ;
+		synchronized( this ) {
+			if ( listed != null )
+				changes = apply( listed, batch, newLobbies ) ;
+			if ( error != WebConsts.ERROR_NONE ) {
+				// try again next time.
+				mStatusRequested.addAll( requested ) ;
+			}
+
+			listeners = new ArrayList<Listener>( mListeners ) ;
+		}
+
+		// Notify before completing, so listeners hear of each refresh's
+		// changes in order.
+		for ( int i = 0; i < listeners.size(); i++ ) {
+			if ( changes != null )
+				listeners.get(i).ild_changed( this, changes ) ;
+			if ( error != WebConsts.ERROR_NONE )
+				listeners.get(i).ild_failed( this, error, reason ) ;
+		}
+
+		synchronized( this ) {
+			mRefreshError = error ;
+			mRefreshReason = reason ;
+			mRefreshCompleted = number ;
+			mRefreshCompletedAt = System.currentTimeMillis() ;
+			mRefreshing = false ;
+			notifyAll() ;
+		}
+	}
+
+
+	/**
+	 * Applies the results of a refresh to the directory, advancing the version
+	 * if anything changed.  Must hold 'this'.
+	 *
+	 * @param listed
+	 * @param refreshed
+	 * @param newLobbies
+	 * @return The changes made, or 'null' if none.
+	 */
+	private Changes apply( ArrayList<Nonce> listed, ArrayList<InternetLobby> refreshed, ArrayList<InternetLobby> newLobbies ) {
+		long version = mVersion + 1 ;
+		long now = System.currentTimeMillis() ;
+		Changes changes = new Changes() ;
+
+		// Removed: those no longer listed.
+		HashSet<Nonce> listedSet = new HashSet<Nonce>( listed ) ;
+		Iterator<Entry> iter = mEntries.values().iterator() ;
+		for ( ; iter.hasNext() ; ) {
+			Entry e = iter.next() ;
+			if ( !listedSet.contains( e.lobby.getLobbyNonce() ) ) {
+				iter.remove() ;
+				e.changedIn = version ;
+				mRemoved.add(e) ;
+				changes.removed.add(e.lobby) ;
+			}
+		}
+
+		// Added: those whose status we retrieved for the first time.
+		HashSet<InternetLobby> isNew = new HashSet<InternetLobby>( newLobbies ) ;
+		for ( int i = 0; i < newLobbies.size(); i++ ) {
+			InternetLobby il = newLobbies.get(i) ;
+			Entry e = new Entry( il ) ;
+			e.listing = il.newInstance() ;
+			e.addedIn = version ;
+			e.changedIn = version ;
+			e.statusAt = now ;
+			mEntries.put( il.getLobbyNonce(), e ) ;
+			changes.added.add(il) ;
+		}
+
+		// Changed: those refreshed whose listing differs from the last reported.
+		// Every refreshed copy replaces the instance we provide, whether or
+		// not its listing changed.
+		for ( int i = 0; i < refreshed.size(); i++ ) {
+			InternetLobby il = refreshed.get(i) ;
+			if ( isNew.contains(il) )
+				continue ;
+			Entry e = mEntries.get( il.getLobbyNonce() ) ;
+			if ( e == null )
+				continue ;
+			boolean changed = !il.hasSameListingAs( e.listing ) ;
+			e.lobby = il ;
+			e.listing = il.newInstance() ;
+			e.statusAt = now ;
+			if ( changed ) {
+				e.changedIn = version ;
+				changes.changed.add(il) ;
+			}
+		}
+
+		// the server's order, for getLobbies.
+		mListed.clear() ;
+		for ( int i = 0; i < listed.size(); i++ ) {
+			Entry e = mEntries.get( listed.get(i) ) ;
+			if ( e != null )
+				mListed.add(e) ;
+		}
+
+		// forget the oldest removals.
+		while ( mRemoved.size() > MAX_RETAINED_REMOVALS )
+			mRemovalsForgottenThrough = mRemoved.remove(0).changedIn ;
+
+		if ( changes.isEmpty() )
+			return null ;
+		mVersion = version ;
+		changes.version = version ;
+		return changes ;
+	}
+
+}
@@ -169,6 +169,12 @@ public class Lobby implements Serializable {
 	
 	public static final int COUNTDOWN_STATUS_UNUSED = -1 ;
 	
+	// State delta fields.  See getStateDelta.
+	public static final int STATE_FIELD_IN_LOBBY = 0 ;		// index: player slot.  value: 1 if in lobby, 0 if not.
+	public static final int STATE_FIELD_STATUS = 1 ;		// index: player slot.  value: player status.
+	public static final int STATE_FIELD_VOTE = 2 ;			// index: player slot.  value: game mode voted for.
+	public static final int STATE_FIELD_UNVOTE = 3 ;		// index: player slot.  value: game mode not voted for.
+	
 	// Some info about messages...
 	public static final int MAX_NUMBER_OF_MESSAGES = 40 ;
 	public static final int MAX_MESSAGE_LENGTH = 150 ;
@@ -234,6 +240,19 @@ public class Lobby implements Serializable {
 	int [] countdownStatus ;	// a new edition 12/6.
 	Object [] countdownTag ;	// a new edition 12/6.
 	
+	// State versioning.  Every change to player membership, player status
+	// or a vote is stamped with a new, strictly increasing stateVersion,
+	// recorded against the specific field that changed.  This lets a
+	// Coordinator describe "everything that changed since version V" --
+	// see getStateDelta -- without resending whole-lobby snapshots.
+	// Vote tallies are kept up-to-date as votes change, so counting
+	// the voters for a game mode does not require a pass over every player.
+	long stateVersion ;
+	long [] playerInLobbyVersion ;
+	long [] playerStatusVersion ;
+	long [][] voteForGameModeIndexByPlayerVersion ;
+	int [] voteTallyByGameModeIndex ;
+	
 	
 	// DELEGATE
 	WeakReference<Lobby.Delegate> mwrDelegate = null ;
@@ -280,6 +299,13 @@ public class Lobby implements Serializable {
 		countdownStatus = new int[0] ;
 		countdownTag = new Object[0] ;
 		
+		// Versioning
+		stateVersion = 0 ;
+		playerInLobbyVersion = new long[0] ;
+		playerStatusVersion = new long[0] ;
+		voteForGameModeIndexByPlayerVersion = new long[0][0] ;
+		voteTallyByGameModeIndex = new int[0] ;
+		
 		mwrDelegate = new WeakReference<Delegate>(null) ;
 	}
 	
@@ -341,6 +367,13 @@ public class Lobby implements Serializable {
 			countdownIncludesPlayer = setVals( countdownIncludesPlayer, lobby.countdownIncludesPlayer ) ;
 			countdownStatus = setVals( countdownStatus, lobby.countdownStatus ) ;
 			countdownTag = setVals( countdownTag, lobby.countdownTag ) ;
+			
+			// Versioning
+			stateVersion = lobby.stateVersion ;
+			playerInLobbyVersion = setVals( playerInLobbyVersion, lobby.playerInLobbyVersion ) ;
+			playerStatusVersion = setVals( playerStatusVersion, lobby.playerStatusVersion ) ;
+			voteForGameModeIndexByPlayerVersion = setVals( voteForGameModeIndexByPlayerVersion, lobby.voteForGameModeIndexByPlayerVersion ) ;
+			voteTallyByGameModeIndex = setVals( voteTallyByGameModeIndex, lobby.voteTallyByGameModeIndex ) ;
 		}
 	}
 	
@@ -415,6 +448,16 @@ public class Lobby implements Serializable {
 		return dst ;
 	}
 	
+	private long [][] setVals( long [][] dst, long [][] src ) {
+		if ( src == null )
+			return null ;
+		else if ( dst == null || dst.length != src.length )
+			dst = new long[src.length][] ;
+		for ( int i = 0; i < src.length; i++ )
+			dst[i] = setVals( dst[i], src[i] ) ;
+		return dst ;
+	}
+	
 	
 	///////////////////////////////////////////////////////////////////
 	//
@@ -729,7 +772,7 @@ public class Lobby implements Serializable {
 		int gameModeIndex = findGameModeIndex( gameMode ) ;
 		if ( gameModeIndex == -1 )
 			return new int[0] ;
-		int num = count( this.voteForGameModeIndexByPlayer[gameModeIndex] ) ;
+		int num = this.voteTallyByGameModeIndex[gameModeIndex] ;
 		
 		int [] vSlots = new int[num] ;
 		num = 0 ;
@@ -755,7 +798,7 @@ public class Lobby implements Serializable {
 		if ( gameModeIndex == -1 )
 			return new String[0] ;
 		
-		int num = count( this.voteForGameModeIndexByPlayer[gameModeIndex] ) ;
+		int num = this.voteTallyByGameModeIndex[gameModeIndex] ;
 		
 		String [] vnames = new String[num] ;
 		num = 0 ;
@@ -788,6 +831,21 @@ public class Lobby implements Serializable {
 	}
 	
 	
+	/**
+	 * Returns the canonical number of players who have voted for the
+	 * specified gameMode.  Tallies are maintained as votes change, so
+	 * this is a constant-time lookup.
+	 * @param gameMode
+	 * @return
+	 */
+	public synchronized int getVoteCount( int gameMode ) {
+		int gameModeIndex = findGameModeIndex( gameMode ) ;
+		if ( gameModeIndex == -1 )
+			return 0 ;
+		return this.voteTallyByGameModeIndex[gameModeIndex] ;
+	}
+	
+	
 	public synchronized boolean getPlayerVote( int playerSlot, int gameMode ) {
 		int gameModeIndex = findGameModeIndex( gameMode ) ;
 		if ( gameModeIndex == -1 )
@@ -1105,6 +1163,10 @@ public class Lobby implements Serializable {
 		
 		if ( playerInLobby != null ) {
 			for ( int i = 0; i < playerInLobby.length; i++ ) {
+				if ( playerInLobby[i] )
+					stamp( playerInLobbyVersion, i ) ;
+				if ( playerStatus[i] != PLAYER_STATUS_NOT_CONNECTED )
+					stamp( playerStatusVersion, i ) ;
 				playerInLobby[i] = false ;
 				playerStatus[i] = PLAYER_STATUS_NOT_CONNECTED ;
 			}
@@ -1120,8 +1182,11 @@ public class Lobby implements Serializable {
 		if ( voteForGameModeIndexByPlayer != null ) {
 			for ( int i = 0; i < voteForGameModeIndexByPlayer.length; i++ ) {
 				for ( int j = 0; j < voteForGameModeIndexByPlayer[i].length; j++ ) {
+					if ( voteForGameModeIndexByPlayer[i][j] )
+						stamp( voteForGameModeIndexByPlayerVersion[i], j ) ;
 					voteForGameModeIndexByPlayer[i][j] = false ;
 				}
+				voteTallyByGameModeIndex[i] = 0 ;
 			}
 		}
 		
@@ -1153,6 +1218,10 @@ public class Lobby implements Serializable {
 		for ( int i = 0; i < this.voteForGameModeIndexByPlayer.length; i++ ) {
 			boolean changed = this.voteForGameModeIndexByPlayer[i][playerSlot] ;
 			this.voteForGameModeIndexByPlayer[i][playerSlot] = false ;
+			if ( changed ) {
+				this.voteTallyByGameModeIndex[i]-- ;
+				stamp( this.voteForGameModeIndexByPlayerVersion[i], playerSlot ) ;
+			}
 			if ( delegate != null && changed )
 				delegate.ld_updatedGameModeVotes(i, this) ;
 		}
@@ -1200,13 +1269,17 @@ public class Lobby implements Serializable {
 			this.countdownStatus = new int[this.maxPlayers] ;
 			this.countdownTag = new Object[this.maxPlayers] ;
 		}
+		
+		allocateVersioning() ;
 	}
 	
 	public synchronized void setPlayerInLobby( int player, boolean inLobby ) {
 		boolean prevInLobby = playerInLobby[player] ;
 		playerInLobby[player] = inLobby ;
+		if ( prevInLobby != inLobby )
+			stamp( playerInLobbyVersion, player ) ;
 		if ( !inLobby )
-			playerStatus[player] = PLAYER_STATUS_NOT_CONNECTED ;
+			setPlayerNotConnected( player ) ;
 		
 		Delegate delegate = mwrDelegate.get() ;
 		if ( prevInLobby && !inLobby && delegate != null )
@@ -1224,8 +1297,10 @@ public class Lobby implements Serializable {
 		for ( int i = 0; i < players.length; i++ ) {
 			boolean prevInLobby = playerInLobby[i] ;
 			playerInLobby[i] = players[i] ;
+			if ( prevInLobby != players[i] )
+				stamp( playerInLobbyVersion, i ) ;
 			if ( !playerInLobby[i] )
-				playerStatus[i] = PLAYER_STATUS_NOT_CONNECTED ;
+				setPlayerNotConnected( i ) ;
 			
 			Delegate delegate = mwrDelegate.get() ;
 			if ( players[i] && !prevInLobby && delegate != null )
@@ -1250,6 +1325,8 @@ public class Lobby implements Serializable {
 			throw new IllegalArgumentException("Value " + status + " is not a valid status") ;
 		int prevStatus = playerStatus[playerSlot] ;
 		playerStatus[playerSlot] = status ;
+		if ( prevStatus != status )
+			stamp( playerStatusVersion, playerSlot ) ;
 		
 		Delegate delegate = mwrDelegate.get() ;
 		if ( prevStatus != status && delegate != null )
@@ -1260,6 +1337,8 @@ public class Lobby implements Serializable {
 	public synchronized void setPlayerActive( int playerSlot ) {
 		int prevStatus = playerStatus[playerSlot] ;
 		playerStatus[playerSlot] = PLAYER_STATUS_ACTIVE ;
+		if ( prevStatus != PLAYER_STATUS_ACTIVE )
+			stamp( playerStatusVersion, playerSlot ) ;
 		
 		Delegate delegate = mwrDelegate.get() ;
 		if ( prevStatus != PLAYER_STATUS_ACTIVE && delegate != null )
@@ -1269,6 +1348,8 @@ public class Lobby implements Serializable {
 	public synchronized void setPlayerInactive( int playerSlot ) {
 		int prevStatus = playerStatus[playerSlot] ;
 		playerStatus[playerSlot] = PLAYER_STATUS_INACTIVE ;
+		if ( prevStatus != PLAYER_STATUS_INACTIVE )
+			stamp( playerStatusVersion, playerSlot ) ;
 		
 		Delegate delegate = mwrDelegate.get() ;
 		if ( prevStatus != PLAYER_STATUS_INACTIVE && delegate != null )
@@ -1278,6 +1359,8 @@ public class Lobby implements Serializable {
 	public synchronized void setPlayerInGame( int playerSlot ) {
 		int prevStatus = playerStatus[playerSlot] ;
 		playerStatus[playerSlot] = PLAYER_STATUS_IN_GAME ;
+		if ( prevStatus != PLAYER_STATUS_IN_GAME )
+			stamp( playerStatusVersion, playerSlot ) ;
 		
 		Delegate delegate = mwrDelegate.get() ;
 		if ( prevStatus != PLAYER_STATUS_IN_GAME && delegate != null )
@@ -1296,6 +1379,8 @@ public class Lobby implements Serializable {
 		for ( int i = 0; i < playerStatus.length; i++ ) {
 			int prevStatus = playerStatus[i] ;
 			playerStatus[i] = status[i] ;
+			if ( status[i] != prevStatus )
+				stamp( playerStatusVersion, i ) ;
 			if ( status[i] != prevStatus && delegate != null )
 				delegate.ld_memberChangedStatus(i, prevStatus, status[i], this) ;
 		}
@@ -1321,6 +1406,8 @@ public class Lobby implements Serializable {
 				( this.voteForGameModeIndexByPlayer == null
 						|| this.voteForGameModeIndexByPlayer.length != this.numGameModes ) )
 			this.voteForGameModeIndexByPlayer = new boolean[this.numGameModes][this.maxPlayers] ;
+		
+		allocateVersioning() ;
 	}
 	
 	
@@ -1348,7 +1435,7 @@ public class Lobby implements Serializable {
 		int gameModeIndex = findGameModeIndex( gameMode ) ;
 		if ( gameModeIndex == -1 )
 			return ;
-		this.voteForGameModeIndexByPlayer[gameModeIndex][playerSlot] = v ;
+		setVote( gameModeIndex, playerSlot, v ) ;
 		
 		Delegate delegate = mwrDelegate.get() ;
 		if ( delegate != null )
@@ -1366,7 +1453,7 @@ public class Lobby implements Serializable {
 		if ( gameModeIndex == -1 )
 			return ;
 		for ( int j = 0; j < this.maxPlayers; j++ )
-			this.voteForGameModeIndexByPlayer[gameModeIndex][j] = votes[j] ;
+			setVote( gameModeIndex, j, votes[j] ) ;
 		
 		Delegate delegate = mwrDelegate.get() ;
 		if ( delegate != null )
@@ -1590,6 +1677,143 @@ public class Lobby implements Serializable {
 		return -1 ;
 	}
 	
+	private void setPlayerNotConnected( int slot ) {
+		if ( playerStatus[slot] != PLAYER_STATUS_NOT_CONNECTED )
+			stamp( playerStatusVersion, slot ) ;
+		playerStatus[slot] = PLAYER_STATUS_NOT_CONNECTED ;
+	}
+	
+	private void setVote( int gameModeIndex, int slot, boolean v ) {
+		if ( this.voteForGameModeIndexByPlayer[gameModeIndex][slot] == v )
+			return ;
+		this.voteForGameModeIndexByPlayer[gameModeIndex][slot] = v ;
+		this.voteTallyByGameModeIndex[gameModeIndex] += v ? 1 : -1 ;
+		stamp( this.voteForGameModeIndexByPlayerVersion[gameModeIndex], slot ) ;
+	}
+	
+	private void stamp( long [] versions, int index ) {
+		versions[index] = ++stateVersion ;
+	}
+	
+	
+	/**
+	 * Brings the versioning structures in line with the current maxPlayers
+	 * and numGameModes.  Any structure reallocated has every entry stamped
+	 * with a new version, so that a delta from any earlier version includes
+	 * the whole of it.  Tallies are recounted from scratch.
+	 */
+	private void allocateVersioning() {
+		long version = -1 ;
+		
+		if ( playerInLobbyVersion == null || playerInLobbyVersion.length != maxPlayers ) {
+			version = ++stateVersion ;
+			playerInLobbyVersion = new long[maxPlayers] ;
+			playerStatusVersion = new long[maxPlayers] ;
+			for ( int i = 0; i < maxPlayers; i++ ) {
+				playerInLobbyVersion[i] = version ;
+				playerStatusVersion[i] = version ;
+			}
+		}
+		
+		int numPlayersVoting = voteForGameModeIndexByPlayer == null || voteForGameModeIndexByPlayer.length == 0
+				? 0 : voteForGameModeIndexByPlayer[0].length ;
+		int numModesVoting = voteForGameModeIndexByPlayer == null ? 0 : voteForGameModeIndexByPlayer.length ;
+		if ( voteForGameModeIndexByPlayerVersion == null
+				|| voteForGameModeIndexByPlayerVersion.length != numModesVoting
+				|| ( numModesVoting > 0 && voteForGameModeIndexByPlayerVersion[0].length != numPlayersVoting ) ) {
+			if ( version < 0 )
+				version = ++stateVersion ;
+			voteForGameModeIndexByPlayerVersion = new long[numModesVoting][numPlayersVoting] ;
+			for ( int i = 0; i < numModesVoting; i++ )
+				for ( int j = 0; j < numPlayersVoting; j++ )
+					voteForGameModeIndexByPlayerVersion[i][j] = version ;
+		}
+		
+		if ( voteTallyByGameModeIndex == null || voteTallyByGameModeIndex.length != numModesVoting )
+			voteTallyByGameModeIndex = new int[numModesVoting] ;
+		for ( int i = 0; i < numModesVoting; i++ )
+			voteTallyByGameModeIndex[i] = count( voteForGameModeIndexByPlayer[i] ) ;
+	}
+	
+	
+	//////////////////////////////////////////////////
+	//
+	// STATE DELTAS
+	//
+	//////////////////////////////////////////////////
+	
+	/**
+	 * Returns the current state version.  This value increases with every
+	 * change to player membership, player status, or a vote; a state delta
+	 * taken "since" this version will be empty until the next such change.
+	 * @return
+	 */
+	public synchronized long getStateVersion() {
+		return stateVersion ;
+	}
+	
+	
+	/**
+	 * Fills the provided arrays with a description of every change to player
+	 * membership, player status and votes made after 'sinceVersion'.  Each
+	 * parameter should either be allocated large enough to hold the result,
+	 * or 'null', in which case it will be ignored.  Calling this method with
+	 * all 'null' parameters will query only the number of entries.
+	 * 
+	 * After this call, with return value N, for n < N, entry n sets the
+	 * STATE_FIELD_* field[n] of index[n] to value[n] (see the STATE_FIELD_*
+	 * constants for the meaning of index and value).  Entries give the CURRENT
+	 * value of a changed field, not its history, so applying the same entry twice
+	 * is harmless.  Entries are ordered: membership, then status, then votes;
+	 * applying them in order through setPlayerInLobby, setPlayerStatus and
+	 * setPlayerVoteForGameMode brings a Lobby that reflected 'sinceVersion' up 
+	 * to getStateVersion().
+	 * 
+	 * Statuses are only included for players currently in the lobby;
+	 * the status of a departed player is implied by their membership.
+	 * 
+	 * @param sinceVersion
+	 * @param field
+	 * @param index
+	 * @param value
+	 * @return The number of entries in the delta.
+	 */
+	public synchronized int getStateDelta( long sinceVersion, int [] field, int [] index, int [] value ) {
+		int num = 0 ;
+		for ( int p = 0; p < maxPlayers; p++ ) {
+			if ( playerInLobbyVersion[p] > sinceVersion ) {
+				num = putStateDeltaEntry( num, STATE_FIELD_IN_LOBBY, p, playerInLobby[p] ? 1 : 0, field, index, value ) ;
+			}
+		}
+		for ( int p = 0; p < maxPlayers; p++ ) {
+			if ( playerStatusVersion[p] > sinceVersion && playerInLobby[p]
+			       && playerStatus[p] != PLAYER_STATUS_NOT_CONNECTED ) {
+				num = putStateDeltaEntry( num, STATE_FIELD_STATUS, p, playerStatus[p], field, index, value ) ;
+			}
+		}
+		for ( int m = 0; m < voteForGameModeIndexByPlayerVersion.length; m++ ) {
+			long [] versions = voteForGameModeIndexByPlayerVersion[m] ;
+			for ( int p = 0; p < versions.length; p++ ) {
+				if ( versions[p] > sinceVersion ) {
+					num = putStateDeltaEntry( num,
+							voteForGameModeIndexByPlayer[m][p] ? STATE_FIELD_VOTE : STATE_FIELD_UNVOTE,
+							p, gameModes[m], field, index, value ) ;
+				}
+			}
+		}
+		return num ;
+	}
+	
+	private int putStateDeltaEntry( int num, int f, int i, int v, int [] field, int [] index, int [] value ) {
+		if ( field != null )
+			field[num] = f ;
+		if ( index != null )
+			index[num] = i ;
+		if ( value != null )
+			value[num] = v ;
+		return num + 1 ;
+	}
+	
 	
 	
 	
@@ -1663,6 +1887,14 @@ public class Lobby implements Serializable {
 		
 		voteForGameModeIndexByPlayer = (boolean [][])stream.readObject() ;
 		playerStatus = (int [])stream.readObject() ;
+		
+		// Versioning is not serialized; a deserialized Lobby starts a new history.
+		stateVersion = 0 ;
+		playerInLobbyVersion = null ;
+		playerStatusVersion = null ;
+		voteForGameModeIndexByPlayerVersion = null ;
+		voteTallyByGameModeIndex = null ;
+		allocateVersioning() ;
 	}
 	
 	@SuppressWarnings("unused")
@@ -1724,6 +1956,16 @@ public class Lobby implements Serializable {
 		}
 		l.countdownStatus = countdownStatus == null ? null : countdownStatus.clone() ;
 		l.countdownTag = countdownTag == null ? null : countdownTag.clone() ;
+		
+		l.stateVersion = stateVersion ;
+		l.playerInLobbyVersion = playerInLobbyVersion == null ? null : playerInLobbyVersion.clone() ;
+		l.playerStatusVersion = playerStatusVersion == null ? null : playerStatusVersion.clone() ;
+		if ( voteForGameModeIndexByPlayerVersion != null ) {
+			l.voteForGameModeIndexByPlayerVersion = new long[voteForGameModeIndexByPlayerVersion.length][] ;
+			for ( int i = 0; i < voteForGameModeIndexByPlayerVersion.length; i++ )
+				l.voteForGameModeIndexByPlayerVersion[i] = voteForGameModeIndexByPlayerVersion[i] == null ? null : voteForGameModeIndexByPlayerVersion[i].clone() ;
+		}
+		l.voteTallyByGameModeIndex = voteTallyByGameModeIndex == null ? null : voteTallyByGameModeIndex.clone() ;
 	}
 	
 }
@@ -1,8 +1,12 @@
 package com.peaceray.quantro.lobby;
 
 import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.peaceray.quantro.utils.ByteArrayOps;
 
 
 /**
@@ -49,37 +53,35 @@ import java.util.Date;
  * this affects memory management and multithreaded access.
  * 
  * MEMORY MANAGEMENT: LobbyLogs are instantiated with a size limit, which is
- * 		LobbyLog.DEFAULT_CAPACITY by default.  Only this many Event objects will
- * 		be allocated to hold the lobby.  They will be allocated one at a time as-needed,
- * 		unless allocate() is called, in which case this will be done at once
- * 		and no subsequent event will cause an allocation.  Any new event beyond the
- * 		length of the Log will replace the oldest event in the Log.
+ * 		LobbyLog.DEFAULT_CAPACITY by default.  Only this many Events are
+ * 		retained.  Any new event beyond the length of the Log will replace the
+ * 		oldest event in the Log.
+ * 
+ * 		Events are held in a ring indexed by id, so logging an event into a full
+ * 		Log replaces the oldest without moving any others.  Each event logged
+ * 		is stored as a new, never-altered Event (so that lock-free readers
+ * 		always see it whole); allocate() is retained but does nothing.
  * 
- * 		LobbyLogs can be resized in-place.  Increasing the size will add space
+ * 		LobbyLogs can be resized.  Increasing the size will add space
  * 		for more Log events after the most recent (it will NOT restore events that
  * 		have been forgotten from history), while decreasing the size will cause
- * 		the log to forget the earliest events.  If the lobby size is increased,
- * 		call allocate() if desired to create enough Event objects to fill the
- * 		new size.
- * 
- * 		This direct memory access - explicit settings for size and an explicit call
- * 		to full allocate the Events - is meant to limit garbage collection when
- * 		not desired, and to set a consistent memory footprint for this object.
+ * 		the log to forget the earliest events.  Resizing moves the retained
+ * 		events into a new ring.
  * 
  * 
- * MULTITHREADED ACCESS: LobbyLog methods are synchronized, to prevent interference
- * 		between multiple threads.  If only one thread is perfoming reads and writes,
- * 		it is reasonable to use the "*Reference" methods; these provide references to
- * 		the Event objects used by this LobbyLog.  They are therefore quite fast, but
- * 		are dangerous to use, because LobbyLog mutators can then alter the objects returned
- * 		before they are used, and the caller of a "*Reference" method can alter the
- * 		contents of the Log by mutating the object.  Use of these references is thus
- * 		EXTREMELY dangerous, but the memory gains might be worth it.  Up to you.
+ * MULTITHREADED ACCESS: LobbyLog mutators are synchronized, to prevent interference
+ * 		between multiple writers.  Accessors take no lock at all; they read the
+ * 		Event published (through an AtomicReferenceArray) in a slot, and check its
+ * 		id to confirm a writer has not since replaced it, retrying if it has.
+ * 		A busy writer never waits on a reader.
  * 
- * 		For safer operation, especially in multithreaded settings (even duplex settings
- * 		where one thread adds events and another reads them), use the non-Reference
- * 		methods for access.  These copy Event content to other objects, which are
- * 		guaranteed not to be altered through the LobbyLog by another thread.
+ * 		The Events the log holds are its own copies, and are never altered once
+ * 		published; a logged event is copied in, and every accessor copies out
+ * 		(into a new Event, or one provided by the caller).  No Event returned
+ * 		or filled by an accessor is shared with the log, so callers may keep or
+ * 		alter them freely, from any thread, without affecting the log or being
+ * 		affected by later writes.  (An event's tag, if any, is copied by
+ * 		reference like its Strings; don't alter it after logging.)
  * 
  * 
  * Subclassing: one easy method of subclassing is to override 'logEvent',
@@ -119,11 +121,41 @@ public class LobbyLog {
 	public static final int DEFAULT_CAPACITY = 100 ;
 	
 	
+	private static final Charset UTF_8 = Charset.forName("UTF-8") ;
+	
+	
+	/**
+	 * A fixed-capacity ring of Events.  The event with id 'id' lives in
+	 * slots.get(id % capacity).  Rings are replaced (never resized) by
+	 * setCapacity, so a reader holding one may always index it safely.
+	 * 
+	 * Each Event in a slot is a private copy, never altered once stored:
+	 * the writer replaces it with a new Event rather than overwriting it.
+	 */
+	protected static final class Ring {
+		final AtomicReferenceArray<Event> slots ;
+		final int capacity ;
+		// The earliest id this ring has ever held.  Ids before
+		// this were forgotten before the ring was created.
+		final int baseId ;
+		
+		private Ring( int capacity, int baseId ) {
+			this.slots = new AtomicReferenceArray<Event>(capacity) ;
+			this.capacity = capacity ;
+			this.baseId = baseId ;
+		}
+		
+		private int firstId( int nextId ) {
+			return Math.max( baseId, nextId - capacity ) ;
+		}
+	}
+	
+	
 	// our events
-	protected ArrayList<Event> mEvents ;
-	// metadata re: mEvents
-	protected int mCapacity ;
-	protected int mSize ;
+	protected volatile Ring mRing ;
+	// The id of the next event to be logged.  Events with ids less than this
+	// are complete; written (and published) after the event itself.
+	protected volatile int mNextId ;
 	// a temporary structure for the event currently being logged.
 	// should be set only in a log* method, and read only in logEvent().
 	protected Event mCurrentEvent ;
@@ -149,9 +181,8 @@ public class LobbyLog {
 	public LobbyLog( int capacity ) {
 		if ( capacity <= 0 )
 			throw new IllegalArgumentException("Must have a positive capacity; " + capacity + " is not positive") ;
-		mEvents = new ArrayList<Event>(capacity) ;
-		mCapacity = capacity ;
-		mSize = 0 ;
+		mRing = new Ring( capacity, 0 ) ;
+		mNextId = 0 ;
 		mCurrentEvent = new Event() ;
 		mwrDelegate = new WeakReference<Delegate>(null) ;
 	}
@@ -162,38 +193,34 @@ public class LobbyLog {
 	 * If greater than the previous capacity, all currently stored
 	 * events will be retained.  If smaller, the earliest events may
 	 * be lost.
+	 * 
+	 * Retained events are copied into a new ring, leaving the old one
+	 * untouched for any reader still using it.
+	 * 
 	 * @param capacity 	The new capacity.
 	 * @return
 	 */
 	synchronized public LobbyLog setCapacity( int capacity ) {
 		if ( capacity <= 0 )
 			throw new IllegalArgumentException("Must have a positive capacity; " + capacity + " is not positive") ;
-		ArrayList<Event> e = new ArrayList<Event>(capacity) ;
-		for ( int i = Math.max(0, mSize - capacity) ; i < mSize ; i++  ) {
-			// consider 2 cases: sufficient space for all events,
-			// and insufficient space.  If the new capacity can
-			// hold all items, then capacity >= mSize and we begin
-			// with i = 0, iterating through all Events.  If
-			// the new capacity cannot hold all items, we iterate
-			// through the slice [last-cap:last].
-			e.add( mEvents.get(i) ) ;
-		}
-		mEvents = e ;
-		mSize = Math.min(capacity, mSize) ;
-		mCapacity = capacity ;
+		Ring ring = mRing ;
+		int nextId = mNextId ;
+		int firstId = Math.max( ring.firstId(nextId), nextId - capacity ) ;
+		Ring newRing = new Ring( capacity, firstId ) ;
+		for ( int id = firstId; id < nextId; id++ )
+			newRing.slots.set( id % capacity, ring.slots.get( id % ring.capacity ) ) ;
+		mRing = newRing ;
 		
 		return this ;
 	}
 	
 	/**
-	 * Immediately allocates any Event objects which may be needed,
-	 * up to the current capacity.  New additional allocation will
-	 * be performed by this Log as new events are added.
+	 * Formerly allocated the Event objects the log would reuse.  Stored
+	 * Events are now immutable copies, allocated as each event is logged,
+	 * so there is nothing to do in advance.
 	 * @return
 	 */
 	synchronized public LobbyLog allocate() {
-		while( mEvents.size() < mCapacity )
-			mEvents.add( new Event() ) ;
 		return this ;
 	}
 	
@@ -373,45 +400,27 @@ public class LobbyLog {
 	// Mutator helpers 
 	
 	
-	protected int indexForId( int id ) {
-		if ( mSize == 0 )
-			return -1 ;
-		int firstId = mEvents.get(0).id ;
-		int index = id - firstId ;
-		if ( index < 0 || index > mSize )
-			return -1 ;
-		
-		return index ;
-	}
-	
-	
 	/**
 	 * This method uses mCurrentEvent as a reference for content, placing
 	 * an Event with the exact same data in the log.  This implementation
 	 * of LobbyLog places events in order of ID number, which itself is
 	 * serial with each call to log*; in other words, we simply place this
-	 * event at the end.
+	 * event at the end, overwriting the oldest event if the log is full.
+	 * 
+	 * Readers do not lock; see getEventSlice.  We store a new copy of 'e'
+	 * in its slot (never altering the Event there, which a reader may be
+	 * copying) and then publish its id.
 	 * 
 	 * @param e An event to place in our log.  NOTE: We should NOT retain a 
 	 * reference to 'e' after this call; instead, its content should be
 	 * copied.
 	 */
 	synchronized protected void logEvent( Event e ) {
-		// If mEvents is not yet full to capacity, place this event at the end.
-		if ( mEvents.size() < mCapacity )
-			mEvents.add( e.clone() ) ;
-		// If mEvents is full BUT mSize does not agree, we pre-allocated objects
-		// and should copy the contents of e into the appropriate one.
-		else if ( mEvents.size() > mSize )
-			mEvents.get(mSize).set(e) ;
-		// Otherwise, move the FIRST event to the end, setting its content as e.
-		else
-			mEvents.add( mEvents.remove(0).set(e) ) ;
-			// note that event.set(e) returns a reference to 'event' itself.
+		Ring ring = mRing ;
+		int id = mNextId ;
 		
-		// Increase mSize (if appropriate)
-		if ( mSize < mEvents.size() )
-			mSize++ ;
+		ring.slots.set( id % ring.capacity, e.clone() ) ;
+		mNextId = id + 1 ;
 	}
 	
 	
@@ -428,10 +437,23 @@ public class LobbyLog {
 	 * f(0) = 0.
 	 * @return
 	 */
-	synchronized protected int nextId() {
-		if ( mSize == 0 )
-			return 0 ;
-		return mEvents.get(mSize-1).id + 1 ;
+	protected int nextId() {
+		return mNextId ;
+	}
+	
+	
+	/**
+	 * Copies the event with the given id from 'ring' into 'into'
+	 * (or a new Event, if 'into' is null), returning the Event written.
+	 * Returns null if the slot does not (or no longer) hold that id; the
+	 * caller should re-read mRing and try again.  The Event read from the
+	 * slot is never altered, so a copy of it is always intact.
+	 */
+	private Event copyFromRing( Ring ring, int id, Event into ) {
+		Event e = ring.slots.get( id % ring.capacity ) ;
+		if ( e == null || e.id != id )
+			return null ;
+		return into == null ? e.clone() : into.set(e) ;
 	}
 	
 	
@@ -457,24 +479,29 @@ public class LobbyLog {
 	/**
 	 * The number of events in this log.
 	 */
-	synchronized public int size() {
-		return mSize ;
+	public int size() {
+		Ring ring = mRing ;
+		int nextId = mNextId ;
+		return nextId - ring.firstId(nextId) ;
 	}
 	
 	/**
 	 * The maximum capacity of this log.
 	 * @return
 	 */
-	synchronized public int capacity() {
-		return mCapacity ;
+	public int capacity() {
+		return mRing.capacity ;
 	}
 	
 	/**
 	 * The 'id' number of the first event in this log.  -1 if the log is empty.
 	 * @return
 	 */
-	synchronized public int firstId() {
-		return mSize == 0 ? -1 : mEvents.get(0).id ;
+	public int firstId() {
+		Ring ring = mRing ;
+		int nextId = mNextId ;
+		int firstId = ring.firstId(nextId) ;
+		return firstId == nextId ? -1 : firstId ;
 	}
 	
 	
@@ -489,19 +516,25 @@ public class LobbyLog {
 	 * 
 	 * @return
 	 */
-	synchronized public int lastId() {
-		return mSize == 0 ? -1 : mEvents.get(mSize-1).id ;
+	public int lastId() {
+		Ring ring = mRing ;
+		int nextId = mNextId ;
+		return ring.firstId(nextId) == nextId ? -1 : nextId - 1 ;
 	}
 	
 	
 	////////////////////////////////////////////////////////////////////////////
 	// TAG-ACCESS.  Returns a reference to the tag provided to the given object.
-	synchronized public Object getTag( int id ) {
-		int index = indexForId( id ) ;
-		if ( index < 0 )
-			return null ;
-		
-		return mEvents.get(index).tag ;
+	public Object getTag( int id ) {
+		while ( true ) {
+			Ring ring = mRing ;
+			int nextId = mNextId ;
+			if ( id < ring.firstId(nextId) || id >= nextId )
+				return null ;
+			Event e = ring.slots.get( id % ring.capacity ) ;
+			if ( e != null && e.id == id )
+				return e.tag ;
+		}
 	}
 	
 	
@@ -510,15 +543,27 @@ public class LobbyLog {
 	// Event objects stored by this object.  If event tags are used, the
 	// tags of the Events returned will reference the same objects (as will
 	// any Strings, but Strings are immutable).
+	//
+	// None of these methods lock the log.  Each reads the immutable Event
+	// published in a slot and checks its id, starting over if a writer has
+	// since replaced it.  A writer only replaces the oldest events, so a
+	// copy starting over begins from the new first event.
 	
 	
 	/**
 	 * Returns a newly allocated Event object, representing the specified 'id'.
 	 * Returns 'null' if the provided id does not reference an event in our log.
 	 */
-	synchronized public Event getEvent(int id) {
-		int index = indexForId(id) ;
-		return index < 0 ? null : mEvents.get(index).clone() ;
+	public Event getEvent(int id) {
+		while ( true ) {
+			Ring ring = mRing ;
+			int nextId = mNextId ;
+			if ( id < ring.firstId(nextId) || id >= nextId )
+				return null ;
+			Event e = copyFromRing( ring, id, null ) ;
+			if ( e != null )
+				return e ;
+		}
 	}
 	
 	/**
@@ -530,12 +575,15 @@ public class LobbyLog {
 	 * @param id
 	 * @return
 	 */
-	synchronized public boolean getEvent(Event e, int id) {
-		int index = indexForId(id) ;
-		if ( index < 0 )
-			return false ;
-		e.set(mEvents.get(index)) ;
-		return true ;
+	public boolean getEvent(Event e, int id) {
+		while ( true ) {
+			Ring ring = mRing ;
+			int nextId = mNextId ;
+			if ( id < ring.firstId(nextId) || id >= nextId )
+				return false ;
+			if ( copyFromRing( ring, id, e ) != null )
+				return true ;
+		}
 	}
 	
 	
@@ -551,7 +599,7 @@ public class LobbyLog {
 	 * @param events
 	 * @return
 	 */
-	synchronized public int getEvents( ArrayList<Event> events ) {
+	public int getEvents( ArrayList<Event> events ) {
 		return getEventSlice(events, 0, Integer.MAX_VALUE) ;
 	}
 	
@@ -567,33 +615,42 @@ public class LobbyLog {
 	 * endId - startId, but may be less (even zero) if the specified slice is
 	 * not wholly contained in the log.
 	 * 
+	 * The slice is consistent: it is exactly the events [startId, endId) held
+	 * by the log at some moment during this call, although that moment may be
+	 * later than the call began if events were logged meanwhile.
+	 * 
 	 * @param events
 	 * @param startId
 	 * @param endId
 	 * @return
 	 */
-	synchronized public int getEventSlice(ArrayList<Event> events, int startId, int endId) {
-		if ( mSize == 0 )
-			return 0 ;
-		int startIndex = Math.max( indexForId(startId), 0 ) ;
-			// start from the specified id, or the first item if later.
-		int endIndex = indexForId(endId) ;
-		if ( endIndex == -1 )
-			endIndex = mSize ;
-		else
-			endIndex = Math.min( endIndex, mSize ) ;
-			// end at the specified id, or the last item if earlier.
-		
-		int num = 0 ;
-		for ( int i = startIndex; i < endIndex; i++ ) {
-			if ( events.size() > num )
-				events.get(num).set( mEvents.get(i) ) ;
-			else
-				events.add( mEvents.get(i).clone() ) ;
-			num++ ;
+	public int getEventSlice(ArrayList<Event> events, int startId, int endId) {
+		while ( true ) {
+			Ring ring = mRing ;
+			int nextId = mNextId ;
+			int start = Math.max( startId, ring.firstId(nextId) ) ;
+				// start from the specified id, or the first item if later.
+			int end = Math.min( endId, nextId ) ;
+				// end at the specified id, or the last item if earlier.
+			
+			int num = 0 ;
+			boolean intact = true ;
+			for ( int id = start; id < end && intact; id++ ) {
+				Event into = events.size() > num ? events.get(num) : null ;
+				Event e = copyFromRing( ring, id, into ) ;
+				if ( e == null )
+					intact = false ;
+				else {
+					if ( into == null )
+						events.add(e) ;
+					num++ ;
+				}
+			}
+			
+			if ( intact )
+				return num ;
+			// otherwise, a writer lapped us (or the ring was replaced).  Again.
 		}
-		
-		return num ;
 	}
 	
 	
@@ -603,7 +660,7 @@ public class LobbyLog {
 	 * @param endId
 	 * @return
 	 */
-	synchronized public int getEventSliceTo( ArrayList<Event> events, int endId ) {
+	public int getEventSliceTo( ArrayList<Event> events, int endId ) {
 		return getEventSlice( events, 0, endId ) ;
 	}
 	
@@ -612,13 +669,136 @@ public class LobbyLog {
 	 * getEventSlice( events, startId, Integer.MAX_VALUE ) ;
 	 * @param events
 	 * @param startId
+	 * @param endId
 	 * @return
 	 */
-	synchronized public int getEventSliceFrom( ArrayList<Event> events, int startId ) {
+	public int getEventSliceFrom( ArrayList<Event> events, int startId ) {
 		return getEventSlice( events, startId, Integer.MAX_VALUE ) ;
 	}
 	
 	
+	////////////////////////////////////////////////////////////////////////////
+	// EXPORT METHODS.  A compact byte representation of the events since a
+	// given id, e.g. to bring a late joiner up to date.  Tags are not
+	// included.
+	
+	/**
+	 * Returns a compact byte representation of every event in the log with
+	 * an id greater than 'sinceId' (use -1 for all events), suitable for
+	 * readEventsAsBytes.
+	 * 
+	 * @param sinceId
+	 * @return
+	 */
+	public byte [] exportEventsSince( int sinceId ) {
+		ArrayList<Event> events = new ArrayList<Event>() ;
+		int num = getEventSliceFrom( events, sinceId + 1 ) ;
+		byte [] b = new byte[ writeEventsAsBytes( events, num, null, 0 ) ] ;
+		writeEventsAsBytes( events, num, b, 0 ) ;
+		return b ;
+	}
+	
+	
+	/**
+	 * Writes the first 'num' events as bytes: a count, then for each event
+	 * its id and time (as the difference from the previous event's), type,
+	 * slot, status, args, name and text, using variable-length integers.
+	 * 
+	 * @param events
+	 * @param num
+	 * @param b The array to write in; if null, nothing is written, but the
+	 * 			length is still returned.
+	 * @param ind
+	 * @return The number of bytes written.
+	 */
+	public static int writeEventsAsBytes( ArrayList<Event> events, int num, byte [] b, int ind ) {
+		int start = ind ;
+		ind += ByteArrayOps.writeVarIntAsBytes(num, b, ind) ;
+		int prevId = 0 ;
+		long prevTime = 0 ;
+		for ( int i = 0; i < num; i++ ) {
+			Event e = events.get(i) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(e.id - prevId), b, ind) ;
+			ind += ByteArrayOps.writeVarLongAsBytes( ByteArrayOps.zigZag(e.time - prevTime), b, ind) ;
+			if ( b != null )
+				b[ind] = (byte)e.type ;
+			ind++ ;
+			ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(e.slot), b, ind) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(e.status), b, ind) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(e.arg1), b, ind) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(e.arg2), b, ind) ;
+			ind += writeStringAsBytes( e.name, b, ind ) ;
+			ind += writeStringAsBytes( e.text, b, ind ) ;
+			prevId = e.id ;
+			prevTime = e.time ;
+		}
+		return ind - start ;
+	}
+	
+	
+	/**
+	 * Reads events written by writeEventsAsBytes into the provided ArrayList,
+	 * using events.get(i).set(...) where possible and allocating new Events
+	 * otherwise.  Tags are set to null.
+	 * 
+	 * @param events
+	 * @param b
+	 * @param ind
+	 * @return The number of events read.
+	 */
+	public static int readEventsAsBytes( ArrayList<Event> events, byte [] b, int ind ) {
+		int num = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(num) ;
+		int id = 0 ;
+		long time = 0 ;
+		for ( int i = 0; i < num; i++ ) {
+			int val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+			id += ByteArrayOps.unZigZag(val) ;
+			long lval = ByteArrayOps.readVarLongAsBytes(b, ind) ;
+			ind += ByteArrayOps.lengthOfVarLongAsBytes(lval) ;
+			time += ByteArrayOps.unZigZag(lval) ;
+			int type = b[ind++] ;
+			val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+			int slot = ByteArrayOps.unZigZag(val) ;
+			val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+			int status = ByteArrayOps.unZigZag(val) ;
+			val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+			int arg1 = ByteArrayOps.unZigZag(val) ;
+			val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+			int arg2 = ByteArrayOps.unZigZag(val) ;
+			int len = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes(len) ;
+			String name = new String( b, ind, len, UTF_8 ) ;
+			ind += len ;
+			len = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes(len) ;
+			String text = new String( b, ind, len, UTF_8 ) ;
+			ind += len ;
+			
+			if ( events.size() > i )
+				events.get(i).set(id, time, type, slot, name, text, status, arg1, arg2, null) ;
+			else
+				events.add( new Event(id, time, type, slot, name, text, status, arg1, arg2, null) ) ;
+		}
+		return num ;
+	}
+	
+	
+	// Strings are written as UTF-8, whatever the platform default.
+	private static int writeStringAsBytes( String s, byte [] b, int ind ) {
+		byte [] sb = s.getBytes( UTF_8 ) ;
+		int len = ByteArrayOps.writeVarIntAsBytes(sb.length, b, ind) ;
+		if ( b != null )
+			System.arraycopy(sb, 0, b, ind + len, sb.length) ;
+		return len + sb.length ;
+	}
+	
+	
 	
 	
 	////////////////////////////////////////////////////////////////////////////
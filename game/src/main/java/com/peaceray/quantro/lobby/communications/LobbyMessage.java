@@ -16,6 +16,15 @@ import com.peaceray.quantro.utils.ByteArrayOps;
 public class LobbyMessage extends Message {
 	
 	private static final int MAX_ARRAY_LENGTH = 128 ;
+	private static final int MAX_STATE_DELTA_LENGTH = 2048 ;
+	
+	/**
+	 * The first app version code whose LobbyCoordinator understands
+	 * TYPE_LOBBY_STATE_ACK.  Clients should not send that message to a
+	 * Coordinator reporting an earlier version in its TYPE_LOBBY_STATUS,
+	 * since older Coordinators kick clients sending unknown messages.
+	 */
+	public static final int MIN_VERSION_CODE_LOBBY_STATE_DELTA = 33 ;
 	
 	// Message type.
 	public static final byte TYPE_LOBBY_STATUS 				= Message.MIN_TYPE_IN_SUBCLASS	+  0 ;
@@ -67,6 +76,12 @@ public class LobbyMessage extends Message {
 	
 	// User preferences!
 	public static final byte TYPE_PREFERRED_COLOR 				= Message.MIN_TYPE_IN_SUBCLASS	+ 35 ;
+	
+	// Incremental lobby state.  Clients which ACK a state version receive
+	// DELTAs (membership, status and vote changes since their last ACK)
+	// in place of PLAYERS_IN_LOBBY, PLAYER_STATUSES and GAME_MODE_VOTES.
+	public static final byte TYPE_LOBBY_STATE_DELTA				= Message.MIN_TYPE_IN_SUBCLASS	+ 36 ;
+	public static final byte TYPE_LOBBY_STATE_ACK				= Message.MIN_TYPE_IN_SUBCLASS	+ 37 ;
 
 	int versionCode ;
 	
@@ -95,6 +110,13 @@ public class LobbyMessage extends Message {
 	
 	Serializable authToken ;
 	
+	long stateVersion ;
+	long baseStateVersion ;
+	int [] stateDeltaField ;
+	int [] stateDeltaIndex ;
+	int [] stateDeltaValue ;
+	int stateDeltaLength ;
+	
 	
 	public LobbyMessage() {
 		super() ;
@@ -112,6 +134,18 @@ public class LobbyMessage extends Message {
 		editKey = null ;
 		
 		authToken = null ;
+		
+		stateDeltaLength = 0 ;
+	}
+	
+	
+	@Override
+	protected int BUFFER_SIZE() {
+		// State deltas can outgrow the default buffer.  When reading we know
+		// 'length' before the content arrives; when writing, our own content.
+		if ( type == TYPE_LOBBY_STATE_DELTA )
+			return Math.min( Math.max( length, 16 + 12 * stateDeltaLength ), 16 + 12 * MAX_STATE_DELTA_LENGTH ) ;
+		return 0 ;
 	}
 	
 	
@@ -277,6 +311,15 @@ public class LobbyMessage extends Message {
 		case TYPE_PREFERRED_COLOR:
 			return 8 ;		// 2 ints; a player slot and a 
 			
+		// Base version and version (longs), then field, index, value
+		// (ints) for each entry.
+		case TYPE_LOBBY_STATE_DELTA:
+			return 16 + 12 * stateDeltaLength ;
+			
+		// The version acknowledged.
+		case TYPE_LOBBY_STATE_ACK:
+			return 8 ;
+			
 		default:
 			// WHHHAHAAAAAA?A??????
 			return 0 ;
@@ -556,6 +599,25 @@ public class LobbyMessage extends Message {
 			this.writeBytesInByteArray(outputDest, eightByteArray, 0, 8) ;
 			break ;
 			
+		// Base version, version, and (field, index, value) for each entry.
+		case TYPE_LOBBY_STATE_DELTA:
+			ByteArrayOps.writeLongAsBytes(baseStateVersion, byteArray, 0) ;
+			ByteArrayOps.writeLongAsBytes(stateVersion, byteArray, 8) ;
+			len = 16 ;
+			for ( int i = 0; i < stateDeltaLength; i++ ) {
+				ByteArrayOps.writeIntAsBytes(stateDeltaField[i], byteArray, len) ;
+				ByteArrayOps.writeIntAsBytes(stateDeltaIndex[i], byteArray, len+4) ;
+				ByteArrayOps.writeIntAsBytes(stateDeltaValue[i], byteArray, len+8) ;
+				len += 12 ;
+			}
+			this.writeBytesInByteArray(outputDest, byteArray, 0, len) ;
+			break ;
+			
+		case TYPE_LOBBY_STATE_ACK:
+			ByteArrayOps.writeLongAsBytes(stateVersion, eightByteArray, 0) ;
+			this.writeBytesInByteArray(outputDest, eightByteArray, 0, 8) ;
+			break ;
+			
 		}
 		
 
@@ -568,6 +630,9 @@ public class LobbyMessage extends Message {
 	protected boolean readMessageContent(Object inputSource) throws IOException,
 			ClassNotFoundException {
 		
+		if ( type == TYPE_LOBBY_STATE_DELTA && ( length < 16 || length > 16 + 12 * MAX_STATE_DELTA_LENGTH ) )
+			throw new IOException("State delta has invalid length: " + length) ;
+		
 		makeByteArrayIfNeeded() ;
 		
 		int len ;
@@ -826,6 +891,23 @@ public class LobbyMessage extends Message {
 			gameMode = ByteArrayOps.readIntAsBytes(byteArray, 4) ;
 			break ;
 			
+		case TYPE_LOBBY_STATE_DELTA:
+			baseStateVersion = ByteArrayOps.readLongAsBytes(byteArray, 0) ;
+			stateVersion = ByteArrayOps.readLongAsBytes(byteArray, 8) ;
+			allocateStateDelta( (length - 16) / 12 ) ;
+			len = 16 ;
+			for ( int i = 0; i < stateDeltaLength; i++ ) {
+				stateDeltaField[i] = ByteArrayOps.readIntAsBytes(byteArray, len) ;
+				stateDeltaIndex[i] = ByteArrayOps.readIntAsBytes(byteArray, len+4) ;
+				stateDeltaValue[i] = ByteArrayOps.readIntAsBytes(byteArray, len+8) ;
+				len += 12 ;
+			}
+			break ;
+			
+		case TYPE_LOBBY_STATE_ACK:
+			stateVersion = ByteArrayOps.readLongAsBytes(byteArray, 0) ;
+			break ;
+			
 		}
 		
 		
@@ -955,6 +1037,42 @@ public class LobbyMessage extends Message {
 		return authToken ;
 	}
 	
+	/**
+	 * For TYPE_LOBBY_STATE_DELTA, the version this delta brings the Lobby
+	 * up to; for TYPE_LOBBY_STATE_ACK, the version acknowledged.
+	 * @return
+	 */
+	public long getStateVersion() {
+		return stateVersion ;
+	}
+	
+	/**
+	 * For TYPE_LOBBY_STATE_DELTA, the version this delta was taken against.
+	 * A Lobby reflecting an earlier version than this cannot apply it.
+	 * @return
+	 */
+	public long getBaseStateVersion() {
+		return baseStateVersion ;
+	}
+	
+	/**
+	 * Copies the entries of this TYPE_LOBBY_STATE_DELTA into the provided
+	 * arrays, any of which may be null.  Entries are as described by
+	 * Lobby.getStateDelta.
+	 * @return The number of entries.
+	 */
+	public int getStateDelta( int [] field, int [] index, int [] value ) {
+		for ( int i = 0; i < stateDeltaLength; i++ ) {
+			if ( field != null )
+				field[i] = stateDeltaField[i] ;
+			if ( index != null )
+				index[i] = stateDeltaIndex[i] ;
+			if ( value != null )
+				value[i] = stateDeltaValue[i] ;
+		}
+		return stateDeltaLength ;
+	}
+	
 	
 	public LobbyMessage setAsLobbyStatus( int minSupportedVersionCode, Nonce nonce, int numPlayers, int maxPlayers, long age, SocketAddress sockAddr, String lobbyName, String hostPlayerName ) {
 		nullOutsideReferences() ;
@@ -1275,6 +1393,45 @@ public class LobbyMessage extends Message {
 	}
 	
 	
+	/**
+	 * Sets this message as a delta describing every change to 'lobby' since
+	 * 'sinceVersion'.  See Lobby.getStateDelta.
+	 * 
+	 * @param lobby
+	 * @param sinceVersion
+	 * @return
+	 */
+	public LobbyMessage setAsLobbyStateDelta( Lobby lobby, long sinceVersion ) {
+		nullOutsideReferences() ;
+		
+		type = TYPE_LOBBY_STATE_DELTA ;
+		synchronized( lobby ) {
+			this.baseStateVersion = sinceVersion ;
+			this.stateVersion = lobby.getStateVersion() ;
+			allocateStateDelta( lobby.getStateDelta(sinceVersion, null, null, null) ) ;
+			lobby.getStateDelta(sinceVersion, stateDeltaField, stateDeltaIndex, stateDeltaValue) ;
+		}
+		return this ;
+	}
+	
+	public LobbyMessage setAsLobbyStateAck( long stateVersion ) {
+		nullOutsideReferences() ;
+		
+		type = TYPE_LOBBY_STATE_ACK ;
+		this.stateVersion = stateVersion ;
+		return this ;
+	}
+	
+	private void allocateStateDelta( int num ) {
+		if ( stateDeltaField == null || stateDeltaField.length < num ) {
+			stateDeltaField = new int[num] ;
+			stateDeltaIndex = new int[num] ;
+			stateDeltaValue = new int[num] ;
+		}
+		stateDeltaLength = num ;
+	}
+	
+	
 	public LobbyMessage setAsPreferredColor( int playerSlot, int color ) {
 		nullOutsideReferences() ;
 		
@@ -1327,6 +1484,15 @@ public class LobbyMessage extends Message {
 		this.authToken = myM.authToken ;
 		this.hostPlayerName = myM.hostPlayerName ;
 		
+		this.stateVersion = myM.stateVersion ;
+		this.baseStateVersion = myM.baseStateVersion ;
+		allocateStateDelta( myM.stateDeltaLength ) ;
+		for ( int i = 0; i < myM.stateDeltaLength; i++ ) {
+			this.stateDeltaField[i] = myM.stateDeltaField[i] ;
+			this.stateDeltaIndex[i] = myM.stateDeltaIndex[i] ;
+			this.stateDeltaValue[i] = myM.stateDeltaValue[i] ;
+		}
+		
 		return this ;
 	}
 	
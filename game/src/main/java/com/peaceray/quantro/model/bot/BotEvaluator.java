@@ -0,0 +1,30 @@
+package com.peaceray.quantro.model.bot;
+
+
+/**
+ * A BotEvaluator scores a blockfield as it would be after a PlacementBot
+ * locks one or more pieces into it.  Higher scores are better; the bot
+ * chooses the placement (sequence) leading to the highest.
+ *
+ * PlacementBots call evaluate() concurrently from the threads of their
+ * ForkJoinPool, so implementations must not keep mutable state between
+ * calls (or must keep it per-thread).
+ *
+ * @author Jake
+ *
+ */
+public interface BotEvaluator {
+
+	/**
+	 * Scores the provided blockfield.
+	 *
+	 * @param blockField	The field, [qPane][row][col], after the pieces were
+	 * 						locked and any clears applied.  Do not alter it.
+	 * @param visibleRows	The number of rows visible to the player, counted from
+	 * 						the bottom.  Blocks above this row are dangerous.
+	 * @param rowsCleared	The number of rows cleared along the way.
+	 * @return
+	 */
+	public double evaluate( byte [][][] blockField, int visibleRows, int rowsCleared ) ;
+
+}
@@ -0,0 +1,96 @@
+package com.peaceray.quantro.model.bot;
+
+import com.peaceray.quantro.q.QOrientations;
+
+
+/**
+ * The default BotEvaluator: a weighted sum of the usual stacking heuristics,
+ * taken over the union of both panes (a space is filled if either pane has
+ * a block in it).
+ *
+ * 		aggregate height	the sum of column heights
+ * 		holes				empty spaces with a filled space somewhere above
+ * 		bumpiness			the sum of height differences between neighboring columns
+ * 		rows cleared
+ * 		overflow			the number of filled spaces above the visible rows
+ *
+ * The default weights are reasonable for practice opponents; construct with
+ * others for stronger or weaker (or deliberately odd) play.
+ *
+ * @author Jake
+ *
+ */
+public class HeuristicBotEvaluator implements BotEvaluator {
+
+	public static final double DEFAULT_WEIGHT_HEIGHT = -0.51 ;
+	public static final double DEFAULT_WEIGHT_HOLES = -0.36 ;
+	public static final double DEFAULT_WEIGHT_BUMPINESS = -0.18 ;
+	public static final double DEFAULT_WEIGHT_CLEARS = 0.76 ;
+	public static final double DEFAULT_WEIGHT_OVERFLOW = -10.0 ;
+
+	private final double mWeightHeight ;
+	private final double mWeightHoles ;
+	private final double mWeightBumpiness ;
+	private final double mWeightClears ;
+	private final double mWeightOverflow ;
+
+
+	public HeuristicBotEvaluator() {
+		this( DEFAULT_WEIGHT_HEIGHT, DEFAULT_WEIGHT_HOLES, DEFAULT_WEIGHT_BUMPINESS,
+				DEFAULT_WEIGHT_CLEARS, DEFAULT_WEIGHT_OVERFLOW ) ;
+	}
+
+	public HeuristicBotEvaluator( double height, double holes, double bumpiness, double clears, double overflow ) {
+		mWeightHeight = height ;
+		mWeightHoles = holes ;
+		mWeightBumpiness = bumpiness ;
+		mWeightClears = clears ;
+		mWeightOverflow = overflow ;
+	}
+
+
+	@Override
+	public double evaluate( byte [][][] blockField, int visibleRows, int rowsCleared ) {
+		int R = blockField[0].length ;
+		int C = blockField[0][0].length ;
+
+		int aggregateHeight = 0 ;
+		int holes = 0 ;
+		int bumpiness = 0 ;
+		int overflow = 0 ;
+		int prevHeight = -1 ;
+
+		for ( int c = 0; c < C; c++ ) {
+			int height = 0 ;
+			for ( int r = R-1; r >= 0; r-- ) {
+				boolean filled = filled( blockField, r, c ) ;
+				if ( filled && height == 0 )
+					height = r + 1 ;
+				else if ( !filled && height > 0 )
+					holes++ ;
+				if ( filled && r >= visibleRows )
+					overflow++ ;
+			}
+
+			aggregateHeight += height ;
+			if ( prevHeight >= 0 )
+				bumpiness += Math.abs( height - prevHeight ) ;
+			prevHeight = height ;
+		}
+
+		return mWeightHeight * aggregateHeight
+				+ mWeightHoles * holes
+				+ mWeightBumpiness * bumpiness
+				+ mWeightClears * rowsCleared
+				+ mWeightOverflow * overflow ;
+	}
+
+
+	private static boolean filled( byte [][][] blockField, int r, int c ) {
+		for ( int q = 0; q < blockField.length; q++ )
+			if ( blockField[q][r][c] != QOrientations.NO )
+				return true ;
+		return false ;
+	}
+
+}
@@ -0,0 +1,564 @@
+package com.peaceray.quantro.model.bot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.peaceray.quantro.adapter.action.ActionAdapter;
+import com.peaceray.quantro.exceptions.QOrientationConflictException;
+import com.peaceray.quantro.model.game.Game;
+import com.peaceray.quantro.model.game.GameInformation;
+import com.peaceray.quantro.model.game.GameState;
+import com.peaceray.quantro.model.modes.GameModes;
+import com.peaceray.quantro.model.pieces.Offset;
+import com.peaceray.quantro.model.pieces.Piece;
+import com.peaceray.quantro.model.pieces.bags.PieceBag;
+import com.peaceray.quantro.model.systems.clear.ClearSystem;
+import com.peaceray.quantro.model.systems.collision.CollisionSystem;
+import com.peaceray.quantro.model.systems.kick.KickSystem;
+import com.peaceray.quantro.model.systems.lock.LockSystem;
+import com.peaceray.quantro.model.systems.rotation.RotationSystem;
+import com.peaceray.quantro.q.QInteractions;
+import com.peaceray.quantro.q.QOrientations;
+import com.peaceray.quantro.utils.ArrayOps;
+
+
+/**
+ * A computer player.  Once per piece, a PlacementBot looks at a Game,
+ * enumerates every placement reachable by turning the entering piece,
+ * sliding it and dropping it (for the current piece and, if available,
+ * the reserve), scores each with a BotEvaluator, and sends the moves
+ * for the best to an ActionAdapter through its controls_* methods --
+ * exactly as a ControlsAdapter would for a human player.
+ *
+ * Search is iterative deepening over the known upcoming pieces: one ply
+ * (the current piece) is always searched in full; each further ply adds
+ * the next piece in the preview, and is kept only if it finishes within
+ * the time budget.  Each first-ply placement is a separate task in a
+ * ForkJoinPool, and bots may share a pool, so a single host can drive
+ * hundreds of them.
+ *
+ * Some simplifications, none of which affect the legality of the moves
+ * sent:
+ *
+ * 		Turns are simulated against an empty field, with kicks, as Game does
+ * 			for an entering piece.  Only clockwise turns are used.
+ * 		Clears remove the rows they empty; chunks do not fall as they would
+ * 			in the game.
+ * 		Lookahead pieces (and the reserve) are assumed to enter where the
+ * 			current piece did.  Choosing the reserve sends only the swap; the
+ * 			new piece is planned once it is in play.
+ *
+ * Rotations are precomputed once per (piece type, rotation) and shared,
+ * read-only, by the pool threads.  Collision, lock and clear systems are
+ * not thread safe, so each pool thread gets its own.
+ *
+ * Call act() regularly (for instance, every tick) from the thread which
+ * owns the bot; it returns quickly unless a new piece needs planning.
+ *
+ * @author Jake
+ *
+ */
+public class PlacementBot {
+
+	public static final long DEFAULT_TIME_BUDGET = 50 ;	// milliseconds
+	public static final int DEFAULT_MAX_PLIES = 3 ;
+
+	// A placement which loses the game (or no placement at all).
+	private static final double SCORE_LOSS = -1000000000.0 ;
+
+	private static ForkJoinPool sharedPool = null ;
+
+	/**
+	 * A ForkJoinPool, with one thread per processor, shared by every bot
+	 * constructed without an explicit pool.
+	 * @return
+	 */
+	public static synchronized ForkJoinPool sharedPool() {
+		if ( sharedPool == null )
+			sharedPool = new ForkJoinPool() ;
+		return sharedPool ;
+	}
+
+
+	private final GameInformation ginfo ;
+	private final BotEvaluator evaluator ;
+	private final ForkJoinPool pool ;
+	private final int visibleRows ;
+
+	private long timeBudget ;
+	private int maxPlies ;
+
+	// Systems for the planning thread: rotation tables and entry kicks.
+	private final RotationSystem rs ;
+	private final KickSystem ks ;
+	private final CollisionSystem cs ;
+
+	// Rotation tables: for a given piece type and rotation, that piece
+	// after 0, 1, 2 and 3 clockwise turns.  Never altered once made.
+	private final Hashtable<Long, Piece []> rotationTables ;
+
+	// Collision, lock and clear systems, and scratch fields, for
+	// each pool thread.
+	private final ThreadLocal<Workspace> workspaces ;
+
+	// Our snapshot of the game, taken in act().
+	private byte [][][] field ;
+	private byte [][][] emptyField ;
+	private final Piece piece ;
+	private final Piece reservePiece ;
+	private boolean hasReserve ;
+	private final Offset entryOffset ;
+	private final int [] lookaheadTypes ;
+	private final int [] lookaheadRotations ;
+	private int numLookahead ;
+
+	private long lastPlannedKey ;
+	private final Offset zeroLean ;
+
+
+	/**
+	 * Constructs a bot with a HeuristicBotEvaluator, the default time budget
+	 * and plies, which uses the shared pool.
+	 *
+	 * @param ginfo The GameInformation of the Game(s) this bot will play.
+	 */
+	public PlacementBot( GameInformation ginfo ) {
+		this( ginfo, new HeuristicBotEvaluator(), sharedPool() ) ;
+	}
+
+	/**
+	 * Constructs a bot.
+	 *
+	 * @param ginfo The GameInformation of the Game(s) this bot will play;
+	 * 			determines the systems used.
+	 * @param evaluator Scores the placements.  Called concurrently.
+	 * @param pool The pool in which to search.
+	 */
+	public PlacementBot( GameInformation ginfo, BotEvaluator evaluator, ForkJoinPool pool ) {
+		if ( evaluator == null || pool == null )
+			throw new NullPointerException("Must provide an evaluator and a pool") ;
+
+		this.ginfo = ginfo ;
+		this.evaluator = evaluator ;
+		this.pool = pool ;
+		this.visibleRows = GameModes.numberRows(ginfo) ;
+
+		this.timeBudget = DEFAULT_TIME_BUDGET ;
+		this.maxPlies = DEFAULT_MAX_PLIES ;
+
+		QInteractions qi = GameModes.newQInteractions(ginfo) ;
+		PieceBag pieceBag = GameModes.newPieceBag(ginfo) ;
+		PieceBag reserveBag = GameModes.newReserveBag(ginfo) ;
+		rs = GameModes.newRotationSystem(ginfo, qi, pieceBag, reserveBag) ;
+		ks = GameModes.newKickSystem(ginfo, qi) ;
+		cs = GameModes.newCollisionSystem(ginfo, qi) ;
+
+		rotationTables = new Hashtable<Long, Piece []>() ;
+		workspaces = new ThreadLocal<Workspace>() ;
+
+		piece = new Piece() ;
+		reservePiece = new Piece() ;
+		entryOffset = new Offset() ;
+		lookaheadTypes = new int[GameState.PIECE_LOOKAHEAD] ;
+		lookaheadRotations = new int[GameState.PIECE_LOOKAHEAD] ;
+
+		lastPlannedKey = -1 ;
+		zeroLean = new Offset() ;
+	}
+
+
+	/**
+	 * Sets the time, in milliseconds, that act() may spend searching
+	 * beyond the first ply.  The first ply is always searched in full.
+	 * @param millis
+	 * @return
+	 */
+	public PlacementBot setTimeBudget( long millis ) {
+		if ( millis < 0 )
+			throw new IllegalArgumentException("Time budget must be non-negative; " + millis + " is not") ;
+		timeBudget = millis ;
+		return this ;
+	}
+
+	/**
+	 * Sets the maximum number of pieces considered in sequence: 1 for the
+	 * current piece alone, 2 to include the next piece in the preview, etc.
+	 * @param plies
+	 * @return
+	 */
+	public PlacementBot setMaxPlies( int plies ) {
+		if ( plies < 1 )
+			throw new IllegalArgumentException("Must search at least 1 ply; " + plies + " is too few") ;
+		maxPlies = plies ;
+		return this ;
+	}
+
+
+	/**
+	 * If the game has a new piece in play which this bot has not yet
+	 * planned for, plans and sends the moves for it to the adapter.
+	 *
+	 * @param game
+	 * @param adapter
+	 * @return Whether any moves were sent.
+	 */
+	public boolean act( Game game, ActionAdapter adapter ) {
+		synchronized( game ) {
+			if ( !game.stillPlaying() )
+				return false ;
+			GameState s = game.s ;
+			if ( ( s.state != Game.STATE_ENTERING && s.state != Game.STATE_FALLING ) || s.piece.type < 0 )
+				return false ;
+			long key = s.numActionCycles * 2 + ( s.usedReserve ? 1 : 0 ) ;
+			if ( key == lastPlannedKey )
+				return false ;
+			lastPlannedKey = key ;
+
+			takeSnapshot( game ) ;
+		}
+
+		Placement p = plan() ;
+		if ( p == null )
+			return false ;
+
+		if ( p.reserve ) {
+			adapter.controls_useReserve( ActionAdapter.MOVE_DIRECTION_NONE ) ;
+			return true ;
+		}
+
+		for ( int i = 0; i < p.turnsCW; i++ )
+			adapter.controls_turnCW( ActionAdapter.MOVE_DIRECTION_NONE ) ;
+		int direction = p.dx < 0 ? ActionAdapter.MOVE_DIRECTION_LEFT : ActionAdapter.MOVE_DIRECTION_RIGHT ;
+		for ( int i = 0; i < Math.abs(p.dx); i++ )
+			adapter.controls_move( direction ) ;
+		adapter.controls_move( ActionAdapter.MOVE_DIRECTION_DOWN ) ;
+		adapter.controls_autolock() ;
+		return true ;
+	}
+
+
+	/**
+	 * Copies what we need from the game.  Requires the game's lock.
+	 */
+	private void takeSnapshot( Game game ) {
+		GameState s = game.s ;
+		if ( field == null || field[0].length != s.R || field[0][0].length != s.C ) {
+			field = new byte[2][s.R][s.C] ;
+			emptyField = new byte[2][s.R][s.C] ;
+		}
+		ArrayOps.copyInto( s.blockField, field ) ;
+
+		piece.type = s.piece.type ;
+		piece.rotation = s.piece.rotation ;
+		entryOffset.takeVals( s.offset ) ;
+
+		hasReserve = GameModes.reserveBehavior(ginfo) != GameModes.RESERVE_BEHAVIOR_SPECIAL
+				&& s.reservePieces[0] != null && s.reservePieces[0].type > -1
+				&& game.canUseReserve() ;
+		if ( hasReserve ) {
+			reservePiece.type = s.reservePieces[0].type ;
+			reservePiece.rotation = s.reservePieces[0].rotation ;
+		}
+
+		numLookahead = 0 ;
+		for ( int i = 0; i < GameState.PIECE_LOOKAHEAD && s.nextPieces[i] != null && s.nextPieces[i].type > -1; i++ ) {
+			lookaheadTypes[i] = s.nextPieces[i].type ;
+			lookaheadRotations[i] = s.nextPieces[i].rotation ;
+			numLookahead++ ;
+		}
+	}
+
+
+	/**
+	 * Plans the current piece.  Returns null if no placement exists.
+	 */
+	private Placement plan() {
+		ArrayList<Placement> placements = new ArrayList<Placement>() ;
+		addEntryPlacements( placements, piece, false ) ;
+		if ( hasReserve )
+			addEntryPlacements( placements, reservePiece, true ) ;
+		if ( placements.size() == 0 )
+			return null ;
+
+		Piece [][] lookahead = new Piece[numLookahead][] ;
+		for ( int i = 0; i < numLookahead; i++ )
+			lookahead[i] = rotationTable( lookaheadTypes[i], lookaheadRotations[i] ) ;
+
+		// One ply always completes.  Deeper searches are kept only if they
+		// finish in time.
+		int best = search( placements, lookahead, 1, Long.MAX_VALUE ) ;
+		long deadline = System.nanoTime() + timeBudget * 1000000 ;
+		int depthLimit = Math.min( maxPlies, numLookahead + 1 ) ;
+		for ( int depth = 2; depth <= depthLimit && System.nanoTime() < deadline; depth++ ) {
+			int deeper = search( placements, lookahead, depth, deadline ) ;
+			if ( deeper < 0 )
+				break ;
+			best = deeper ;
+		}
+
+		return placements.get(best) ;
+	}
+
+
+	/**
+	 * Adds a Placement for every column reachable, in every rotation
+	 * reachable, by the provided piece as it enters.
+	 */
+	private void addEntryPlacements( ArrayList<Placement> placements, Piece p, boolean reserve ) {
+		Piece [] table = rotationTable( p.type, p.rotation ) ;
+
+		// Turn as the game will: against an empty field, with kicks,
+		// giving up at the first turn that fails.
+		Piece turning = table[0].copy() ;
+		Offset offset = new Offset( entryOffset ) ;
+		int numRotations = 0 ;
+		Piece [] rotated = new Piece[4] ;
+		Offset [] rotatedOffset = new Offset[4] ;
+		for ( int k = 0; k < 4; k++ ) {
+			if ( k > 0 ) {
+				rs.turnCW( turning ) ;
+				if ( !ks.kick( cs, emptyField, turning, offset, zeroLean ) )
+					break ;
+			}
+
+			// Skip duplicates (e.g. the O piece).
+			boolean duplicate = false ;
+			for ( int j = 0; j < numRotations && !duplicate; j++ )
+				duplicate = rotatedOffset[j].equals(offset) && sameShape( rotated[j], table[k] ) ;
+			if ( !duplicate ) {
+				rotated[numRotations] = table[k] ;
+				rotatedOffset[numRotations] = new Offset( offset ) ;
+				numRotations++ ;
+
+				for ( int dx = -field[0][0].length; dx <= field[0][0].length; dx++ ) {
+					Offset o = new Offset( offset.x + dx, offset.y ) ;
+					if ( cs.within( field, table[k], o ) )
+						placements.add( new Placement( reserve, k, dx, table[k], o ) ) ;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Scores every placement to the given depth, in parallel, returning the
+	 * index of the best, or -1 if the deadline passed first.
+	 */
+	private int search( final List<Placement> placements, final Piece [][] lookahead, final int depth, final long deadline ) {
+		final byte [][][] root = field ;
+		final ArrayList<RecursiveTask<Double>> tasks = new ArrayList<RecursiveTask<Double>>() ;
+		for ( int i = 0; i < placements.size(); i++ ) {
+			final Placement p = placements.get(i) ;
+			tasks.add( new RecursiveTask<Double>() {
+				private static final long serialVersionUID = 1L ;
+
+				@Override
+				protected Double compute() {
+					Workspace w = workspace( root ) ;
+					ArrayOps.copyInto( root, w.fields[0] ) ;
+					return w.place( 0, p.piece, p.offset, 0, depth, lookahead, deadline ) ;
+				}
+			}) ;
+		}
+
+		return pool.invoke( new RecursiveTask<Integer>() {
+			private static final long serialVersionUID = 1L ;
+
+			@Override
+			protected Integer compute() {
+				invokeAll( tasks ) ;
+				int best = -1 ;
+				double bestScore = 0 ;
+				for ( int i = 0; i < tasks.size(); i++ ) {
+					double score = tasks.get(i).join() ;
+					if ( Double.isNaN(score) )
+						return -1 ;
+					if ( best < 0 || score > bestScore ) {
+						best = i ;
+						bestScore = score ;
+					}
+				}
+				return best ;
+			}
+		}) ;
+	}
+
+
+	/**
+	 * Returns the rotation table for the piece type and starting rotation,
+	 * making it if necessary.  Called only from the planning thread.
+	 */
+	private Piece [] rotationTable( int type, int rotation ) {
+		Long key = Long.valueOf( ( (long)type << 32 ) | ( rotation & 0xffffffffL ) ) ;
+		Piece [] table = rotationTables.get(key) ;
+		if ( table == null ) {
+			Piece p = new Piece( type ) ;
+			p.rotation = rotation ;
+			rs.turn0( p ) ;
+			table = new Piece[4] ;
+			for ( int k = 0; k < 4; k++ ) {
+				if ( k > 0 )
+					rs.turnCW( p ) ;
+				table[k] = p.copy() ;
+			}
+			rotationTables.put(key, table) ;
+		}
+		return table ;
+	}
+
+
+	private Workspace workspace( byte [][][] root ) {
+		Workspace w = workspaces.get() ;
+		if ( w == null || !w.fits( root ) ) {
+			w = new Workspace( root[0].length, root[0][0].length ) ;
+			workspaces.set(w) ;
+		}
+		return w ;
+	}
+
+
+	private static boolean sameShape( Piece a, Piece b ) {
+		return a.boundsLL.equals(b.boundsLL) && a.boundsUR.equals(b.boundsUR)
+				&& Arrays.deepEquals( a.blocks, b.blocks ) ;
+	}
+
+
+	/**
+	 * A first-ply move: which piece, how many turns, how far to slide.
+	 */
+	private static class Placement {
+		final boolean reserve ;
+		final int turnsCW ;
+		final int dx ;
+		final Piece piece ;
+		final Offset offset ;
+
+		private Placement( boolean reserve, int turnsCW, int dx, Piece piece, Offset offset ) {
+			this.reserve = reserve ;
+			this.turnsCW = turnsCW ;
+			this.dx = dx ;
+			this.piece = piece ;
+			this.offset = offset ;
+		}
+	}
+
+
+	/**
+	 * Everything a pool thread needs to play out placements: its own
+	 * systems and a scratch field for each ply.
+	 */
+	private class Workspace {
+		private final CollisionSystem wcs ;
+		private final LockSystem wls ;
+		private final ClearSystem wcls ;
+		private final byte [][][][] fields ;
+		private final int [] clearable ;
+		private final Offset offset ;
+		private final Offset [] entries ;
+
+		private Workspace( int R, int C ) {
+			QInteractions qi = GameModes.newQInteractions(ginfo) ;
+			wcs = GameModes.newCollisionSystem(ginfo, qi) ;
+			wls = GameModes.newLockSystem(ginfo, qi) ;
+			wcls = GameModes.newClearSystem(ginfo, qi) ;
+			fields = new byte[GameState.PIECE_LOOKAHEAD + 2][2][R][C] ;
+			clearable = new int[R] ;
+			offset = new Offset() ;
+			entries = new Offset[GameState.PIECE_LOOKAHEAD + 2] ;
+			for ( int i = 0; i < entries.length; i++ )
+				entries[i] = new Offset() ;
+		}
+
+		private boolean fits( byte [][][] field ) {
+			return fields[0][0].length == field[0].length && fields[0][0][0].length == field[0][0].length ;
+		}
+
+		/**
+		 * Drops the piece from the offset into fields[ply], locks and clears,
+		 * leaving the result in fields[ply+1]; then scores it, or the best
+		 * placement of the next lookahead piece if more plies remain.
+		 * Returns NaN if the deadline passed.
+		 */
+		private double place( int ply, Piece p, Offset entry, int rowsCleared, int depth,
+				Piece [][] lookahead, long deadline ) {
+
+			byte [][][] before = fields[ply] ;
+			if ( wcs.collides( before, p, entry ) )
+				return SCORE_LOSS ;
+
+			byte [][][] after = fields[ply+1] ;
+			ArrayOps.copyInto( before, after ) ;
+			offset.x = entry.x ;
+			offset.y = entry.y - wcs.spaceBelow( before, p, entry, true ) ;
+			try {
+				wls.lock( after, p, offset ) ;
+			} catch ( QOrientationConflictException e ) {
+				return SCORE_LOSS ;
+			}
+			rowsCleared += clear( after ) ;
+
+			if ( ply + 1 >= depth )
+				return evaluator.evaluate( after, visibleRows, rowsCleared ) ;
+			if ( System.nanoTime() > deadline )
+				return Double.NaN ;
+
+			// Best placement of the next piece.
+			Piece [] table = lookahead[ply] ;
+			int C = after[0][0].length ;
+			Offset o = entries[ply+1] ;
+			double best = SCORE_LOSS ;
+			for ( int k = 0; k < table.length; k++ ) {
+				for ( int x = entryOffset.x - C; x <= entryOffset.x + C; x++ ) {
+					o.setXY( x, entryOffset.y ) ;
+					if ( !wcs.within( after, table[k], o ) )
+						continue ;
+					double score = place( ply + 1, table[k], o, rowsCleared, depth, lookahead, deadline ) ;
+					if ( Double.isNaN(score) )
+						return score ;
+					best = Math.max( best, score ) ;
+				}
+			}
+			return best ;
+		}
+
+		/**
+		 * Applies any clears to the field, then removes the rows they emptied.
+		 * Returns the number of rows cleared.
+		 */
+		private int clear( byte [][][] f ) {
+			if ( !wcls.clearable( f, clearable ) )
+				return 0 ;
+			wcls.clear( f, clearable ) ;
+
+			int R = f[0].length ;
+			int C = f[0][0].length ;
+			int cleared = 0 ;
+			int dst = 0 ;
+			for ( int r = 0; r < R; r++ ) {
+				boolean remove = false ;
+				if ( clearable[r] != QOrientations.NO ) {
+					cleared++ ;
+					remove = true ;
+					for ( int q = 0; q < f.length && remove; q++ )
+						for ( int c = 0; c < C && remove; c++ )
+							remove = f[q][r][c] == QOrientations.NO ;
+				}
+				if ( !remove ) {
+					if ( dst != r )
+						for ( int q = 0; q < f.length; q++ )
+							System.arraycopy( f[q][r], 0, f[q][dst], 0, C ) ;
+					dst++ ;
+				}
+			}
+			for ( int r = dst; r < R; r++ )
+				for ( int q = 0; q < f.length; q++ )
+					Arrays.fill( f[q][r], QOrientations.NO ) ;
+			return cleared ;
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+package com.peaceray.quantro.model.communications;
+
+import java.util.BitSet;
+
+import com.peaceray.quantro.model.descriptors.versioned.AttackDescriptor;
+
+
+/**
+ * Resolves the target code of an outgoing AttackDescriptor to the set of
+ * player slots it hits.
+ *
+ * Player sets are BitSets indexed by slot, so resolution walks only the
+ * players still in the game (nextSetBit / previousSetBit) rather than every
+ * slot, and the result can be sent once to all players as a
+ * TYPE_INCOMING_ATTACK_TARGETS rather than once per target.
+ *
+ * Not synchronized; keep one per coordinating thread.
+ *
+ * @author Jake
+ *
+ */
+public class AttackRouter {
+
+	/**
+	 * Sets 'targets' to the slots hit by 'ad', which was sent by 'slot'.
+	 * Divided attacks are divided among their targets, altering 'ad'.
+	 *
+	 * 'ad' keeps its target code; callers should set it to TARGET_INCOMING
+	 * before passing it on.
+	 *
+	 * @param ad		The outgoing attack.
+	 * @param slot		The player who sent it.
+	 * @param active	The players still in the game: not lost, not spectating.
+	 * 					Not altered.
+	 * @param targets	Set to the targets of the attack.
+	 * @return The number of targets.
+	 */
+	public int route( AttackDescriptor ad, int slot, BitSet active, BitSet targets ) {
+		targets.clear() ;
+		int numPlayers = active.length() ;
+		int t ;
+
+		switch( ad.target_code ) {
+		case AttackDescriptor.TARGET_INCOMING:
+			// self-target.
+			targets.set(slot) ;
+			break ;
+
+		case AttackDescriptor.TARGET_CYCLE_NEXT:
+			// next active player, rotating UP in slot number.
+			t = active.nextSetBit(slot + 1) ;
+			if ( t < 0 )
+				t = active.nextSetBit(0) ;
+			if ( t >= 0 && t != slot )
+				targets.set(t) ;
+			break ;
+
+		case AttackDescriptor.TARGET_CYCLE_PREVIOUS:
+			// previous active player, rotating DOWN in slot number.
+			t = slot > 0 ? active.previousSetBit(slot - 1) : -1 ;
+			if ( t < 0 )
+				t = active.previousSetBit(Math.max(numPlayers - 1, 0)) ;
+			if ( t >= 0 && t != slot )
+				targets.set(t) ;
+			break ;
+
+		case AttackDescriptor.TARGET_ALL:
+			// all active players, including the sender.
+			targets.or(active) ;
+			break ;
+
+		case AttackDescriptor.TARGET_ALL_DIVIDED:
+			targets.or(active) ;
+			divide( ad, targets ) ;
+			break ;
+
+		case AttackDescriptor.TARGET_ALL_OTHERS_DIVIDED:
+			targets.or(active) ;
+			targets.clear(slot) ;
+			divide( ad, targets ) ;
+			break ;
+
+		case AttackDescriptor.TARGET_ALL_OTHERS:
+		case AttackDescriptor.TARGET_UNSET:
+		default:
+			// all active players except the sender.  This is also our
+			// default for attacks without a (known) target.
+			targets.or(active) ;
+			targets.clear(slot) ;
+			break ;
+		}
+
+		return targets.cardinality() ;
+	}
+
+
+	private static void divide( AttackDescriptor ad, BitSet targets ) {
+		int num = targets.cardinality() ;
+		if ( num > 0 )
+			ad.divideAmong(num) ;
+	}
+
+}
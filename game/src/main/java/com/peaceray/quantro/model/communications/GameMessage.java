@@ -6,6 +6,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
 
 import com.peaceray.quantro.communications.Message;
 import com.peaceray.quantro.model.descriptors.versioned.ActionCycleStateDescriptor;
@@ -42,6 +44,33 @@ public class GameMessage extends Message {
 	public static final byte TYPE_PLAYER_LOST				= Message.MIN_TYPE_IN_SUBCLASS		+ 14 ;
 	public static final byte TYPE_PLAYER_IS_SPECTATOR 		= Message.MIN_TYPE_IN_SUBCLASS		+ 15 ;
 	
+	// sequenced move queues.  Only sent over connections which support
+	// unreliable messages (and thus are new enough to understand them);
+	// otherwise we use TYPE_MOVE_QUEUE.  SEQUENCED travels reliably, as
+	// TYPE_MOVE_QUEUE does; REDUNDANT is sent unreliably alongside it,
+	// repeating recent actions so that a lost datagram need not wait for
+	// a resend.  Both carry the sequence number of their first action.
+	public static final byte TYPE_MOVE_QUEUE_SEQUENCED		= Message.MIN_TYPE_IN_SUBCLASS		+ 16 ;
+	public static final byte TYPE_MOVE_QUEUE_REDUNDANT		= Message.MIN_TYPE_IN_SUBCLASS		+ 17 ;
+	
+	// protocol version.  Sent by a client in reply to a TYPE_WELCOME_TO_SERVER
+	// that advertises a protocol version (older servers don't, and would
+	// drop a client sending a type they don't know), giving the version the
+	// client will accept.  Servers never send it.
+	public static final byte TYPE_PROTOCOL_VERSION			= Message.MIN_TYPE_IN_SUBCLASS		+ 18 ;
+	
+	// an incoming attack for a set of players, sent once rather than as
+	// one TYPE_INCOMING_ATTACK per target.  Only sent to peers at
+	// PROTOCOL_VERSION_ATTACK_TARGETS.
+	public static final byte TYPE_INCOMING_ATTACK_TARGETS	= Message.MIN_TYPE_IN_SUBCLASS		+ 19 ;
+	
+	// Protocol versions.  At PACKED_DESCRIPTORS, TYPE_NEXT_CYCLE and
+	// TYPE_INCOMING_ATTACK may carry their descriptors in packed form.
+	// At ATTACK_TARGETS, we may send TYPE_INCOMING_ATTACK_TARGETS.
+	public static final int PROTOCOL_VERSION_PACKED_DESCRIPTORS = 1 ;
+	public static final int PROTOCOL_VERSION_ATTACK_TARGETS = 2 ;
+	public static final int PROTOCOL_VERSION = PROTOCOL_VERSION_ATTACK_TARGETS ;
+	
 	
 	Serializable [] fullSynchronization ;
 	long messageId ;	// Helps to distinguish messages that have
@@ -55,6 +84,7 @@ public class GameMessage extends Message {
 	
 	byte [] moveQueue ;
 	int moveQueueLength ;
+	long moveQueueSeq ;
 	
 	long millisTicked ;
 	double displacedRows ;
@@ -62,6 +92,9 @@ public class GameMessage extends Message {
 	
 	ActionCycleStateDescriptor.Update actionCycleStateDescriptorUpdate ;
 	AttackDescriptor attackDescriptor ;
+	BitSet attackTargets ;
+	byte [] attackTargetBytes ;		// attackTargets as written / read
+	boolean descriptorsPacked ;		// only write packed to peers at PROTOCOL_VERSION_PACKED_DESCRIPTORS
 	
 	
 	public GameMessage() {
@@ -75,6 +108,8 @@ public class GameMessage extends Message {
 		playerSlotArray = null ;
 		actionCycleStateDescriptorUpdate = null ;
 		attackDescriptor = null ;
+		attackTargets = new BitSet() ;
+		attackTargetBytes = null ;
 		
 		messageId = 0 ;
 	}
@@ -91,6 +126,7 @@ public class GameMessage extends Message {
 		// some basics; this improves efficiency of setAs().
 		moveQueueLength = 0 ;
 		playerSlotArrayLength = 0 ;
+		descriptorsPacked = false ;
 	}
 	
 	
@@ -160,13 +196,19 @@ public class GameMessage extends Message {
 		// Note that we also specify the player slot as a 4-byte int.
 		case TYPE_MOVE_QUEUE:
 			return moveQueueLength + 4 ;
+			
+		// Sequenced move queues also include the sequence number of the
+		// first action, as a long.
+		case TYPE_MOVE_QUEUE_SEQUENCED:
+		case TYPE_MOVE_QUEUE_REDUNDANT:
+			return moveQueueLength + 12 ;
 		
 		
 		// Next Action Cycle: we have a handy conversion method
 		// to go from object to bytes.  Count the resulting bytes.
 		// We specify the player slot and a message ID, so add 12.
 		case TYPE_NEXT_CYCLE:
-			return actionCycleStateDescriptorUpdate.writeToByteArray(null, 0, BUFFER_SIZE()) + 12 ;
+			return actionCycleStateDescriptorUpdate.writeToByteArray(null, 0, BUFFER_SIZE(), descriptorsPacked) + 12 ;
 			
 		// Cycle request: a player slot.
 		case TYPE_NEXT_CYCLE_REQUEST:
@@ -176,7 +218,17 @@ public class GameMessage extends Message {
 		// array and then count the bytes.  We specify the player slot,
 		// so add 4.
 		case TYPE_INCOMING_ATTACK:
-			return this.attackDescriptor.writeToByteArray(null, 0, BUFFER_SIZE()) + 4 ;
+			return this.attackDescriptor.writeToByteArray(null, 0, BUFFER_SIZE(), descriptorsPacked) + 4 ;
+			
+		// Incoming attack for a set of targets: the length of the target
+		// bitset, the bitset itself, then the attack.
+		case TYPE_INCOMING_ATTACK_TARGETS:
+			return 4 + attackTargetBytes.length
+					+ this.attackDescriptor.writeToByteArray(null, 0, BUFFER_SIZE(), descriptorsPacked) ;
+			
+		// Protocol version: an int.
+		case TYPE_PROTOCOL_VERSION:
+			return 4 ;
 			
 		// RealtimeUpdate: this update sends the current available
 		// "Real Time Information" from clients to the server.  This information
@@ -284,6 +336,15 @@ public class GameMessage extends Message {
 			this.writeBytesInByteArray(outputDest, eightByteArray, 0, 4) ;
 			this.writeBytesInByteArray(outputDest, moveQueue, 0, moveQueueLength) ;
 			break ;
+			
+		case TYPE_MOVE_QUEUE_SEQUENCED:
+		case TYPE_MOVE_QUEUE_REDUNDANT:
+			// Slot, sequence number, then the moves.
+			ByteArrayOps.writeIntAsBytes(this.playerSlot, byteArray, 0) ;
+			ByteArrayOps.writeLongAsBytes(this.moveQueueSeq, byteArray, 4) ;
+			this.writeBytesInByteArray(outputDest, byteArray, 0, 12) ;
+			this.writeBytesInByteArray(outputDest, moveQueue, 0, moveQueueLength) ;
+			break ;
 		
 		
 		// Next Action Cycle: we have a handy conversion method
@@ -293,7 +354,7 @@ public class GameMessage extends Message {
 			// Write the destination player slot, then the objects themselves.
 			ByteArrayOps.writeIntAsBytes(this.playerSlot, byteArray, 0) ;
 			ByteArrayOps.writeLongAsBytes(this.messageId, byteArray, 4) ;
-			len = actionCycleStateDescriptorUpdate.writeToByteArray(byteArray, 12, byteArray.length) ;
+			len = actionCycleStateDescriptorUpdate.writeToByteArray(byteArray, 12, byteArray.length, descriptorsPacked) ;
 			this.writeBytesInByteArray(outputDest, byteArray, 0, len+12) ;
 			break ;
 			
@@ -307,11 +368,24 @@ public class GameMessage extends Message {
 		case TYPE_INCOMING_ATTACK:
 			// Write the destination player slot, then the attack.
 			ByteArrayOps.writeIntAsBytes(this.playerSlot, eightByteArray, 0) ;
-			len = this.attackDescriptor.writeToByteArray(byteArray, 0, byteArray.length) ;
+			len = this.attackDescriptor.writeToByteArray(byteArray, 0, byteArray.length, descriptorsPacked) ;
 			this.writeBytesInByteArray(outputDest, eightByteArray, 0, 4) ;
 			this.writeBytesInByteArray(outputDest, byteArray, 0, len) ;
 			break ;
 			
+		case TYPE_INCOMING_ATTACK_TARGETS:
+			ByteArrayOps.writeIntAsBytes(attackTargetBytes.length, byteArray, 0) ;
+			System.arraycopy(attackTargetBytes, 0, byteArray, 4, attackTargetBytes.length) ;
+			len = 4 + attackTargetBytes.length ;
+			len += this.attackDescriptor.writeToByteArray(byteArray, len, byteArray.length, descriptorsPacked) ;
+			this.writeBytesInByteArray(outputDest, byteArray, 0, len) ;
+			break ;
+			
+		case TYPE_PROTOCOL_VERSION:
+			ByteArrayOps.writeIntAsBytes(this.protocolVersion, eightByteArray, 0) ;
+			this.writeBytesInByteArray(outputDest, eightByteArray, 0, 4) ;
+			break ;
+			
 		// RealtimeUpdate: includes information which is adjusted in real-time.
 		// Currently the number of displaced rows and displaced seconds.
 		case TYPE_REALTIME_UPDATE:
@@ -472,6 +546,17 @@ public class GameMessage extends Message {
 			}
 			//System.out.println() ;
 			break ;
+			
+		case TYPE_MOVE_QUEUE_SEQUENCED:
+		case TYPE_MOVE_QUEUE_REDUNDANT:
+			playerSlot = ByteArrayOps.readIntAsBytes(byteArray, 0) ;
+			moveQueueSeq = ByteArrayOps.readLongAsBytes(byteArray, 4) ;
+			length -= 12 ;
+			moveQueueLength = length ;
+			if ( length > moveQueue.length )
+				moveQueue = new byte[length] ;
+			System.arraycopy(byteArray, 12, moveQueue, 0, length) ;
+			break ;
 		
 		
 		// Next Action Cycle: we have a handy conversion method
@@ -499,6 +584,20 @@ public class GameMessage extends Message {
 				attackDescriptor.readFromByteArray( byteArray, 4 ) ;
 			break ;
 			
+		case TYPE_INCOMING_ATTACK_TARGETS:
+			int targetsLen = ByteArrayOps.readIntAsBytes(byteArray, 0) ;
+			attackTargets = BitSet.valueOf( ByteBuffer.wrap(byteArray, 4, targetsLen) ) ;
+			attackTargetBytes = attackTargets.toByteArray() ;
+			if ( attackDescriptor == null ) 
+				attackDescriptor = new AttackDescriptor( byteArray, 4 + targetsLen ) ;
+			else
+				attackDescriptor.readFromByteArray( byteArray, 4 + targetsLen ) ;
+			break ;
+			
+		case TYPE_PROTOCOL_VERSION:
+			protocolVersion = ByteArrayOps.readIntAsBytes(byteArray, 0) ;
+			break ;
+			
 			
 		// RealtimeUpdate: includes information which is adjusted in real-time.
 		// Currently only the number of displaced rows.
@@ -561,6 +660,16 @@ public class GameMessage extends Message {
 	}
 	
 	
+	/**
+	 * For TYPE_MOVE_QUEUE_SEQUENCED and TYPE_MOVE_QUEUE_REDUNDANT, the
+	 * sequence number of the first action in the queue.
+	 * @return
+	 */
+	public long getMoveQueueSeq() {
+		return moveQueueSeq ;
+	}
+	
+	
 	/**
 	 * Convention: a NextCycle is an update for a previous ACSD iff:
 	 * 
@@ -583,6 +692,16 @@ public class GameMessage extends Message {
 		ad.copyValsFrom(attackDescriptor) ;
  	}
 	
+	/**
+	 * For TYPE_INCOMING_ATTACK_TARGETS, sets 'targets' to the player
+	 * slots hit by the attack.
+	 * @param targets
+	 */
+	public void getIncomingAttackTargets( BitSet targets ) {
+		targets.clear() ;
+		targets.or(attackTargets) ;
+	}
+	
 	public long getMessageId() {
 		return messageId ;
 	}
@@ -743,6 +862,45 @@ public class GameMessage extends Message {
 	}
 	
 	
+	/**
+	 * Sets this Message as a sequenced MoveQueue, whose first action
+	 * has sequence number 'seq'.  Send it reliably, in place of
+	 * setAsMoveQueue, to peers that support unreliable messages.
+	 * 
+	 * @param targetPlayerSlot
+	 * @param seq
+	 * @param moveQueue
+	 * @param ind
+	 * @param length
+	 */
+	public GameMessage setAsMoveQueueSequenced( int targetPlayerSlot, long seq, byte [] moveQueue, int ind, int length ) {
+		setAsMoveQueue( targetPlayerSlot, moveQueue, ind, length ) ;
+		type = TYPE_MOVE_QUEUE_SEQUENCED ;
+		moveQueueSeq = seq ;
+		return this ;
+	}
+	
+	
+	/**
+	 * Sets this Message as a redundant MoveQueue: a repeat of recently
+	 * sent actions, beginning at sequence number 'seq', meant to be sent
+	 * unreliably.  Receivers apply only those actions they have not
+	 * already seen.
+	 * 
+	 * @param targetPlayerSlot
+	 * @param seq
+	 * @param moveQueue
+	 * @param ind
+	 * @param length
+	 */
+	public GameMessage setAsMoveQueueRedundant( int targetPlayerSlot, long seq, byte [] moveQueue, int ind, int length ) {
+		setAsMoveQueue( targetPlayerSlot, moveQueue, ind, length ) ;
+		type = TYPE_MOVE_QUEUE_REDUNDANT ;
+		moveQueueSeq = seq ;
+		return this ;
+	}
+	
+	
 	/**
 	 * Sets this Message as a Cycle descriptor.  Internally we represent this
 	 * as a 'full update.'
@@ -788,6 +946,34 @@ public class GameMessage extends Message {
 	}
 	
 	
+	/**
+	 * Sets this message as a next cycle carrying the provided Update, which
+	 * is copied.  Used to send Updates built ahead of time, such as those
+	 * of a SpectatorStream.
+	 * 
+	 * @param targetPlayerSlot
+	 * @param id
+	 * @param update
+	 * @return
+	 */
+	public GameMessage setAsNextCycle( int targetPlayerSlot, long id, ActionCycleStateDescriptor.Update update ) {
+		nullOutsideReferences() ;
+		
+		type = TYPE_NEXT_CYCLE ;
+		playerSlot = targetPlayerSlot ;
+		messageId = id ;
+		
+		if ( actionCycleStateDescriptorUpdate == null
+				|| update.R() != actionCycleStateDescriptorUpdate.R()
+				|| update.C() != actionCycleStateDescriptorUpdate.C() ) {
+			actionCycleStateDescriptorUpdate = new ActionCycleStateDescriptor.Update(update.R(), update.C()) ;
+		}
+		actionCycleStateDescriptorUpdate.takeVals(update) ;
+		
+		return this ;
+	}
+	
+	
 	public GameMessage setAsNextCycleRequest( int targetPlayerSlot ) {
 		nullOutsideReferences() ;
 		
@@ -819,6 +1005,63 @@ public class GameMessage extends Message {
 	}
 	
 	
+	/**
+	 * Sets this message as an incoming attack for every player in 'targets'.
+	 * Send only to peers at PROTOCOL_VERSION_ATTACK_TARGETS; others need one
+	 * setAsIncomingAttack per target.
+	 * @param targets
+	 * @param ad
+	 */
+	public GameMessage setAsIncomingAttack( BitSet targets, AttackDescriptor ad ) {
+		nullOutsideReferences() ;
+		
+		type = TYPE_INCOMING_ATTACK_TARGETS ;
+		attackTargets.clear() ;
+		attackTargets.or(targets) ;
+		attackTargetBytes = attackTargets.toByteArray() ;
+		
+		if ( attackDescriptor == null
+				|| attackDescriptor.R() != ad.R() || attackDescriptor.C() != ad.C() ) {
+			attackDescriptor = new AttackDescriptor( ad.R(), ad.C() ) ;
+		}
+		attackDescriptor.copyValsFrom(ad) ;
+		
+		return this ; 
+	}
+	
+	
+	/**
+	 * Sets whether the descriptors of a TYPE_NEXT_CYCLE or TYPE_INCOMING_ATTACK
+	 * are written packed.  Call after setAs*, which clears it; only send packed
+	 * messages to peers at PROTOCOL_VERSION_PACKED_DESCRIPTORS.  Reading
+	 * handles either.
+	 * 
+	 * @param packed
+	 * @return
+	 */
+	public GameMessage setDescriptorsPacked( boolean packed ) {
+		descriptorsPacked = packed ;
+		return this ;
+	}
+	
+	
+	/**
+	 * Sets this message as the protocol version the sender will accept.
+	 * Clients send this only in reply to a welcome that advertised a
+	 * protocol version, and no higher than that version.
+	 * 
+	 * @param protocolVersion
+	 */
+	public GameMessage setAsProtocolVersion( int protocolVersion ) {
+		nullOutsideReferences() ;
+		
+		type = TYPE_PROTOCOL_VERSION ;
+		this.protocolVersion = protocolVersion ;
+		
+		return this ;
+	}
+	
+	
 	/**
 	 * Sets this message as a pause request/statement.
 	 */
@@ -912,6 +1155,7 @@ public class GameMessage extends Message {
 		}
 		
 		this.messageId = myM.messageId ;
+		this.descriptorsPacked = myM.descriptorsPacked ;
 		this.millisTicked = myM.millisTicked ;
 		this.displacedSeconds = myM.displacedSeconds ;
 		this.displacedRows = myM.displacedRows ;
@@ -925,6 +1169,7 @@ public class GameMessage extends Message {
 		}
 		
 		this.moveQueueLength = myM.moveQueueLength ;
+		this.moveQueueSeq = myM.moveQueueSeq ;
 		if ( myM.moveQueue != null ) {
 			if ( this.moveQueue == null || this.moveQueue.length < myM.moveQueue.length )
 				this.moveQueue = new byte[myM.moveQueue.length] ;
@@ -941,11 +1186,18 @@ public class GameMessage extends Message {
 			this.actionCycleStateDescriptorUpdate.takeVals( myM.actionCycleStateDescriptorUpdate ) ;
 		}
 		
-		if ( myM.getType() == TYPE_INCOMING_ATTACK ) {
+		if ( myM.getType() == TYPE_INCOMING_ATTACK_TARGETS ) {
+			this.attackTargets.clear() ;
+			this.attackTargets.or( myM.attackTargets ) ;
+			this.attackTargetBytes = myM.attackTargetBytes ;
+		}
+		
+		if ( myM.getType() == TYPE_INCOMING_ATTACK || myM.getType() == TYPE_INCOMING_ATTACK_TARGETS ) {
 			if ( attackDescriptor == null
 					|| attackDescriptor.R() != myM.attackDescriptor.R() || attackDescriptor.C() != myM.attackDescriptor.C() ) {
 				attackDescriptor = new AttackDescriptor( myM.attackDescriptor.R(), myM.attackDescriptor.C() ) ;
 			}
+			attackDescriptor.copyValsFrom(myM.attackDescriptor) ;
 		}
 		
 		return this ;
@@ -0,0 +1,148 @@
+package com.peaceray.quantro.model.communications;
+
+
+/**
+ * The recent history of a single player's outgoing move queue, as sent in
+ * TYPE_MOVE_QUEUE_SEQUENCED messages: the actions of the last few queues
+ * (up to a byte limit), as one contiguous range of action sequence numbers.
+ *
+ * Alongside every sequenced queue, we send this entire range unreliably
+ * as a TYPE_MOVE_QUEUE_REDUNDANT.  A lost datagram then costs only the
+ * bytes repeated in the next one, rather than the round trip needed to
+ * resend it.  We have no acknowledgement of individual queues at this level,
+ * so "unacknowledged" is approximated by "recent": the last 'maxQueues' of
+ * them.
+ *
+ * Not synchronized; keep one per sending thread (and player).
+ *
+ * @author Jake
+ *
+ */
+public class MoveQueueHistory {
+
+	public static final int DEFAULT_MAX_QUEUES = 3 ;
+	public static final int DEFAULT_MAX_ACTIONS = 256 ;
+
+	private final byte [] mActions ;
+	private final long [] mQueueSeq ;		// start of each queue, oldest first
+	private int mNumQueues ;
+	private long mSeq ;						// sequence number of mActions[0]
+	private int mLength ;
+
+
+	public MoveQueueHistory() {
+		this( DEFAULT_MAX_QUEUES, DEFAULT_MAX_ACTIONS ) ;
+	}
+
+	public MoveQueueHistory( int maxQueues, int maxActions ) {
+		if ( maxQueues < 1 || maxActions < 1 )
+			throw new IllegalArgumentException("Must retain at least one queue and one action") ;
+		mActions = new byte[maxActions] ;
+		mQueueSeq = new long[maxQueues] ;
+		clear() ;
+	}
+
+
+	public void clear() {
+		mNumQueues = 0 ;
+		mSeq = 0 ;
+		mLength = 0 ;
+	}
+
+
+	/**
+	 * Records a queue of 'length' actions, beginning with sequence number
+	 * 'seq', that has just been sent.  If it does not directly follow the
+	 * last recorded queue, the earlier history is forgotten.
+	 *
+	 * @param seq
+	 * @param actions
+	 * @param ind
+	 * @param length
+	 */
+	public void record( long seq, byte [] actions, int ind, int length ) {
+		if ( length <= 0 )
+			return ;
+		if ( mLength > 0 && seq != mSeq + mLength )
+			clear() ;
+		
+		// make room for the new queue...
+		if ( mNumQueues == mQueueSeq.length ) {
+			if ( mNumQueues == 1 )
+				clear() ;
+			else
+				dropBefore( mQueueSeq[1] ) ;
+		}
+		// ...and its actions, keeping only the most recent if we lack space.
+		if ( length >= mActions.length ) {
+			clear() ;
+			ind += length - mActions.length ;
+			seq += length - mActions.length ;
+			length = mActions.length ;
+		} else if ( mLength + length > mActions.length ) {
+			dropBefore( seq + length - mActions.length ) ;
+		}
+		
+		if ( mLength == 0 )
+			mSeq = seq ;
+		System.arraycopy( actions, ind, mActions, mLength, length ) ;
+		mLength += length ;
+		mQueueSeq[mNumQueues++] = seq ;
+	}
+
+
+	/**
+	 * Forgets every action before sequence number 'seq', and any queue
+	 * which then lies entirely in the past.
+	 */
+	private void dropBefore( long seq ) {
+		if ( seq >= mSeq + mLength ) {
+			clear() ;
+			return ;
+		}
+		int drop = (int)(seq - mSeq) ;
+		if ( drop > 0 ) {
+			System.arraycopy( mActions, drop, mActions, 0, mLength - drop ) ;
+			mLength -= drop ;
+			mSeq = seq ;
+		}
+		int keep = 0 ;
+		for ( int i = 0; i < mNumQueues; i++ ) {
+			if ( i + 1 < mNumQueues && mQueueSeq[i+1] <= seq )
+				continue ;
+			mQueueSeq[keep++] = Math.max( mQueueSeq[i], seq ) ;
+		}
+		mNumQueues = keep ;
+	}
+
+
+	public boolean isEmpty() {
+		return mLength == 0 ;
+	}
+
+	/**
+	 * The sequence number of the first recorded action.
+	 * @return
+	 */
+	public long getSeq() {
+		return mSeq ;
+	}
+
+	/**
+	 * The number of recorded actions.
+	 * @return
+	 */
+	public int getLength() {
+		return mLength ;
+	}
+
+	/**
+	 * The recorded actions, in mActions[0] through mActions[getLength()-1].
+	 * The array is not a copy; do not alter it.
+	 * @return
+	 */
+	public byte [] getActions() {
+		return mActions ;
+	}
+
+}
@@ -0,0 +1,280 @@
+package com.peaceray.quantro.model.communications;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.peaceray.quantro.model.descriptors.versioned.ActionCycleStateDescriptor;
+
+
+/**
+ * A SpectatorStream records the action cycles of each player's canonical
+ * Game for those who are only watching: periodic keyframes (full Updates,
+ * independent of any previous state) and the per-cycle deltas between them.
+ *
+ * Spectators who connect mid-game begin from the most recent keyframe rather
+ * than a TYPE_FULL_SYNCHRONIZATION per watched player, and spectators who
+ * fall behind skip the deltas they missed, jumping forward to the latest
+ * keyframe.  Either way they are served TYPE_NEXT_CYCLE messages whose ids
+ * are cycle numbers, so getNextCycleIsUpdateFor() applies as usual.
+ *
+ * The stream is written by the thread that generates cycles (the
+ * GameCoordinator's), and read by whoever serves spectators.  Publishing is
+ * a copy of the new cycle state and nothing more; building and encoding the
+ * Updates is done by the first reader to need each one, on that reader's
+ * thread, and is shared with every reader after it.  Readers never lock:
+ * published frames are immutable, and are retrieved by cycle number from a
+ * ring that only the writer alters.
+ *
+ * Nothing is recorded while no Cursor is open: publish() returns at once,
+ * so a game nobody watches pays nothing for the stream.  Close each Cursor
+ * when its spectator leaves.
+ *
+ * @author Jake
+ *
+ */
+public class SpectatorStream {
+
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 16 ;
+
+
+	/**
+	 * The state at the start of a single cycle.  Immutable once published,
+	 * except for the lazily-built update (built identically by anyone who
+	 * builds it).
+	 */
+	private static final class Frame {
+		final long cycle ;
+		final ActionCycleStateDescriptor acsd ;
+		final ActionCycleStateDescriptor previous ;		// null for keyframes
+
+		volatile ActionCycleStateDescriptor.Update update ;
+
+		Frame( long cycle, ActionCycleStateDescriptor acsd, ActionCycleStateDescriptor previous ) {
+			this.cycle = cycle ;
+			this.acsd = acsd ;
+			this.previous = previous ;
+		}
+
+		boolean isKeyframe() {
+			return previous == null ;
+		}
+
+		ActionCycleStateDescriptor.Update getUpdate() {
+			ActionCycleStateDescriptor.Update u = update ;
+			if ( u == null ) {
+				u = new ActionCycleStateDescriptor.Update( acsd.R(), acsd.C() ) ;
+				u.set( previous, acsd ) ;
+				update = u ;
+			}
+			return u ;
+		}
+	}
+
+
+	/**
+	 * A single spectator's position in the stream of a single player slot.
+	 * Not thread-safe; keep one per spectator (and watched slot), used from
+	 * whichever thread sends to that spectator.
+	 */
+	public final class Cursor {
+		private final int mSlot ;
+		private long mCycle ;
+		private boolean mClosed ;
+
+		private Cursor( int slot ) {
+			mSlot = slot ;
+			mCycle = -1 ;
+			mClosed = false ;
+		}
+
+		public int getSlot() {
+			return mSlot ;
+		}
+
+		/**
+		 * The cycle most recently provided by next(), or -1 if none has been.
+		 * @return
+		 */
+		public long getCycle() {
+			return mCycle ;
+		}
+
+		/**
+		 * Sets 'm' as the next TYPE_NEXT_CYCLE this spectator should receive,
+		 * returning whether there is one.
+		 *
+		 * This is the delta following the last cycle provided, if it is
+		 * still held and the spectator is no more than a keyframe interval
+		 * behind.  Otherwise (including the first call) it is the most
+		 * recent keyframe: a full Update, skipping every delta before it.
+		 *
+		 * @param m
+		 * @return Whether 'm' was set.
+		 */
+		public boolean next( GameMessage m ) {
+			if ( mClosed )
+				return false ;
+			Frame keyframe = mKeyframe.get(mSlot) ;
+			Frame latest = mLatest.get(mSlot) ;
+			if ( keyframe == null || latest == null || latest.cycle <= mCycle )
+				return false ;
+
+			Frame f = null ;
+			if ( mCycle >= 0 && latest.cycle - mCycle <= mKeyframeInterval ) {
+				f = mFrames[mSlot].get( index( mCycle + 1 ) ) ;
+				if ( f != null && f.cycle != mCycle + 1 )
+					f = null ;
+			}
+			if ( f == null ) {
+				// Late, or too far behind to bother with deltas.
+				if ( keyframe.cycle <= mCycle )
+					return false ;
+				f = keyframe ;
+			}
+
+			m.setAsNextCycle( mSlot, f.cycle, f.getUpdate() ) ;
+			mCycle = f.cycle ;
+			return true ;
+		}
+
+		/**
+		 * Closes this cursor.  Once the last open cursor is closed the
+		 * stream stops recording.  Closing twice has no further effect.
+		 */
+		public void close() {
+			if ( !mClosed ) {
+				mClosed = true ;
+				mOpenCursors.decrementAndGet() ;
+			}
+		}
+	}
+
+
+	private final int mKeyframeInterval ;
+	private final int mCapacity ;
+
+	// Per slot: published frames by cycle number (mod capacity), the most
+	// recent frame, and the most recent keyframe.
+	private final AtomicReferenceArray<Frame> [] mFrames ;
+	private final AtomicReferenceArray<Frame> mLatest ;
+	private final AtomicReferenceArray<Frame> mKeyframe ;
+
+	private final AtomicInteger mOpenCursors ;
+
+
+	public SpectatorStream( int numSlots ) {
+		this( numSlots, DEFAULT_KEYFRAME_INTERVAL ) ;
+	}
+
+	public SpectatorStream( int numSlots, int keyframeInterval ) {
+		if ( numSlots < 1 )
+			throw new IllegalArgumentException("Must have at least 1 slot") ;
+		if ( keyframeInterval < 1 )
+			throw new IllegalArgumentException("Keyframe interval must be at least 1") ;
+
+		mKeyframeInterval = keyframeInterval ;
+		// Every delta since the most recent keyframe remains available.
+		mCapacity = 2 * keyframeInterval ;
+
+		mFrames = newFrameRings( numSlots ) ;
+		for ( int i = 0; i < numSlots; i++ )
+			mFrames[i] = new AtomicReferenceArray<Frame>( mCapacity ) ;
+		mLatest = new AtomicReferenceArray<Frame>( numSlots ) ;
+		mKeyframe = new AtomicReferenceArray<Frame>( numSlots ) ;
+		mOpenCursors = new AtomicInteger(0) ;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static AtomicReferenceArray<Frame> [] newFrameRings( int numSlots ) {
+		return new AtomicReferenceArray[numSlots] ;
+	}
+
+
+	/**
+	 * Publishes the state at the start of the specified cycle.  The state is
+	 * copied; 'acsd' may be altered as soon as this method returns.
+	 *
+	 * The frame is a keyframe if the keyframe interval has elapsed, or if it
+	 * does not directly follow the last cycle published for this slot (in
+	 * which case there is nothing to take a delta from).
+	 *
+	 * Does nothing (not even the copy) while no Cursor is open.
+	 *
+	 * @param slot
+	 * @param cycle		Cycle numbers should increase by 1 with each call.
+	 * @param acsd
+	 */
+	public synchronized void publish( int slot, long cycle, ActionCycleStateDescriptor acsd ) {
+		if ( mOpenCursors.get() == 0 )
+			return ;
+		ActionCycleStateDescriptor copy = new ActionCycleStateDescriptor( acsd.R(), acsd.C() ) ;
+		copy.takeVals( acsd ) ;
+
+		Frame latest = mLatest.get(slot) ;
+		Frame keyframe = mKeyframe.get(slot) ;
+		boolean isKeyframe = latest == null || latest.cycle + 1 != cycle
+				|| keyframe == null || cycle - keyframe.cycle >= mKeyframeInterval ;
+
+		Frame f = new Frame( cycle, copy, isKeyframe ? null : latest.acsd ) ;
+		mFrames[slot].set( index(cycle), f ) ;
+		if ( isKeyframe )
+			mKeyframe.set( slot, f ) ;
+		mLatest.set( slot, f ) ;
+	}
+
+
+	/**
+	 * Returns a new Cursor, for a spectator who has yet to receive anything
+	 * regarding the specified slot.  Its first message will be a keyframe.
+	 * Close it when done.
+	 *
+	 * @param slot
+	 * @return
+	 */
+	public synchronized Cursor openCursor( int slot ) {
+		if ( slot < 0 || slot >= mFrames.length )
+			throw new IllegalArgumentException("No such slot " + slot) ;
+		if ( mOpenCursors.getAndIncrement() == 0 ) {
+			// Anything still held predates a gap in recording; the
+			// next frame published for each slot will be a keyframe.
+			for ( int i = 0; i < mFrames.length; i++ ) {
+				for ( int j = 0; j < mCapacity; j++ )
+					mFrames[i].set( j, null ) ;
+				mLatest.set( i, null ) ;
+				mKeyframe.set( i, null ) ;
+			}
+		}
+		return new Cursor( slot ) ;
+	}
+
+
+	/**
+	 * Whether any Cursor is open, i.e., whether publish() records anything.
+	 * @return
+	 */
+	public boolean hasCursors() {
+		return mOpenCursors.get() > 0 ;
+	}
+
+
+	/**
+	 * The most recent cycle published for the slot, or -1 if none has been.
+	 * @param slot
+	 * @return
+	 */
+	public long getLatestCycle( int slot ) {
+		Frame f = mLatest.get(slot) ;
+		return f == null ? -1 : f.cycle ;
+	}
+
+
+	public int getKeyframeInterval() {
+		return mKeyframeInterval ;
+	}
+
+
+	private int index( long cycle ) {
+		return (int)( cycle % mCapacity ) ;
+	}
+
+}
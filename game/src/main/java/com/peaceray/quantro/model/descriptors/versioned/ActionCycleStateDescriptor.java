@@ -66,6 +66,12 @@ public final class ActionCycleStateDescriptor {
 	//		complete, and every cycle after that only sends a truncated "update" object.
 	// 		Also adds "Update" class, for short-length in-place updates to ACSDs.  This
 	//		class takes the place of previous 'isIncluded_*' fields.
+	// 4: Packed Updates.  The version is written as a single byte (fixed-width
+	//		versions begin with a zero byte), update types and flags share one
+	//		byte, row lists and rows are run-length encoded, ints are variable-length
+	//		and GameInformation and AttackDescriptors are written packed.  Only sent
+	//		to peers which have said they can read it; version 3 remains the default.
+	private static final int VERSION_PACKED = 4 ;
 	
 	// This information should be constant for the entire lifetime 
 	// of the object.
@@ -372,13 +378,14 @@ public final class ActionCycleStateDescriptor {
 		}
 		
 		public Update( byte [] ar, int index ) {
-			int version = ByteArrayOps.readIntAsBytes(ar, index) ;
+			int version = readVersion(ar, index) ;
 			
-			if ( version != VERSION )
+			if ( version != VERSION && version != VERSION_PACKED )
 				throw new IllegalArgumentException("Don't know how to process version " + version) ;
 			
-			int R = ar[index+4] ;
-			int C = ar[index+5] ;
+			int versionLength = version == VERSION_PACKED ? 1 : 4 ;
+			int R = ar[index+versionLength] ;
+			int C = ar[index+versionLength+1] ;
 			
 			initialize(R, C) ;
 			
@@ -1112,6 +1119,207 @@ public final class ActionCycleStateDescriptor {
 			return ind - indOrig ;
 		}
 		
+		
+		// Packed flags: field update types take two bits each, as does the
+		// attack queue update type.
+		private static final int PACKED_SHIFT_BLOCK_FIELD = 0 ;
+		private static final int PACKED_SHIFT_DISPLACEMENT = 2 ;
+		private static final int PACKED_FLAG_NEXT_PIECES = 0x10 ;
+		private static final int PACKED_FLAG_RESERVE_PIECES = 0x20 ;
+		private static final int PACKED_SHIFT_ATTACK_QUEUE = 6 ;
+		
+		/**
+		 * As writeToByteArray( b, ind, topBounds ), but if 'packed', writes
+		 * VERSION_PACKED: typically less than half the length, since most
+		 * Updates touch a few contiguous rows and carry small ints.  Only peers
+		 * which have said they can read it should be sent the packed version;
+		 * readFromByteArray reads either.
+		 * 
+		 * @param b An array of bytes, or 'null' to count them.
+		 * @param ind
+		 * @param topBounds
+		 * @param packed
+		 * @return The number of bytes written.
+		 */
+		@SuppressWarnings("fallthrough")
+		public int writeToByteArray( byte [] b, int ind, int topBounds, boolean packed ) throws IndexOutOfBoundsException {
+			if ( !packed )
+				return writeToByteArray( b, ind, topBounds ) ;
+			
+			int indOrig = ind ;
+			
+			// version, R, C, flags.
+			if ( b != null ) {
+				int flags = mBlockFieldUpdateType.ordinal() << PACKED_SHIFT_BLOCK_FIELD
+						| mDisplacementRowsUpdateType.ordinal() << PACKED_SHIFT_DISPLACEMENT
+						| (mNextPiecesUpdated ? PACKED_FLAG_NEXT_PIECES : 0)
+						| (mReservePiecesUpdated ? PACKED_FLAG_RESERVE_PIECES : 0)
+						| mAttackDescriptorsQueueUpdateType.ordinal() << PACKED_SHIFT_ATTACK_QUEUE ;
+				b[ind] = (byte)VERSION_PACKED ;
+				b[ind+1] = (byte)mR ;
+				b[ind+2] = (byte)mC ;
+				b[ind+3] = (byte)flags ;
+			}
+			ind += 4 ;
+			
+			// Fields: run-length encoded.  These methods are null-array safe.
+			if ( mBlockFieldUpdateType != FieldUpdateType.EMPTY ) {
+				ind += ByteArrayOps.toBytesRunLength( mBlockFieldRowUpdated, b, ind ) ;
+				ind += ByteArrayOps.toBytesRunLength( mBlockField, mBlockFieldRowUpdated, b, ind ) ;
+			}
+			if ( mDisplacementRowsUpdateType != FieldUpdateType.EMPTY ) {
+				ind += ByteArrayOps.toBytesRunLength( mDisplacementRowUpdated, b, ind ) ;
+				ind += ByteArrayOps.toBytesRunLength( mDisplacementRows, mDisplacementRowUpdated, b, ind ) ;
+			}
+			
+			// Next and reserve pieces.
+			if ( mNextPiecesUpdated )
+				ind += writePackedPieces( mNextPieces, mNextPiecesDefaultRotation, b, ind ) ;
+			if ( mReservePiecesUpdated )
+				ind += writePackedPieces( mReservePieces, mReservePiecesDefaultRotation, b, ind ) ;
+			
+			// Game information.
+			ind += mGinfo.writePackedToByteArray(b, ind, topBounds) ;
+			
+			// Attack descriptors.
+			switch( mAttackDescriptorsQueueUpdateType ) {
+			case NONE:
+				break ;
+			case DEQUEUE_AND_ENQUEUE:
+				ind += ByteArrayOps.writeVarIntAsBytes( mNumAttackDescriptorsToDequeue, b, ind ) ;
+				// fall through: the ADs to enqueue are written as an explicit list.
+			case EXPLICIT:
+				ind += ByteArrayOps.writeVarIntAsBytes( mNumAttackDescriptors, b, ind ) ;
+				for ( int i = 0; i < mNumAttackDescriptors; i++ )
+					ind += mAttackDescriptors.get(i).writePackedBodyToByteArray( b, ind ) ;
+				break ;
+			default:
+				throw new IllegalStateException("Can't encode QueueUpdateType " + mAttackDescriptorsQueueUpdateType) ; 
+			}
+			
+			// Dequeue attack and number to transfer share a var int.
+			int always = ByteArrayOps.zigZag( mDisplacedRowsToTransferThisCycle ) << 1
+					| (mDequeueAttackThisCycle ? 1 : 0) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( always, b, ind ) ;
+			
+			// Bounds check and return.
+			if ( ind > topBounds )
+				throw new IndexOutOfBoundsException("ActionCycleStateDescriptor.writeToByteArray wrote past the provided top bounds: wrote to from " + indOrig + " to " + ind + ", with top bounds " + topBounds) ;
+			
+			log("writeToByteArray - wrote packed update to byte array with total length " + (ind - indOrig)) ;
+			
+			return ind - indOrig ;
+		}
+		
+		
+		private static int writePackedPieces( int [] pieces, byte [] rotations, byte [] b, int ind ) {
+			int indOrig = ind ;
+			for ( int i = 0; i < GameState.PIECE_LOOKAHEAD; i++ ) {
+				ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(pieces[i]), b, ind ) ;
+				if ( b != null )
+					b[ind] = rotations[i] ;
+				ind++ ;
+			}
+			return ind - indOrig ;
+		}
+		
+		
+		private static int readPackedPieces( int [] pieces, byte [] rotations, byte [] b, int ind ) {
+			int indOrig = ind ;
+			for ( int i = 0; i < GameState.PIECE_LOOKAHEAD; i++ ) {
+				int val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+				ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+				pieces[i] = ByteArrayOps.unZigZag( val ) ;
+				rotations[i] = b[ind++] ;
+			}
+			return ind - indOrig ;
+		}
+		
+		
+		/**
+		 * Reverses writeToByteArray( b, ind, topBounds, true ), beginning
+		 * at the version byte.
+		 * 
+		 * @param b
+		 * @param ind
+		 * @return The number of bytes read.
+		 */
+		@SuppressWarnings("fallthrough")
+		private int readPackedFromByteArray( byte [] b, int ind ) throws IndexOutOfBoundsException {
+			int origInd = ind ;
+			
+			byte R_in = b[ind+1] ;
+			byte C_in = b[ind+2] ;
+			if ( R_in != mR || C_in != mC )
+				initialize(R_in, C_in) ;
+			int flags = b[ind+3] & 0xff ;
+			ind += 4 ;
+			
+			mBlockFieldUpdateType = FieldUpdateType.values()[(flags >> PACKED_SHIFT_BLOCK_FIELD) & 0x3] ;
+			mDisplacementRowsUpdateType = FieldUpdateType.values()[(flags >> PACKED_SHIFT_DISPLACEMENT) & 0x3] ;
+			mNextPiecesUpdated = (flags & PACKED_FLAG_NEXT_PIECES) != 0 ;
+			mReservePiecesUpdated = (flags & PACKED_FLAG_RESERVE_PIECES) != 0 ;
+			mAttackDescriptorsQueueUpdateType = QueueUpdateType.values()[(flags >> PACKED_SHIFT_ATTACK_QUEUE) & 0x3] ;
+			
+			if ( mBlockFieldUpdateType != FieldUpdateType.EMPTY ) {
+				ind += ByteArrayOps.fromBytesRunLength( mBlockFieldRowUpdated, b, ind ) ;
+				ind += ByteArrayOps.fromBytesRunLength( mBlockField, mBlockFieldRowUpdated, b, ind ) ;
+			}
+			if ( mDisplacementRowsUpdateType != FieldUpdateType.EMPTY ) {
+				ind += ByteArrayOps.fromBytesRunLength( mDisplacementRowUpdated, b, ind ) ;
+				ind += ByteArrayOps.fromBytesRunLength( mDisplacementRows, mDisplacementRowUpdated, b, ind ) ;
+			}
+			
+			if ( mNextPiecesUpdated )
+				ind += readPackedPieces( mNextPieces, mNextPiecesDefaultRotation, b, ind ) ;
+			if ( mReservePiecesUpdated )
+				ind += readPackedPieces( mReservePieces, mReservePiecesDefaultRotation, b, ind ) ;
+			
+			ind += mGinfo.readPackedFromByteArray(b, ind) ;
+			
+			switch( mAttackDescriptorsQueueUpdateType ) {
+			case NONE:
+				break ;
+			case DEQUEUE_AND_ENQUEUE:
+				mNumAttackDescriptorsToDequeue = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+				ind += ByteArrayOps.lengthOfVarIntAsBytes( mNumAttackDescriptorsToDequeue ) ;
+				// fall through
+			case EXPLICIT:
+				mNumAttackDescriptors = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+				ind += ByteArrayOps.lengthOfVarIntAsBytes( mNumAttackDescriptors ) ;
+				for ( int i = 0; i < mNumAttackDescriptors; i++ ) {
+					if ( mAttackDescriptors.size() <= i ) {
+						mAttackDescriptors.add(new AttackDescriptor(mR, mC)) ;
+					}
+					ind += mAttackDescriptors.get(i).readPackedBodyFromByteArray(b, ind) ;
+				}
+				break ;
+			default:
+				throw new IllegalStateException("Can't decode QueueUpdateType " + mAttackDescriptorsQueueUpdateType) ; 
+			}
+			
+			int always = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( always ) ;
+			mDequeueAttackThisCycle = (always & 1) != 0 ;
+			mDisplacedRowsToTransferThisCycle = (byte)ByteArrayOps.unZigZag( always >>> 1 ) ;
+			
+			log("readFromByteArray - read packed update from byte array with total length " + (ind - origInd)) ;
+			
+			return ind - origInd ;
+		}
+		
+		
+		/**
+		 * The version of the byte representation beginning at 'ind'.  Fixed-width
+		 * versions are written as a 4-byte int, and so begin with a zero byte;
+		 * VERSION_PACKED is written as a single byte.
+		 */
+		private static int readVersion( byte [] b, int ind ) {
+			if ( b[ind] != 0 )
+				return b[ind] ;
+			return ByteArrayOps.readIntAsBytes(b, ind) ;
+		}
+		
 		/**
 		 * Reads the current contents of this ActionCycleStateDescriptor to
 		 * the provided byte array, beginning at 'ind'.
@@ -1136,6 +1344,9 @@ public final class ActionCycleStateDescriptor {
 		 */
 		public int readFromByteArray( byte [] b, int ind ) throws IndexOutOfBoundsException {
 			
+			if ( readVersion(b, ind) == VERSION_PACKED )
+				return readPackedFromByteArray( b, ind ) ;
+			
 			int origInd = ind ;
 			
 			//log("readFromByteArray -- reading version, R and C") ;
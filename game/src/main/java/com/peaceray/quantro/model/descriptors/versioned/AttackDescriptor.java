@@ -38,6 +38,21 @@ public class AttackDescriptor {
 	// 4: Adds 'target.'  Set by the attack system when generating descriptors.
 	//			also allows "diviser" to be set.  This is the number of targets
 	//			among which this target is divided.
+	// 5: (byte arrays only) Packed.  The version is written as a single byte
+	//			rather than an int -- fixed-width versions always begin with a
+	//			zero byte, so readers can tell the two apart -- and is followed
+	//			by R, C, a byte of flags for the attack types present, and then
+	//			only those attacks, as variable-length ints.  Streams are still
+	//			written at VERSION, so this is not VERSION.
+	private static final int VERSION_PACKED = 5 ;
+	
+	private static final int PACKED_FLAG_CLEARED_AND_SENT 	= 0x01 ;
+	private static final int PACKED_FLAG_LEVEL_UP 			= 0x02 ;
+	private static final int PACKED_FLAG_PENALTY 			= 0x04 ;
+	private static final int PACKED_FLAG_PUSH 				= 0x08 ;
+	private static final int PACKED_FLAG_DISPLACE 			= 0x10 ;
+	private static final int PACKED_FLAG_SYNC_LEVEL_UP 		= 0x20 ;
+	private static final int PACKED_FLAG_DROP_BLOCKS 		= 0x40 ;
 	
 	
 	// Things we expect to be constant for the lifetime of the object
@@ -171,12 +186,13 @@ public class AttackDescriptor {
 	
 	
 	public AttackDescriptor( byte [] ar, int index ) {
-		int version = ByteArrayOps.readIntAsBytes(ar, index) ;
-		if ( version != VERSION )
+		int version = readVersion(ar, index) ;
+		if ( version != VERSION && version != VERSION_PACKED )
 			throw new IllegalArgumentException("Don't know how to process version " + version) ;
 		
-		R = ar[index+4] ;
-		C = ar[index+5] ;
+		int versionLength = version == VERSION_PACKED ? 1 : 4 ;
+		R = ar[index+versionLength] ;
+		C = ar[index+versionLength+1] ;
 		
 		init() ;
 		
@@ -890,6 +906,42 @@ public class AttackDescriptor {
 	}
 	
 	
+	/**
+	 * As writeToByteArray( b, ind, topBounds ), but if 'packed', writes
+	 * VERSION_PACKED -- usually well under half the length.  Only peers
+	 * which have said they can read it should be sent the packed version;
+	 * readFromByteArray reads either.
+	 * 
+	 * @param b An array of bytes, or 'null' to count them.
+	 * @param ind
+	 * @param topBounds
+	 * @param packed
+	 * @return The number of bytes written.
+	 */
+	public int writeToByteArray( byte [] b, int ind, int topBounds, boolean packed ) {
+		if ( !packed )
+			return writeToByteArray( b, ind, topBounds ) ;
+		
+		int indOrig = ind ;
+		
+		// version, R, and C.
+		if ( b != null ) {
+			b[ind] = (byte)VERSION_PACKED ;
+			b[ind+1] = (byte)R ;
+			b[ind+2] = (byte)C ;
+		}
+		ind += 3 ;
+		
+		ind += writePackedBodyToByteArray( b, ind ) ;
+		
+		// Bounds check and return.
+		if ( ind > topBounds )
+			throw new IndexOutOfBoundsException("AttackDescriptor.writeToByteArray wrote past the provided top bounds: wrote to from " + indOrig + " to " + ind + ", with top bounds " + topBounds) ;
+		
+		return ind - indOrig ;
+	}
+	
+	
 	/**
 	 * Reads the current contents of this AttackDescriptor from
 	 * the provided byte array, beginning at 'ind'.
@@ -919,6 +971,18 @@ public class AttackDescriptor {
 		
 		int indOrig = ind ;
 		
+		if ( readVersion(b, ind) == VERSION_PACKED ) {
+			byte adR = b[ind+1] ;
+			byte adC = b[ind+2] ;
+			if ( R != adR || C != adC ) {
+				System.err.println("AttackDescriptor.  readFromByteArray - " + adR + "," + adC + " to " + R + "," + C ) ;
+				throw new RuntimeException() ;
+			}
+			ind += 3 ;
+			ind += readPackedBodyFromByteArray( b, ind ) ;
+			return ind - indOrig ;
+		}
+		
 		int version = ByteArrayOps.readIntAsBytes(b, ind) ;
 		ind += 4 ;
 		
@@ -1032,6 +1096,249 @@ public class AttackDescriptor {
 	}
 	
 	
+	/**
+	 * Writes the body of VERSION_PACKED -- everything after version, R and C --
+	 * to the provided array.  ActionCycleStateDescriptor.Update writes its
+	 * AttackDescriptors this way when it is itself packed, since their
+	 * version and dimensions are implied by its own.
+	 * 
+	 * @param b An array of bytes, or 'null' to count them.
+	 * @param ind
+	 * @return The number of bytes written.
+	 */
+	int writePackedBodyToByteArray( byte [] b, int ind ) {
+		int indOrig = ind ;
+		
+		int flags = 0 ;
+		if ( clearedAndSent_hasGarbageRows() )
+			flags |= PACKED_FLAG_CLEARED_AND_SENT ;
+		if ( levelUp_hasGarbageRows() )
+			flags |= PACKED_FLAG_LEVEL_UP ;
+		if ( penalty_hasGarbageRows() )
+			flags |= PACKED_FLAG_PENALTY ;
+		if ( push_hasRows() )
+			flags |= PACKED_FLAG_PUSH ;
+		if ( displace_accelerateRows != 0 )
+			flags |= PACKED_FLAG_DISPLACE ;
+		if ( syncLevelUp_level != 0 || syncLevelUp_levelDifference != 0 )
+			flags |= PACKED_FLAG_SYNC_LEVEL_UP ;
+		if ( dropBlocks_numInValleys != 0 || dropBlocks_numOnJunctions != 0 || dropBlocks_numOnPeaks != 0
+				|| dropBlocks_numOnCorners != 0 || dropBlocks_numTroll != 0 )
+			flags |= PACKED_FLAG_DROP_BLOCKS ;
+		
+		if ( b != null )
+			b[ind] = (byte)flags ;
+		ind++ ;
+		
+		ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(target_code), b, ind ) ;
+		
+		if ( (flags & PACKED_FLAG_CLEARED_AND_SENT) != 0 ) {
+			ind += ByteArrayOps.writeVarIntAsBytes( clearedAndSent_numGarbageRows, b, ind ) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(clearedAndSent_garbageRowPieceType), b, ind ) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(clearedAndSent_garbageRowPieceColumn), b, ind ) ;
+			for ( int tag = 0; tag < INDEX_GARBAGE_ROWS_NUMBER; tag++ )
+				for ( int r = 0; r < clearedAndSent_numGarbageRows; r++ )
+					ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(clearedAndSent_garbageRows[tag][r]), b, ind ) ;
+			for ( int r = 0; r < clearedAndSent_numGarbageRows; r++ )
+				for ( int qp = 0; qp < 2; qp++ )
+					ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(clearedAndSent_garbageRowPreferredBlocks[r][qp]), b, ind ) ;
+		}
+		
+		if ( (flags & PACKED_FLAG_LEVEL_UP) != 0 ) {
+			ind += ByteArrayOps.writeVarIntAsBytes( levelUp_numGarbageRows, b, ind ) ;
+			for ( int tag = 0; tag < INDEX_GARBAGE_ROWS_NUMBER; tag++ )
+				for ( int r = 0; r < levelUp_numGarbageRows; r++ )
+					ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(levelUp_garbageRows[tag][r]), b, ind ) ;
+		}
+		
+		if ( (flags & PACKED_FLAG_PENALTY) != 0 ) {
+			ind += ByteArrayOps.writeVarIntAsBytes( penalty_numGarbageRows, b, ind ) ;
+			for ( int r = 0; r < penalty_numGarbageRows; r++ )
+				for ( int qp = 0; qp < 2; qp++ )
+					ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(penalty_garbageRowPreferredBlocks[r][qp]), b, ind ) ;
+		}
+		
+		if ( (flags & PACKED_FLAG_PUSH) != 0 ) {
+			ind += ByteArrayOps.writeVarIntAsBytes( push_numRowsOut, b, ind ) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( push_numRowsIn, b, ind ) ;
+			for ( int i = 0; i < push_numRowsIn; i++ ) {
+				byte [][] row = push_rowsIn.get(i) ;
+				for ( int qp = 0; qp < 2; qp++ ) {
+					for ( int c = 0; c < C; c++ ) {
+						if ( b != null )
+							b[ind] = row[qp][c] ;
+						ind++ ;
+					}
+				}
+			}
+		}
+		
+		if ( (flags & PACKED_FLAG_DISPLACE) != 0 ) {
+			if ( b != null )
+				ByteArrayOps.writeDoubleAsBytes(displace_accelerateRows, b, ind) ;
+			ind += 8 ;
+		}
+		
+		if ( (flags & PACKED_FLAG_SYNC_LEVEL_UP) != 0 ) {
+			ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(syncLevelUp_level), b, ind ) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( ByteArrayOps.zigZag(syncLevelUp_levelDifference), b, ind ) ;
+		}
+		
+		if ( (flags & PACKED_FLAG_DROP_BLOCKS) != 0 ) {
+			ind += ByteArrayOps.writeVarIntAsBytes( dropBlocks_numInValleys, b, ind ) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( dropBlocks_numOnJunctions, b, ind ) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( dropBlocks_numOnPeaks, b, ind ) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( dropBlocks_numOnCorners, b, ind ) ;
+			ind += ByteArrayOps.writeVarIntAsBytes( dropBlocks_numTroll, b, ind ) ;
+		}
+		
+		return ind - indOrig ;
+	}
+	
+	
+	/**
+	 * Reverses writePackedBodyToByteArray.  Attacks not present are cleared.
+	 * 
+	 * @param b
+	 * @param ind
+	 * @return The number of bytes read.
+	 */
+	int readPackedBodyFromByteArray( byte [] b, int ind ) {
+		int indOrig = ind ;
+		int val ;
+		
+		int flags = b[ind++] ;
+		
+		val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+		target_code = ByteArrayOps.unZigZag(val) ;
+		
+		clearedAndSent_numGarbageRows = 0 ;
+		if ( (flags & PACKED_FLAG_CLEARED_AND_SENT) != 0 ) {
+			clearedAndSent_numGarbageRows = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( clearedAndSent_numGarbageRows ) ;
+			val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+			clearedAndSent_garbageRowPieceType = ByteArrayOps.unZigZag(val) ;
+			val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+			clearedAndSent_garbageRowPieceColumn = ByteArrayOps.unZigZag(val) ;
+			for ( int tag = 0; tag < INDEX_GARBAGE_ROWS_NUMBER; tag++ ) {
+				for ( int r = 0; r < clearedAndSent_numGarbageRows; r++ ) {
+					val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+					ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+					clearedAndSent_garbageRows[tag][r] = ByteArrayOps.unZigZag(val) ;
+				}
+			}
+			for ( int r = 0; r < clearedAndSent_numGarbageRows; r++ ) {
+				for ( int qp = 0; qp < 2; qp++ ) {
+					val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+					ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+					clearedAndSent_garbageRowPreferredBlocks[r][qp] = ByteArrayOps.unZigZag(val) ;
+				}
+			}
+		}
+		
+		levelUp_numGarbageRows = 0 ;
+		if ( (flags & PACKED_FLAG_LEVEL_UP) != 0 ) {
+			levelUp_numGarbageRows = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( levelUp_numGarbageRows ) ;
+			for ( int tag = 0; tag < INDEX_GARBAGE_ROWS_NUMBER; tag++ ) {
+				for ( int r = 0; r < levelUp_numGarbageRows; r++ ) {
+					val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+					ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+					levelUp_garbageRows[tag][r] = ByteArrayOps.unZigZag(val) ;
+				}
+			}
+		}
+		
+		penalty_numGarbageRows = 0 ;
+		if ( (flags & PACKED_FLAG_PENALTY) != 0 ) {
+			penalty_numGarbageRows = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( penalty_numGarbageRows ) ;
+			for ( int r = 0; r < penalty_numGarbageRows; r++ ) {
+				for ( int qp = 0; qp < 2; qp++ ) {
+					val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+					ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+					penalty_garbageRowPreferredBlocks[r][qp] = ByteArrayOps.unZigZag(val) ;
+				}
+			}
+		}
+		
+		push_numRowsOut = 0 ;
+		push_numRowsIn = 0 ;
+		if ( (flags & PACKED_FLAG_PUSH) != 0 ) {
+			push_numRowsOut = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( push_numRowsOut ) ;
+			push_numRowsIn = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( push_numRowsIn ) ;
+			for ( int i = 0; i < push_numRowsIn; i++ ) {
+				if ( push_rowsIn.size() <= i )
+					push_rowsIn.add(new byte[2][C]) ;
+				byte [][] row = push_rowsIn.get(i) ;
+				for ( int qp = 0; qp < 2; qp++ ) {
+					for ( int c = 0; c < C; c++ ) {
+						row[qp][c] = b[ind++] ;
+					}
+				}
+			}
+		}
+		
+		displace_accelerateRows = 0 ;
+		if ( (flags & PACKED_FLAG_DISPLACE) != 0 ) {
+			displace_accelerateRows = ByteArrayOps.readDoubleAsBytes(b, ind) ;
+			ind += 8 ;
+		}
+		
+		syncLevelUp_level = 0 ;
+		syncLevelUp_levelDifference = 0 ;
+		if ( (flags & PACKED_FLAG_SYNC_LEVEL_UP) != 0 ) {
+			val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+			syncLevelUp_level = ByteArrayOps.unZigZag(val) ;
+			val = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( val ) ;
+			syncLevelUp_levelDifference = ByteArrayOps.unZigZag(val) ;
+		}
+		
+		dropBlocks_numInValleys = 0 ;
+		dropBlocks_numOnJunctions = 0 ;
+		dropBlocks_numOnPeaks = 0 ;
+		dropBlocks_numOnCorners = 0 ;
+		dropBlocks_numTroll = 0 ;
+		if ( (flags & PACKED_FLAG_DROP_BLOCKS) != 0 ) {
+			dropBlocks_numInValleys = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( dropBlocks_numInValleys ) ;
+			dropBlocks_numOnJunctions = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( dropBlocks_numOnJunctions ) ;
+			dropBlocks_numOnPeaks = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( dropBlocks_numOnPeaks ) ;
+			dropBlocks_numOnCorners = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( dropBlocks_numOnCorners ) ;
+			dropBlocks_numTroll = ByteArrayOps.readVarIntAsBytes( b, ind ) ;
+			ind += ByteArrayOps.lengthOfVarIntAsBytes( dropBlocks_numTroll ) ;
+		}
+		
+		return ind - indOrig ;
+	}
+	
+	
+	/**
+	 * The version of the byte representation beginning at 'ind'.  Fixed-width
+	 * versions are written as a 4-byte int, and so begin with a zero byte;
+	 * VERSION_PACKED is written as a single byte.
+	 * 
+	 * @param b
+	 * @param ind
+	 * @return
+	 */
+	private static int readVersion( byte [] b, int ind ) {
+		if ( b[ind] != 0 )
+			return b[ind] ;
+		return ByteArrayOps.readIntAsBytes(b, ind) ;
+	}
+	
+	
 	/**
 	 * Write to parcel.  Writes the contents of this AttackDescriptor to a parcel.
 	 * @param parcel
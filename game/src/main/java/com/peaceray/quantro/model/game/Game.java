@@ -153,6 +153,10 @@ public class Game implements SerializableState, Triggerable {
 	public GameState s ;
 	protected boolean configured ;
 	
+	// Headless: no View will acknowledge significant events, so tick()
+	// acknowledges them itself and keeps going.  See setHeadless().
+	protected boolean headless ;
+	
 	// Temporary storage that isn't used between method calls, only within
 	// methods.  These replace variables that should be local vars, but
 	// are treated as instance vars to prevent frequent allocation/deallocation.
@@ -319,6 +323,34 @@ public class Game implements SerializableState, Triggerable {
 		vs.setPseudorandom(pseudorandom) ;
 	}
 	
+	
+	/**
+	 * Puts this Game in (or takes it out of) headless mode, for servers and
+	 * simulators that have no View to animate significant events.
+	 * 
+	 * Normally tick() returns as soon as a significant GameEvent happens,
+	 * and does not advance again until the View has animated it and cleared
+	 * the GameEvents.  A headless Game acknowledges those events itself, as
+	 * soon as they happen, and so advances as many action cycles per tick()
+	 * as the TimingSystem, the ActionAdapter's queued actions and cycle
+	 * synchronization allow.  It also brackets each tick() with
+	 * ActionAdapter.game_beginNotificationBatch / game_endNotificationBatch,
+	 * letting the adapter coalesce the notifications it passes on.
+	 * 
+	 * The game state reached is exactly that of a non-headless Game whose
+	 * View acknowledges every event immediately; only the GameEvents
+	 * themselves (which no one is watching) are discarded.
+	 * 
+	 * @param headless
+	 */
+	public synchronized void setHeadless( boolean headless ) {
+		this.headless = headless ;
+	}
+	
+	public synchronized boolean getHeadless() {
+		return headless ;
+	}
+	
 	/**
 	 * Puts all the current 
 	 * @return
@@ -1827,6 +1859,40 @@ public class Game implements SerializableState, Triggerable {
 		if ( !configured )
 			throw new IllegalStateException("Must first call finalizeConfiguration()!") ;
 		
+		if ( !headless )
+			return advance( seconds ) ;
+		
+		adapter.game_beginNotificationBatch(this) ;
+		try {
+			return advance( seconds ) ;
+		} finally {
+			adapter.game_endNotificationBatch(this) ;
+		}
+	}
+	
+	
+	/**
+	 * Returns whether tick() must stop and wait for a significant event
+	 * to be acknowledged.  Headless Games acknowledge them immediately.
+	 * @return
+	 */
+	private boolean awaitingSignificantEvent() {
+		if ( headless ) {
+			gevents.clearHappened() ;
+			return false ;
+		}
+		return gevents.significantEventHappened() ;
+	}
+	
+	
+	/**
+	 * The body of tick(): advances until something significant happens,
+	 * or there is nothing more to do for now.
+	 * @param seconds
+	 * @return
+	 * @throws Exception
+	 */
+	private boolean advance( double seconds ) throws Exception {
 		if ( !stillPlaying() )
 			adapter.game_fakeDequeueActions(this) ;
 		
@@ -1859,19 +1925,19 @@ public class Game implements SerializableState, Triggerable {
 		}
 		
 		// If we are going to iterate at all, reset our list of game events.
-		if ( !gevents.significantEventHappened() && stillPlaying() ) {
+		if ( !awaitingSignificantEvent() && stillPlaying() ) {
 			s.geventsLastTick.clearHappened() ;
 		}
 		
 		// timing system?
 		if ( adapter.game_shouldUseTimingSystem(this) && adapter.game_shouldTick(this)
-				&& !gevents.significantEventHappened() && stillPlaying() ) {
+				&& !awaitingSignificantEvent() && stillPlaying() ) {
 			ts.tick( seconds ) ;
 			changed = true ;
 		}
 		
 		// While nothing significant has happened and we're still playing...
-		while( !gevents.significantEventHappened() && stillPlaying() ) {
+		while( !awaitingSignificantEvent() && stillPlaying() ) {
 			
 			// Dequeue some actions!
 			changed = adapter.game_dequeueActions(this) || changed ;
@@ -2720,8 +2786,28 @@ public class Game implements SerializableState, Triggerable {
 		slice.setDisplacement(ds.getDisplacedRows()) ;
 	}
 	
+	/**
+	 * Copies the current blocks -- and, depending on recent events, whatever
+	 * is animating -- into the provided slice, advancing its generation.
+	 * 
+	 * While a piece is falling, if the slice still holds what we copied
+	 * into it at its previous generation, we copy only the difference and
+	 * set the slice's dirty region to match.  Otherwise we copy everything
+	 * and the slice is entirely dirty.
+	 * 
+	 * @param slice
+	 */
 	public synchronized void copyGameBlocksSlice( GameBlocksSlice slice ) {
 		try {
+			if ( s.state == Game.STATE_FALLING && s.piece.blocks != null
+					&& slice.getBlocksState() == GameBlocksSlice.BLOCKS_PIECE_FALLING
+					&& slice.mSource != null && slice.mSource.game == this ) {
+				copyFallingPieceGameBlocksSliceDifference( slice ) ;
+				return ;
+			}
+			
+			slice.beginGeneration(true) ;
+			
 			// depending on recent events, attempts to copy the slice.
 			
 			// A piece falling?
@@ -2744,6 +2830,10 @@ public class Game implements SerializableState, Triggerable {
 						slice.getBlockfieldStableLBA(),
 						slice.getEdge(), slice.getEdge()) ;
 				
+				// Next time, we can copy only the difference.
+				if ( s.state == Game.STATE_FALLING && s.piece.blocks != null )
+					setGameBlocksSliceSource( slice, num ) ;
+				
 				return ;
 			}
 			
@@ -2882,6 +2972,7 @@ public class Game implements SerializableState, Triggerable {
 		} catch ( Exception e ) {
 			System.err.println("Exception caught when copying GameBlocksSlice.  Reverting to Stable slice.") ;
 			e.printStackTrace() ;
+			slice.beginGeneration(true) ;
 		}
 		
 		// default: stable
@@ -2895,6 +2986,151 @@ public class Game implements SerializableState, Triggerable {
 	
 	
 	
+	/**
+	 * The BLOCKS_PIECE_FALLING copy, for a slice which holds exactly what
+	 * we put there at its last generation (as recorded by setGameBlocksSliceSource).
+	 * 
+	 * Blockfield cells are compared and only those that changed are copied.
+	 * The piece and ghost layers are rebuilt only if the piece or blockfield
+	 * changed, and the "stable" field (blockfield + piece) only in the
+	 * affected rows.  Everything we touch goes into the slice's dirty region:
+	 * changed blockfield cells and the old and new piece and ghost bounds.
+	 * 
+	 * @param slice
+	 * @throws QOrientationConflictException
+	 * @throws GameSystemException
+	 */
+	private synchronized void copyFallingPieceGameBlocksSliceDifference( GameBlocksSlice slice ) throws QOrientationConflictException, GameSystemException {
+		GameBlocksSlice.Source source = slice.mSource ;
+		int edge = slice.getEdge() ;
+		
+		slice.beginGeneration(false) ;
+		
+		// Blockfield: copy changed cells, row by row.
+		byte [][][] bf = (byte [][][])slice.getPieceFallingBlockfieldLBA().array() ;
+		boolean fieldChanged = false ;
+		int Q = s.blockField.length, R = s.blockField[0].length, C = s.blockField[0][0].length ;
+		for ( int r = 0; r < R; r++ ) {
+			int minCol = C, maxCol = 0 ;
+			for ( int q = 0; q < Q; q++ ) {
+				byte [] srcRow = s.blockField[q][r] ;
+				byte [] dstRow = bf[q][r+edge] ;
+				for ( int c = 0; c < C; c++ ) {
+					if ( srcRow[c] != dstRow[c+edge] ) {
+						dstRow[c+edge] = srcRow[c] ;
+						minCol = Math.min(minCol, c) ;
+						maxCol = Math.max(maxCol, c+1) ;
+					}
+				}
+			}
+			if ( minCol < maxCol ) {
+				slice.markDirty(r+edge, r+edge+1, minCol+edge, maxCol+edge) ;
+				fieldChanged = true ;
+			}
+		}
+		
+		boolean pieceChanged = source.pieceType != s.piece.type
+				|| source.pieceRotation != s.piece.rotation
+				|| source.pieceOffset.x != s.offset.x
+				|| source.pieceOffset.y != s.offset.y
+				|| !ArrayOps.areEqual(source.pieceBlocks, s.piece.blocks) ;
+		
+		if ( !fieldChanged && !pieceChanged )
+			return ;
+		
+		// Piece and ghosts move (or may): dirty both where they were and where they are.
+		int [] rect = source.pieceRect ;
+		slice.markDirty(rect[0], rect[1], rect[2], rect[3]) ;
+		rect = source.ghostRect ;
+		slice.markDirty(rect[0], rect[1], rect[2], rect[3]) ;
+		
+		int num = copyFallingPieceAndGhostBlockFields(
+				slice.getPieceFallingPieceLBA(),
+				slice.getPieceFallingGhostsLBA(), 1,
+				edge, edge) ;
+		slice.setFirstPieceGhost(1) ;
+		slice.setNumPieceGhosts(num) ;
+		slice.setPieceType(s.piece.type) ;
+		setGameBlocksSliceSource( slice, num ) ;
+		
+		rect = source.pieceRect ;
+		slice.markDirty(rect[0], rect[1], rect[2], rect[3]) ;
+		rect = source.ghostRect ;
+		slice.markDirty(rect[0], rect[1], rect[2], rect[3]) ;
+		
+		// Stable: blockfield with the piece locked in.  Refresh the dirty
+		// cells from the blockfield, then lock the piece (whose bounds are
+		// dirty) back in.
+		byte [][][] stable = (byte [][][])slice.getBlockfieldStableLBA().array() ;
+		for ( int r = 0; r < stable[0].length; r++ ) {
+			if ( slice.getRowDirty(r) ) {
+				int maxCol = slice.getDirtyColumnMax(r) ;
+				for ( int q = 0; q < Q; q++ )
+					for ( int c = slice.getDirtyColumnMin(r); c < maxCol; c++ )
+						stable[q][r][c] = bf[q][r][c] ;
+			}
+		}
+		try {
+			copySimplifiedBlockField_offset.takeVals(s.offset) ;
+			copySimplifiedBlockField_offset.x += edge ;
+			copySimplifiedBlockField_offset.y += edge ;
+			ls.lock(stable, s.piece, copySimplifiedBlockField_offset) ;
+		} catch( Exception e ) {
+			// as copySimplifiedBlockField: copying should never fail.
+		}
+	}
+	
+	
+	/**
+	 * Records in the slice what we have just copied into it as BLOCKS_PIECE_FALLING,
+	 * so the next copy can be limited to the difference.  Call immediately
+	 * after copyFallingPiece*BlockFields, while s.components and
+	 * s.componentFellOffsets describe the ghosts.
+	 * 
+	 * @param slice
+	 * @param numGhosts
+	 */
+	private void setGameBlocksSliceSource( GameBlocksSlice slice, int numGhosts ) {
+		GameBlocksSlice.Source source = slice.mSource ;
+		if ( source == null )
+			source = slice.mSource = new GameBlocksSlice.Source() ;
+		int edge = slice.getEdge() ;
+		
+		source.game = this ;
+		source.pieceType = s.piece.type ;
+		source.pieceRotation = s.piece.rotation ;
+		source.pieceOffset.takeVals(s.offset) ;
+		byte [][][] blocks = s.piece.blocks ;
+		if ( source.pieceBlocks == null
+				|| source.pieceBlocks.length != blocks.length
+				|| source.pieceBlocks[0].length != blocks[0].length
+				|| source.pieceBlocks[0][0].length != blocks[0][0].length )
+			source.pieceBlocks = new byte[blocks.length][blocks[0].length][blocks[0][0].length] ;
+		ArrayOps.copyInto(blocks, source.pieceBlocks) ;
+		source.numGhosts = numGhosts ;
+		
+		setSliceRect( source.pieceRect, s.piece, s.offset, edge, false ) ;
+		source.ghostRect[0] = source.ghostRect[1] = source.ghostRect[2] = source.ghostRect[3] = 0 ;
+		for ( int i = 0; i < numGhosts; i++ )
+			setSliceRect( source.ghostRect, s.components.get(i), s.componentFellOffsets.get(i), edge, i > 0 ) ;
+	}
+	
+	private static void setSliceRect( int [] rect, Piece p, Offset o, int edge, boolean union ) {
+		int minRow = o.y + edge, maxRow = minRow + p.boundHeight() ;
+		int minCol = o.x + edge, maxCol = minCol + p.boundWidth() ;
+		if ( union ) {
+			minRow = Math.min(minRow, rect[0]) ;
+			maxRow = Math.max(maxRow, rect[1]) ;
+			minCol = Math.min(minCol, rect[2]) ;
+			maxCol = Math.max(maxCol, rect[3]) ;
+		}
+		rect[0] = minRow ;
+		rect[1] = maxRow ;
+		rect[2] = minCol ;
+		rect[3] = maxCol ;
+	}
+	
+	
 	private Offset copyFallingPieceBlockField_offset = new Offset() ;
 	/**
 	 * Copies into the provided buffers the "current" state, assuming a
@@ -2927,6 +3163,19 @@ public class Game implements SerializableState, Triggerable {
 		lba_blockField.boundAll() ;
 		ArrayOps.copyInto(s.blockField, (byte[][][])lba_blockField.array(), rowOffset, colOffset) ;
 		
+		return copyFallingPieceAndGhostBlockFields(
+				lba_piece, lba_ghostComponents, firstGhost, rowOffset, colOffset) ;
+	}
+	
+	
+	/**
+	 * As copyFallingPieceBlockFields, but leaves the blockField alone.
+	 */
+	private synchronized int copyFallingPieceAndGhostBlockFields(
+			LooselyBoundedArray lba_piece,
+			LooselyBoundedArray [] lba_ghostComponents,
+			int firstGhost, int rowOffset, int colOffset ) throws QOrientationConflictException, GameSystemException {
+		
 		// Lock the piece into lba_piece, an otherwise empty blockfield.  We clear
 		// the current bounds, set those bounds to empty, the lock the piece and
 		// set the bounds to the piece dimensions.
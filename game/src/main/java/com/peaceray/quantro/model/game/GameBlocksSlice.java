@@ -51,6 +51,19 @@ import com.peaceray.quantro.utils.LooselyBoundedArray.LooselyBoundedArray;
  * 		from the correct values.  To compensate for this, LBAs are set as "full" after every
  * 		serialized read.
  * 
+ * EDIT: Slices now carry a generation number and a "dirty region": the cells, as
+ * 		per-row column spans in slice coordinates, that may differ from the
+ * 		slice's content at the previous generation.  Game.copyGameBlocksSlice
+ * 		advances the generation with every copy.  While a piece is falling,
+ * 		and the slice still holds what that Game put there last, it copies
+ * 		only what changed and the dirty region is exactly that; otherwise
+ * 		the whole slice is dirty.  Renderers may redraw only the dirty
+ * 		region, provided they drew the previous generation of this slice.
+ * 
+ * 		Anything that alters a slice other than Game.copyGameBlocksSlice
+ * 		(takeVals, reads, or writing through the array getters) must leave
+ * 		it marked all-dirty; takeVals and reads do so themselves.
+ * 
  * @author Jake
  *
  */
@@ -147,6 +160,37 @@ public class GameBlocksSlice {
 	private int mR, mC ;
 	private int mNum, mEdge ;
 	
+	// Dirty region since the previous generation.  Row r is dirty iff
+	// mDirtyColumnMin[r] < mDirtyColumnMax[r].  Not transmitted when serialized.
+	private int mGeneration ;
+	private boolean mAllDirty ;
+	private int [] mDirtyColumnMin ;
+	private int [] mDirtyColumnMax ;
+	
+	// What the slice holds, as recorded by the Game that last filled it.
+	// Only Game touches this; a null Source (or Source.game) means no Game
+	// can rely on our content.
+	Source mSource ;
+	
+	
+	/**
+	 * A record, kept by Game, of the content it last copied into a slice
+	 * in BLOCKS_PIECE_FALLING: enough to tell whether the piece and ghost
+	 * layers are still correct, and which cells they occupy.
+	 * Rects are { minRow, maxRow, minCol, maxCol }, exclusive max, in slice
+	 * coordinates.
+	 */
+	static final class Source {
+		Object game ;
+		int pieceType ;
+		int pieceRotation ;
+		Offset pieceOffset = new Offset() ;
+		byte [][][] pieceBlocks ;
+		int numGhosts ;
+		int [] pieceRect = new int[4] ;
+		int [] ghostRect = new int[4] ;
+	}
+	
 	
 	/**
 	 * Instantiates a new GameBlocksTimeSlice object.
@@ -181,6 +225,7 @@ public class GameBlocksSlice {
 		ArrayOps.setEmpty(mPreBlockfield) ;
 		
 		createLooselyBoundedArrays() ;
+		createDirtyRegion() ;
 		
 		mPieceType = 0 ;
 		mNumChunks = 0 ;
@@ -333,6 +378,15 @@ public class GameBlocksSlice {
 		}
 	}
 	
+	private void createDirtyRegion() {
+		mDirtyColumnMin = new int[mR + mEdge*2] ;
+		mDirtyColumnMax = new int[mR + mEdge*2] ;
+		mGeneration = 0 ;
+		mAllDirty = true ;
+		if ( mSource != null )
+			mSource.game = null ;
+	}
+	
 	private void boundAllLooselyBoundedArrays() {
 		mLBAPreBlockfield.boundAll() ;
 		mLBADisplacementBlockfield.boundAll() ;
@@ -354,6 +408,8 @@ public class GameBlocksSlice {
 		if ( gbs == null )
 			return ;
 		
+		beginGeneration( true ) ;
+		
 		mBlocksState = gbs.mBlocksState ;
 		
 		mPieceType = gbs.mPieceType ;
@@ -1046,6 +1102,95 @@ public class GameBlocksSlice {
 	}
 	
 	
+	// Dirty region
+	
+	/**
+	 * The generation of this slice's content.  Advanced by every
+	 * Game.copyGameBlocksSlice, takeVals, or read.
+	 * @return
+	 */
+	public int getGeneration() {
+		return mGeneration ;
+	}
+	
+	/**
+	 * Is the entire slice dirty (i.e., potentially changed in any cell, or any
+	 * way not described by the dirty region) since the previous generation?
+	 * @return
+	 */
+	public boolean getAllDirty() {
+		return mAllDirty ;
+	}
+	
+	/**
+	 * Might any cell in the given row (slice coordinates, including edge)
+	 * have changed since the previous generation?
+	 * @param row
+	 * @return
+	 */
+	public boolean getRowDirty( int row ) {
+		return mAllDirty || mDirtyColumnMin[row] < mDirtyColumnMax[row] ;
+	}
+	
+	/**
+	 * The first dirty column in the given row; meaningful only if the row is dirty.
+	 * @param row
+	 * @return
+	 */
+	public int getDirtyColumnMin( int row ) {
+		return mAllDirty ? 0 : mDirtyColumnMin[row] ;
+	}
+	
+	/**
+	 * One past the last dirty column in the given row; meaningful only if the
+	 * row is dirty.
+	 * @param row
+	 * @return
+	 */
+	public int getDirtyColumnMax( int row ) {
+		return mAllDirty ? mC + mEdge*2 : mDirtyColumnMax[row] ;
+	}
+	
+	/**
+	 * Begins a new generation of content with an empty dirty region, or with
+	 * the entire slice dirty.  In the latter case, no Game will rely on what
+	 * this slice held before.
+	 * @param allDirty
+	 */
+	void beginGeneration( boolean allDirty ) {
+		mGeneration++ ;
+		mAllDirty = allDirty ;
+		for ( int r = 0; r < mDirtyColumnMin.length; r++ ) {
+			mDirtyColumnMin[r] = 0 ;
+			mDirtyColumnMax[r] = 0 ;
+		}
+		if ( allDirty && mSource != null )
+			mSource.game = null ;
+	}
+	
+	/**
+	 * Adds the provided cells to the dirty region.  Rows and columns are in slice
+	 * coordinates, max exclusive, and are clipped to the slice.
+	 */
+	void markDirty( int minRow, int maxRow, int minCol, int maxCol ) {
+		minRow = Math.max( 0, minRow ) ;
+		maxRow = Math.min( mDirtyColumnMin.length, maxRow ) ;
+		minCol = Math.max( 0, minCol ) ;
+		maxCol = Math.min( mC + mEdge*2, maxCol ) ;
+		if ( minCol >= maxCol )
+			return ;
+		for ( int r = minRow; r < maxRow; r++ ) {
+			if ( mDirtyColumnMin[r] >= mDirtyColumnMax[r] ) {
+				mDirtyColumnMin[r] = minCol ;
+				mDirtyColumnMax[r] = maxCol ;
+			} else {
+				mDirtyColumnMin[r] = Math.min( mDirtyColumnMin[r], minCol ) ;
+				mDirtyColumnMax[r] = Math.max( mDirtyColumnMax[r], maxCol ) ;
+			}
+		}
+	}
+	
+	
 	////////////////////////////////////////////////////////////////////////////
 	//
 	// SERIALIZATION!  READING, WRITING TO STRINGS AND OBJECT OUTPUT STREAMS
@@ -1477,6 +1622,8 @@ public class GameBlocksSlice {
 	}
 	
 	private void read( GameBlocksSlice gbs, ObjectInputStream ois, String str, boolean allocate ) throws IOException {
+		if ( mDirtyColumnMin != null )
+			beginGeneration( true ) ;
 		
 		// get "section strings"
 		String strMeta = substringWithin( str, META_OPEN, META_CLOSE ) ;
@@ -1534,6 +1681,7 @@ public class GameBlocksSlice {
 			mChunksAggregated = new byte[num+1][2][R+edge*2][C+edge*2] ;
 			
 			createLooselyBoundedArrays() ;
+			createDirtyRegion() ;
 			
 			mFallDistances = new int[num+1] ;
 			mChunkIsNewToBlockField = new boolean[num+1] ;
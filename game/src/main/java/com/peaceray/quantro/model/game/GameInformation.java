@@ -593,6 +593,179 @@ public class GameInformation implements SerializableState, Serializable {
 		
 		configured = b[ind++] == 1 ;
 		
+		if ( this.level <= 0 )
+			throw new IllegalArgumentException("NON-POSITIVE LEVELS ARE NOT ALLOWED") ;
+		
+		return ind - indOrig ;
+	}	
+	
+	/**
+	 * As writeToByteArray, but packed: ints and longs are variable-length
+	 * and the two booleans share a byte.  Used by packed
+	 * ActionCycleStateDescriptor.Updates, which carry a GameInformation
+	 * every cycle; most of our counts are small, so this is typically
+	 * a third the length.
+	 * 
+	 * @param b An array of bytes, or 'null' to count them.
+	 * @param ind
+	 * @param topBounds
+	 * @return The number of bytes written.
+	 */
+	public int writePackedToByteArray( byte [] b, int ind, int topBounds ) throws IndexOutOfBoundsException {
+		int indOrig = ind ;
+		
+		if ( b != null )
+			b[ind] = (byte)( (levelLock ? 1 : 0) | (configured ? 2 : 0) ) ;
+		ind++ ;
+		
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(mode), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(firstLevel), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(firstGarbage), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(garbage), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(s0clearsSinceLevelForLevelUp), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(s1clearsSinceLevelForLevelUp), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(sLclearsSinceLevelForLevelUp), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(moclearsSinceLevelForLevelUp), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(nyclearsSinceLevelForLevelUp), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(LmclearsSinceLevelForLevelUp), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(tlclearsSinceLevelForLevelUp), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(difficulty), b, ind) ;
+		
+		if ( b != null )
+			ByteArrayOps.writeDoubleAsBytes(displacementFixedRate, b, ind) ;
+		ind += 8 ;
+		
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(level), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(numLevelChanges), b, ind) ;
+		ind += ByteArrayOps.writeVarLongAsBytes(score, b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(addition), b, ind) ;
+		
+		if ( b != null ) {
+			ByteArrayOps.writeFloatAsBytes(multiplier, b, ind) ;
+			ByteArrayOps.writeFloatAsBytes(highestMultiplier, b, ind+4) ;
+		}
+		ind += 8 ;
+		
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(s0clears), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(s1clears), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(sLclears), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(moclears), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(longestCascade), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(s0clearsSinceLevel), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(s1clearsSinceLevel), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(sLclearsSinceLevel), b, ind) ;
+		ind += ByteArrayOps.writeVarIntAsBytes(ByteArrayOps.zigZag(moclearsSinceLevel), b, ind) ;
+		ind += ByteArrayOps.writeVarLongAsBytes(milliseconds, b, ind) ;
+		
+		if ( ind > topBounds )
+			throw new IndexOutOfBoundsException("GameInformation.writePackedToByteArray wrote past the provided top bounds: wrote to from " + indOrig + " to " + ind + ", with top bounds " + topBounds) ;
+		
+		return ind - indOrig ;
+	}
+	
+	
+	/**
+	 * Reverses writePackedToByteArray.
+	 * 
+	 * @param b An array of bytes
+	 * @param ind the first index to read from.
+	 * 
+	 * @return The number of bytes read.
+	 */
+	public int readPackedFromByteArray( byte [] b, int ind ) throws IndexOutOfBoundsException {
+		int indOrig = ind ;
+		int val ;
+		
+		levelLock = (b[ind] & 1) != 0 ;
+		configured = (b[ind] & 2) != 0 ;
+		ind++ ;
+		
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		mode = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		firstLevel = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		firstGarbage = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		garbage = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		s0clearsSinceLevelForLevelUp = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		s1clearsSinceLevelForLevelUp = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		sLclearsSinceLevelForLevelUp = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		moclearsSinceLevelForLevelUp = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		nyclearsSinceLevelForLevelUp = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		LmclearsSinceLevelForLevelUp = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		tlclearsSinceLevelForLevelUp = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		difficulty = ByteArrayOps.unZigZag(val) ;
+		
+		displacementFixedRate = ByteArrayOps.readDoubleAsBytes(b, ind) ;
+		ind += 8 ;
+		
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		level = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		numLevelChanges = ByteArrayOps.unZigZag(val) ;
+		score = ByteArrayOps.readVarLongAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarLongAsBytes(score) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		addition = ByteArrayOps.unZigZag(val) ;
+		
+		multiplier = ByteArrayOps.readFloatAsBytes(b, ind) ;
+		highestMultiplier = ByteArrayOps.readFloatAsBytes(b, ind+4) ;
+		ind += 8 ;
+		
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		s0clears = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		s1clears = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		sLclears = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		moclears = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		longestCascade = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		s0clearsSinceLevel = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		s1clearsSinceLevel = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		sLclearsSinceLevel = ByteArrayOps.unZigZag(val) ;
+		val = ByteArrayOps.readVarIntAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarIntAsBytes(val) ;
+		moclearsSinceLevel = ByteArrayOps.unZigZag(val) ;
+		milliseconds = ByteArrayOps.readVarLongAsBytes(b, ind) ;
+		ind += ByteArrayOps.lengthOfVarLongAsBytes(milliseconds) ;
+		
 		if ( this.level <= 0 )
 			throw new IllegalArgumentException("NON-POSITIVE LEVELS ARE NOT ALLOWED") ;
 		
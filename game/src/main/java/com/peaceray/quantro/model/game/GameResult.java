@@ -1,7 +1,15 @@
 package com.peaceray.quantro.model.game;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.Date;
 
@@ -47,6 +55,16 @@ import com.peaceray.quantro.utils.ArrayOps;
  * VERSION 0: initial.
  * VERSION 1: Adds pieceBlockfield, pieceType.
  * 
+ * COMPACT FORMAT:
+ * 
+ * In addition to Java serialization, a GameResult can be written with writeTo()
+ * and read back with readFrom().  That format begins with a fixed Summary
+ * header -- mode, score, outcome and the like for each player -- which
+ * readSummary() can read without touching the rest.  Per-player sections
+ * (GameInformation, GameSettings, blockfields) follow, each encoded separately;
+ * a GameResult produced by readFrom() decodes each only when first accessed.
+ * Listing many results therefore costs only their headers and small fields.
+ * 
  * @author Jake
  *
  */
@@ -709,6 +727,276 @@ public class GameResult implements Serializable {
 		}
 	}
 	
+	/**
+	 * A fixed-format summary of a GameResult: the information needed to list
+	 * or rank results (mode, score, outcome, times) without any of the
+	 * per-player blockfield or settings data.  Written as the header of the
+	 * compact format; see GameResult.writeTo and GameResult.readSummary.
+	 * 
+	 * Immutable.
+	 * 
+	 * @author Jake
+	 *
+	 */
+	public static class Summary {
+		
+		// For forward-compatibility, readers skip any header bytes beyond
+		// those they understand, and new fields are only ever appended.
+		// SUMMARY_VERSION 1 appends each player's firstGarbage.
+		private static final int SUMMARY_VERSION = 1 ;
+		
+		private final int version ;
+		private final boolean terminusEst ;
+		private final int num ;
+		private final int localPlayerSlot ;
+		private final int numRewinds ;
+		private final Date dateStarted ;
+		private final Date dateEnded ;
+		private final long timeInGame ;
+		private final long timeIdle ;
+		
+		private final String [] playerName ;
+		private final int [] role ;
+		private final boolean [] won ;
+		private final boolean [] lost ;
+		private final boolean [] quit ;
+		private final long [] timeInGameTicks ;
+		
+		// from GameInformation.  -1 (0 for counts) if there was none.
+		private final int [] mode ;
+		private final int [] difficulty ;
+		private final int [] firstLevel ;
+		private final int [] level ;
+		private final long [] score ;
+		private final int [] s0clears ;
+		private final int [] s1clears ;
+		private final int [] sLclears ;
+		private final int [] moclears ;
+		private final int [] longestCascade ;
+		private final long [] milliseconds ;
+		private final int [] firstGarbage ;
+		
+		private Summary( GameResult gr ) {
+			gr.decodeAllPlayers() ;
+			version = VERSION ;
+			terminusEst = gr.terminusEst ;
+			num = Math.max(0, gr.num) ;
+			localPlayerSlot = gr.localPlayerSlot ;
+			numRewinds = gr.numRewinds ;
+			dateStarted = gr.dateStarted ;
+			dateEnded = gr.dateEnded ;
+			timeInGame = gr.timeInGame ;
+			timeIdle = gr.timeIdle ;
+			
+			playerName = new String[num] ;
+			role = new int[num] ;
+			won = new boolean[num] ;
+			lost = new boolean[num] ;
+			quit = new boolean[num] ;
+			timeInGameTicks = new long[num] ;
+			mode = new int[num] ;
+			difficulty = new int[num] ;
+			firstLevel = new int[num] ;
+			level = new int[num] ;
+			score = new long[num] ;
+			s0clears = new int[num] ;
+			s1clears = new int[num] ;
+			sLclears = new int[num] ;
+			moclears = new int[num] ;
+			longestCascade = new int[num] ;
+			milliseconds = new long[num] ;
+			firstGarbage = new int[num] ;
+			for ( int i = 0; i < num; i++ ) {
+				playerName[i] = gr.getName(i) ;
+				role[i] = gr.role == null ? ROLE_NONE : gr.role[i] ;
+				won[i] = gr.getWon(i) ;
+				lost[i] = gr.getLost(i) ;
+				quit[i] = gr.getQuit(i) ;
+				timeInGameTicks[i] = gr.timeInGameTicks == null ? 0 : gr.timeInGameTicks[i] ;
+				GameInformation gi = gr.ginfo == null ? null : gr.ginfo[i] ;
+				if ( gi == null ) {
+					mode[i] = difficulty[i] = firstLevel[i] = level[i] = -1 ;
+				} else {
+					mode[i] = gi.mode ;
+					difficulty[i] = gi.difficulty ;
+					firstLevel[i] = gi.firstLevel ;
+					level[i] = gi.level ;
+					score[i] = gi.score ;
+					s0clears[i] = gi.s0clears ;
+					s1clears[i] = gi.s1clears ;
+					sLclears[i] = gi.sLclears ;
+					moclears[i] = gi.moclears ;
+					longestCascade[i] = gi.longestCascade ;
+					milliseconds[i] = gi.milliseconds ;
+					firstGarbage[i] = gi.firstGarbage ;
+				}
+			}
+		}
+		
+		private Summary( DataInputStream dis ) throws IOException {
+			int summaryVersion = dis.readInt() ;	// all versions begin the same way.
+			version = dis.readInt() ;
+			terminusEst = dis.readBoolean() ;
+			num = dis.readInt() ;
+			if ( num < 0 || num > 1024 )
+				throw new IOException("Implausible number of players " + num) ;
+			localPlayerSlot = dis.readInt() ;
+			numRewinds = dis.readInt() ;
+			dateStarted = readDate( dis ) ;
+			dateEnded = readDate( dis ) ;
+			timeInGame = dis.readLong() ;
+			timeIdle = dis.readLong() ;
+			
+			playerName = new String[num] ;
+			role = new int[num] ;
+			won = new boolean[num] ;
+			lost = new boolean[num] ;
+			quit = new boolean[num] ;
+			timeInGameTicks = new long[num] ;
+			mode = new int[num] ;
+			difficulty = new int[num] ;
+			firstLevel = new int[num] ;
+			level = new int[num] ;
+			score = new long[num] ;
+			s0clears = new int[num] ;
+			s1clears = new int[num] ;
+			sLclears = new int[num] ;
+			moclears = new int[num] ;
+			longestCascade = new int[num] ;
+			milliseconds = new long[num] ;
+			firstGarbage = new int[num] ;
+			for ( int i = 0; i < num; i++ ) {
+				playerName[i] = dis.readBoolean() ? dis.readUTF() : null ;
+				role[i] = dis.readInt() ;
+				won[i] = dis.readBoolean() ;
+				lost[i] = dis.readBoolean() ;
+				quit[i] = dis.readBoolean() ;
+				timeInGameTicks[i] = dis.readLong() ;
+				mode[i] = dis.readInt() ;
+				difficulty[i] = dis.readInt() ;
+				firstLevel[i] = dis.readInt() ;
+				level[i] = dis.readInt() ;
+				score[i] = dis.readLong() ;
+				s0clears[i] = dis.readInt() ;
+				s1clears[i] = dis.readInt() ;
+				sLclears[i] = dis.readInt() ;
+				moclears[i] = dis.readInt() ;
+				longestCascade[i] = dis.readInt() ;
+				milliseconds[i] = dis.readLong() ;
+			}
+			if ( summaryVersion >= 1 ) {
+				for ( int i = 0; i < num; i++ )
+					firstGarbage[i] = dis.readInt() ;
+			}
+		}
+		
+		/**
+		 * Reads a Summary written by write().  Package-private for
+		 * GameResultArchive.
+		 */
+		static Summary read( DataInputStream dis ) throws IOException {
+			return new Summary( dis ) ;
+		}
+		
+		/**
+		 * Writes this Summary in the format of the compact header.  Package-private
+		 * for GameResultArchive.
+		 */
+		void write( DataOutputStream dos ) throws IOException {
+			dos.writeInt( SUMMARY_VERSION ) ;
+			dos.writeInt( version ) ;
+			dos.writeBoolean( terminusEst ) ;
+			dos.writeInt( num ) ;
+			dos.writeInt( localPlayerSlot ) ;
+			dos.writeInt( numRewinds ) ;
+			writeDate( dos, dateStarted ) ;
+			writeDate( dos, dateEnded ) ;
+			dos.writeLong( timeInGame ) ;
+			dos.writeLong( timeIdle ) ;
+			for ( int i = 0; i < num; i++ ) {
+				dos.writeBoolean( playerName[i] != null ) ;
+				if ( playerName[i] != null )
+					dos.writeUTF( playerName[i] ) ;
+				dos.writeInt( role[i] ) ;
+				dos.writeBoolean( won[i] ) ;
+				dos.writeBoolean( lost[i] ) ;
+				dos.writeBoolean( quit[i] ) ;
+				dos.writeLong( timeInGameTicks[i] ) ;
+				dos.writeInt( mode[i] ) ;
+				dos.writeInt( difficulty[i] ) ;
+				dos.writeInt( firstLevel[i] ) ;
+				dos.writeInt( level[i] ) ;
+				dos.writeLong( score[i] ) ;
+				dos.writeInt( s0clears[i] ) ;
+				dos.writeInt( s1clears[i] ) ;
+				dos.writeInt( sLclears[i] ) ;
+				dos.writeInt( moclears[i] ) ;
+				dos.writeInt( longestCascade[i] ) ;
+				dos.writeLong( milliseconds[i] ) ;
+			}
+			for ( int i = 0; i < num; i++ )
+				dos.writeInt( firstGarbage[i] ) ;
+		}
+		
+		private static void writeDate( DataOutputStream dos, Date date ) throws IOException {
+			dos.writeBoolean( date != null ) ;
+			dos.writeLong( date == null ? 0 : date.getTime() ) ;
+		}
+		
+		private static Date readDate( DataInputStream dis ) throws IOException {
+			boolean has = dis.readBoolean() ;
+			long time = dis.readLong() ;
+			return has ? new Date(time) : null ;
+		}
+		
+		/**
+		 * The GameResult VERSION of the result summarized.
+		 * @return
+		 */
+		public int getVersion() { return version ; }
+		public boolean getTerminated() { return terminusEst ; }
+		public int getNumberOfPlayers() { return num ; }
+		public int getLocalPlayerSlot() { return localPlayerSlot ; }
+		public int getNumRewinds() { return numRewinds ; }
+		public Date getDateStarted() { return dateStarted == null ? null : (Date)dateStarted.clone() ; }
+		public Date getDateEnded() { return dateEnded == null ? null : (Date)dateEnded.clone() ; }
+		public long getTimeInGame() { return timeInGame ; }
+		public long getTimeIdle() { return timeIdle ; }
+		
+		public String getName( int playerSlot ) { return playerName[playerSlot] ; }
+		public int getRole( int playerSlot ) { return role[playerSlot] ; }
+		public boolean getWon( int playerSlot ) { return won[playerSlot] ; }
+		public boolean getLost( int playerSlot ) { return lost[playerSlot] ; }
+		public boolean getQuit( int playerSlot ) { return quit[playerSlot] ; }
+		public long getTimeInGameTicks( int playerSlot ) { return timeInGameTicks[playerSlot] ; }
+		
+		/**
+		 * The game mode played in the given slot, or -1 if the result had
+		 * no GameInformation for it.
+		 * @param playerSlot
+		 * @return
+		 */
+		public int getMode( int playerSlot ) { return mode[playerSlot] ; }
+		public int getDifficulty( int playerSlot ) { return difficulty[playerSlot] ; }
+		public int getFirstLevel( int playerSlot ) { return firstLevel[playerSlot] ; }
+		public int getLevel( int playerSlot ) { return level[playerSlot] ; }
+		public long getScore( int playerSlot ) { return score[playerSlot] ; }
+		public int getS0Clears( int playerSlot ) { return s0clears[playerSlot] ; }
+		public int getS1Clears( int playerSlot ) { return s1clears[playerSlot] ; }
+		public int getSLClears( int playerSlot ) { return sLclears[playerSlot] ; }
+		public int getMOClears( int playerSlot ) { return moclears[playerSlot] ; }
+		public int getLongestCascade( int playerSlot ) { return longestCascade[playerSlot] ; }
+		
+		/**
+		 * In-game time, as recorded by GameInformation.
+		 * @param playerSlot
+		 * @return
+		 */
+		public long getMilliseconds( int playerSlot ) { return milliseconds[playerSlot] ; }
+		public int getFirstGarbage( int playerSlot ) { return firstGarbage[playerSlot] ; }
+	}
+	
+	
 	public static final int VERSION = 3 ;
 	// VERSION 1 adds "pieceBlockfield", for holding the falling piece (if any).
 	// VERSION 2 adds "gamesettings", for holding the settings with which the game was constructed.
@@ -781,6 +1069,15 @@ public class GameResult implements Serializable {
 	// rewinds performed over the course of the game.
 	private int numRewinds ;
 	
+	// Set by readFrom(): the still-encoded per-player sections (ginfo,
+	// gamesettings, blockfields, piece type).  encodedPlayer[i] is non-null
+	// until player i is decoded, at which point it is discarded.  Every
+	// access to those fields must go through decodePlayer / decodeAllPlayers.
+	private transient byte [][] encodedPlayer ;
+	// Also set by readFrom(), which is the only way to produce a GameResult
+	// that is never modified afterwards.
+	private transient Summary summaryAsRead ;
+	
 	private GameResult() {
 		terminusEst = false ;
 		
@@ -830,6 +1127,7 @@ public class GameResult implements Serializable {
 	
 	
 	private GameResult( GameResult orig ) {
+		orig.decodeAllPlayers() ;
 		terminusEst = orig.terminusEst ;
 		
 		num = orig.num ;
@@ -981,24 +1279,28 @@ public class GameResult implements Serializable {
 	}
 	
 	public GameSettings getGameSettings( int player ) {
+		decodePlayer( player ) ;
 		if ( gamesettings == null || player < 0 || gamesettings.length <= player || gamesettings[player] == null )
 			return null ;
 		return new GameSettings( gamesettings[player] ) ;
 	}
 	
 	public GameSettings getGameSettingsImmutable( int player ) {
+		 decodePlayer( player ) ;
 		 if ( gamesettings == null || player < 0 || gamesettings.length <= player )
 			 return null ;
 		 return gamesettings[player] ;
 	}
 	
 	public GameInformation getGameInformation( int player ) {
+		decodePlayer( player ) ;
 		if ( ginfo == null || player < 0 || ginfo.length <= player || ginfo[player] == null )
 			return null ;
 		return new GameInformation().finalizeConfiguration().takeVals(ginfo[player]) ;
 	}
 	
 	public GameInformation getGameInformationImmutable ( int player ) {
+		decodePlayer( player ) ;
 		if ( ginfo == null || ginfo[player] == null )
 			return null ;
 		return ginfo[player] ;
@@ -1013,18 +1315,21 @@ public class GameResult implements Serializable {
 	}
 	
 	public byte [][][] getBlockFieldReference( int playerSlot ) {
+		decodePlayer( playerSlot ) ;
 		if ( blockfield == null || playerSlot < 0 || playerSlot >= blockfield.length )
 			return null ;
 		return blockfield[playerSlot] ;
 	}
 	
 	public byte [][][] getPieceBlockFieldReference( int playerSlot ) {
+		decodePlayer( playerSlot ) ;
 		if ( pieceBlockfield == null || playerSlot < 0 || playerSlot >= pieceBlockfield.length )
 			return null ;
 		return pieceBlockfield[playerSlot] ;
 	}
 	
 	public int getPieceType( int playerSlot ) {
+		decodePlayer( playerSlot ) ;
 		if ( pieceType == null || playerSlot < 0 || playerSlot >= pieceType.length )
 			return -1 ;
 		return pieceType[playerSlot] ;
@@ -1035,6 +1340,7 @@ public class GameResult implements Serializable {
 	}
 	
 	public int getRows( int playerSlot ) {
+		decodePlayer( playerSlot ) ;
 		if ( blockfield == null )
 			return 0 ;
 		if ( playerSlot < 0 || playerSlot >= blockfield.length )
@@ -1047,6 +1353,7 @@ public class GameResult implements Serializable {
 	}
 	
 	public int getCols( int playerSlot ) {
+		decodePlayer( playerSlot ) ;
 		if ( blockfield == null )
 			return 0 ;
 		if ( playerSlot < 0 || playerSlot >= blockfield.length )
@@ -1155,6 +1462,260 @@ public class GameResult implements Serializable {
 	}
 	
 	
+	/**
+	 * Returns a Summary of this result.
+	 * @return
+	 */
+	public Summary getSummary() {
+		Summary summary = summaryAsRead ;
+		if ( summary != null )
+			return summary ;
+		return new Summary( this ) ;
+	}
+	
+	
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// COMPACT FORMAT
+	//
+	// An alternative to Java serialization which puts a fixed Summary at the
+	// front, and encodes each player's large data separately so it can be
+	// decoded on demand.
+	//
+	//		int		FORMAT_MAGIC
+	//		int		FORMAT_VERSION
+	//		int		summary length, then the Summary
+	//		int		common length, then the common section: Java-serialized
+	//						nonce, personal nonces, wait/pause times, and a
+	//						bitmask of which per-player arrays were allocated.
+	//		int		number of player sections
+	//		for each: int length, then the player section: Java-serialized
+	//						ginfo, gamesettings, blockfield, pieceBlockfield, pieceType.
+	//
+	// Names, roles, outcomes and times are stored only in the Summary.
+	//
+	////////////////////////////////////////////////////////////////////////////
+	
+	private static final int FORMAT_MAGIC = 0x51475253 ;		// "QGRS"
+	private static final int FORMAT_VERSION = 0 ;
+	
+	private static final int ALLOCATED_GINFO = 0x1 ;
+	private static final int ALLOCATED_GAMESETTINGS = 0x2 ;
+	private static final int ALLOCATED_BLOCKFIELD = 0x4 ;
+	private static final int ALLOCATED_PIECE_BLOCKFIELD = 0x8 ;
+	private static final int ALLOCATED_PIECE_TYPE = 0x10 ;
+	private static final int ALLOCATED_NAMES = 0x20 ;
+	private static final int ALLOCATED_OUTCOMES = 0x40 ;
+	private static final int ALLOCATED_ROLES = 0x80 ;
+	private static final int ALLOCATED_TICKS = 0x100 ;
+	
+	
+	/**
+	 * Writes this GameResult to the provided stream in the compact format.
+	 * The stream is not closed.
+	 * 
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeTo( OutputStream out ) throws IOException {
+		decodeAllPlayers() ;
+		DataOutputStream dos = new DataOutputStream( out ) ;
+		dos.writeInt( FORMAT_MAGIC ) ;
+		dos.writeInt( FORMAT_VERSION ) ;
+		
+		ByteArrayOutputStream baos = new ByteArrayOutputStream() ;
+		DataOutputStream sectionDOS = new DataOutputStream( baos ) ;
+		getSummary().write( sectionDOS ) ;
+		sectionDOS.flush() ;
+		dos.writeInt( baos.size() ) ;
+		baos.writeTo( dos ) ;
+		
+		int allocated = 0 ;
+		if ( ginfo != null ) allocated |= ALLOCATED_GINFO ;
+		if ( gamesettings != null ) allocated |= ALLOCATED_GAMESETTINGS ;
+		if ( blockfield != null ) allocated |= ALLOCATED_BLOCKFIELD ;
+		if ( pieceBlockfield != null ) allocated |= ALLOCATED_PIECE_BLOCKFIELD ;
+		if ( pieceType != null ) allocated |= ALLOCATED_PIECE_TYPE ;
+		if ( playerName != null ) allocated |= ALLOCATED_NAMES ;
+		if ( won != null ) allocated |= ALLOCATED_OUTCOMES ;
+		if ( role != null ) allocated |= ALLOCATED_ROLES ;
+		if ( timeInGameTicks != null ) allocated |= ALLOCATED_TICKS ;
+		
+		baos.reset() ;
+		ObjectOutputStream oos = new ObjectOutputStream( baos ) ;
+		oos.writeInt( num ) ;
+		oos.writeInt( allocated ) ;
+		oos.writeObject( nonce ) ;
+		oos.writeObject( personalNonce ) ;
+		oos.writeObject( timeWaitedFor ) ;
+		oos.writeObject( timePausedBy ) ;
+		oos.close() ;
+		dos.writeInt( baos.size() ) ;
+		baos.writeTo( dos ) ;
+		
+		int numSections = Math.max(0, num) ;
+		dos.writeInt( numSections ) ;
+		for ( int i = 0; i < numSections; i++ ) {
+			baos.reset() ;
+			oos = new ObjectOutputStream( baos ) ;
+			oos.writeObject( ginfo == null ? null : ginfo[i] ) ;
+			oos.writeObject( gamesettings == null ? null : gamesettings[i] ) ;
+			oos.writeObject( blockfield == null ? null : blockfield[i] ) ;
+			oos.writeObject( pieceBlockfield == null ? null : pieceBlockfield[i] ) ;
+			oos.writeInt( pieceType == null ? -1 : pieceType[i] ) ;
+			oos.close() ;
+			dos.writeInt( baos.size() ) ;
+			baos.writeTo( dos ) ;
+		}
+		dos.flush() ;
+	}
+	
+	
+	/**
+	 * Reads only the Summary from a stream positioned at the start of a
+	 * GameResult written by writeTo().  The rest of the stream is left unread.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException If the stream does not hold a compact GameResult.
+	 */
+	public static Summary readSummary( InputStream in ) throws IOException {
+		DataInputStream dis = new DataInputStream( in ) ;
+		readFormatHeader( dis ) ;
+		return new Summary( new DataInputStream( new ByteArrayInputStream( readSection( dis ) ) ) ) ;
+	}
+	
+	
+	/**
+	 * Reads a GameResult written by writeTo().  Per-player data is held
+	 * encoded and decoded on first access.  The stream is not closed.
+	 * 
+	 * @param in
+	 * @return
+	 * @throws IOException If the stream does not hold a compact GameResult.
+	 */
+	public static GameResult readFrom( InputStream in ) throws IOException {
+		DataInputStream dis = new DataInputStream( in ) ;
+		readFormatHeader( dis ) ;
+		Summary summary = new Summary( new DataInputStream( new ByteArrayInputStream( readSection( dis ) ) ) ) ;
+		
+		GameResult gr = new GameResult() ;
+		int allocated ;
+		try {
+			ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( readSection( dis ) ) ) ;
+			gr.num = ois.readInt() ;
+			allocated = ois.readInt() ;
+			gr.nonce = (Nonce)ois.readObject() ;
+			gr.personalNonce = (Nonce[])ois.readObject() ;
+			gr.timeWaitedFor = (long[])ois.readObject() ;
+			gr.timePausedBy = (long[])ois.readObject() ;
+			ois.close() ;
+		} catch ( ClassNotFoundException e ) {
+			throw new IOException("Bad common section: " + e) ;
+		}
+		
+		int n = summary.num ;
+		if ( Math.max(0, gr.num) != n )
+			throw new IOException("Summary has " + n + " players, body has " + gr.num) ;
+		
+		gr.terminusEst = summary.terminusEst ;
+		gr.localPlayerSlot = summary.localPlayerSlot ;
+		gr.numRewinds = summary.numRewinds ;
+		gr.dateStarted = summary.dateStarted ;
+		gr.dateEnded = summary.dateEnded ;
+		gr.timeInGame = summary.timeInGame ;
+		gr.timeIdle = summary.timeIdle ;
+		if ( ( allocated & ALLOCATED_NAMES ) != 0 )
+			gr.playerName = summary.playerName.clone() ;
+		if ( ( allocated & ALLOCATED_OUTCOMES ) != 0 ) {
+			gr.won = summary.won.clone() ;
+			gr.lost = summary.lost.clone() ;
+			gr.quit = summary.quit.clone() ;
+		}
+		if ( ( allocated & ALLOCATED_ROLES ) != 0 )
+			gr.role = summary.role.clone() ;
+		if ( ( allocated & ALLOCATED_TICKS ) != 0 )
+			gr.timeInGameTicks = summary.timeInGameTicks.clone() ;
+		
+		// per-player arrays are allocated now and filled on decode.
+		if ( ( allocated & ALLOCATED_GINFO ) != 0 ) gr.ginfo = new GameInformation[n] ;
+		if ( ( allocated & ALLOCATED_GAMESETTINGS ) != 0 ) gr.gamesettings = new GameSettings[n] ;
+		if ( ( allocated & ALLOCATED_BLOCKFIELD ) != 0 ) gr.blockfield = new byte[n][][][] ;
+		if ( ( allocated & ALLOCATED_PIECE_BLOCKFIELD ) != 0 ) gr.pieceBlockfield = new byte[n][][][] ;
+		if ( ( allocated & ALLOCATED_PIECE_TYPE ) != 0 ) gr.pieceType = new int[n] ;
+		
+		int numSections = dis.readInt() ;
+		if ( numSections != n )
+			throw new IOException("Expected " + n + " player sections, found " + numSections) ;
+		gr.encodedPlayer = new byte[n][] ;
+		for ( int i = 0; i < n; i++ )
+			gr.encodedPlayer[i] = readSection( dis ) ;
+		gr.summaryAsRead = summary ;
+		
+		return gr ;
+	}
+	
+	
+	private static void readFormatHeader( DataInputStream dis ) throws IOException {
+		if ( dis.readInt() != FORMAT_MAGIC )
+			throw new IOException("Not a compact GameResult") ;
+		int formatVersion = dis.readInt() ;
+		if ( formatVersion > FORMAT_VERSION )
+			throw new IOException("Compact GameResult format " + formatVersion + " is newer than " + FORMAT_VERSION) ;
+	}
+	
+	private static byte [] readSection( DataInputStream dis ) throws IOException {
+		int len = dis.readInt() ;
+		if ( len < 0 )
+			throw new IOException("Negative section length") ;
+		byte [] b = new byte[len] ;
+		dis.readFully( b ) ;
+		return b ;
+	}
+	
+	
+	/**
+	 * Decodes the specified player's section, if still encoded.  Out-of-range
+	 * slots are ignored (accessors handle those themselves).
+	 * @param playerSlot
+	 */
+	private synchronized void decodePlayer( int playerSlot ) {
+		if ( encodedPlayer == null || playerSlot < 0 || playerSlot >= encodedPlayer.length )
+			return ;
+		byte [] b = encodedPlayer[playerSlot] ;
+		if ( b == null )
+			return ;
+		encodedPlayer[playerSlot] = null ;
+		
+		try {
+			ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( b ) ) ;
+			GameInformation gi = (GameInformation)ois.readObject() ;
+			GameSettings gs = (GameSettings)ois.readObject() ;
+			byte [][][] bf = (byte [][][])ois.readObject() ;
+			byte [][][] pbf = (byte [][][])ois.readObject() ;
+			int pt = ois.readInt() ;
+			ois.close() ;
+			
+			if ( ginfo != null ) ginfo[playerSlot] = gi ;
+			if ( gamesettings != null ) gamesettings[playerSlot] = gs ;
+			if ( blockfield != null ) blockfield[playerSlot] = bf ;
+			if ( pieceBlockfield != null ) pieceBlockfield[playerSlot] = pbf ;
+			if ( pieceType != null ) pieceType[playerSlot] = pt ;
+		} catch ( Exception e ) {
+			// leave this player's data empty, as if never set.
+			e.printStackTrace() ;
+		}
+	}
+	
+	private synchronized void decodeAllPlayers() {
+		if ( encodedPlayer == null )
+			return ;
+		for ( int i = 0; i < encodedPlayer.length; i++ )
+			decodePlayer( i ) ;
+		encodedPlayer = null ;
+	}
+	
+	
 	////////////////////////////////////////////////////////////////
 	//
 	// SERIALIZABLE 
@@ -1166,6 +1727,8 @@ public class GameResult implements Serializable {
 	
 	
 	private void writeObject(java.io.ObjectOutputStream stream) throws IOException {
+		decodeAllPlayers() ;
+		
 		// write version
 		stream.writeInt(VERSION) ;
 		
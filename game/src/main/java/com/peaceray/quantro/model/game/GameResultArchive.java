@@ -0,0 +1,761 @@
+package com.peaceray.quantro.model.game;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.PriorityQueue;
+
+
+/**
+ * An append-only archive of GameResult summaries, intended for keeping
+ * years of results (e.g. server-side) and answering aggregate queries --
+ * best score, win rate, clears by type, time played -- without loading or
+ * materializing every record.
+ *
+ * The archive is a directory of fixed-capacity segments.  Each segment is
+ * a pair of files:
+ *
+ * 		segment_NNNNNN.cols		Columns.  A header, then one contiguous
+ * 								region per column, each with room for
+ * 								SEGMENT_CAPACITY fixed-width values.
+ * 		segment_NNNNNN.sums		The encoded GameResult.Summary of each
+ * 								result, referenced by offset from the
+ * 								.cols file.
+ *
+ * Each archived result contributes one row per player slot.  Appending
+ * writes the new values into each column region, then rewrites the
+ * header with the new row count; a crash before the header is written
+ * leaves the segment as it was.  Rows are never modified once written.
+ *
+ * Queries read only the column regions they need, and skip segments
+ * entirely using the per-segment indexes kept in each header: the range
+ * of dates, and the set of game modes present.  Only query results that
+ * are explicitly requested (e.g. via readSummary) are materialized.
+ *
+ * Thread-safe.
+ *
+ * @author Jake
+ *
+ */
+public class GameResultArchive {
+
+	private static final String SEGMENT_PREFIX = "segment_" ;
+	private static final String COLUMNS_SUFFIX = ".cols" ;
+	private static final String SUMMARIES_SUFFIX = ".sums" ;
+
+	private static final int SEGMENT_MAGIC = 0x51524153 ;		// "QRAS"
+	private static final int SEGMENT_VERSION = 0 ;
+
+	public static final int SEGMENT_CAPACITY = 4096 ;
+
+	// The per-segment mode index holds up to this many distinct modes; a
+	// segment with more is treated as containing every mode.
+	private static final int MAX_INDEXED_MODES = 48 ;
+
+	// Header: magic, version, capacity, count, minDate, maxDate, numModes, modes.
+	private static final int HEADER_LENGTH = 256 ;
+
+	///////////////////////////////////////////////////////////////////////////
+	// COLUMNS
+
+	private static final int COL_RESULT_ID = 0 ;		// long
+	private static final int COL_DATE = 1 ;				// long: date ended, or started if never ended
+	private static final int COL_SLOT = 2 ;				// byte
+	private static final int COL_FLAGS = 3 ;			// byte: FLAG_*
+	private static final int COL_MODE = 4 ;				// int
+	private static final int COL_DIFFICULTY = 5 ;		// int
+	private static final int COL_LEVEL = 6 ;			// int
+	private static final int COL_SCORE = 7 ;			// long
+	private static final int COL_S0_CLEARS = 8 ;		// int
+	private static final int COL_S1_CLEARS = 9 ;		// int
+	private static final int COL_SL_CLEARS = 10 ;		// int
+	private static final int COL_MO_CLEARS = 11 ;		// int
+	private static final int COL_LONGEST_CASCADE = 12 ;	// int
+	private static final int COL_TIME = 13 ;			// long: milliseconds in game
+	private static final int COL_SUMMARY_OFFSET = 14 ;	// long
+	private static final int COL_SUMMARY_LENGTH = 15 ;	// int
+	private static final int NUM_COLUMNS = 16 ;
+
+	private static final int [] COLUMN_WIDTH = new int[] {
+		8, 8, 1, 1, 4, 4, 4, 8, 4, 4, 4, 4, 4, 8, 8, 4
+	} ;
+
+	private static final long [] COLUMN_OFFSET = new long[NUM_COLUMNS] ;
+	private static final long SEGMENT_LENGTH ;
+	static {
+		long offset = HEADER_LENGTH ;
+		for ( int i = 0; i < NUM_COLUMNS; i++ ) {
+			COLUMN_OFFSET[i] = offset ;
+			offset += (long)COLUMN_WIDTH[i] * SEGMENT_CAPACITY ;
+		}
+		SEGMENT_LENGTH = offset ;
+	}
+
+	public static final int FLAG_WON = 0x1 ;
+	public static final int FLAG_LOST = 0x2 ;
+	public static final int FLAG_QUIT = 0x4 ;
+	public static final int FLAG_TERMINATED = 0x8 ;
+	public static final int FLAG_LOCAL = 0x10 ;
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// QUERIES
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Selects archive rows.  By default, selects every row; each setter
+	 * narrows the selection.
+	 *
+	 * @author Jake
+	 *
+	 */
+	public static class Query {
+		private boolean mAnyMode = true ;
+		private int mMode ;
+		private long mFrom = Long.MIN_VALUE ;
+		private long mTo = Long.MAX_VALUE ;
+		private int mRequiredFlags = 0 ;
+
+		/**
+		 * Only rows for this game mode.
+		 */
+		public Query mode( int mode ) {
+			mAnyMode = false ;
+			mMode = mode ;
+			return this ;
+		}
+
+		/**
+		 * Only rows dated within [from, to).  Either may be null for
+		 * an open range.
+		 */
+		public Query between( Date from, Date to ) {
+			mFrom = from == null ? Long.MIN_VALUE : from.getTime() ;
+			mTo = to == null ? Long.MAX_VALUE : to.getTime() ;
+			return this ;
+		}
+
+		/**
+		 * Only rows for the local player of each result.
+		 */
+		public Query localOnly() {
+			mRequiredFlags |= FLAG_LOCAL ;
+			return this ;
+		}
+
+		/**
+		 * Only rows for results which were terminated (i.e., complete games).
+		 */
+		public Query terminatedOnly() {
+			mRequiredFlags |= FLAG_TERMINATED ;
+			return this ;
+		}
+
+		private boolean matches( int mode, long date, int flags ) {
+			return ( mAnyMode || mode == mMode )
+					&& date >= mFrom && date < mTo
+					&& ( flags & mRequiredFlags ) == mRequiredFlags ;
+		}
+	}
+
+
+	/**
+	 * Aggregate statistics over the rows selected by a Query.
+	 *
+	 * @author Jake
+	 *
+	 */
+	public static class Aggregate {
+		private long mRows ;
+		private long mWins ;
+		private long mLosses ;
+		private long mQuits ;
+		private long mBestScore = Long.MIN_VALUE ;
+		private long mBestScoreResultId = -1 ;
+		private long mTotalScore ;
+		private long mS0Clears ;
+		private long mS1Clears ;
+		private long mSLClears ;
+		private long mMOClears ;
+		private int mLongestCascade ;
+		private long mTimePlayed ;
+
+		public long getRows() { return mRows ; }
+		public long getWins() { return mWins ; }
+		public long getLosses() { return mLosses ; }
+		public long getQuits() { return mQuits ; }
+
+		/**
+		 * Wins as a fraction of rows; 0 if there are none.
+		 */
+		public double getWinRate() { return mRows == 0 ? 0 : ((double)mWins) / mRows ; }
+
+		/**
+		 * The highest score, or Long.MIN_VALUE if there are no rows.
+		 */
+		public long getBestScore() { return mBestScore ; }
+
+		/**
+		 * The result ID of the row with the best score, or -1.
+		 */
+		public long getBestScoreResultId() { return mBestScoreResultId ; }
+		public long getTotalScore() { return mTotalScore ; }
+		public long getS0Clears() { return mS0Clears ; }
+		public long getS1Clears() { return mS1Clears ; }
+		public long getSLClears() { return mSLClears ; }
+		public long getMOClears() { return mMOClears ; }
+		public int getLongestCascade() { return mLongestCascade ; }
+
+		/**
+		 * Total in-game milliseconds.
+		 */
+		public long getTimePlayed() { return mTimePlayed ; }
+	}
+
+
+	/**
+	 * A single archive row, as returned by best().  Holds only a few column
+	 * values; see readSummary for the rest.
+	 *
+	 * @author Jake
+	 *
+	 */
+	public static class Row {
+		private final int mSegment ;
+		private final int mIndex ;
+		private final long mResultId ;
+		private final int mPlayerSlot ;
+		private final long mDate ;
+		private final int mMode ;
+		private final long mScore ;
+
+		private Row( int segment, int index, long resultId, int slot, long date, int mode, long score ) {
+			mSegment = segment ;
+			mIndex = index ;
+			mResultId = resultId ;
+			mPlayerSlot = slot ;
+			mDate = date ;
+			mMode = mode ;
+			mScore = score ;
+		}
+
+		public long getResultId() { return mResultId ; }
+		public int getPlayerSlot() { return mPlayerSlot ; }
+		public Date getDate() { return new Date(mDate) ; }
+		public int getMode() { return mMode ; }
+		public long getScore() { return mScore ; }
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// SEGMENTS
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	private static class Segment {
+		final int mNumber ;
+		final RandomAccessFile mColumns ;
+		final RandomAccessFile mSummaries ;
+
+		int mCount ;
+		long mMinDate = Long.MAX_VALUE ;
+		long mMaxDate = Long.MIN_VALUE ;
+		int mNumModes ;					// -1 if overflowed
+		int [] mModes = new int[MAX_INDEXED_MODES] ;
+		long mSummariesLength ;
+
+		Segment( int number, RandomAccessFile columns, RandomAccessFile summaries ) {
+			mNumber = number ;
+			mColumns = columns ;
+			mSummaries = summaries ;
+		}
+
+		boolean isFull() {
+			return mCount >= SEGMENT_CAPACITY ;
+		}
+
+		boolean mayContain( Query q ) {
+			if ( mCount == 0 || mMaxDate < q.mFrom || mMinDate >= q.mTo )
+				return false ;
+			if ( q.mAnyMode || mNumModes < 0 )
+				return true ;
+			for ( int i = 0; i < mNumModes; i++ )
+				if ( mModes[i] == q.mMode )
+					return true ;
+			return false ;
+		}
+
+		void indexRow( int mode, long date ) {
+			mMinDate = Math.min( mMinDate, date ) ;
+			mMaxDate = Math.max( mMaxDate, date ) ;
+			if ( mNumModes < 0 )
+				return ;
+			for ( int i = 0; i < mNumModes; i++ )
+				if ( mModes[i] == mode )
+					return ;
+			if ( mNumModes == MAX_INDEXED_MODES )
+				mNumModes = -1 ;
+			else
+				mModes[mNumModes++] = mode ;
+		}
+
+		void writeHeader() throws IOException {
+			ByteBuffer bb = ByteBuffer.allocate( HEADER_LENGTH ) ;
+			bb.putInt( SEGMENT_MAGIC ) ;
+			bb.putInt( SEGMENT_VERSION ) ;
+			bb.putInt( SEGMENT_CAPACITY ) ;
+			bb.putInt( mCount ) ;
+			bb.putLong( mMinDate ) ;
+			bb.putLong( mMaxDate ) ;
+			bb.putInt( mNumModes ) ;
+			for ( int i = 0; i < MAX_INDEXED_MODES; i++ )
+				bb.putInt( mModes[i] ) ;
+			mColumns.seek( 0 ) ;
+			mColumns.write( bb.array() ) ;
+		}
+
+		void readHeader() throws IOException {
+			byte [] b = new byte[HEADER_LENGTH] ;
+			mColumns.seek( 0 ) ;
+			mColumns.readFully( b ) ;
+			ByteBuffer bb = ByteBuffer.wrap( b ) ;
+			if ( bb.getInt() != SEGMENT_MAGIC )
+				throw new IOException("Segment " + mNumber + " is not an archive segment") ;
+			if ( bb.getInt() > SEGMENT_VERSION )
+				throw new IOException("Segment " + mNumber + " is from a newer version") ;
+			if ( bb.getInt() != SEGMENT_CAPACITY )
+				throw new IOException("Segment " + mNumber + " has the wrong capacity") ;
+			mCount = bb.getInt() ;
+			mMinDate = bb.getLong() ;
+			mMaxDate = bb.getLong() ;
+			mNumModes = bb.getInt() ;
+			for ( int i = 0; i < MAX_INDEXED_MODES; i++ )
+				mModes[i] = bb.getInt() ;
+			if ( mCount < 0 || mCount > SEGMENT_CAPACITY || mNumModes > MAX_INDEXED_MODES )
+				throw new IOException("Segment " + mNumber + " has a corrupt header") ;
+		}
+
+		/**
+		 * Reads the first mCount values of the specified column.
+		 */
+		ByteBuffer readColumn( int column ) throws IOException {
+			byte [] b = new byte[mCount * COLUMN_WIDTH[column]] ;
+			mColumns.seek( COLUMN_OFFSET[column] ) ;
+			mColumns.readFully( b ) ;
+			return ByteBuffer.wrap( b ) ;
+		}
+
+		void writeValue( int column, int row, long value ) throws IOException {
+			mColumns.seek( COLUMN_OFFSET[column] + (long)row * COLUMN_WIDTH[column] ) ;
+			switch ( COLUMN_WIDTH[column] ) {
+			case 1:
+				mColumns.writeByte( (int)value ) ;
+				break ;
+			case 4:
+				mColumns.writeInt( (int)value ) ;
+				break ;
+			case 8:
+				mColumns.writeLong( value ) ;
+				break ;
+			}
+		}
+
+		long readValue( int column, int row ) throws IOException {
+			mColumns.seek( COLUMN_OFFSET[column] + (long)row * COLUMN_WIDTH[column] ) ;
+			switch ( COLUMN_WIDTH[column] ) {
+			case 1:
+				return mColumns.readByte() ;
+			case 4:
+				return mColumns.readInt() ;
+			default:
+				return mColumns.readLong() ;
+			}
+		}
+
+		void close() throws IOException {
+			mColumns.close() ;
+			mSummaries.close() ;
+		}
+	}
+
+
+	private final File mDirectory ;
+	private final ArrayList<Segment> mSegments ;
+	private long mNextResultId ;
+	private boolean mSync = false ;
+	private boolean mClosed = false ;
+
+
+	/**
+	 * Opens the archive in the provided directory, creating it if necessary.
+	 * @param directory
+	 * @throws IOException
+	 */
+	public GameResultArchive( File directory ) throws IOException {
+		mDirectory = directory ;
+		mSegments = new ArrayList<Segment>() ;
+		if ( !directory.exists() && !directory.mkdirs() )
+			throw new IOException("Could not create archive directory " + directory) ;
+
+		try {
+			for ( int n = 0; columnsFile( n ).exists(); n++ ) {
+				Segment seg = openSegment( n, false ) ;
+				mSegments.add( seg ) ;
+				if ( seg.mCount > 0 )
+					mNextResultId = seg.readValue( COL_RESULT_ID, seg.mCount - 1 ) + 1 ;
+			}
+		} catch ( IOException e ) {
+			close() ;
+			throw e ;
+		}
+	}
+
+
+	/**
+	 * If set, each append is flushed to the storage device before returning.
+	 * @param sync
+	 * @return This archive
+	 */
+	public synchronized GameResultArchive setSync( boolean sync ) {
+		mSync = sync ;
+		return this ;
+	}
+
+
+	public synchronized void close() throws IOException {
+		mClosed = true ;
+		IOException first = null ;
+		for ( int i = 0; i < mSegments.size(); i++ ) {
+			try {
+				mSegments.get(i).close() ;
+			} catch ( IOException e ) {
+				if ( first == null )
+					first = e ;
+			}
+		}
+		mSegments.clear() ;
+		if ( first != null )
+			throw first ;
+	}
+
+
+	private File columnsFile( int n ) {
+		return new File( mDirectory, SEGMENT_PREFIX + String.format("%06d", n) + COLUMNS_SUFFIX ) ;
+	}
+
+	private File summariesFile( int n ) {
+		return new File( mDirectory, SEGMENT_PREFIX + String.format("%06d", n) + SUMMARIES_SUFFIX ) ;
+	}
+
+	private Segment openSegment( int n, boolean create ) throws IOException {
+		RandomAccessFile cols = new RandomAccessFile( columnsFile( n ), "rw" ) ;
+		RandomAccessFile sums ;
+		try {
+			sums = new RandomAccessFile( summariesFile( n ), "rw" ) ;
+		} catch ( IOException e ) {
+			cols.close() ;
+			throw e ;
+		}
+		Segment seg = new Segment( n, cols, sums ) ;
+		try {
+			if ( create ) {
+				cols.setLength( SEGMENT_LENGTH ) ;
+				sums.setLength( 0 ) ;
+				seg.writeHeader() ;
+			} else {
+				seg.readHeader() ;
+				// discard any summary bytes written by an append that never
+				// committed its rows.
+				if ( seg.mCount > 0 ) {
+					int last = seg.mCount - 1 ;
+					seg.mSummariesLength = seg.readValue( COL_SUMMARY_OFFSET, last )
+							+ seg.readValue( COL_SUMMARY_LENGTH, last ) ;
+				}
+				if ( sums.length() != seg.mSummariesLength )
+					sums.setLength( seg.mSummariesLength ) ;
+			}
+		} catch ( IOException e ) {
+			seg.close() ;
+			throw e ;
+		}
+		return seg ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// APPEND
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Archives the provided result: one row per player slot.
+	 * @param gr
+	 * @return The result ID assigned.
+	 * @throws IOException
+	 */
+	public long append( GameResult gr ) throws IOException {
+		return append( gr.getSummary() ) ;
+	}
+
+	/**
+	 * Archives the provided result summary: one row per player slot.
+	 * @param summary
+	 * @return The result ID assigned.
+	 * @throws IOException
+	 */
+	public synchronized long append( GameResult.Summary summary ) throws IOException {
+		if ( mClosed )
+			throw new IllegalStateException("Archive is closed") ;
+		int num = summary.getNumberOfPlayers() ;
+		if ( num > SEGMENT_CAPACITY )
+			throw new IllegalArgumentException("Too many players to archive: " + num) ;
+
+		Segment seg = mSegments.isEmpty() ? null : mSegments.get( mSegments.size() - 1 ) ;
+		if ( seg == null || seg.mCount + num > SEGMENT_CAPACITY ) {
+			seg = openSegment( mSegments.size(), true ) ;
+			mSegments.add( seg ) ;
+		}
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream() ;
+		DataOutputStream dos = new DataOutputStream( baos ) ;
+		summary.write( dos ) ;
+		dos.flush() ;
+		byte [] encoded = baos.toByteArray() ;
+		long summaryOffset = seg.mSummariesLength ;
+		seg.mSummaries.seek( summaryOffset ) ;
+		seg.mSummaries.write( encoded ) ;
+
+		long resultId = mNextResultId ;
+		Date d = summary.getDateEnded() ;
+		if ( d == null )
+			d = summary.getDateStarted() ;
+		long date = d == null ? 0 : d.getTime() ;
+
+		int baseFlags = summary.getTerminated() ? FLAG_TERMINATED : 0 ;
+		for ( int slot = 0; slot < num; slot++ ) {
+			int row = seg.mCount + slot ;
+			int flags = baseFlags ;
+			if ( summary.getWon(slot) ) flags |= FLAG_WON ;
+			if ( summary.getLost(slot) ) flags |= FLAG_LOST ;
+			if ( summary.getQuit(slot) ) flags |= FLAG_QUIT ;
+			if ( summary.getLocalPlayerSlot() == slot ) flags |= FLAG_LOCAL ;
+			long time = summary.getMilliseconds(slot) ;
+			if ( summary.getMode(slot) < 0 )
+				time = summary.getTimeInGameTicks(slot) ;
+
+			seg.writeValue( COL_RESULT_ID, row, resultId ) ;
+			seg.writeValue( COL_DATE, row, date ) ;
+			seg.writeValue( COL_SLOT, row, slot ) ;
+			seg.writeValue( COL_FLAGS, row, flags ) ;
+			seg.writeValue( COL_MODE, row, summary.getMode(slot) ) ;
+			seg.writeValue( COL_DIFFICULTY, row, summary.getDifficulty(slot) ) ;
+			seg.writeValue( COL_LEVEL, row, summary.getLevel(slot) ) ;
+			seg.writeValue( COL_SCORE, row, summary.getScore(slot) ) ;
+			seg.writeValue( COL_S0_CLEARS, row, summary.getS0Clears(slot) ) ;
+			seg.writeValue( COL_S1_CLEARS, row, summary.getS1Clears(slot) ) ;
+			seg.writeValue( COL_SL_CLEARS, row, summary.getSLClears(slot) ) ;
+			seg.writeValue( COL_MO_CLEARS, row, summary.getMOClears(slot) ) ;
+			seg.writeValue( COL_LONGEST_CASCADE, row, summary.getLongestCascade(slot) ) ;
+			seg.writeValue( COL_TIME, row, time ) ;
+			seg.writeValue( COL_SUMMARY_OFFSET, row, summaryOffset ) ;
+			seg.writeValue( COL_SUMMARY_LENGTH, row, encoded.length ) ;
+		}
+
+		if ( mSync ) {
+			seg.mSummaries.getFD().sync() ;
+			seg.mColumns.getFD().sync() ;
+		}
+
+		// commit: the rows exist once the header says so.
+		int prevCount = seg.mCount ;
+		long prevMin = seg.mMinDate, prevMax = seg.mMaxDate ;
+		int prevNumModes = seg.mNumModes ;
+		int [] prevModes = seg.mModes.clone() ;
+		seg.mCount += num ;
+		for ( int slot = 0; slot < num; slot++ )
+			seg.indexRow( summary.getMode(slot), date ) ;
+		try {
+			seg.writeHeader() ;
+			if ( mSync )
+				seg.mColumns.getFD().sync() ;
+		} catch ( IOException e ) {
+			seg.mCount = prevCount ;
+			seg.mMinDate = prevMin ;
+			seg.mMaxDate = prevMax ;
+			seg.mNumModes = prevNumModes ;
+			seg.mModes = prevModes ;
+			throw e ;
+		}
+		seg.mSummariesLength = summaryOffset + encoded.length ;
+		mNextResultId++ ;
+		return resultId ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// QUERY
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The total number of rows in the archive.
+	 * @return
+	 */
+	public synchronized long size() {
+		long size = 0 ;
+		for ( int i = 0; i < mSegments.size(); i++ )
+			size += mSegments.get(i).mCount ;
+		return size ;
+	}
+
+
+	/**
+	 * Computes aggregate statistics over every row selected by the query.
+	 * Reads only the columns needed, and only from segments whose indexes
+	 * suggest they hold matching rows.
+	 *
+	 * @param q
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized Aggregate aggregate( Query q ) throws IOException {
+		Aggregate a = new Aggregate() ;
+		for ( int s = 0; s < mSegments.size(); s++ ) {
+			Segment seg = mSegments.get(s) ;
+			if ( !seg.mayContain( q ) )
+				continue ;
+
+			ByteBuffer mode = seg.readColumn( COL_MODE ) ;
+			ByteBuffer date = seg.readColumn( COL_DATE ) ;
+			ByteBuffer flags = seg.readColumn( COL_FLAGS ) ;
+			ByteBuffer resultId = seg.readColumn( COL_RESULT_ID ) ;
+			ByteBuffer score = seg.readColumn( COL_SCORE ) ;
+			ByteBuffer s0 = seg.readColumn( COL_S0_CLEARS ) ;
+			ByteBuffer s1 = seg.readColumn( COL_S1_CLEARS ) ;
+			ByteBuffer sL = seg.readColumn( COL_SL_CLEARS ) ;
+			ByteBuffer mo = seg.readColumn( COL_MO_CLEARS ) ;
+			ByteBuffer cascade = seg.readColumn( COL_LONGEST_CASCADE ) ;
+			ByteBuffer time = seg.readColumn( COL_TIME ) ;
+
+			for ( int r = 0; r < seg.mCount; r++ ) {
+				int f = flags.get(r) ;
+				if ( !q.matches( mode.getInt(r*4), date.getLong(r*8), f ) )
+					continue ;
+				a.mRows++ ;
+				if ( ( f & FLAG_WON ) != 0 ) a.mWins++ ;
+				if ( ( f & FLAG_LOST ) != 0 ) a.mLosses++ ;
+				if ( ( f & FLAG_QUIT ) != 0 ) a.mQuits++ ;
+				long sc = score.getLong(r*8) ;
+				a.mTotalScore += sc ;
+				if ( sc > a.mBestScore ) {
+					a.mBestScore = sc ;
+					a.mBestScoreResultId = resultId.getLong(r*8) ;
+				}
+				a.mS0Clears += s0.getInt(r*4) ;
+				a.mS1Clears += s1.getInt(r*4) ;
+				a.mSLClears += sL.getInt(r*4) ;
+				a.mMOClears += mo.getInt(r*4) ;
+				a.mLongestCascade = Math.max( a.mLongestCascade, cascade.getInt(r*4) ) ;
+				a.mTimePlayed += time.getLong(r*8) ;
+			}
+		}
+		return a ;
+	}
+
+
+	/**
+	 * Returns the 'count' highest-scoring rows selected by the query, best
+	 * first.  Suitable for a leaderboard.
+	 *
+	 * @param q
+	 * @param count
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized ArrayList<Row> best( Query q, int count ) throws IOException {
+		ArrayList<Row> result = new ArrayList<Row>() ;
+		if ( count <= 0 )
+			return result ;
+
+		// min-heap of the best so far; candidates are encoded as
+		// (segment, row) and materialized as Rows only at the end.
+		PriorityQueue<long []> heap = new PriorityQueue<long []>( count, new Comparator<long []>() {
+			@Override
+			public int compare( long [] a, long [] b ) {
+				return a[0] < b[0] ? -1 : ( a[0] > b[0] ? 1 : 0 ) ;
+			}
+		}) ;
+
+		for ( int s = 0; s < mSegments.size(); s++ ) {
+			Segment seg = mSegments.get(s) ;
+			if ( !seg.mayContain( q ) )
+				continue ;
+			ByteBuffer mode = seg.readColumn( COL_MODE ) ;
+			ByteBuffer date = seg.readColumn( COL_DATE ) ;
+			ByteBuffer flags = seg.readColumn( COL_FLAGS ) ;
+			ByteBuffer score = seg.readColumn( COL_SCORE ) ;
+			for ( int r = 0; r < seg.mCount; r++ ) {
+				if ( !q.matches( mode.getInt(r*4), date.getLong(r*8), flags.get(r) ) )
+					continue ;
+				long sc = score.getLong(r*8) ;
+				if ( heap.size() < count ) {
+					heap.add( new long[] { sc, s, r } ) ;
+				} else if ( sc > heap.peek()[0] ) {
+					long [] e = heap.poll() ;
+					e[0] = sc ;
+					e[1] = s ;
+					e[2] = r ;
+					heap.add( e ) ;
+				}
+			}
+		}
+
+		while ( !heap.isEmpty() ) {
+			long [] e = heap.poll() ;
+			Segment seg = mSegments.get( (int)e[1] ) ;
+			int r = (int)e[2] ;
+			result.add( 0, new Row( seg.mNumber, r,
+					seg.readValue( COL_RESULT_ID, r ),
+					(int)seg.readValue( COL_SLOT, r ),
+					seg.readValue( COL_DATE, r ),
+					(int)seg.readValue( COL_MODE, r ),
+					e[0] ) ) ;
+		}
+		return result ;
+	}
+
+
+	/**
+	 * Materializes the full summary of the result containing the provided row.
+	 * @param row
+	 * @return
+	 * @throws IOException
+	 */
+	public synchronized GameResult.Summary readSummary( Row row ) throws IOException {
+		if ( row.mSegment < 0 || row.mSegment >= mSegments.size() )
+			throw new IllegalArgumentException("Row is not from this archive") ;
+		Segment seg = mSegments.get( row.mSegment ) ;
+		if ( row.mIndex >= seg.mCount )
+			throw new IllegalArgumentException("Row is not from this archive") ;
+		long offset = seg.readValue( COL_SUMMARY_OFFSET, row.mIndex ) ;
+		int length = (int)seg.readValue( COL_SUMMARY_LENGTH, row.mIndex ) ;
+		byte [] b = new byte[length] ;
+		seg.mSummaries.seek( offset ) ;
+		seg.mSummaries.readFully( b ) ;
+		return GameResult.Summary.read( new DataInputStream( new ByteArrayInputStream( b ) ) ) ;
+	}
+
+}
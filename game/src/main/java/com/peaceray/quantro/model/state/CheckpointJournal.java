@@ -0,0 +1,728 @@
+package com.peaceray.quantro.model.state;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+
+/**
+ * An append-only journal of checkpoints, stored in a single file.
+ *
+ * A checkpoint is an array of "sections": opaque byte arrays, such as
+ * the serialized states of a Game, its GameInformation, etc.  The
+ * journal does not interpret them, but it assumes that consecutive
+ * checkpoints are mostly similar -- a few bytes of a few sections change
+ * from one to the next.
+ *
+ * Each append writes one record: either a FULL record holding every
+ * section, or a DELTA record holding only the byte runs that differ from
+ * the previous checkpoint.  FULL records are written periodically (see
+ * setFullInterval) and whenever a delta would not be much smaller than
+ * a full record, which bounds both the replay cost on load and the
+ * damage from a lost record.
+ *
+ * Every record carries a CRC32 and a sequence number.  Replay stops at
+ * the first record which is truncated, fails its checksum, or is out of
+ * sequence; the checkpoint before it is the one loaded.  A torn write --
+ * the process dying mid-append -- therefore loses at most the checkpoint
+ * being written, with no need for separate "valid" marker files.  The
+ * torn tail is truncated away the next time the journal is opened.
+ *
+ * Everything before the most recent FULL record is dead weight.
+ * compact() rewrites the journal without it; it is safe to call from a
+ * background thread while other threads append, and does most of its
+ * I/O without holding the journal lock.  See CheckpointStore, which
+ * does exactly that.
+ *
+ * File format:
+ *
+ * 		int		FILE_MAGIC
+ * 		int		FORMAT_VERSION
+ * 		records...
+ *
+ * Record format:
+ *
+ * 		int		RECORD_MAGIC
+ * 		byte	type (FULL or DELTA)
+ * 		long	sequence number (increments by 1 with each record)
+ * 		int		payload length
+ * 		byte[]	payload
+ * 		int		CRC32 of type, sequence, length and payload
+ *
+ * FULL payload:	int numSections, then for each: int length, byte[] content.
+ * DELTA payload:	int numSections, then for each: int length, int numRuns,
+ * 					then for each run: int offset, int length, byte[] content.
+ * 					Bytes not covered by a run are copied from the previous
+ * 					checkpoint's section.
+ *
+ * Thread-safe.
+ *
+ * @author Jake
+ *
+ */
+public class CheckpointJournal {
+
+	private static final int FILE_MAGIC = 0x51434b4a ;		// "QCKJ"
+	private static final int FORMAT_VERSION = 1 ;
+	private static final int RECORD_MAGIC = 0x51524543 ;	// "QREC"
+
+	private static final byte TYPE_FULL = 0 ;
+	private static final byte TYPE_DELTA = 1 ;
+
+	private static final int HEADER_LENGTH = 8 ;
+	// magic, type, sequence, payload length
+	private static final int RECORD_PREFIX_LENGTH = 4 + 1 + 8 + 4 ;
+	// crc
+	private static final int RECORD_SUFFIX_LENGTH = 4 ;
+
+	// Each run costs 8 bytes of overhead, so unchanged gaps shorter than
+	// this are cheaper to include in the surrounding run.
+	private static final int RUN_MERGE_GAP = 8 ;
+
+	public static final int DEFAULT_FULL_INTERVAL = 32 ;
+	public static final long DEFAULT_COMPACTION_MINIMUM = 64 * 1024 ;
+
+
+	private final File mFile ;
+
+	private RandomAccessFile mRAF ;
+	private long mLength ;				// bytes of valid content in the file
+	private long mLastFullOffset ;		// start of the most recent FULL record
+	private int mRecordsSinceFull ;		// DELTA records after it
+
+	private byte [][] mLatest ;			// the most recent checkpoint, or null
+	private long mSequence ;			// sequence number of mLatest; -1 if none
+
+	// incremented whenever the file is replaced or closed out from under
+	// a compaction in progress.
+	private int mGeneration ;
+	private boolean mCompacting ;
+
+	private int mFullInterval = DEFAULT_FULL_INTERVAL ;
+	private long mCompactionMinimum = DEFAULT_COMPACTION_MINIMUM ;
+	private boolean mSync = false ;
+
+
+	public CheckpointJournal( File file ) {
+		if ( file == null )
+			throw new NullPointerException("Must provide a journal file") ;
+		mFile = file ;
+		mSequence = -1 ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// CONFIGURATION
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Sets the maximum number of DELTA records between FULL records.
+	 * @param interval
+	 * @return This journal
+	 */
+	public synchronized CheckpointJournal setFullInterval( int interval ) {
+		if ( interval < 0 )
+			throw new IllegalArgumentException("Interval must be non-negative") ;
+		mFullInterval = interval ;
+		return this ;
+	}
+
+	/**
+	 * needsCompaction() returns false until at least this many bytes
+	 * could be reclaimed.
+	 * @param bytes
+	 * @return This journal
+	 */
+	public synchronized CheckpointJournal setCompactionMinimum( long bytes ) {
+		mCompactionMinimum = bytes ;
+		return this ;
+	}
+
+	/**
+	 * If set, every append (and compaction) is flushed to the storage
+	 * device before returning.  Slower, but a checkpoint that has been
+	 * appended will survive power loss, not just process death.
+	 * @param sync
+	 * @return This journal
+	 */
+	public synchronized CheckpointJournal setSync( boolean sync ) {
+		mSync = sync ;
+		return this ;
+	}
+
+
+	public File getFile() {
+		return mFile ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// OPEN / CLOSE
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Opens the journal for appending, creating the file if necessary.
+	 * Replays the existing content and truncates any torn or corrupt tail.
+	 *
+	 * Has no effect if already open.
+	 *
+	 * @return The most recent checkpoint, or null if there is none.  Do not
+	 * 		modify the sections.
+	 * @throws IOException
+	 */
+	public synchronized byte [][] open() throws IOException {
+		if ( mRAF != null )
+			return mLatest ;
+
+		Replay r = new Replay() ;
+		if ( mFile.exists() )
+			r.replay( mFile ) ;
+
+		mRAF = new RandomAccessFile( mFile, "rw" ) ;
+		try {
+			if ( r.validLength < HEADER_LENGTH ) {
+				// new, empty, or not a journal at all.  Start over.
+				mRAF.setLength(0) ;
+				mRAF.writeInt( FILE_MAGIC ) ;
+				mRAF.writeInt( FORMAT_VERSION ) ;
+				mLength = HEADER_LENGTH ;
+			} else {
+				if ( mRAF.length() > r.validLength )
+					mRAF.setLength( r.validLength ) ;
+				mLength = r.validLength ;
+			}
+			mRAF.seek( mLength ) ;
+		} catch ( IOException e ) {
+			mRAF.close() ;
+			mRAF = null ;
+			throw e ;
+		}
+
+		mLatest = r.sections ;
+		mSequence = r.sequence ;
+		mLastFullOffset = r.lastFullOffset ;
+		mRecordsSinceFull = r.recordsSinceFull ;
+		mGeneration++ ;
+		return mLatest ;
+	}
+
+	public synchronized boolean isOpen() {
+		return mRAF != null ;
+	}
+
+	/**
+	 * The number of bytes of valid content in the journal, as of the
+	 * last open(), append() or compact().  Can be compared against
+	 * the file length to detect outside modification.
+	 * @return
+	 */
+	public synchronized long length() {
+		return mLength ;
+	}
+
+	public synchronized void close() throws IOException {
+		mGeneration++ ;
+		if ( mRAF != null ) {
+			RandomAccessFile raf = mRAF ;
+			mRAF = null ;
+			raf.close() ;
+		}
+	}
+
+	/**
+	 * Discards all checkpoints: the journal file is emptied, and the next
+	 * append will be a FULL record with sequence 0.
+	 * @throws IOException
+	 */
+	public synchronized void reset() throws IOException {
+		close() ;
+		if ( mFile.exists() && !mFile.delete() )
+			throw new IOException("Failed to delete journal " + mFile) ;
+		mLatest = null ;
+		mSequence = -1 ;
+		open() ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// ACCESS
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * The most recent checkpoint appended or loaded.  Do not modify the
+	 * sections.
+	 * @return
+	 */
+	public synchronized byte [][] latest() {
+		return mLatest ;
+	}
+
+	/**
+	 * The sequence number of latest(), or -1 if there is none.
+	 * @return
+	 */
+	public synchronized long sequence() {
+		return mSequence ;
+	}
+
+
+	/**
+	 * Replays the provided journal file without opening it for appending
+	 * (or repairing a torn tail).
+	 *
+	 * @param file
+	 * @return The most recent valid checkpoint, or null if the file does not
+	 * 		exist or holds none.
+	 * @throws IOException
+	 */
+	public static byte [][] read( File file ) throws IOException {
+		if ( !file.exists() )
+			return null ;
+		Replay r = new Replay() ;
+		r.replay( file ) ;
+		return r.sections ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// APPEND
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Appends a checkpoint to the journal.  The journal takes ownership of
+	 * the provided sections; do not modify them afterwards.
+	 *
+	 * @param sections
+	 * @return The sequence number of the new checkpoint.
+	 * @throws IOException
+	 * @throws IllegalStateException If not open.
+	 */
+	public synchronized long append( byte [][] sections ) throws IOException {
+		if ( mRAF == null )
+			throw new IllegalStateException("Journal is not open") ;
+		if ( sections == null )
+			throw new NullPointerException("Must provide sections") ;
+		for ( int i = 0; i < sections.length; i++ )
+			if ( sections[i] == null )
+				throw new NullPointerException("Section " + i + " is null") ;
+
+		long sequence = mSequence + 1 ;
+		int fullLength = fullPayloadLength( sections ) ;
+
+		byte [] delta = null ;
+		if ( mLatest != null && mLatest.length == sections.length
+				&& mRecordsSinceFull < mFullInterval ) {
+			delta = deltaPayload( mLatest, sections, fullLength / 2 ) ;
+		}
+
+		byte type ;
+		byte [] payload ;
+		if ( delta != null ) {
+			type = TYPE_DELTA ;
+			payload = delta ;
+		} else {
+			type = TYPE_FULL ;
+			payload = fullPayload( sections, fullLength ) ;
+		}
+
+		byte [] record = record( type, sequence, payload ) ;
+		try {
+			mRAF.seek( mLength ) ;
+			mRAF.write( record ) ;
+			if ( mSync )
+				mRAF.getFD().sync() ;
+		} catch ( IOException e ) {
+			// leave the file as it was: a partial record would be discarded
+			// on replay anyway, but we don't want to append after it.
+			try {
+				mRAF.setLength( mLength ) ;
+			} catch ( IOException e2 ) {
+				// nothing to do
+			}
+			throw e ;
+		}
+
+		if ( type == TYPE_FULL ) {
+			mLastFullOffset = mLength ;
+			mRecordsSinceFull = 0 ;
+		} else {
+			mRecordsSinceFull++ ;
+		}
+		mLength += record.length ;
+		mLatest = sections ;
+		mSequence = sequence ;
+		return sequence ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// COMPACTION
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns whether compact() would reclaim a worthwhile amount of space:
+	 * at least the configured minimum, and at least as much as would remain.
+	 * @return
+	 */
+	public synchronized boolean needsCompaction() {
+		if ( mRAF == null || mCompacting )
+			return false ;
+		long dead = mLastFullOffset - HEADER_LENGTH ;
+		long live = mLength - mLastFullOffset ;
+		return dead >= mCompactionMinimum && dead >= live ;
+	}
+
+	/**
+	 * Rewrites the journal, dropping every record before the most recent
+	 * FULL record.  Appends may continue from other threads while this
+	 * runs; they block only for the final copy-and-rename.
+	 *
+	 * @return Whether the journal was compacted.  Returns false if there
+	 * 		was nothing to reclaim, or if the journal was closed or reset
+	 * 		in the meantime.
+	 * @throws IOException
+	 */
+	public boolean compact() throws IOException {
+		long start, end ;
+		int generation ;
+		synchronized( this ) {
+			if ( mRAF == null || mCompacting || mLastFullOffset <= HEADER_LENGTH )
+				return false ;
+			mCompacting = true ;
+			start = mLastFullOffset ;
+			end = mLength ;
+			generation = mGeneration ;
+		}
+
+		File temp = new File( mFile.getPath() + ".compact" ) ;
+		boolean replaced = false ;
+		try {
+			// Records are never modified once written, so everything in
+			// [start, end) can be copied without holding the lock.
+			RandomAccessFile out = new RandomAccessFile( temp, "rw" ) ;
+			try {
+				out.setLength(0) ;
+				out.writeInt( FILE_MAGIC ) ;
+				out.writeInt( FORMAT_VERSION ) ;
+				copy( mFile, start, end, out ) ;
+
+				synchronized( this ) {
+					if ( generation != mGeneration || mRAF == null )
+						return false ;
+					// catch up with anything appended meanwhile.
+					if ( mLength > end )
+						copy( mFile, end, mLength, out ) ;
+					if ( mSync )
+						out.getFD().sync() ;
+					out.close() ;
+
+					mRAF.close() ;
+					mRAF = null ;
+					if ( !temp.renameTo( mFile ) ) {
+						// the old journal is still intact.  Reopen it.
+						mRAF = new RandomAccessFile( mFile, "rw" ) ;
+						mRAF.seek( mLength ) ;
+						return false ;
+					}
+					replaced = true ;
+
+					long removed = start - HEADER_LENGTH ;
+					mLength -= removed ;
+					mLastFullOffset -= removed ;
+					mRAF = new RandomAccessFile( mFile, "rw" ) ;
+					mRAF.seek( mLength ) ;
+					mGeneration++ ;
+					return true ;
+				}
+			} finally {
+				out.close() ;
+			}
+		} finally {
+			synchronized( this ) {
+				mCompacting = false ;
+			}
+			if ( !replaced )
+				temp.delete() ;
+		}
+	}
+
+
+	private static void copy( File file, long start, long end, RandomAccessFile out ) throws IOException {
+		RandomAccessFile in = new RandomAccessFile( file, "r" ) ;
+		try {
+			in.seek( start ) ;
+			byte [] buf = new byte[8192] ;
+			long remaining = end - start ;
+			while ( remaining > 0 ) {
+				int num = in.read( buf, 0, (int)Math.min( buf.length, remaining ) ) ;
+				if ( num < 0 )
+					throw new EOFException("Journal shorter than expected") ;
+				out.write( buf, 0, num ) ;
+				remaining -= num ;
+			}
+		} finally {
+			in.close() ;
+		}
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// ENCODING
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	private static int fullPayloadLength( byte [][] sections ) {
+		int len = 4 ;
+		for ( int i = 0; i < sections.length; i++ )
+			len += 4 + sections[i].length ;
+		return len ;
+	}
+
+	private static byte [] fullPayload( byte [][] sections, int length ) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream( length ) ;
+		DataOutputStream dos = new DataOutputStream( baos ) ;
+		dos.writeInt( sections.length ) ;
+		for ( int i = 0; i < sections.length; i++ ) {
+			dos.writeInt( sections[i].length ) ;
+			dos.write( sections[i] ) ;
+		}
+		dos.flush() ;
+		return baos.toByteArray() ;
+	}
+
+	/**
+	 * Encodes the difference between 'prev' and 'next' as a DELTA payload,
+	 * or returns null if it would be longer than 'maxLength'.
+	 */
+	private static byte [] deltaPayload( byte [][] prev, byte [][] next, int maxLength ) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream() ;
+		DataOutputStream dos = new DataOutputStream( baos ) ;
+		dos.writeInt( next.length ) ;
+		int [] runs = new int[16] ;
+		for ( int s = 0; s < next.length; s++ ) {
+			byte [] p = prev[s] ;
+			byte [] n = next[s] ;
+			int numRuns = 0 ;
+			int i = 0 ;
+			while ( i < n.length ) {
+				if ( i < p.length && p[i] == n[i] ) {
+					i++ ;
+					continue ;
+				}
+				// start of a run.  Extend through short matching gaps.
+				int runStart = i ;
+				int runEnd = i + 1 ;
+				int j = runEnd ;
+				while ( j < n.length && j - runEnd < RUN_MERGE_GAP ) {
+					if ( j >= p.length || p[j] != n[j] )
+						runEnd = j + 1 ;
+					j++ ;
+				}
+				if ( numRuns*2 + 2 > runs.length ) {
+					int [] grown = new int[runs.length * 2] ;
+					System.arraycopy(runs, 0, grown, 0, runs.length) ;
+					runs = grown ;
+				}
+				runs[numRuns*2] = runStart ;
+				runs[numRuns*2 + 1] = runEnd - runStart ;
+				numRuns++ ;
+				i = runEnd ;
+			}
+
+			dos.writeInt( n.length ) ;
+			dos.writeInt( numRuns ) ;
+			for ( int r = 0; r < numRuns; r++ ) {
+				dos.writeInt( runs[r*2] ) ;
+				dos.writeInt( runs[r*2 + 1] ) ;
+				dos.write( n, runs[r*2], runs[r*2 + 1] ) ;
+			}
+			if ( dos.size() > maxLength )
+				return null ;
+		}
+		dos.flush() ;
+		return baos.toByteArray() ;
+	}
+
+	private static byte [] record( byte type, long sequence, byte [] payload ) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(
+				RECORD_PREFIX_LENGTH + payload.length + RECORD_SUFFIX_LENGTH ) ;
+		DataOutputStream dos = new DataOutputStream( baos ) ;
+		dos.writeInt( RECORD_MAGIC ) ;
+		dos.writeByte( type ) ;
+		dos.writeLong( sequence ) ;
+		dos.writeInt( payload.length ) ;
+		dos.write( payload ) ;
+		dos.flush() ;
+		byte [] b = baos.toByteArray() ;
+		CRC32 crc = new CRC32() ;
+		crc.update( b, 4, b.length - 4 ) ;
+		dos.writeInt( (int)crc.getValue() ) ;
+		dos.flush() ;
+		return baos.toByteArray() ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// REPLAY
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads a journal file from the start, applying records until the
+	 * first invalid one.
+	 */
+	private static class Replay {
+		byte [][] sections = null ;
+		long sequence = -1 ;
+		long validLength = 0 ;
+		long lastFullOffset = HEADER_LENGTH ;
+		int recordsSinceFull = 0 ;
+
+		void replay( File file ) throws IOException {
+			long fileLength = file.length() ;
+			InputStream is = new BufferedInputStream( new FileInputStream( file ) ) ;
+			DataInputStream dis = new DataInputStream( is ) ;
+			try {
+				if ( fileLength < HEADER_LENGTH
+						|| dis.readInt() != FILE_MAGIC
+						|| dis.readInt() != FORMAT_VERSION )
+					return ;
+				validLength = HEADER_LENGTH ;
+
+				CRC32 crc = new CRC32() ;
+				while ( fileLength - validLength >= RECORD_PREFIX_LENGTH + RECORD_SUFFIX_LENGTH ) {
+					if ( dis.readInt() != RECORD_MAGIC )
+						return ;
+					byte type = dis.readByte() ;
+					long seq = dis.readLong() ;
+					int len = dis.readInt() ;
+					if ( len < 0 || len > fileLength - validLength - RECORD_PREFIX_LENGTH - RECORD_SUFFIX_LENGTH )
+						return ;
+					// compaction may drop the first records, so the first
+					// sequence number can be anything.
+					if ( sections != null && seq != sequence + 1 )
+						return ;
+					if ( type != TYPE_FULL && ( type != TYPE_DELTA || sections == null ) )
+						return ;
+					byte [] payload = new byte[len] ;
+					dis.readFully( payload ) ;
+					int storedCRC = dis.readInt() ;
+
+					crc.reset() ;
+					crc.update( type ) ;
+					updateLong( crc, seq ) ;
+					updateInt( crc, len ) ;
+					crc.update( payload, 0, len ) ;
+					if ( (int)crc.getValue() != storedCRC )
+						return ;
+
+					byte [][] next ;
+					try {
+						next = type == TYPE_FULL
+								? applyFull( payload )
+								: applyDelta( sections, payload ) ;
+					} catch ( IOException e ) {
+						// checksum matched but content is malformed.
+						return ;
+					} catch ( RuntimeException e ) {
+						return ;
+					}
+
+					if ( type == TYPE_FULL ) {
+						lastFullOffset = validLength ;
+						recordsSinceFull = 0 ;
+					} else {
+						recordsSinceFull++ ;
+					}
+					sections = next ;
+					sequence = seq ;
+					validLength += RECORD_PREFIX_LENGTH + len + RECORD_SUFFIX_LENGTH ;
+				}
+			} catch ( EOFException e ) {
+				// torn tail.  Everything up to validLength is good.
+			} finally {
+				dis.close() ;
+			}
+		}
+
+		private static void updateInt( CRC32 crc, int v ) {
+			crc.update( v >>> 24 ) ;
+			crc.update( v >>> 16 ) ;
+			crc.update( v >>> 8 ) ;
+			crc.update( v ) ;
+		}
+
+		private static void updateLong( CRC32 crc, long v ) {
+			updateInt( crc, (int)(v >>> 32) ) ;
+			updateInt( crc, (int)v ) ;
+		}
+
+		private static byte [][] applyFull( byte [] payload ) throws IOException {
+			DataInputStream dis = new DataInputStream( new ByteArrayInputStream( payload ) ) ;
+			int num = dis.readInt() ;
+			if ( num < 0 || num > payload.length / 4 )
+				throw new IOException("Bad section count " + num) ;
+			byte [][] sections = new byte[num][] ;
+			for ( int i = 0; i < num; i++ ) {
+				int len = dis.readInt() ;
+				if ( len < 0 || len > dis.available() )
+					throw new IOException("Bad section length " + len) ;
+				sections[i] = new byte[len] ;
+				dis.readFully( sections[i] ) ;
+			}
+			return sections ;
+		}
+
+		private static byte [][] applyDelta( byte [][] prev, byte [] payload ) throws IOException {
+			DataInputStream dis = new DataInputStream( new ByteArrayInputStream( payload ) ) ;
+			int num = dis.readInt() ;
+			if ( num != prev.length )
+				throw new IOException("Delta section count " + num + " does not match " + prev.length) ;
+			byte [][] sections = new byte[num][] ;
+			for ( int i = 0; i < num; i++ ) {
+				int len = dis.readInt() ;
+				int numRuns = dis.readInt() ;
+				if ( len < 0 || numRuns < 0 )
+					throw new IOException("Bad delta section header") ;
+				if ( numRuns == 0 && len == prev[i].length ) {
+					// unchanged; share the array.
+					sections[i] = prev[i] ;
+					continue ;
+				}
+				byte [] b = new byte[len] ;
+				System.arraycopy( prev[i], 0, b, 0, Math.min( len, prev[i].length ) ) ;
+				for ( int r = 0; r < numRuns; r++ ) {
+					int off = dis.readInt() ;
+					int runLen = dis.readInt() ;
+					if ( off < 0 || runLen < 0 || off + runLen > len )
+						throw new IOException("Bad delta run") ;
+					dis.readFully( b, off, runLen ) ;
+				}
+				sections[i] = b ;
+			}
+			return sections ;
+		}
+	}
+
+}
@@ -0,0 +1,284 @@
+package com.peaceray.quantro.model.state;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.Iterator;
+
+
+/**
+ * A collection of CheckpointJournals, one per journal file, kept open
+ * between saves so that each save can be written as a delta against the
+ * last.  Journals are compacted on a background thread whenever an
+ * append leaves enough dead space to be worth reclaiming.
+ *
+ * Only journals opened by {@link #append(File, byte[][])} are kept open;
+ * {@link #load(File)} and {@link #has(File)} use an open journal if there
+ * is one and otherwise replay the file read-only, so querying a save
+ * directory neither holds a file descriptor nor writes to disk.
+ *
+ * Journals are keyed by file.  Because callers may rename or delete the
+ * containing directories behind our back (e.g. when a checkpoint
+ * directory is promoted or removed), a cached journal is re-opened
+ * whenever its file no longer matches what we last wrote; the worst case
+ * is a FULL record where a DELTA would have done.
+ *
+ * Thread-safe.
+ *
+ * @author Jake
+ *
+ */
+public class CheckpointStore {
+
+	private static final String TAG = "CheckpointStore" ;
+
+	private final Hashtable<File, CheckpointJournal> mJournals ;
+	private final CompactionThread mCompactionThread ;
+
+	private int mFullInterval = CheckpointJournal.DEFAULT_FULL_INTERVAL ;
+	private long mCompactionMinimum = CheckpointJournal.DEFAULT_COMPACTION_MINIMUM ;
+	private boolean mSync = false ;
+
+
+	public CheckpointStore() {
+		mJournals = new Hashtable<File, CheckpointJournal>() ;
+		mCompactionThread = new CompactionThread() ;
+		mCompactionThread.start() ;
+	}
+
+
+	/**
+	 * Sets the full-snapshot interval for journals opened from now on.
+	 * @see CheckpointJournal#setFullInterval(int)
+	 */
+	public synchronized CheckpointStore setFullInterval( int interval ) {
+		mFullInterval = interval ;
+		return this ;
+	}
+
+	/**
+	 * Sets the compaction minimum for journals opened from now on.
+	 * @see CheckpointJournal#setCompactionMinimum(long)
+	 */
+	public synchronized CheckpointStore setCompactionMinimum( long bytes ) {
+		mCompactionMinimum = bytes ;
+		return this ;
+	}
+
+	/**
+	 * Sets whether journals opened from now on sync every append.
+	 * @see CheckpointJournal#setSync(boolean)
+	 */
+	public synchronized CheckpointStore setSync( boolean sync ) {
+		mSync = sync ;
+		return this ;
+	}
+
+
+	/**
+	 * Appends a checkpoint to the journal at the specified file, opening
+	 * (or creating) it if necessary.  The store takes ownership of the
+	 * sections; do not modify them afterwards.
+	 *
+	 * @param file
+	 * @param sections
+	 * @return The sequence number of the checkpoint.
+	 * @throws IOException
+	 */
+	public long append( File file, byte [][] sections ) throws IOException {
+		CheckpointJournal j = journal( file ) ;
+		long seq ;
+		try {
+			seq = j.append( sections ) ;
+		} catch ( IOException e ) {
+			// don't trust the cached state after a failed write.
+			close( file ) ;
+			throw e ;
+		}
+		if ( j.needsCompaction() )
+			mCompactionThread.enqueue( j ) ;
+		return seq ;
+	}
+
+	/**
+	 * Returns the most recent checkpoint in the journal at the specified
+	 * file, or null if there is none.  Do not modify the sections.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public byte [][] load( File file ) throws IOException {
+		if ( !file.exists() ) {
+			close( file ) ;
+			return null ;
+		}
+		synchronized( this ) {
+			CheckpointJournal j = openJournal( file ) ;
+			if ( j != null )
+				return j.latest() ;
+		}
+		return CheckpointJournal.read( key( file ) ) ;
+	}
+
+	/**
+	 * Returns whether the journal at the specified file holds at least
+	 * one valid checkpoint.
+	 * @param file
+	 * @return
+	 */
+	public boolean has( File file ) {
+		try {
+			return load( file ) != null ;
+		} catch ( IOException e ) {
+			return false ;
+		}
+	}
+
+	/**
+	 * Closes and deletes the journal at the specified file.
+	 * @param file
+	 * @return Whether the file no longer exists.
+	 */
+	public boolean delete( File file ) {
+		close( file ) ;
+		return !file.exists() || file.delete() ;
+	}
+
+	/**
+	 * Closes the journal at the specified file, if open.  The file itself
+	 * is retained.  Call this before moving or deleting the file (or its
+	 * directory) yourself.
+	 * @param file
+	 */
+	public void close( File file ) {
+		CheckpointJournal j = mJournals.remove( key( file ) ) ;
+		if ( j != null ) {
+			mCompactionThread.dequeue( j ) ;
+			try {
+				j.close() ;
+			} catch ( IOException e ) {
+				e.printStackTrace() ;
+			}
+		}
+	}
+
+	/**
+	 * Closes every open journal.  The store remains usable.
+	 */
+	public synchronized void closeAll() {
+		File [] files = mJournals.keySet().toArray( new File[0] ) ;
+		for ( int i = 0; i < files.length; i++ )
+			close( files[i] ) ;
+	}
+
+	/**
+	 * Closes every open journal and stops the compaction thread.  The store
+	 * is unusable afterwards.
+	 */
+	public void stop() {
+		mCompactionThread.stopCompacting() ;
+		closeAll() ;
+	}
+
+
+	private synchronized CheckpointJournal journal( File file ) throws IOException {
+		File key = key( file ) ;
+		CheckpointJournal j = openJournal( key ) ;
+		if ( j == null ) {
+			File parent = key.getParentFile() ;
+			if ( parent != null && !parent.exists() )
+				parent.mkdirs() ;
+			j = new CheckpointJournal( key )
+					.setFullInterval( mFullInterval )
+					.setCompactionMinimum( mCompactionMinimum )
+					.setSync( mSync ) ;
+			j.open() ;
+			mJournals.put( key, j ) ;
+		}
+		return j ;
+	}
+
+	/**
+	 * Returns the journal already open for the specified file, or null if
+	 * there is none.  A cached journal that no longer matches its file is
+	 * closed and forgotten.
+	 */
+	private synchronized CheckpointJournal openJournal( File file ) {
+		File key = key( file ) ;
+		CheckpointJournal j = mJournals.get( key ) ;
+		if ( j != null && ( !key.exists() || key.length() != j.length() ) ) {
+			// moved, deleted or modified outside our control.
+			close( key ) ;
+			j = null ;
+		}
+		return j ;
+	}
+
+	private static File key( File file ) {
+		return file.getAbsoluteFile() ;
+	}
+
+
+	/**
+	 * Compacts enqueued journals one at a time, in the order enqueued.
+	 */
+	private static class CompactionThread extends Thread {
+
+		private final LinkedHashSet<CheckpointJournal> mQueue ;
+		private boolean mRunning ;
+
+		private CompactionThread() {
+			mQueue = new LinkedHashSet<CheckpointJournal>() ;
+			mRunning = true ;
+			setDaemon(true) ;
+			setName(TAG + " compaction") ;
+		}
+
+		private synchronized void enqueue( CheckpointJournal j ) {
+			if ( mQueue.add( j ) )
+				notify() ;
+		}
+
+		private synchronized void dequeue( CheckpointJournal j ) {
+			mQueue.remove( j ) ;
+		}
+
+		private synchronized void stopCompacting() {
+			mRunning = false ;
+			mQueue.clear() ;
+			notify() ;
+		}
+
+		@Override
+		public void run() {
+			while ( true ) {
+				CheckpointJournal j ;
+				synchronized( this ) {
+					while ( mRunning && mQueue.isEmpty() ) {
+						try {
+							wait() ;
+						} catch ( InterruptedException e ) {
+							// check again
+						}
+					}
+					if ( !mRunning )
+						return ;
+					Iterator<CheckpointJournal> iter = mQueue.iterator() ;
+					j = iter.next() ;
+					iter.remove() ;
+				}
+
+				try {
+					j.compact() ;
+				} catch ( IOException e ) {
+					// the journal is unchanged; we'll try again after
+					// the next append.
+					e.printStackTrace() ;
+				}
+			}
+		}
+	}
+
+}
@@ -1733,16 +1733,13 @@ public class AttackSystem implements SerializableState {
 		
 		int numNewRows = Math.max(numQ0, numQ1) ;
 		
-		int blockFieldR = blockField[0].length ;
 		int blockFieldC = blockField[0][0].length ;
 		
-		// Now raise blockField elements in the blockField.
+		// Now raise blockField elements in the blockField.  We move row
+		// references, not contents; the rows which wrap around to the
+		// bottom are emptied.
 		for ( int q = 0; q < 2; q++ ) {
-			for ( int r = blockFieldR-1; r >= numNewRows; r-- ) {
-				for ( int c = 0; c < blockFieldC; c++ ) {
-					blockField[q][r][c] = blockField[q][r-numNewRows][c] ;
-				}
-			}
+			ArrayOps.rotateRowsUp( blockField[q], numNewRows ) ;
 			for ( int r = 0; r < numNewRows; r++ ) {
 				for ( int c = 0; c < blockFieldC; c++ ) {
 					blockField[q][r][c] = QOrientations.NO ;
@@ -2259,13 +2256,10 @@ public class AttackSystem implements SerializableState {
 		
 		// Now at most one of numIn / numOut is positive.
 		if ( numIn > 0 ) {
-			// push these rows in.  First clear the space by shifting the blockfield up...
+			// push these rows in.  First clear the space by shifting the blockfield up
+			// (moving row references; those wrapping to the bottom are overwritten)...
 			for ( int qp = 0; qp < 2; qp++ ) {
-				for ( int r = asac.R - 1; r >= numIn; r-- ) {
-					for ( int c = 0; c < asac.C; c++ ) {
-						blockField[qp][r][c] = blockField[qp][r-numIn][c] ;
-					}
-				}
+				ArrayOps.rotateRowsUp( blockField[qp], numIn ) ;
 			}
 			
 			// now place those rows.
@@ -2293,13 +2287,10 @@ public class AttackSystem implements SerializableState {
 				numRowsOut++ ;
 			}
 			
-			// now shift the blockfield down to cover.
+			// now shift the blockfield down to cover (moving row references;
+			// those wrapping to the top are emptied).
 			for ( int qp = 0; qp < 2; qp++ ) {
-				for ( int r = 0; r < asac.R - numOut; r++ ) {
-					for ( int c = 0; c < asac.C; c++ ) {
-						blockField[qp][r][c] = blockField[qp][r + numOut][c] ;
-					}
-				}
+				ArrayOps.rotateRowsDown( blockField[qp], numOut ) ;
 				for ( int r = asac.R - numOut; r < asac.R; r++ ) {
 					for ( int c = 0; c < asac.C; c++ ) {
 						blockField[qp][r][c] = 0 ;
@@ -77,21 +77,16 @@ public class DeadDisplacementSystem extends DisplacementSystem {
 	public void transferDisplacedRows(
 			byte[][][] blockfield, byte[][][] displacementRows, int rows) {
 		
-		// shift up
+		// shift up (moving row references; the rows that wrap
+		// around to the bottom are emptied).
 		for ( int qp = 0; qp < 2; qp++ ) {
-			for ( int r = blockfield[0].length -1; r >= rows; r-- ) {
-				for ( int c = 0; c < blockfield[0][0].length; c++ ) {
-					blockfield[qp][r][c] = blockfield[qp][r-rows][c] ;
-				}
-			}
+			ArrayOps.rotateRowsUp( blockfield[qp], rows ) ;
 		}
 		
 		// fake out!  this is an empty system!
 		for ( int qp = 0; qp < 2; qp++ ) {
 			for ( int r = 0; r < rows; r++ ) {
-				for ( int c = 0; c < blockfield[0][0].length; c++ ) {
-					blockfield[qp][r][c] = 0 ;
-				}
+				ArrayOps.setEmpty( blockfield[qp][r] ) ;
 			}
 		}
 	}
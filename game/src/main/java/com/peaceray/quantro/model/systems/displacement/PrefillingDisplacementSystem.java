@@ -272,35 +272,26 @@ public abstract class PrefillingDisplacementSystem extends DisplacementSystem {
 	
 	
 	protected void transfer( byte[][][] blockfield, byte[][][] displacementRows, int rows ) {
-		// shift up the blockfield
+		// Every pane is an array of row references, so rather than copying
+		// contents we move rows.  Rotating both up by 'rows' brings the
+		// blockfield rows that fall off the top, and the displacement rows
+		// that rise into the blockfield, to the bottom 'rows' of their
+		// panes -- already in the right order.  Exchange them: the blockfield
+		// takes the displacement rows, and the discarded blockfield rows
+		// become the new displacement rows (which we fill below).
+		//
+		// This moves O(R) references per transfer, instead of copying
+		// O(R*C) bytes.
 		for ( int qp = 0; qp < 2; qp++ ) {
-			for ( int r = blockfield[0].length -1; r >= rows; r-- ) {
-				ArrayOps.copyInto( blockfield[qp][r-rows], blockfield[qp][r] ) ;
-			}
-		}
-		
-		// copy from ready-made displacement data
-		int dHeight = displacementRows[0].length ;
-		for ( int qp = 0; qp < 2; qp++ ) {
-			for ( int r = 0; r < rows; r++ ) {
-				// copy displacement row r (counted DOWN from the TOP)
-				// into blockfield row r (counted DOWN from 'rows')
-				ArrayOps.copyInto(
-						displacementRows[qp][dHeight - r - 1],
-						blockfield[qp][rows - r - 1] ) ;
-			}
-		}
-		
-		// shift displacement data up
-		for ( int qp = 0; qp < 2; qp++ ) {
-			for ( int r = displacementRows[0].length -1; r >= rows; r-- ) {
-				ArrayOps.copyInto( displacementRows[qp][r-rows], displacementRows[qp][r] ) ;
-			}
+			ArrayOps.rotateRowsUp( blockfield[qp], rows ) ;
+			ArrayOps.rotateRowsUp( displacementRows[qp], rows ) ;
+			ArrayOps.exchangeRows( blockfield[qp], displacementRows[qp], 0, rows ) ;
 		}
 		
 		mState.addRowsTransferred(rows) ;
 		
-		// fill the bottom 'rows' with new data.
+		// fill the bottom 'rows' with new data.  This overwrites every cell
+		// in those rows.
 		fill( displacementRows, 0, rows ) ;
 	}
 	
@@ -663,6 +663,69 @@ public class ArrayOps {
 		}
 	}
 	
+	/**
+	 * rotateRowsUp: moves every row of the pane up by 'rows', wrapping the
+	 * top 'rows' rows around to the bottom (in their original order).
+	 * 
+	 * A pane is an array of row references, so this moves references only:
+	 * O(R) no matter the row length, rather than the O(R*C) of copying
+	 * contents row-by-row.  Rows keep their identity; a row held by reference
+	 * is simply found at a new index.  Callers that discard the wrapped rows
+	 * should overwrite (or exchange) them.
+	 * 
+	 * @param pane		A [R][C] array, e.g. one qPane of a blockfield.
+	 * @param rows		The distance to move.
+	 */
+	public static final void rotateRowsUp( byte [][] pane, int rows ) {
+		int R = pane.length ;
+		if ( R == 0 )
+			return ;
+		rows = ((rows % R) + R) % R ;
+		if ( rows == 0 )
+			return ;
+		// row r -> r + rows (mod R): reverse the whole, then each part.
+		reverseRows( pane, 0, R ) ;
+		reverseRows( pane, 0, rows ) ;
+		reverseRows( pane, rows, R ) ;
+	}
+	
+	/**
+	 * rotateRowsDown: moves every row of the pane down by 'rows', wrapping
+	 * the bottom 'rows' rows around to the top.  As rotateRowsUp, this
+	 * moves row references only.
+	 * 
+	 * @param pane
+	 * @param rows
+	 */
+	public static final void rotateRowsDown( byte [][] pane, int rows ) {
+		rotateRowsUp( pane, -rows ) ;
+	}
+	
+	/**
+	 * exchangeRows: exchanges the row references of the two panes in rows
+	 * [firstRow, boundRow).  The panes must have the same row length.
+	 * 
+	 * @param pane0
+	 * @param pane1
+	 * @param firstRow
+	 * @param boundRow
+	 */
+	public static final void exchangeRows( byte [][] pane0, byte [][] pane1, int firstRow, int boundRow ) {
+		for ( int r = firstRow; r < boundRow; r++ ) {
+			byte [] row = pane0[r] ;
+			pane0[r] = pane1[r] ;
+			pane1[r] = row ;
+		}
+	}
+	
+	private static final void reverseRows( byte [][] pane, int firstRow, int boundRow ) {
+		for ( int i = firstRow, j = boundRow - 1; i < j; i++, j-- ) {
+			byte [] row = pane[i] ;
+			pane[i] = pane[j] ;
+			pane[j] = row ;
+		}
+	}
+	
 	public static final boolean areEqual( byte [] ar0, byte [] ar1 ) {
 		int Q = ar0.length ;
 		if ( Q != ar1.length )
@@ -118,8 +118,115 @@ public class ByteArrayOps {
 		long l = ByteArrayOps.readLongAsBytes(ar, index) ;
 		return Double.longBitsToDouble(l) ;
 	}
-	
-	
+
+
+	/**
+	 * Writes the provided integer as a variable-length unsigned int:
+	 * 7 bits per byte, least significant first, with the high bit set on
+	 * every byte but the last.  Values in [0,127] take a single byte;
+	 * negative values take 5 (zigZag() them first if they are expected).
+	 *
+	 * @param val
+	 * @param ar The array to write to.  If 'null', we write nothing, but
+	 * 		return the correct length.
+	 * @param index
+	 * @return The number of bytes written.
+	 */
+	public static int writeVarIntAsBytes( int val, byte [] ar, int index ) {
+		int len = 0 ;
+		while ( (val & ~0x7f) != 0 ) {
+			if ( ar != null )
+				ar[index+len] = (byte)( (val & 0x7f) | 0x80 ) ;
+			len++ ;
+			val >>>= 7 ;
+		}
+		if ( ar != null )
+			ar[index+len] = (byte)val ;
+		return len + 1 ;
+	}
+
+	/**
+	 * Reads a variable-length int written by writeVarIntAsBytes.  The
+	 * number of bytes it occupied is lengthOfVarIntAsBytes( <returned value> ).
+	 *
+	 * @param ar
+	 * @param index
+	 * @return
+	 */
+	public static int readVarIntAsBytes( byte [] ar, int index ) {
+		int val = 0 ;
+		for ( int shift = 0; shift < 35; shift += 7 ) {
+			byte b = ar[index++] ;
+			val |= (b & 0x7f) << shift ;
+			if ( b >= 0 )
+				return val ;
+		}
+		throw new IllegalArgumentException("Malformed variable-length int") ;
+	}
+
+	public static int lengthOfVarIntAsBytes( int val ) {
+		return writeVarIntAsBytes( val, null, 0 ) ;
+	}
+
+	/**
+	 * As writeVarIntAsBytes, for longs.  Negative values take 10 bytes.
+	 *
+	 * @param val
+	 * @param ar
+	 * @param index
+	 * @return The number of bytes written.
+	 */
+	public static int writeVarLongAsBytes( long val, byte [] ar, int index ) {
+		int len = 0 ;
+		while ( (val & ~0x7fL) != 0 ) {
+			if ( ar != null )
+				ar[index+len] = (byte)( (val & 0x7f) | 0x80 ) ;
+			len++ ;
+			val >>>= 7 ;
+		}
+		if ( ar != null )
+			ar[index+len] = (byte)val ;
+		return len + 1 ;
+	}
+
+	public static long readVarLongAsBytes( byte [] ar, int index ) {
+		long val = 0 ;
+		for ( int shift = 0; shift < 70; shift += 7 ) {
+			byte b = ar[index++] ;
+			val |= (long)(b & 0x7f) << shift ;
+			if ( b >= 0 )
+				return val ;
+		}
+		throw new IllegalArgumentException("Malformed variable-length long") ;
+	}
+
+	public static int lengthOfVarLongAsBytes( long val ) {
+		return writeVarLongAsBytes( val, null, 0 ) ;
+	}
+
+	/**
+	 * Maps signed ints to unsigned so that values of small magnitude
+	 * remain small: 0, -1, 1, -2, 2, ... become 0, 1, 2, 3, 4, ...
+	 * @param val
+	 * @return
+	 */
+	public static int zigZag( int val ) {
+		return (val << 1) ^ (val >> 31) ;
+	}
+
+	public static int unZigZag( int val ) {
+		return (val >>> 1) ^ -(val & 1) ;
+	}
+
+	public static long zigZag( long val ) {
+		return (val << 1) ^ (val >> 63) ;
+	}
+
+	public static long unZigZag( long val ) {
+		return (val >>> 1) ^ -(val & 1) ;
+	}
+
+
 	public static int writeSocketAddressAsBytes( SocketAddress addr, byte [] ar, int index ) throws IllegalArgumentException {
 		// Only supports InetSocketAddresses...
 		if ( !(addr instanceof InetSocketAddress) ) 
@@ -324,8 +431,98 @@ public class ByteArrayOps {
 		
 		return index - indexOrig ;
 	}
-	
-	
+
+
+	/**
+	 * As toBytes( field, rowIncluded, ... ), but run-length encoded: the same
+	 * cells, in the same order, are written as (run length, value) pairs,
+	 * with the run length a variable-length int.  Runs continue across row
+	 * and qpane boundaries, so (e.g.) an empty qpane costs a pair or two.
+	 *
+	 * @param field
+	 * @param rowIncluded
+	 * @param byteArray If 'null', we perform no writes, but return the correct length.
+	 * @param index
+	 * @return The number of bytes written.
+	 */
+	public static int toBytesRunLength( byte [][][] field, boolean [] rowIncluded, byte [] byteArray, int index ) {
+		int R = field[0].length ;
+		int C = field[0][0].length ;
+
+		int indexOrig = index ;
+
+		int run = 0 ;
+		byte val = 0 ;
+		for ( int q = 0; q < field.length; q++ ) {
+			for ( int r = 0; r < R; r++ ) {
+				if ( rowIncluded == null || rowIncluded[r] ) {
+					for ( int c = 0; c < C; c++ ) {
+						byte v = field[q][r][c] ;
+						if ( run > 0 && v != val ) {
+							index += writeRun( run, val, byteArray, index ) ;
+							run = 0 ;
+						}
+						val = v ;
+						run++ ;
+					}
+				}
+			}
+		}
+		if ( run > 0 )
+			index += writeRun( run, val, byteArray, index ) ;
+
+		return index - indexOrig ;
+	}
+
+
+	/**
+	 * Reverses toBytesRunLength( field, rowIncluded, ... ).  Rows not included
+	 * are left unchanged.
+	 *
+	 * @param field
+	 * @param rowIncluded
+	 * @param byteArray
+	 * @param index
+	 * @return The number of bytes read.
+	 */
+	public static int fromBytesRunLength( byte [][][] field, boolean [] rowIncluded, byte [] byteArray, int index ) {
+		int R = field[0].length ;
+		int C = field[0][0].length ;
+
+		int indexOrig = index ;
+
+		int run = 0 ;
+		byte val = 0 ;
+		for ( int q = 0; q < field.length; q++ ) {
+			for ( int r = 0; r < R; r++ ) {
+				if ( rowIncluded == null || rowIncluded[r] ) {
+					for ( int c = 0; c < C; c++ ) {
+						if ( run == 0 ) {
+							run = readVarIntAsBytes( byteArray, index ) ;
+							index += lengthOfVarIntAsBytes( run ) ;
+							val = byteArray[index++] ;
+							if ( run <= 0 )
+								throw new IllegalArgumentException("Malformed run length " + run) ;
+						}
+						field[q][r][c] = val ;
+						run-- ;
+					}
+				}
+			}
+		}
+
+		return index - indexOrig ;
+	}
+
+
+	private static int writeRun( int run, byte val, byte [] byteArray, int index ) {
+		int len = writeVarIntAsBytes( run, byteArray, index ) ;
+		if ( byteArray != null )
+			byteArray[index + len] = val ;
+		return len + 1 ;
+	}
+
+
 	private static final byte [] BIT = new byte[8] ;
 	static {
 		for ( int i = 0; i < 8; i++ ) {
@@ -371,7 +568,61 @@ public class ByteArrayOps {
 		}
 		return numBytes ;
 	}
-	
+
+
+	/**
+	 * Writes the specified boolean array as run lengths: alternating runs of
+	 * 'false' and 'true', beginning with 'false' (a leading run may be 0), each
+	 * as a variable-length int.  A handful of consecutive 'true's in a long
+	 * array costs 2 or 3 bytes, regardless of the array length.
+	 *
+	 * @param ar The boolean array to convert to bytes.
+	 * @param byteArray If 'null', we perform no writes, but return the correct length.
+	 * @param index
+	 * @return The total number of bytes written by this call.
+	 */
+	public static int toBytesRunLength( boolean [] ar, byte [] byteArray, int index ) {
+		int indexOrig = index ;
+
+		int i = 0 ;
+		boolean val = false ;
+		while ( i < ar.length ) {
+			int runStart = i ;
+			while ( i < ar.length && ar[i] == val )
+				i++ ;
+			index += writeVarIntAsBytes( i - runStart, byteArray, index ) ;
+			val = !val ;
+		}
+
+		return index - indexOrig ;
+	}
+
+	/**
+	 * Reverses toBytesRunLength( ar, ... ).
+	 *
+	 * @param ar The boolean array to fill.  Its length must match that written.
+	 * @param byteArray
+	 * @param index
+	 * @return The total number of bytes read by this call.
+	 */
+	public static int fromBytesRunLength( boolean [] ar, byte [] byteArray, int index ) {
+		int indexOrig = index ;
+
+		int i = 0 ;
+		boolean val = false ;
+		while ( i < ar.length ) {
+			int run = readVarIntAsBytes( byteArray, index ) ;
+			index += lengthOfVarIntAsBytes( run ) ;
+			if ( run < 0 || run > ar.length - i )
+				throw new IllegalArgumentException("Malformed run length " + run) ;
+			for ( int j = 0; j < run; j++ )
+				ar[i++] = val ;
+			val = !val ;
+		}
+
+		return index - indexOrig ;
+	}
+
 	/**
 	 * A byte can store up to 8 booleans.  Returns a 'byte' which
 	 * represents the 8 consecutive booleans in the specified array.
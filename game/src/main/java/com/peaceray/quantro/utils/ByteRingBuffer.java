@@ -0,0 +1,233 @@
+package com.peaceray.quantro.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-capacity, lock-free ring buffer of bytes intended for exactly
+ * one producer thread and one consumer thread.
+ *
+ * The producer calls 'offer'.  The consumer calls 'peek', 'skip' and
+ * 'drain'.  Neither side ever blocks or takes a monitor; the only shared
+ * state is a pair of monotonically increasing sequence counters (head and
+ * tail), which are published with ordered writes.
+ *
+ * 'clear' may be called from any thread.  It is implemented as a
+ * consumer-side skip to the current tail, so the consumer methods
+ * advance 'head' with a compare-and-set rather than a plain write.  A
+ * consumer which loses that race to 'clear' simply sees its read discarded,
+ * which is exactly the semantics callers expect of a clear.
+ *
+ * @author Jake
+ *
+ */
+public class ByteRingBuffer {
+
+	private final byte [] mBuffer ;
+	private final int mMask ;
+
+	// the next sequence number to read, and the next to write.
+	// head <= tail, and tail - head <= capacity.
+	private final AtomicLong mHead ;
+	private final AtomicLong mTail ;
+
+	// Producer-local cache of 'head', so the producer need not read
+	// the consumer's counter on every offer.
+	private long mProducerHeadCache ;
+
+
+	/**
+	 * Constructs a new ring buffer holding at least 'capacity' bytes.
+	 * The actual capacity is rounded up to the next power of two.
+	 *
+	 * @param capacity
+	 */
+	public ByteRingBuffer( int capacity ) {
+		if ( capacity <= 0 )
+			throw new IllegalArgumentException("Capacity must be positive") ;
+		int cap = Integer.highestOneBit(capacity) ;
+		if ( cap < capacity )
+			cap <<= 1 ;
+		mBuffer = new byte[cap] ;
+		mMask = cap - 1 ;
+		mHead = new AtomicLong(0) ;
+		mTail = new AtomicLong(0) ;
+		mProducerHeadCache = 0 ;
+	}
+
+
+	public int capacity() {
+		return mBuffer.length ;
+	}
+
+
+	/**
+	 * The number of bytes currently available to the consumer.  When called
+	 * from a thread other than the producer or consumer, this is only
+	 * an instantaneous estimate.
+	 *
+	 * @return
+	 */
+	public int size() {
+		long head = mHead.get() ;
+		long tail = mTail.get() ;
+		return (int)Math.max(0, tail - head) ;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0 ;
+	}
+
+
+	/**
+	 * The number of bytes which may currently be offered without the
+	 * buffer filling.  Exact from the producer thread, where it can only
+	 * grow until the producer's next offer.
+	 *
+	 * @return
+	 */
+	public int remainingCapacity() {
+		return mBuffer.length - size() ;
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	//
+	// PRODUCER
+	//
+
+	/**
+	 * Appends the provided byte to the buffer.  Producer thread only.
+	 *
+	 * @param b
+	 * @return Whether the byte was added; 'false' if the buffer is full.
+	 */
+	public boolean offer( byte b ) {
+		long tail = mTail.get() ;
+		if ( tail - mProducerHeadCache >= mBuffer.length ) {
+			mProducerHeadCache = mHead.get() ;
+			if ( tail - mProducerHeadCache >= mBuffer.length )
+				return false ;
+		}
+		mBuffer[(int)tail & mMask] = b ;
+		mTail.lazySet(tail + 1) ;
+		return true ;
+	}
+
+
+	/**
+	 * Appends up to 'length' bytes from b[ind] onward, publishing them to the
+	 * consumer all at once.  Producer thread only.
+	 *
+	 * @param b
+	 * @param ind
+	 * @param length
+	 * @return The number of bytes actually added; fewer than 'length' if
+	 * 		the buffer filled.
+	 */
+	public int offer( byte [] b, int ind, int length ) {
+		long tail = mTail.get() ;
+		long free = mBuffer.length - (tail - mProducerHeadCache) ;
+		if ( free < length ) {
+			mProducerHeadCache = mHead.get() ;
+			free = mBuffer.length - (tail - mProducerHeadCache) ;
+		}
+		int num = (int)Math.min(free, length) ;
+		if ( num <= 0 )
+			return 0 ;
+
+		int start = (int)tail & mMask ;
+		int first = Math.min(num, mBuffer.length - start) ;
+		System.arraycopy(b, ind, mBuffer, start, first) ;
+		if ( first < num )
+			System.arraycopy(b, ind + first, mBuffer, 0, num - first) ;
+		mTail.lazySet(tail + num) ;
+		return num ;
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	//
+	// CONSUMER
+	//
+
+	/**
+	 * Returns the byte 'offset' positions past the head of the buffer,
+	 * without consuming it.  Consumer thread only.  The caller must have
+	 * confirmed offset < size().
+	 *
+	 * @param offset
+	 * @return
+	 */
+	public byte peek( int offset ) {
+		return mBuffer[(int)(mHead.get() + offset) & mMask] ;
+	}
+
+
+	/**
+	 * Consumes and discards up to 'num' bytes from the head of the buffer.
+	 * Consumer thread only.
+	 *
+	 * @param num
+	 * @return The number of bytes discarded.
+	 */
+	public int skip( int num ) {
+		long head = mHead.get() ;
+		long tail = mTail.get() ;
+		int n = (int)Math.min(num, tail - head) ;
+		if ( n <= 0 )
+			return 0 ;
+		return mHead.compareAndSet(head, head + n) ? n : 0 ;
+	}
+
+
+	/**
+	 * Copies up to 'length' bytes from the head of the buffer into
+	 * b[ind] onward, consuming them.  At most two array copies are performed
+	 * regardless of 'length'.  Consumer thread only.
+	 *
+	 * If 'b' is null, behaves as 'skip'.
+	 *
+	 * @param b
+	 * @param ind
+	 * @param length
+	 * @return The number of bytes consumed.
+	 */
+	public int drain( byte [] b, int ind, int length ) {
+		if ( b == null )
+			return skip(length) ;
+
+		long head = mHead.get() ;
+		long tail = mTail.get() ;
+		int num = (int)Math.min(length, tail - head) ;
+		if ( num <= 0 )
+			return 0 ;
+
+		int start = (int)head & mMask ;
+		int first = Math.min(num, mBuffer.length - start) ;
+		System.arraycopy(mBuffer, start, b, ind, first) ;
+		if ( first < num )
+			System.arraycopy(mBuffer, 0, b, ind + first, num - first) ;
+
+		return mHead.compareAndSet(head, head + num) ? num : 0 ;
+	}
+
+
+	////////////////////////////////////////////////////////////////////////
+	//
+	// ANY THREAD
+	//
+
+	/**
+	 * Discards everything currently in the buffer.  Bytes offered concurrently
+	 * with this call may or may not survive it.
+	 */
+	public void clear() {
+		while ( true ) {
+			long head = mHead.get() ;
+			long tail = mTail.get() ;
+			if ( head >= tail || mHead.compareAndSet(head, tail) )
+				return ;
+		}
+	}
+
+}
@@ -0,0 +1,307 @@
+package com.peaceray.quantro.communications.matchmaker;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.peaceray.quantro.communications.MatchmakingMessage;
+import com.peaceray.quantro.communications.nonce.Nonce;
+
+
+/**
+ * A load test for LocalMatchmaker.  Simulates a large number of seekers,
+ * paired by nonce, all requesting matches over loopback; reports match
+ * latency and the number of packets exchanged per match.
+ *
+ * Seekers are multiplexed over a small number of client DatagramChannels
+ * (a real seeker has its own socket, but tens of thousands of sockets is
+ * a test of the OS, not the matchmaker).  The first member of every pair
+ * requests first and is promised; the second member's request then completes
+ * the match.  Latency is measured from the second request to the receipt of
+ * each member's TYPE_MATCH.  Unanswered requests are repeated after a timeout,
+ * as a MatchSeeker would.
+ *
+ * Usage: LocalMatchmakerBenchmark [numSeekers [numChannels]]
+ *
+ * Lives with the tests, not the shipped sources, but is not itself a test:
+ * run it by hand against the test classpath.
+ *
+ * @author Jake
+ *
+ */
+public class LocalMatchmakerBenchmark {
+
+	public static final int DEFAULT_NUM_SEEKERS = 20000 ;
+	public static final int DEFAULT_NUM_CHANNELS = 16 ;
+
+	// Maximum unanswered requests in flight.  Keeps the loopback socket
+	// buffers from overflowing while the matchmaker catches up.
+	private static final int WINDOW = 256 ;
+
+	private static final long RESEND_TIMEOUT = 1000 ;
+	private static final long TOTAL_TIMEOUT = 1000 * 60 ;
+
+
+	/**
+	 * Results of a benchmark run.  Latencies are in microseconds.
+	 */
+	public static class Result {
+		public int numSeekers ;
+		public int numMatched ;
+		public long matchmakerPacketsReceived ;
+		public long matchmakerPacketsSent ;
+		public long matchmakerPacketsDropped ;
+		public long matches ;
+		public long requestsSent ;
+		public long elapsedMillis ;
+		public long latencyMedian ;
+		public long latency90 ;
+		public long latency99 ;
+		public long latencyMax ;
+
+		/**
+		 * Packets handled by the matchmaker (in and out) per match made.
+		 */
+		public double packetsPerMatch() {
+			return matches == 0 ? 0 : ((double)(matchmakerPacketsReceived + matchmakerPacketsSent)) / matches ;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder() ;
+			sb.append("seekers ").append(numSeekers).append(", matched ").append(numMatched) ;
+			sb.append(" in ").append(elapsedMillis).append(" ms\n") ;
+			sb.append("matches ").append(matches).append(", requests sent ").append(requestsSent) ;
+			sb.append(", matchmaker packets in ").append(matchmakerPacketsReceived) ;
+			sb.append(" out ").append(matchmakerPacketsSent) ;
+			sb.append(" dropped ").append(matchmakerPacketsDropped).append("\n") ;
+			sb.append("packets per match ").append(String.format("%.2f", packetsPerMatch())).append("\n") ;
+			sb.append("match latency (us): median ").append(latencyMedian) ;
+			sb.append(", 90% ").append(latency90) ;
+			sb.append(", 99% ").append(latency99) ;
+			sb.append(", max ").append(latencyMax) ;
+			return sb.toString() ;
+		}
+	}
+
+
+	public static void main( String [] args ) throws IOException {
+		int numSeekers = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_NUM_SEEKERS ;
+		int numChannels = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_NUM_CHANNELS ;
+		System.out.println( run( numSeekers, numChannels ) ) ;
+	}
+
+
+	/**
+	 * Starts a LocalMatchmaker on loopback, runs 'numSeekers' seekers (rounded
+	 * down to an even number) against it over 'numChannels' channels, then halts it.
+	 *
+	 * @param numSeekers
+	 * @param numChannels
+	 * @return
+	 * @throws IOException
+	 */
+	public static Result run( int numSeekers, int numChannels ) throws IOException {
+		numSeekers -= numSeekers % 2 ;
+		if ( numSeekers <= 0 || numChannels <= 0 )
+			throw new IllegalArgumentException("Must have at least two seekers and one channel") ;
+
+		InetAddress loopback = InetAddress.getByName("127.0.0.1") ;
+		LocalMatchmaker matchmaker = new LocalMatchmaker( new InetSocketAddress(loopback, 0), null, null ) ;
+		matchmaker.setMaxSeekers(numSeekers) ;
+		SocketAddress matchmakerAddress = matchmaker.getMatchmakerAddress() ;
+		matchmaker.start() ;
+
+		Selector selector = Selector.open() ;
+		DatagramChannel [] channels = new DatagramChannel[numChannels] ;
+		SocketAddress [] channelAddresses = new SocketAddress[numChannels] ;
+
+		try {
+			for ( int i = 0; i < numChannels; i++ ) {
+				channels[i] = DatagramChannel.open() ;
+				channels[i].socket().setReceiveBufferSize(1024 * 1024) ;
+				channels[i].socket().bind( new InetSocketAddress(loopback, 0) ) ;
+				channels[i].configureBlocking(false) ;
+				channels[i].register(selector, SelectionKey.OP_READ) ;
+				channelAddresses[i] = channels[i].socket().getLocalSocketAddress() ;
+			}
+
+			return run( matchmaker, matchmakerAddress, selector, channels, channelAddresses, numSeekers ) ;
+		} finally {
+			matchmaker.halt() ;
+			for ( int i = 0; i < numChannels; i++ ) {
+				if ( channels[i] != null ) {
+					try {
+						channels[i].close() ;
+					} catch ( IOException e ) { }
+				}
+			}
+			selector.close() ;
+		}
+	}
+
+
+	private static Result run( LocalMatchmaker matchmaker, SocketAddress matchmakerAddress,
+			Selector selector, DatagramChannel [] channels, SocketAddress [] channelAddresses,
+			int numSeekers ) throws IOException {
+
+		int numPairs = numSeekers / 2 ;
+		Nonce [] nonces = new Nonce[numPairs] ;
+		for ( int i = 0; i < numPairs; i++ )
+			nonces[i] = new Nonce() ;
+
+		// Seeker i belongs to pair i/2.  Request IDs encode the seeker index.
+		long [] timeLastSent = new long[numSeekers] ;
+		long [] timeMatched = new long[numSeekers] ;
+		boolean [] promised = new boolean[numSeekers] ;
+
+		MatchmakingMessage out = new MatchmakingMessage() ;
+		MatchmakingMessage in = new MatchmakingMessage() ;
+		ByteBuffer outBuffer = ByteBuffer.allocateDirect(2048) ;
+		ByteBuffer inBuffer = ByteBuffer.allocate(2048) ;
+		Nonce proof = new Nonce() ;
+
+		Result result = new Result() ;
+		result.numSeekers = numSeekers ;
+		long timeStarted = System.currentTimeMillis() ;
+
+		// Phase 1: first members, then (once promised) second members.  At most
+		// WINDOW requests are outstanding at once, so the latency we measure
+		// is the matchmaker's and not that of a queue we built ourselves.
+		int [] answered = new int[2] ;
+		for ( int phase = 0; phase < 2; phase++ ) {
+			int sent = 0 ;
+			for ( int i = phase; i < numSeekers; i += 2 ) {
+				long waitStarted = System.currentTimeMillis() ;
+				while ( sent - answered[phase] >= WINDOW
+						&& System.currentTimeMillis() - waitStarted < RESEND_TIMEOUT )
+					drain( selector, in, inBuffer, promised, timeMatched, answered, 1 ) ;
+				sendRequest( i, channels, channelAddresses, matchmakerAddress, nonces, out, outBuffer, proof ) ;
+				timeLastSent[i] = System.nanoTime() ;
+				result.requestsSent++ ;
+				sent++ ;
+				drain( selector, in, inBuffer, promised, timeMatched, answered, 0 ) ;
+			}
+			if ( phase == 0 ) {
+				// wait for the promises before sending the completing requests,
+				// so every match is made by the second member's request.
+				long waitStarted = System.currentTimeMillis() ;
+				while ( answered[0] < numPairs
+						&& System.currentTimeMillis() - waitStarted < RESEND_TIMEOUT )
+					drain( selector, in, inBuffer, promised, timeMatched, answered, 10 ) ;
+			}
+		}
+
+		// Phase 2: collect matches, resending any request that has gone unanswered.
+		while ( System.currentTimeMillis() - timeStarted < TOTAL_TIMEOUT ) {
+			drain( selector, in, inBuffer, promised, timeMatched, answered, 10 ) ;
+
+			int unmatched = 0 ;
+			long now = System.nanoTime() ;
+			for ( int i = 0; i < numSeekers; i++ ) {
+				if ( timeMatched[i] != 0 )
+					continue ;
+				unmatched++ ;
+				if ( now - timeLastSent[i] > RESEND_TIMEOUT * 1000000L ) {
+					sendRequest( i, channels, channelAddresses, matchmakerAddress, nonces, out, outBuffer, proof ) ;
+					timeLastSent[i] = System.nanoTime() ;
+					result.requestsSent++ ;
+				}
+			}
+			if ( unmatched == 0 )
+				break ;
+		}
+
+		result.elapsedMillis = System.currentTimeMillis() - timeStarted ;
+
+		// Latency: from the later request of the pair to each member's match.
+		long [] latencies = new long[numSeekers] ;
+		int numLatencies = 0 ;
+		for ( int i = 0; i < numSeekers; i++ ) {
+			if ( timeMatched[i] == 0 )
+				continue ;
+			result.numMatched++ ;
+			long requested = Math.max(timeLastSent[i], timeLastSent[i ^ 1]) ;
+			latencies[numLatencies++] = Math.max(0, timeMatched[i] - requested) / 1000 ;
+		}
+		Arrays.sort(latencies, 0, numLatencies) ;
+		if ( numLatencies > 0 ) {
+			result.latencyMedian = latencies[numLatencies / 2] ;
+			result.latency90 = latencies[(int)(numLatencies * 0.90)] ;
+			result.latency99 = latencies[(int)(numLatencies * 0.99)] ;
+			result.latencyMax = latencies[numLatencies - 1] ;
+		}
+
+		result.matchmakerPacketsReceived = matchmaker.getPacketsReceived() ;
+		result.matchmakerPacketsSent = matchmaker.getPacketsSent() ;
+		result.matchmakerPacketsDropped = matchmaker.getPacketsDropped() ;
+		result.matches = matchmaker.getMatches() ;
+		return result ;
+	}
+
+
+	private static void sendRequest( int seeker, DatagramChannel [] channels, SocketAddress [] channelAddresses,
+			SocketAddress matchmakerAddress, Nonce [] nonces,
+			MatchmakingMessage out, ByteBuffer outBuffer, Nonce proof ) throws IOException {
+		int c = seeker % channels.length ;
+		out.setAsMatchRequestMatchLobby(nonces[seeker / 2], "user" + seeker, "req" + seeker,
+				channelAddresses[c], "benchmark", proof, 0) ;
+		outBuffer.clear() ;
+		out.write(outBuffer) ;
+		outBuffer.flip() ;
+		channels[c].send(outBuffer, matchmakerAddress) ;
+	}
+
+
+	private static void drain( Selector selector, MatchmakingMessage in, ByteBuffer inBuffer,
+			boolean [] promised, long [] timeMatched, int [] answered, long timeout ) throws IOException {
+		if ( timeout > 0 )
+			selector.select(timeout) ;
+		else
+			selector.selectNow() ;
+		Iterator<SelectionKey> iter = selector.selectedKeys().iterator() ;
+		while ( iter.hasNext() ) {
+			SelectionKey key = iter.next() ;
+			iter.remove() ;
+			DatagramChannel channel = (DatagramChannel)key.channel() ;
+			while ( true ) {
+				inBuffer.clear() ;
+				if ( channel.receive(inBuffer) == null )
+					break ;
+				long now = System.nanoTime() ;
+				inBuffer.flip() ;
+				try {
+					in.resetForRead() ;
+					if ( !in.read(inBuffer) )
+						continue ;
+				} catch ( Exception e ) {
+					continue ;
+				}
+				int seeker = Integer.parseInt( in.getLocalRequestID().substring(3) ) ;
+				switch( in.getType() ) {
+				case MatchmakingMessage.TYPE_PROMISE:
+					if ( !promised[seeker] && seeker % 2 == 0 )
+						answered[0]++ ;
+					promised[seeker] = true ;
+					break ;
+				case MatchmakingMessage.TYPE_MATCH:
+				case MatchmakingMessage.TYPE_MATCH_CHALLENGE:
+					if ( timeMatched[seeker] == 0 ) {
+						timeMatched[seeker] = now ;
+						if ( seeker % 2 == 1 )
+							answered[1]++ ;
+					}
+					break ;
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+package com.peaceray.quantro.communications.web;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * A minimal HTTP/1.1 server on the loopback interface, standing in for the
+ * lobby CGI scripts when testing WebQuery and its users.  Each POST is
+ * decoded into its variables and answered by a Responder; connections are
+ * kept alive unless the client asks otherwise, and the server counts both
+ * connections and requests so that connection reuse can be verified.
+ *
+ * Not for production use: it handles only what WebQuery sends.
+ *
+ * @author Jake
+ *
+ */
+public class StubWebServer {
+
+	/**
+	 * Produces the body of the response to a query, e.g. "OK\nnonce:abc".
+	 */
+	public interface Responder {
+		public String respond( Hashtable<String, String> postVariables ) ;
+	}
+
+
+	private final ServerSocket mServerSocket ;
+	private final Responder mResponder ;
+	private final AtomicInteger mConnections = new AtomicInteger(0) ;
+	private final AtomicInteger mRequests = new AtomicInteger(0) ;
+	private volatile boolean mRunning ;
+
+
+	public StubWebServer( Responder responder ) throws IOException {
+		if ( responder == null )
+			throw new NullPointerException("Must provide a Responder") ;
+		mResponder = responder ;
+		mServerSocket = new ServerSocket( 0, 50, InetAddress.getByName("127.0.0.1") ) ;
+	}
+
+
+	public synchronized StubWebServer start() {
+		if ( mRunning )
+			throw new IllegalStateException("Already started") ;
+		mRunning = true ;
+		Thread t = new Thread( new Runnable() {
+			@Override
+			public void run() {
+				acceptLoop() ;
+			}
+		}, "StubWebServer-accept" ) ;
+		t.setDaemon(true) ;
+		t.start() ;
+		return this ;
+	}
+
+
+	public synchronized void stop() {
+		mRunning = false ;
+		try {
+			mServerSocket.close() ;
+		} catch ( IOException e ) { }
+	}
+
+
+	/**
+	 * The URL at which this server answers.
+	 * @return
+	 */
+	public String getURL() {
+		return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/" ;
+	}
+
+	public int getConnectionCount() {
+		return mConnections.get() ;
+	}
+
+	public int getRequestCount() {
+		return mRequests.get() ;
+	}
+
+
+	private void acceptLoop() {
+		while ( mRunning ) {
+			final Socket s ;
+			try {
+				s = mServerSocket.accept() ;
+			} catch ( IOException e ) {
+				if ( mRunning )
+					e.printStackTrace() ;
+				return ;
+			}
+			mConnections.incrementAndGet() ;
+			Thread t = new Thread( new Runnable() {
+				@Override
+				public void run() {
+					serve(s) ;
+				}
+			}, "StubWebServer-connection" ) ;
+			t.setDaemon(true) ;
+			t.start() ;
+		}
+	}
+
+
+	private void serve( Socket s ) {
+		try {
+			InputStream is = new BufferedInputStream( s.getInputStream() ) ;
+			OutputStream os = s.getOutputStream() ;
+			boolean keepAlive = true ;
+			while ( mRunning && keepAlive ) {
+				// request line and headers
+				String line = readLine(is) ;
+				if ( line == null || line.length() == 0 )
+					return ;
+				int contentLength = 0 ;
+				while ( (line = readLine(is)) != null && line.length() > 0 ) {
+					int colon = line.indexOf(':') ;
+					if ( colon < 0 )
+						continue ;
+					String name = line.substring(0, colon).trim() ;
+					String value = line.substring(colon+1).trim() ;
+					if ( name.equalsIgnoreCase("Content-Length") )
+						contentLength = Integer.parseInt(value) ;
+					else if ( name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close") )
+						keepAlive = false ;
+				}
+				if ( line == null )
+					return ;
+
+				byte [] body = new byte[contentLength] ;
+				for ( int read = 0; read < contentLength; ) {
+					int n = is.read(body, read, contentLength - read) ;
+					if ( n < 0 )
+						return ;
+					read += n ;
+				}
+				mRequests.incrementAndGet() ;
+
+				String response = mResponder.respond( decode( new String(body, "UTF-8") ) ) ;
+				byte [] responseBytes = response.getBytes("UTF-8") ;
+				String header = "HTTP/1.1 200 OK\r\n"
+						+ "Content-Type: text/plain; charset=utf-8\r\n"
+						+ "Content-Length: " + responseBytes.length + "\r\n"
+						+ ( keepAlive ? "" : "Connection: close\r\n" )
+						+ "\r\n" ;
+				os.write( header.getBytes("US-ASCII") ) ;
+				os.write( responseBytes ) ;
+				os.flush() ;
+			}
+		} catch ( IOException e ) {
+			// the client went away.
+		} finally {
+			try {
+				s.close() ;
+			} catch ( IOException e ) { }
+		}
+	}
+
+
+	private static String readLine( InputStream is ) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream() ;
+		int b ;
+		while ( (b = is.read()) != -1 ) {
+			if ( b == '\n' )
+				break ;
+			if ( b != '\r' )
+				baos.write(b) ;
+		}
+		if ( b == -1 && baos.size() == 0 )
+			return null ;
+		return baos.toString("US-ASCII") ;
+	}
+
+
+	private static Hashtable<String, String> decode( String data ) throws UnsupportedEncodingException {
+		Hashtable<String, String> vars = new Hashtable<String, String>() ;
+		if ( data.length() == 0 )
+			return vars ;
+		String [] pairs = data.split("&") ;
+		for ( int i = 0; i < pairs.length; i++ ) {
+			int eq = pairs[i].indexOf('=') ;
+			if ( eq < 0 )
+				continue ;
+			vars.put( URLDecoder.decode(pairs[i].substring(0, eq), "UTF-8"),
+					URLDecoder.decode(pairs[i].substring(eq+1), "UTF-8") ) ;
+		}
+		return vars ;
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.peaceray.quantro.communications.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Checks WebQuery and the WebQueryEngine against a StubWebServer: that
+ * consecutive queries reuse a kept-alive connection, that bursts are served
+ * by no more connections than there are workers, and that deadlines are
+ * enforced.
+ *
+ * @author Jake
+ *
+ */
+public class WebQueryEngineTest {
+
+	private static final int TIMEOUT = 5000 ;
+	private static final int SLOW_RESPONSE = 3000 ;
+	private static final int SHORT_DEADLINE = 500 ;
+
+	private StubWebServer mServer ;
+
+	@Before
+	public void setUp() throws Exception {
+		mServer = new StubWebServer( new StubWebServer.Responder() {
+			@Override
+			public String respond( Hashtable<String, String> postVariables ) {
+				if ( "slow".equals( postVariables.get("action") ) ) {
+					try {
+						Thread.sleep( SLOW_RESPONSE ) ;
+					} catch ( InterruptedException e ) { }
+				}
+				return "OK\n" + postVariables.get("echo") ;
+			}
+		}).start() ;
+	}
+
+	@After
+	public void tearDown() {
+		mServer.stop() ;
+	}
+
+
+	private WebQuery query( String action, int echo ) {
+		return new WebQuery.Builder()
+				.setURL( mServer.getURL() )
+				.setResponseTypeString()
+				.addPostVariable( "action", action )
+				.addPostVariable( "echo", Integer.valueOf(echo) )
+				.build() ;
+	}
+
+
+	@Test
+	public void testSequentialQueriesReuseConnection() throws Exception {
+		for ( int i = 0; i < 10; i++ ) {
+			WebQuery.Response [] responses = query( "echo", i ).query( TIMEOUT ) ;
+			assertEquals( 1, responses.length ) ;
+			assertTrue( responses[0].isOK() ) ;
+			assertEquals( Integer.toString(i), responses[0].getResponseString() ) ;
+		}
+		assertEquals( 10, mServer.getRequestCount() ) ;
+		assertEquals( 1, mServer.getConnectionCount() ) ;
+	}
+
+
+	@Test
+	public void testBurstUsesAtMostOneConnectionPerWorker() throws Exception {
+		WebQueryEngine engine = new WebQueryEngine( WebQueryEngine.DEFAULT_MAX_CONCURRENT_QUERIES ) ;
+		try {
+			ArrayList<Future<WebQuery.Response []>> futures = new ArrayList<Future<WebQuery.Response []>>() ;
+			for ( int i = 0; i < 40; i++ )
+				futures.add( engine.submit( query( "echo", i ), TIMEOUT ) ) ;
+			for ( int i = 0; i < futures.size(); i++ )
+				assertEquals( Integer.toString(i), futures.get(i).get()[0].getResponseString() ) ;
+		} finally {
+			engine.shutdown() ;
+		}
+		assertEquals( 40, mServer.getRequestCount() ) ;
+		assertTrue( "opened " + mServer.getConnectionCount() + " connections",
+				mServer.getConnectionCount() <= WebQueryEngine.DEFAULT_MAX_CONCURRENT_QUERIES ) ;
+	}
+
+
+	@Test
+	public void testDeadline() throws Exception {
+		long start = System.currentTimeMillis() ;
+		try {
+			query( "slow", 0 ).query( SHORT_DEADLINE ) ;
+			fail( "Query outlived its deadline" ) ;
+		} catch ( SocketTimeoutException e ) {
+			// expected
+		}
+		long elapsed = System.currentTimeMillis() - start ;
+		assertTrue( "took " + elapsed + " ms", elapsed >= SHORT_DEADLINE && elapsed < SLOW_RESPONSE ) ;
+	}
+
+
+	@Test
+	public void testDeadlineAsync() throws Exception {
+		Future<WebQuery.Response []> future = query( "slow", 0 ).queryAsync( SHORT_DEADLINE ) ;
+		long start = System.currentTimeMillis() ;
+		try {
+			future.get() ;
+			fail( "Query outlived its deadline" ) ;
+		} catch ( ExecutionException e ) {
+			assertTrue( e.getCause() instanceof SocketTimeoutException ) ;
+		}
+		long elapsed = System.currentTimeMillis() - start ;
+		assertTrue( "took " + elapsed + " ms", elapsed < SLOW_RESPONSE ) ;
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.peaceray.quantro.server;
+
+import com.peaceray.quantro.communications.ClientInformation;
+import com.peaceray.quantro.communications.messagepassing.MessagePassingConnection;
+import com.peaceray.quantro.communications.messagepassing.MessagePassingDirectServerConnection;
+import com.peaceray.quantro.communications.nonce.Nonce;
+import com.peaceray.quantro.communications.wrapper.WrappedSocket;
+
+
+/**
+ * A MessagePassingDirectServerConnection whose clients arrive through
+ * VirtualThreadClientListener rather than DirectClientListener, and so
+ * are carried by VirtualThreadWrappedSockets: two virtual threads per
+ * connection, and no Pipes or MessageReader threads, since the socket
+ * hands us Message objects directly.
+ *
+ * Nonce, personal nonce and slot semantics -- including the priority
+ * with which simultaneously connect()ing Connections on the same port
+ * are matched to clients -- are exactly those of the superclass, and the
+ * clients themselves are unchanged: they connect with an ordinary
+ * MessagePassingDirectClientConnection.
+ *
+ * Requires Java 21.
+ *
+ * @author Jake
+ *
+ */
+public class MessagePassingVirtualThreadServerConnection extends MessagePassingDirectServerConnection {
+
+	private int port ;
+
+
+	/**
+	 * As MessagePassingDirectServerConnection.
+	 *
+	 * @param port
+	 * @param msgClass
+	 * @param nonce
+	 * @param personalNonce
+	 * @param requireNonce
+	 * @param openSlot
+	 * @throws IllegalArgumentException
+	 * @throws InstantiationException
+	 * @throws IllegalAccessException
+	 */
+	public MessagePassingVirtualThreadServerConnection( int port, Class<?> msgClass,
+			Nonce nonce, Nonce personalNonce,
+			boolean requireNonce, boolean openSlot ) throws IllegalArgumentException, InstantiationException, IllegalAccessException {
+		super( port, msgClass, nonce, personalNonce, requireNonce, openSlot ) ;
+		this.port = port ;
+	}
+
+
+	@Override
+	public synchronized void connect() throws IllegalStateException {
+		if ( !isActive() )
+			throw new IllegalStateException("Not active!") ;
+
+		Status status = this.connectionStatus() ;
+		if ( status == MessagePassingConnection.Status.PENDING
+				|| status == MessagePassingConnection.Status.CONNECTED
+				|| status == MessagePassingConnection.Status.BROKEN
+				|| status == MessagePassingConnection.Status.PEER_DISCONNECTED
+				|| status == MessagePassingConnection.Status.FAILED )
+			throw new IllegalStateException("Connected, or at least not disconnected.") ;
+
+		this.setConnectionStatus(Status.PENDING) ;
+		VirtualThreadClientListener.listenOnPort(this.port, this) ;
+	}
+
+
+	@Override
+	public synchronized void disconnect() throws IllegalStateException {
+		if ( isActive() && this.connectionStatus() == MessagePassingConnection.Status.PENDING ) {
+			VirtualThreadClientListener.stopListeningOnPort(this.port, this) ;
+			this.setConnectionStatus(Status.DISCONNECTED) ;
+			return ;
+		}
+
+		super.disconnect() ;
+	}
+
+
+	/**
+	 * Tells the socket which Message class to carry before the superclass
+	 * checks the client and connects.
+	 */
+	@Override
+	public synchronized boolean acceptClient(Object caller, WrappedSocket wsock, ClientInformation cinfo) throws IllegalStateException {
+		if ( wsock instanceof VirtualThreadWrappedSocket )
+			((VirtualThreadWrappedSocket)wsock).setMessageClass(this.messageClass) ;
+		return super.acceptClient(caller, wsock, cinfo) ;
+	}
+
+}
@@ -0,0 +1,323 @@
+package com.peaceray.quantro.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.peaceray.quantro.communications.ClientInformation;
+import com.peaceray.quantro.communications.CoordinationMessage;
+import com.peaceray.quantro.communications.messagepassing.MessagePassingConnectionAcceptsClients;
+
+
+/**
+ * The virtual-thread counterpart of DirectClientListener.  Static methods
+ * allow Connections to listen for direct clients on arbitrary ports;
+ * Connections listening on the same port at the same time share a
+ * ServerSocketChannel, and each client is offered to them in the same
+ * priority order DirectClientListener uses.
+ *
+ * Every thread here is virtual: one per listening port, blocked in
+ * accept(), and one per accepted client, blocked in the interrogation
+ * conversation (with another asleep as its timeout).  Interrogation is
+ * the same CoordinationMessage exchange as ClientInterrogatorThread,
+ * so clients can't tell the difference.
+ *
+ * @author Jake
+ *
+ */
+public class VirtualThreadClientListener {
+
+	private static final int BACKLOG = 50 ;
+	private static final long MIN_INTERROGATION_TIME = 100 ;
+	private static final long MAX_INTERROGATION_TIME = 10000 ;
+
+	// One PortListener per port, while listening.  Lock the table, then
+	// the entry, as DirectClientListener does.
+	private static final Hashtable<Integer, PortListener> portListeners
+			= new Hashtable<Integer, PortListener>() ;
+
+
+	private VirtualThreadClientListener() {
+		// static methods only
+	}
+
+
+	/**
+	 * Tell the listener that this Connection is currently connect()ing
+	 * and is interested in receiving a client on the specified port.
+	 *
+	 * @param port
+	 * @param mpc
+	 */
+	public static void listenOnPort( int port, MessagePassingConnectionAcceptsClients mpc ) {
+		synchronized( portListeners ) {
+			Integer key = Integer.valueOf(port) ;
+			PortListener pl = portListeners.get(key) ;
+			if ( pl != null && pl.addAcceptor(mpc) )
+				return ;
+
+			// None, or it has finished.  Make a new one.
+			pl = new PortListener( port ) ;
+			portListeners.put(key, pl) ;
+			pl.addAcceptor(mpc) ;
+			pl.start() ;
+		}
+	}
+
+	/**
+	 * Tells the listener that this Connection is no longer interested in
+	 * receiving a client on the specified port.  Has no effect if it
+	 * wasn't listening.
+	 *
+	 * @param port
+	 * @param mpc
+	 */
+	public static void stopListeningOnPort( int port, MessagePassingConnectionAcceptsClients mpc ) {
+		synchronized( portListeners ) {
+			PortListener pl = portListeners.get(Integer.valueOf(port)) ;
+			if ( pl != null )
+				pl.removeAcceptor(mpc) ;
+		}
+	}
+
+
+	/**
+	 * Listens on a single port, until it runs out of acceptors.
+	 */
+	private static class PortListener {
+
+		private final int port ;
+		private boolean running ;
+		private ServerSocketChannel ssc ;
+
+		private final ArrayList<MessagePassingConnectionAcceptsClients> acceptors ;
+
+		private PortListener( int port ) {
+			this.port = port ;
+			this.running = true ;
+			this.acceptors = new ArrayList<MessagePassingConnectionAcceptsClients>() ;
+		}
+
+		private void start() {
+			VirtualThreads.start( "VirtualThreadClientListener " + port, new Runnable() {
+				@Override
+				public void run() {
+					listen() ;
+				}
+			}) ;
+		}
+
+		private void listen() {
+			synchronized( this ) {
+				if ( running ) {
+					try {
+						ssc = ServerSocketChannel.open() ;
+						ssc.configureBlocking(true) ;
+						ssc.bind( new InetSocketAddress(port), BACKLOG ) ;
+					} catch( IOException e ) {
+						e.printStackTrace() ;
+						stop() ;
+					}
+				}
+			}
+
+			while ( isRunning() ) {
+				try {
+					// blocks until a client arrives, or stop() closes the channel.
+					final SocketChannel sc = ssc.accept() ;
+					VirtualThreads.start( "VirtualThreadClientListener " + port + " interrogator", new Runnable() {
+						@Override
+						public void run() {
+							interrogate( sc ) ;
+						}
+					}) ;
+				} catch ( IOException e ) {
+					// closed (by stop(), or otherwise).
+					synchronized( this ) {
+						stop() ;
+					}
+				}
+			}
+
+			// Any acceptors still on our list should be told we failed.
+			synchronized( this ) {
+				for ( int i = 0; i < acceptors.size(); i++ )
+					acceptors.get(i).failedToFindClient(this) ;
+				acceptors.clear() ;
+			}
+		}
+
+		private synchronized boolean isRunning() {
+			return running ;
+		}
+
+		/**
+		 * Stops listening and closes the channel immediately, so that
+		 * another PortListener can bind the port.  Requires our lock.
+		 */
+		private void stop() {
+			running = false ;
+			try {
+				if ( ssc != null )
+					ssc.close() ;
+			} catch ( IOException e ) {
+				// nothing
+			}
+		}
+
+		private synchronized boolean addAcceptor( MessagePassingConnectionAcceptsClients mpc ) {
+			if ( !running )
+				return false ;
+			acceptors.add(mpc) ;
+			return true ;
+		}
+
+		private synchronized boolean removeAcceptor( MessagePassingConnectionAcceptsClients mpc ) {
+			boolean removed = acceptors.remove(mpc) ;
+			if ( acceptors.size() == 0 )
+				stop() ;
+			return removed ;
+		}
+
+
+		/**
+		 * Wraps the channel and asks the client for its nonce, personal
+		 * nonce and name, then offers it to our acceptors.  Closes the
+		 * socket if the client fails to answer in time or no acceptor
+		 * takes it.
+		 */
+		private void interrogate( SocketChannel sc ) {
+			long startTime = System.currentTimeMillis() ;
+
+			final VirtualThreadWrappedSocket ws ;
+			try {
+				ws = new VirtualThreadWrappedSocket( sc ) ;
+			} catch ( IOException e ) {
+				try {
+					sc.close() ;
+				} catch ( IOException e2 ) { }
+				return ;
+			}
+
+			// A blocked read ends when the channel closes, so that's our timeout.
+			final AtomicBoolean finished = new AtomicBoolean(false) ;
+			Thread timeout = VirtualThreads.start( "VirtualThreadClientListener " + port + " timeout", new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep( MAX_INTERROGATION_TIME ) ;
+					} catch ( InterruptedException e ) {
+						return ;
+					}
+					if ( finished.compareAndSet(false, true) )
+						ws.close() ;
+				}
+			}) ;
+
+			ClientInformation ci = new ClientInformation() ;
+			boolean ok ;
+			try {
+				CoordinationMessage m = new CoordinationMessage() ;
+				ws.writeMessage( m.setAsNonceRequest() ) ;
+				ws.writeMessage( m.setAsPersonalNonceRequest() ) ;
+				ws.writeMessage( m.setAsNameRequest(0) ) ;
+				ws.writeMessage( m.setAsInterrogationComplete() ) ;
+
+				ws.readMessage( m ) ;
+				ci.setNonce( m.getNonce() ) ;
+				ws.readMessage( m ) ;
+				ci.setPersonalNonce( m.getNonce() ) ;
+				ws.readMessage( m ) ;
+				ci.setName( m.getName() ) ;
+
+				long millisLeft = MIN_INTERROGATION_TIME - (System.currentTimeMillis() - startTime) ;
+				if ( millisLeft > 0 )
+					Thread.sleep( millisLeft ) ;
+
+				ok = finished.compareAndSet(false, true) ;
+			} catch ( Exception e ) {
+				ok = false ;
+			}
+			timeout.interrupt() ;
+
+			if ( !ok || !takeClientSocket( ws, ci ) )
+				ws.close() ;
+		}
+
+
+		/**
+		 * Offers the interrogated socket to our acceptors, in the priority
+		 * order of DirectClientListener.  Returns whether it was taken; if
+		 * so, the acceptor is now responsible for closing it.
+		 */
+		private synchronized boolean takeClientSocket( VirtualThreadWrappedSocket ws, ClientInformation ci ) {
+			if ( !running )
+				return false ;
+
+			// requireNonce:true openSlot:false nonce=nonce, personalNonce=personalNonce
+			// requireNonce:false openSlot:false nonce=? personalNonce=personalNonce
+			// requireNonce:true openSlot:false nonce=nonce personalNonce:?
+			// requireNonce:false openSlot:false nonce=? personalNonce:?
+			// requireNonce:true openSlot:true nonce=nonce
+			// requireNonce:false openSlot:true nonce=?
+			int entry = -1 ;
+			entry = entry >= 0 ? entry : findAcceptor( true, true, true, ci ) ;
+			entry = entry >= 0 ? entry : findAcceptor( false, true, true, ci ) ;
+			entry = entry >= 0 ? entry : findAcceptor( true, false, true, ci ) ;
+			entry = entry >= 0 ? entry : findAcceptor( false, false, true, ci ) ;
+			entry = entry >= 0 ? entry : findAcceptor( true, false, false, ci ) ;
+			entry = entry >= 0 ? entry : findAcceptor( false, false, false, ci ) ;
+
+			if ( entry >= 0 ) {
+				try {
+					if ( !acceptors.get(entry).acceptClient(this, ws, ci) )
+						entry = -1 ;
+				} catch ( IllegalStateException e ) {
+					entry = -1 ;
+				}
+			}
+
+			if ( entry < 0 )
+				return false ;
+
+			acceptors.remove(entry) ;
+			if ( acceptors.size() == 0 )
+				stop() ;
+			return true ;
+		}
+
+		/**
+		 * Linear search for the first acceptor meeting the criteria; see
+		 * DirectClientListener.  Returns -1 if none does.
+		 */
+		private int findAcceptor( boolean requireNonce, boolean requirePersonalNonce, boolean rememberNonce,
+				ClientInformation cinfo ) {
+
+			for ( int i = 0; i < acceptors.size(); i++ ) {
+				MessagePassingConnectionAcceptsClients acceptor = acceptors.get(i) ;
+
+				if ( requireNonce != acceptor.requiresNonce() )
+					continue ;
+				if ( requireNonce && !cinfo.getNonce().equals(acceptor.getNonce()) )
+					continue ;
+
+				if ( requirePersonalNonce != acceptor.requiresPersonalNonce() )
+					continue ;
+				if ( requirePersonalNonce && !cinfo.getPersonalNonce().equals(acceptor.getRemotePersonalNonce()) )
+					continue ;
+
+				if ( rememberNonce != acceptor.remembersPersonalNonce() )
+					continue ;
+
+				return i ;
+			}
+
+			return -1 ;
+		}
+	}
+
+}
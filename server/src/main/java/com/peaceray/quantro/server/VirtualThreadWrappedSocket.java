@@ -0,0 +1,730 @@
+package com.peaceray.quantro.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.peaceray.quantro.communications.Message;
+import com.peaceray.quantro.communications.telemetry.ConnectionTelemetry;
+import com.peaceray.quantro.communications.wrapper.WrappedSocket;
+
+
+/**
+ * A WrappedSocket over a blocking SocketChannel, speaking the same
+ * DATA / SYN / ACK framing as AutonomousWrappedTCPSocket -- the remote
+ * end can (and generally will) be an ordinary wrapped TCP Socket.
+ *
+ * Unlike AutonomousWrappedTCPSocket, this class is Object Aware: it
+ * passes Message instances (see setMessageClass) rather than bytes
+ * through Pipes, so a connected socket costs two virtual threads and
+ * a few buffers rather than two platform threads and two Pipes.
+ *
+ * 		Writer: started at construction.  Waits for Messages on the
+ * 			sink queue (dataObjectAvailable() wakes it), writes each as one
+ * 			or more DATA frames, and sends a SYN after 5 seconds of silence.
+ * 		Reader: started by setDataObjectSenderReceiver.  Reassembles
+ * 			DATA frames into Messages for the source queue, ACKs every
+ * 			DATA and SYN, and times ACKs of our own SYNs for ping.
+ *
+ * Before the reader is started, readMessage and writeMessage allow a
+ * blocking conversation with the remote end in any Message class (we
+ * use this for client interrogation).  No bytes are read ahead, so the
+ * conversation can hand off to the reader at any message boundary.
+ *
+ * TCP guarantees delivery and order, so -- as with AutonomousWrappedTCPSocket --
+ * we never resend and never wait for ACKs before sending more.
+ *
+ * @author Jake
+ *
+ */
+public class VirtualThreadWrappedSocket extends WrappedSocket {
+
+	private static final long MAX_TIME_BETWEEN_MESSAGES = 5000 ;
+	private static final double NEW_PING_WEIGHT = 0.2 ;
+	private static final int HEADER_LENGTH = 13 ;
+	private static final int MAX_CONTENT_LENGTH = MAX_MESSAGE_LENGTH - HEADER_LENGTH ;
+
+	private final SocketChannel mChannel ;
+	private final Socket mSocket ;
+	private final String mName ;
+
+	// Object awareness.
+	private Class<?> mMessageClass ;
+	private final LinkedBlockingQueue<Message> mReceiveQueue ;
+	private final LinkedBlockingQueue<Message> mSendQueue ;
+	private final ConcurrentLinkedQueue<Message> mMessagePool ;
+	private volatile DataObjectSenderReceiver<?> mDOSR ;
+
+	// Writing.  Both threads write (the reader writes ACKs), so every
+	// frame goes out under mWriteLock.  Message numbers are assigned
+	// under the same lock so they reach the wire in order.
+	private final ReentrantLock mWriteLock ;
+	private final ByteBuffer mFrame ;
+	private ByteBuffer mOutgoing ;
+	private long mNextMessageNum ;
+	private long mSynMessageNum ;
+	private long mSynTimeSent ;
+
+	// The writer waits on this for messages or closure.
+	private final ReentrantLock mSignalLock ;
+	private final Condition mSignal ;
+	private boolean mStopWriting ;
+
+	// Reading.
+	private final FrameInputStream mIn ;
+
+	private Thread mWriterThread ;
+	private Thread mReaderThread ;
+
+	// Meta.
+	private volatile long mTimeLastReceived ;
+	private volatile long mTimeLastSent ;
+	private volatile long mLastPing ;
+	private volatile long mAveragePing ;
+	private volatile long mBytesSent ;
+	private volatile long mBytesReceived ;
+	private volatile boolean mClosed ;
+
+
+	/**
+	 * Wraps the provided connected SocketChannel, which will be put in
+	 * blocking mode, and starts the writer thread.
+	 *
+	 * @param channel
+	 * @throws IOException
+	 */
+	public VirtualThreadWrappedSocket( SocketChannel channel ) throws IOException {
+		if ( channel == null || !channel.isConnected() )
+			throw new IllegalArgumentException("Must provide a connected SocketChannel") ;
+
+		mChannel = channel ;
+		mChannel.configureBlocking(true) ;
+		mSocket = channel.socket() ;
+		mSocket.setTcpNoDelay(true) ;
+		mName = "VirtualThreadWrappedSocket " + mSocket.getRemoteSocketAddress() ;
+
+		mReceiveQueue = new LinkedBlockingQueue<Message>() ;
+		mSendQueue = new LinkedBlockingQueue<Message>() ;
+		mMessagePool = new ConcurrentLinkedQueue<Message>() ;
+
+		mWriteLock = new ReentrantLock() ;
+		mFrame = ByteBuffer.allocate(MAX_MESSAGE_LENGTH) ;
+		mOutgoing = ByteBuffer.allocate(MAX_MESSAGE_LENGTH) ;
+		mNextMessageNum = 0 ;
+		mSynMessageNum = -1 ;
+
+		mSignalLock = new ReentrantLock() ;
+		mSignal = mSignalLock.newCondition() ;
+		mStopWriting = false ;
+
+		mIn = new FrameInputStream() ;
+
+		long time = System.currentTimeMillis() ;
+		mTimeLastReceived = time ;
+		mTimeLastSent = time ;
+		mLastPing = -1 ;
+		mAveragePing = -1 ;
+		mClosed = false ;
+
+		mWriterThread = VirtualThreads.start( mName + " writer", new Runnable() {
+			@Override
+			public void run() {
+				runWriter() ;
+			}
+		}) ;
+	}
+
+
+	/**
+	 * Sets the Message class passed through our data object queues.
+	 * Must be called before setDataObjectSenderReceiver.
+	 *
+	 * @param messageClass
+	 */
+	public synchronized void setMessageClass( Class<?> messageClass ) {
+		if ( messageClass == null || !Message.class.isAssignableFrom(messageClass) )
+			throw new IllegalArgumentException("Must provide a Message class") ;
+		if ( mReaderThread != null )
+			throw new IllegalStateException("Already receiving messages") ;
+		mMessageClass = messageClass ;
+		mMessagePool.clear() ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// BLOCKING CONVERSATION
+	//
+	// Only before setDataObjectSenderReceiver.  Each blocks the calling
+	// thread, which should therefore be a virtual thread.
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads the next Message from the remote end into 'm', blocking until
+	 * it is complete.  The message must be of the class the remote end sent.
+	 *
+	 * @param m
+	 * @throws IOException If the connection closes first (or closed
+	 * 		during the read; close() is the way to time out).
+	 */
+	public void readMessage( Message m ) throws IOException {
+		synchronized( this ) {
+			if ( mReaderThread != null )
+				throw new IllegalStateException("Already receiving messages") ;
+		}
+		read( m ) ;
+	}
+
+	private void read( Message m ) throws IOException {
+		try {
+			m.resetForRead() ;
+			while ( !m.read(mIn) ) {
+				// blocking stream; loop until complete.
+			}
+		} catch ( ClassNotFoundException e ) {
+			throw new IOException("Malformed message", e) ;
+		}
+	}
+
+	/**
+	 * Writes the provided Message to the remote end, blocking until it
+	 * is handed to the channel.
+	 *
+	 * @param m
+	 * @throws IOException
+	 */
+	public void writeMessage( Message m ) throws IOException {
+		mWriteLock.lock() ;
+		try {
+			writeMessageFrames( m ) ;
+		} finally {
+			mWriteLock.unlock() ;
+		}
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// WRITER
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	private void runWriter() {
+		try {
+			while ( true ) {
+				Message m = null ;
+				mSignalLock.lock() ;
+				try {
+					long timeBeforeSyn = MAX_TIME_BETWEEN_MESSAGES - (System.currentTimeMillis() - mTimeLastSent) ;
+					while ( mSendQueue.isEmpty() && !mStopWriting && timeBeforeSyn > 0 ) {
+						mSignal.await(timeBeforeSyn, TimeUnit.MILLISECONDS) ;
+						timeBeforeSyn = MAX_TIME_BETWEEN_MESSAGES - (System.currentTimeMillis() - mTimeLastSent) ;
+					}
+					m = mSendQueue.poll() ;
+					if ( m == null && mStopWriting )
+						return ;
+				} finally {
+					mSignalLock.unlock() ;
+				}
+
+				mWriteLock.lock() ;
+				try {
+					if ( m != null ) {
+						int len = writeMessageFrames( m ) ;
+						// queued without a length; record it now we know.
+						ConnectionTelemetry telemetry = getTelemetry() ;
+						if ( telemetry != null )
+							telemetry.recordSentBytes( m, len ) ;
+						recycleDataObjectInstance( m ) ;
+					} else {
+						writeSYN() ;
+					}
+				} finally {
+					mWriteLock.unlock() ;
+				}
+			}
+		} catch ( InterruptedException e ) {
+			// closing
+		} catch ( IOException e ) {
+			// the channel is broken.  The reader will notice too.
+			closeChannel() ;
+		}
+	}
+
+	/**
+	 * Writes the message as one or more DATA frames.  Requires mWriteLock.
+	 *
+	 * @return The length of the message as written.
+	 */
+	private int writeMessageFrames( Message m ) throws IOException {
+		int len = m.lengthAsBytes() ;
+		if ( mOutgoing.capacity() < len )
+			mOutgoing = ByteBuffer.allocate( Math.max( len, mOutgoing.capacity() * 2 ) ) ;
+		mOutgoing.clear() ;
+		m.write(mOutgoing) ;
+		mOutgoing.flip() ;
+
+		byte [] bytes = mOutgoing.array() ;
+		int offset = 0 ;
+		int remaining = mOutgoing.limit() ;
+		while ( remaining > 0 ) {
+			int frameLen = Math.min( remaining, MAX_CONTENT_LENGTH ) ;
+			setAsDATA( mFrame, mNextMessageNum++, bytes, offset, frameLen ) ;
+			writeFrame( mFrame ) ;
+			offset += frameLen ;
+			remaining -= frameLen ;
+		}
+		return mOutgoing.limit() ;
+	}
+
+	/**
+	 * Writes a SYN, noting its number and time so its ACK gives us a
+	 * ping.  Requires mWriteLock.
+	 */
+	private void writeSYN() throws IOException {
+		long num = mNextMessageNum++ ;
+		setAsSYN( mFrame, num ) ;
+		mSynMessageNum = num ;
+		mSynTimeSent = System.currentTimeMillis() ;
+		writeFrame( mFrame ) ;
+	}
+
+	/**
+	 * Writes an ACK for the provided message number, using the provided
+	 * buffer.  Failure to write an ACK is not an error; we keep reading.
+	 */
+	private void writeACK( ByteBuffer bb, long num ) {
+		mWriteLock.lock() ;
+		try {
+			setAsACK( bb, num ) ;
+			bb.position(0).limit(9) ;
+			writeFrame( bb ) ;
+		} catch ( IOException e ) {
+			// nothing
+		} finally {
+			mWriteLock.unlock() ;
+		}
+	}
+
+	/**
+	 * Writes the frame in its entirety.  Requires mWriteLock.
+	 */
+	private void writeFrame( ByteBuffer bb ) throws IOException {
+		int len = 0 ;
+		while ( bb.hasRemaining() )
+			len += mChannel.write(bb) ;
+		mBytesSent += len ;
+		mTimeLastSent = System.currentTimeMillis() ;
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// READER
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	private void runReader() {
+		try {
+			while ( true ) {
+				Message m = (Message)getDataObjectEmptyInstance() ;
+				read( m ) ;
+				mReceiveQueue.add(m) ;
+				DataObjectSenderReceiver<?> dosr = mDOSR ;
+				if ( dosr != null )
+					dosr.dosr_dataObjectAvailable(this, m) ;
+			}
+		} catch ( IOException e ) {
+			// closed or broken
+		}
+
+		closeChannel() ;
+		DataObjectSenderReceiver<?> dosr = mDOSR ;
+		if ( dosr != null )
+			dosr.dosr_dataObjectsExhaustedForever(this) ;
+	}
+
+
+	/**
+	 * Presents the content of incoming DATA frames as a blocking stream,
+	 * handling SYNs and ACKs as they come.  Frames are read only on
+	 * demand.  Only one thread reads at a time: the conversation thread
+	 * before the reader starts, the reader afterwards.
+	 */
+	private class FrameInputStream extends InputStream {
+
+		private final ByteBuffer mHeader = ByteBuffer.allocate(HEADER_LENGTH) ;
+		private final ByteBuffer mContent = ByteBuffer.allocate(MAX_CONTENT_LENGTH) ;
+		private final ByteBuffer mAck = ByteBuffer.allocate(9) ;
+		private long mLastReceivedInSequence = -1 ;
+
+		FrameInputStream() {
+			mContent.limit(0) ;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if ( !fill() )
+				return -1 ;
+			return mContent.get() & 0xff ;
+		}
+
+		@Override
+		public int read( byte [] b, int off, int len ) throws IOException {
+			if ( len == 0 )
+				return 0 ;
+			if ( !fill() )
+				return -1 ;
+			int n = Math.min( len, mContent.remaining() ) ;
+			mContent.get( b, off, n ) ;
+			return n ;
+		}
+
+		@Override
+		public int available() {
+			return mContent.remaining() ;
+		}
+
+		/**
+		 * Reads frames until DATA content is available.  Returns false
+		 * on end of stream.
+		 */
+		private boolean fill() throws IOException {
+			try {
+				while ( !mContent.hasRemaining() ) {
+					readFrame() ;
+				}
+				return true ;
+			} catch ( EOFException e ) {
+				return false ;
+			}
+		}
+
+		private void readFrame() throws IOException {
+			// type.  Discard bytes that aren't a frame type, as
+			// AutonomousWrappedSocket does.
+			byte type ;
+			do {
+				mHeader.clear().limit(1) ;
+				readFully( mHeader ) ;
+				type = mHeader.get(0) ;
+			} while ( type != DATA && type != SYN && type != ACK ) ;
+
+			mHeader.limit( type == DATA ? HEADER_LENGTH : 9 ) ;
+			readFully( mHeader ) ;
+			long num = mHeader.getLong(1) ;
+
+			if ( type == ACK ) {
+				noteACK( num ) ;
+				return ;
+			}
+
+			mTimeLastReceived = System.currentTimeMillis() ;
+			if ( type == DATA ) {
+				int len = mHeader.getInt(9) ;
+				if ( len < 0 || len > MAX_CONTENT_LENGTH )
+					throw new IOException("Malformed DATA length " + len) ;
+				mContent.clear().limit(len) ;
+				readFully( mContent ) ;
+				mContent.flip() ;
+			}
+			writeACK( mAck, num ) ;
+
+			// TCP delivers in order, so anything at or before the last
+			// in-sequence number is a duplicate.
+			if ( num <= mLastReceivedInSequence )
+				mContent.limit(0) ;
+			else
+				mLastReceivedInSequence = num ;
+		}
+
+		private void readFully( ByteBuffer bb ) throws IOException {
+			while ( bb.hasRemaining() ) {
+				int n = mChannel.read(bb) ;
+				if ( n < 0 )
+					throw new EOFException("End of wrapped socket stream") ;
+				mBytesReceived += n ;
+			}
+		}
+	}
+
+	private void noteACK( long num ) {
+		long sent ;
+		mWriteLock.lock() ;
+		try {
+			if ( num != mSynMessageNum )
+				return ;
+			mSynMessageNum = -1 ;
+			sent = mSynTimeSent ;
+		} finally {
+			mWriteLock.unlock() ;
+		}
+
+		long ping = System.currentTimeMillis() - sent ;
+		mLastPing = ping ;
+		if ( mAveragePing == -1 )
+			mAveragePing = ping ;
+		else
+			mAveragePing = (long)((double)mAveragePing * (1 - NEW_PING_WEIGHT) + (double)ping * NEW_PING_WEIGHT) ;
+
+		ConnectionTelemetry telemetry = getTelemetry() ;
+		if ( telemetry != null ) {
+			telemetry.recordRoundTrip( ping ) ;
+			telemetry.recordAcknowledged( 1 ) ;
+		}
+	}
+
+
+	///////////////////////////////////////////////////////////////////////////
+	//
+	// WRAPPED SOCKET
+	//
+	///////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public InetAddress getInetAddress() {
+		return mSocket.getInetAddress() ;
+	}
+
+	@Override
+	public InetAddress getLocalAddress() {
+		return mSocket.getLocalAddress() ;
+	}
+
+	@Override
+	public int getLocalPort() {
+		return mSocket.getLocalPort() ;
+	}
+
+	@Override
+	public SocketAddress getLocalSocketAddress() {
+		return mSocket.getLocalSocketAddress() ;
+	}
+
+	@Override
+	public int getPort() {
+		return mSocket.getPort() ;
+	}
+
+	@Override
+	public SocketAddress getRemoteSocketAddress() {
+		return mSocket.getRemoteSocketAddress() ;
+	}
+
+	@Override
+	public boolean isBound() {
+		return mSocket.isBound() ;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return mClosed || !mChannel.isOpen() ;
+	}
+
+	@Override
+	public boolean isConnected() {
+		return mChannel.isConnected() ;
+	}
+
+	@Override
+	public long timeSinceLastReceived() {
+		return System.currentTimeMillis() - mTimeLastReceived ;
+	}
+
+	@Override
+	public long timeWaitingForAck() {
+		// TCP guarantees delivery; like AutonomousWrappedTCPSocket, we
+		// never wait.
+		return 0 ;
+	}
+
+	@Override
+	public long latestPing() {
+		return mLastPing ;
+	}
+
+	@Override
+	public long averagePing() {
+		return mAveragePing ;
+	}
+
+	@Override
+	public double successRate() {
+		// Remember: guaranteed delivery is a perfect success rate.
+		return 1.0 ;
+	}
+
+	@Override
+	public long bytesSent() {
+		return mBytesSent ;
+	}
+
+	@Override
+	public long bytesReceived() {
+		return mBytesReceived ;
+	}
+
+	@Override
+	public Pipe.SourceChannel getSourceChannel() {
+		throw new UnsupportedOperationException("This WrappedSocket is not byte aware.") ;
+	}
+
+	@Override
+	public Pipe.SinkChannel getSinkChannel() {
+		throw new UnsupportedOperationException("This WrappedSocket is not byte aware.") ;
+	}
+
+	@Override
+	public boolean isByteAware() {
+		return false ;
+	}
+
+	@Override
+	public synchronized boolean isObjectAware( Object o ) {
+		return mMessageClass != null && mMessageClass.isInstance(o) ;
+	}
+
+	@Override
+	public synchronized boolean isObjectAware( Class<?> c ) {
+		return mMessageClass != null && c != null && mMessageClass.isAssignableFrom(c) ;
+	}
+
+	@Override
+	public BlockingQueue<?> getDataObjectSourceQueue() {
+		return mReceiveQueue ;
+	}
+
+	@Override
+	public BlockingQueue<?> getDataObjectSinkQueue() {
+		return mSendQueue ;
+	}
+
+	@Override
+	public Object getDataObjectEmptyInstance() {
+		Message m = mMessagePool.poll() ;
+		if ( m == null ) {
+			Class<?> messageClass ;
+			synchronized( this ) {
+				messageClass = mMessageClass ;
+			}
+			if ( messageClass == null )
+				throw new IllegalStateException("No message class set") ;
+			try {
+				m = (Message)messageClass.getDeclaredConstructor().newInstance() ;
+			} catch (ReflectiveOperationException e) {
+				e.printStackTrace();
+				throw new IllegalStateException("Can't instantiate message class " + messageClass) ;
+			}
+		}
+		return m ;
+	}
+
+	@Override
+	public void recycleDataObjectInstance( Object o ) {
+		if ( o != null && o instanceof Message ) {
+			Message m = (Message)o ;
+			m.setAsUnknown() ;
+			mMessagePool.add(m) ;
+		}
+	}
+
+	/**
+	 * Sets the receiver and, the first time a non-null receiver is set,
+	 * starts the reader thread.
+	 */
+	@Override
+	public void setDataObjectSenderReceiver( DataObjectSenderReceiver<?> receiver ) {
+		mDOSR = receiver ;
+		if ( receiver == null )
+			return ;
+		synchronized( this ) {
+			if ( mMessageClass == null )
+				throw new IllegalStateException("Set a message class before receiving") ;
+			if ( mReaderThread != null || mClosed )
+				return ;
+			mReaderThread = VirtualThreads.newThread( mName + " reader", new Runnable() {
+				@Override
+				public void run() {
+					runReader() ;
+				}
+			}) ;
+		}
+		mReaderThread.start() ;
+	}
+
+	@Override
+	public void dataObjectAvailable() throws IllegalStateException {
+		if ( mClosed )
+			throw new IllegalStateException("Closed") ;
+		mSignalLock.lock() ;
+		try {
+			mSignal.signal() ;
+		} finally {
+			mSignalLock.unlock() ;
+		}
+	}
+
+
+	@Override
+	public void close() {
+		close(false, 0) ;
+	}
+
+	/**
+	 * Stops the writer -- after it empties the sink queue, if
+	 * flushOutgoing, waiting no more than maximumWait -- and closes the
+	 * channel.  The reader stops when its next read fails.
+	 */
+	@Override
+	public void close( boolean flushOutgoing, long maximumWait ) {
+		mClosed = true ;
+		mSignalLock.lock() ;
+		try {
+			mStopWriting = true ;
+			if ( !flushOutgoing )
+				mSendQueue.clear() ;
+			mSignal.signal() ;
+		} finally {
+			mSignalLock.unlock() ;
+		}
+
+		if ( flushOutgoing && Thread.currentThread() != mWriterThread ) {
+			try {
+				mWriterThread.join( Math.max(1, maximumWait) ) ;
+			} catch ( InterruptedException e ) {
+				// close anyway
+			}
+		}
+		closeChannel() ;
+	}
+
+	private void closeChannel() {
+		mClosed = true ;
+		mSignalLock.lock() ;
+		try {
+			mStopWriting = true ;
+			mSignal.signal() ;
+		} finally {
+			mSignalLock.unlock() ;
+		}
+		try {
+			mChannel.close() ;
+		} catch ( IOException e ) {
+			// nothing
+		}
+	}
+
+}
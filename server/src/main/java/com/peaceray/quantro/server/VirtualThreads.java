@@ -0,0 +1,51 @@
+package com.peaceray.quantro.server;
+
+
+/**
+ * The single point at which the server module touches the Java 21
+ * virtual thread API.  Everything else creates its threads here, so
+ * that (for example) the module can be pointed at platform threads
+ * for debugging by changing one method.
+ *
+ * Virtual threads are cheap enough to dedicate one (or two) to every
+ * connection, and block on ordinary channel I/O without holding a
+ * carrier thread.  Two cautions: do not block inside a 'synchronized'
+ * block (that pins the carrier; use a java.util.concurrent Lock), and
+ * do not pool them.
+ *
+ * @author Jake
+ *
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {
+		// no instances
+	}
+
+
+	/**
+	 * Creates, but does not start, a virtual thread with the
+	 * provided name.
+	 *
+	 * @param name
+	 * @param r
+	 * @return
+	 */
+	public static Thread newThread( String name, Runnable r ) {
+		return Thread.ofVirtual().name(name).unstarted(r) ;
+	}
+
+	/**
+	 * Creates and starts a virtual thread with the provided name.
+	 *
+	 * @param name
+	 * @param r
+	 * @return
+	 */
+	public static Thread start( String name, Runnable r ) {
+		Thread t = newThread( name, r ) ;
+		t.start() ;
+		return t ;
+	}
+
+}